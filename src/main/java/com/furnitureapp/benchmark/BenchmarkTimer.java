@@ -0,0 +1,88 @@
+package com.furnitureapp.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Minimal timing harness for the benchmark programs in this package.
+ * Each measurement runs a warm-up phase so the JIT has compiled the code
+ * under test, then reports the median of the timed runs.
+ */
+public final class BenchmarkTimer {
+    private final int warmupRuns;
+    private final int timedRuns;
+    
+    // Results are folded into this field so the JIT cannot drop the work
+    private long sink;
+    
+    /**
+     * Creates a timer
+     * @param warmupRuns the number of untimed runs before measuring
+     * @param timedRuns the number of timed runs
+     */
+    public BenchmarkTimer(int warmupRuns, int timedRuns) {
+        this.warmupRuns = warmupRuns;
+        this.timedRuns = timedRuns;
+    }
+    
+    /**
+     * Something to measure; the returned value is consumed so the work is not optimized away
+     */
+    public interface Task {
+        long run();
+    }
+    
+    /**
+     * Measures a task
+     * @param task the task to measure
+     * @return the median time of one run, in nanoseconds
+     */
+    public long medianNanos(Task task) {
+        for (int i = 0; i < warmupRuns; i++) {
+            sink += task.run();
+        }
+        long[] times = new long[timedRuns];
+        for (int i = 0; i < timedRuns; i++) {
+            long start = System.nanoTime();
+            sink += task.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+    
+    /**
+     * Gets the folded task results, so callers can print it and keep the work alive
+     * @return the accumulated results
+     */
+    public long getSink() {
+        return sink;
+    }
+    
+    /**
+     * Formats a duration for a results table
+     * @param nanos the duration in nanoseconds
+     * @return the duration in microseconds, right-aligned
+     */
+    public static String micros(long nanos) {
+        return String.format("%12.1f", nanos / 1000.0);
+    }
+    
+    /**
+     * Measures the heap allocated by one run of a task on this thread
+     * @param task the task to measure
+     * @return the allocated bytes, or -1 if the JVM cannot report them
+     */
+    public static long allocatedBytes(Task task) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        long thread = Thread.currentThread().getId();
+        long before = hotspot.getThreadAllocatedBytes(thread);
+        task.run();
+        return hotspot.getThreadAllocatedBytes(thread) - before;
+    }
+}
@@ -0,0 +1,138 @@
+package com.furnitureapp.benchmark;
+
+import com.furnitureapp.model.DesignModel;
+import com.furnitureapp.model.FurnitureItem;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Measures the heap a design model retains per furniture item.
+ * For each design size it fills a model, lets it settle, and reports the
+ * retained bytes per item next to a list of one object per item with the
+ * fields items had before they moved into the item store, as a baseline.
+ * 
+ * Run with a fixed collector so the numbers are comparable:
+ * MAVEN_OPTS=-XX:+UseSerialGC mvn -q compile exec:java -Dmain.class=com.furnitureapp.benchmark.ItemHeapBenchmark
+ */
+public class ItemHeapBenchmark {
+    private static final int[] ITEM_COUNTS = { 10_000, 100_000 };
+    private static final Color CHAIR_BROWN = new Color(139, 69, 19);
+    private static final Color CHAIR_GREEN = new Color(85, 107, 47);
+    
+    /**
+     * Benchmark entry point
+     * @param args optional item counts to measure instead of the defaults
+     * @throws InterruptedException if interrupted while waiting for the collector
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int[] counts = ITEM_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        System.out.println("Retained heap per item in bytes");
+        System.out.println(String.format("%10s%12s%12s%12s", "items", "store", "objects", "ratio"));
+        
+        for (int count : counts) {
+            long before = usedHeap();
+            DesignModel model = createModel(count);
+            long store = (usedHeap() - before) / count;
+            
+            before = usedHeap();
+            List<LegacyItem> objects = createObjects(count);
+            long legacy = (usedHeap() - before) / count;
+            
+            System.out.println(String.format("%10d%12d%12d%11.2fx", count, store, legacy, (double) legacy / store));
+            // Keep both alive until both are measured
+            if (model.getFurnitureItemCount() != objects.size()) {
+                throw new IllegalStateException("Item counts differ");
+            }
+        }
+    }
+    
+    /**
+     * Creates a model with the given number of items laid out in a grid, the
+     * way a user would add them, including the undo history it records
+     * @param count the number of items
+     * @return the model
+     */
+    private static DesignModel createModel(int count) {
+        DesignModel model = new DesignModel();
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            model.addFurnitureItem(new FurnitureItem("Chair", (i % columns) * 50, 0, (i / columns) * 50,
+                    40, 45, 40, i % 2 == 0 ? CHAIR_BROWN : CHAIR_GREEN));
+        }
+        return model;
+    }
+    
+    /**
+     * Creates the same items as {@link #createModel(int)}, one object each
+     * @param count the number of items
+     * @return the items
+     */
+    private static List<LegacyItem> createObjects(int count) {
+        List<LegacyItem> items = new ArrayList<>();
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            items.add(new LegacyItem("Chair", (i % columns) * 50, 0, (i / columns) * 50,
+                    40, 45, 40, i % 2 == 0 ? CHAIR_BROWN : CHAIR_GREEN));
+        }
+        return items;
+    }
+    
+    /**
+     * Gets the heap in use after collecting garbage, the lowest of a few tries
+     * @return the used heap in bytes
+     * @throws InterruptedException if interrupted while waiting for the collector
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+    
+    /**
+     * A furniture item laid out the way FurnitureItem was before the item
+     * store: one object per item with a UUID string id
+     */
+    @SuppressWarnings("unused")
+    private static final class LegacyItem {
+        private final String id;
+        private final String name;
+        private final int x, y, z;
+        private final int width, height, depth;
+        private final Color color;
+        private final float rotation;
+        private final String material;
+        private final float materialReflectivity;
+        private final float materialRoughness;
+        
+        LegacyItem(String name, int x, int y, int z, int width, int height, int depth, Color color) {
+            this.id = UUID.randomUUID().toString();
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.color = color;
+            this.rotation = 0.0f;
+            this.material = "wood";
+            this.materialReflectivity = 0.2f;
+            this.materialRoughness = 0.7f;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.furnitureapp.benchmark;
+
+import com.furnitureapp.render.VertexBuffer;
+import com.furnitureapp.render.ViewProjection;
+
+import java.awt.Point;
+import java.awt.geom.AffineTransform;
+
+/**
+ * Compares per-point vertex projection with the batched {@link ViewProjection}.
+ * The per-point baseline mirrors the projection the 3D panel used before:
+ * trigonometry for every vertex and a new Point per result. Both variants
+ * project the twelve vertices per item (box plus shadow) the panel draws.
+ * 
+ * Run with:
+ * mvn -q compile exec:java -Dmain.class=com.furnitureapp.benchmark.ProjectionBenchmark
+ */
+public class ProjectionBenchmark {
+    private static final int[] ITEM_COUNTS = { 1_000, 10_000, 100_000 };
+    private static final int VERTICES_PER_ITEM = 12;
+    
+    private static final double CAMERA_X = 0;
+    private static final double CAMERA_Y = 200;
+    private static final double CAMERA_Z = 500;
+    private static final double PITCH = 30;
+    private static final double YAW = -30;
+    
+    /**
+     * Benchmark entry point
+     * @param args optional item counts to measure instead of the defaults
+     */
+    public static void main(String[] args) {
+        int[] counts = ITEM_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        BenchmarkTimer timer = new BenchmarkTimer(50, 50);
+        System.out.println("Median time per frame in microseconds, allocation per frame in bytes");
+        System.out.println(String.format("%10s%12s%12s%12s%14s%14s",
+                "items", "perPoint", "batched", "speedup", "perPointB", "batchedB"));
+        
+        for (int count : counts) {
+            VertexBuffer vertices = createScene(count);
+            ViewProjection projection = new ViewProjection();
+            AffineTransform screen = new AffineTransform();
+            
+            BenchmarkTimer.Task perPoint = () -> projectPerPoint(vertices);
+            BenchmarkTimer.Task batched = () -> {
+                projection.setCamera(CAMERA_X, CAMERA_Y, CAMERA_Z, PITCH, YAW);
+                projection.setScreenTransform(screen);
+                projection.project(vertices);
+                return Float.floatToIntBits(vertices.getScreenX(vertices.size() - 1));
+            };
+            
+            long perPointNanos = timer.medianNanos(perPoint);
+            long batchedNanos = timer.medianNanos(batched);
+            
+            System.out.println(String.format("%10d%s%s%11.1fx%14d%14d", count,
+                    BenchmarkTimer.micros(perPointNanos), BenchmarkTimer.micros(batchedNanos),
+                    (double) perPointNanos / batchedNanos,
+                    BenchmarkTimer.allocatedBytes(perPoint), BenchmarkTimer.allocatedBytes(batched)));
+        }
+        System.out.println("(checksum " + timer.getSink() + ")");
+    }
+    
+    /**
+     * Creates a vertex buffer with the box and shadow vertices of a grid of items
+     * @param count the number of items
+     * @return the vertex buffer
+     */
+    private static VertexBuffer createScene(int count) {
+        VertexBuffer vertices = new VertexBuffer(count * VERTICES_PER_ITEM);
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            int x = (i % columns) * 50 - columns * 25;
+            int z = (i / columns) * 50 - columns * 25;
+            vertices.addBox(x, -45, z, x + 40, 0, z + 40);
+            vertices.add(x - 10, 1, z - 10);
+            vertices.add(x + 50, 1, z - 10);
+            vertices.add(x + 50, 1, z + 50);
+            vertices.add(x - 10, 1, z + 50);
+        }
+        return vertices;
+    }
+    
+    /**
+     * Projects every vertex the way the 3D panel did before batching
+     * @param vertices the vertices to project
+     * @return a checksum of the projected points
+     */
+    private static long projectPerPoint(VertexBuffer vertices) {
+        long sum = 0;
+        for (int i = 0; i < vertices.size(); i++) {
+            Point p = project3Dto2D(vertices.getX(i), vertices.getY(i), vertices.getZ(i));
+            sum += p.x + p.y;
+        }
+        return sum;
+    }
+    
+    private static Point project3Dto2D(double x, double y, double z) {
+        double distance = 1000;
+        double dx = x - CAMERA_X;
+        double dy = y - CAMERA_Y;
+        double dz = z - CAMERA_Z;
+        
+        double rotY = Math.toRadians(YAW);
+        double newX = dx * Math.cos(rotY) - dz * Math.sin(rotY);
+        double newZ = dx * Math.sin(rotY) + dz * Math.cos(rotY);
+        dx = newX;
+        dz = newZ;
+        
+        double rotX = Math.toRadians(PITCH);
+        double newY = dy * Math.cos(rotX) - dz * Math.sin(rotX);
+        newZ = dy * Math.sin(rotX) + dz * Math.cos(rotX);
+        dy = newY;
+        dz = newZ;
+        
+        double factor = distance / (distance + dz);
+        return new Point((int) (dx * factor), (int) (dy * factor));
+    }
+}
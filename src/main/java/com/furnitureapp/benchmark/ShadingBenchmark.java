@@ -0,0 +1,105 @@
+package com.furnitureapp.benchmark;
+
+import com.furnitureapp.render.ShadingCache;
+import com.furnitureapp.util.AppConstants;
+
+import java.awt.Color;
+
+/**
+ * Compares shading every item face per frame with the {@link ShadingCache}.
+ * The uncached baseline mirrors what the 3D panel did before: lighting,
+ * brighten and darken for every item, plus an outline color for each of the
+ * three faces a box typically shows, all as fresh Color objects.
+ * 
+ * Run with:
+ * mvn -q compile exec:java -Dmain.class=com.furnitureapp.benchmark.ShadingBenchmark
+ */
+public class ShadingBenchmark {
+    private static final int[] ITEM_COUNTS = { 1_000, 10_000, 100_000 };
+    private static final int[] HEIGHTS = { 0, 0, 0, 40, 75 };
+    private static final float[] ROTATIONS = { 0, 0, 90, 45 };
+    private static final int VISIBLE_FACES = 3;
+    
+    private static final float LIGHT_INTENSITY = 0.8f;
+    private static final float CONTRAST = 1.0f;
+    private static final Color AMBIENT = new Color(255, 255, 220);
+    
+    /**
+     * Benchmark entry point
+     * @param args optional item counts to measure instead of the defaults
+     */
+    public static void main(String[] args) {
+        int[] counts = ITEM_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        BenchmarkTimer timer = new BenchmarkTimer(50, 50);
+        System.out.println("Median time per frame in microseconds, allocation per frame in bytes");
+        System.out.println(String.format("%10s%12s%12s%12s%14s%14s",
+                "items", "uncached", "cached", "speedup", "uncachedB", "cachedB"));
+        
+        for (int count : counts) {
+            int[] argb = new int[count];
+            int[] y = new int[count];
+            float[] rotation = new float[count];
+            for (int i = 0; i < count; i++) {
+                argb[i] = AppConstants.FURNITURE_COLORS[i % AppConstants.FURNITURE_COLORS.length].getRGB();
+                y[i] = HEIGHTS[i % HEIGHTS.length];
+                rotation[i] = ROTATIONS[i % ROTATIONS.length];
+            }
+            ShadingCache cache = new ShadingCache();
+            
+            BenchmarkTimer.Task uncached = () -> shadeUncached(argb, y);
+            BenchmarkTimer.Task cached = () -> {
+                cache.setLighting(LIGHT_INTENSITY, CONTRAST, AMBIENT);
+                long sum = 0;
+                for (int i = 0; i < count; i++) {
+                    ShadingCache.Shade shade = cache.get(argb[i], rotation[i]);
+                    for (int face = 0; face < VISIBLE_FACES; face++) {
+                        sum += shade.getFill(face).getRGB() + shade.getOutline(face).getRGB();
+                    }
+                }
+                return sum;
+            };
+            
+            long uncachedNanos = timer.medianNanos(uncached);
+            long cachedNanos = timer.medianNanos(cached);
+            
+            System.out.println(String.format("%10d%s%s%11.1fx%14d%14d", count,
+                    BenchmarkTimer.micros(uncachedNanos), BenchmarkTimer.micros(cachedNanos),
+                    (double) uncachedNanos / cachedNanos,
+                    BenchmarkTimer.allocatedBytes(uncached), BenchmarkTimer.allocatedBytes(cached)));
+        }
+        System.out.println("(checksum " + timer.getSink() + ")");
+    }
+    
+    /**
+     * Shades every item the way the 3D panel did before caching
+     * @param argb the base colors of the items
+     * @param y the heights of the items
+     * @return a checksum of the face colors
+     */
+    private static long shadeUncached(int[] argb, int[] y) {
+        long sum = 0;
+        for (int i = 0; i < argb.length; i++) {
+            Color base = applyLighting(new Color(argb[i], true), y[i]);
+            Color[] fills = { ShadingCache.brighten(base, 1.2f), base, ShadingCache.darken(base, 0.8f) };
+            for (Color fill : fills) {
+                sum += fill.getRGB() + ShadingCache.darken(fill, 0.7f).getRGB();
+            }
+        }
+        return sum;
+    }
+    
+    private static Color applyLighting(Color color, int y) {
+        float lightFactor = (0.7f + (y / 500.0f) * 0.3f) * LIGHT_INTENSITY;
+        float r = Math.max(0, Math.min(1, (color.getRed() / 255.0f - 0.5f) * CONTRAST + 0.5f)) * lightFactor;
+        float g = Math.max(0, Math.min(1, (color.getGreen() / 255.0f - 0.5f) * CONTRAST + 0.5f)) * lightFactor;
+        float b = Math.max(0, Math.min(1, (color.getBlue() / 255.0f - 0.5f) * CONTRAST + 0.5f)) * lightFactor;
+        return new Color(r, g, b);
+    }
+}
@@ -0,0 +1,96 @@
+package com.furnitureapp.benchmark;
+
+import com.furnitureapp.model.Design;
+import com.furnitureapp.model.DesignModel;
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.model.FurnitureItem;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the cost of snapshotting and copying a design against the number of items.
+ * For each design size it times an edit followed by publishing a snapshot,
+ * converting the model to a Design, copying that Design, and, as a
+ * baseline, the per-item deep copy these operations used to perform.
+ * 
+ * Run with:
+ * mvn -q compile exec:java -Dmain.class=com.furnitureapp.benchmark.SnapshotBenchmark
+ */
+public class SnapshotBenchmark {
+    private static final int[] ITEM_COUNTS = { 1_000, 10_000, 100_000, 1_000_000 };
+    private static final Color CHAIR_BROWN = new Color(139, 69, 19);
+    private static final Color CHAIR_GREEN = new Color(85, 107, 47);
+    
+    /**
+     * Benchmark entry point
+     * @param args optional item counts to measure instead of the defaults
+     */
+    public static void main(String[] args) {
+        int[] counts = ITEM_COUNTS;
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        
+        BenchmarkTimer timer = new BenchmarkTimer(20, 30);
+        System.out.println("Median time per operation in microseconds");
+        System.out.println(String.format("%10s%12s%12s%12s%12s",
+                "items", "edit+snap", "toDesign", "copy", "deepCopy"));
+        
+        for (int count : counts) {
+            DesignModel model = createModel(count);
+            FurnitureItem item = model.getFurnitureItem(count / 2);
+            
+            long edit = timer.medianNanos(() -> {
+                item.setX(item.getX() + 1);
+                model.commit();
+                return model.getSnapshot().getVersion();
+            });
+            long toDesign = timer.medianNanos(() ->
+                    System.identityHashCode(model.toDesign("Benchmark", "admin")));
+            Design design = model.toDesign("Benchmark", "admin");
+            long copy = timer.medianNanos(() -> System.identityHashCode(design.copy()));
+            long deepCopy = timer.medianNanos(() -> deepCopy(model.getSnapshot()).size());
+            
+            System.out.println(String.format("%10d%s%s%s%s", count,
+                    BenchmarkTimer.micros(edit), BenchmarkTimer.micros(toDesign),
+                    BenchmarkTimer.micros(copy), BenchmarkTimer.micros(deepCopy)));
+        }
+        System.out.println("(checksum " + timer.getSink() + ")");
+    }
+    
+    /**
+     * Creates a model with the given number of items laid out in a grid
+     * @param count the number of items
+     * @return the model
+     */
+    private static DesignModel createModel(int count) {
+        DesignModel model = new DesignModel();
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            model.addFurnitureItem(new FurnitureItem("Chair", (i % columns) * 50, 0, (i / columns) * 50,
+                    40, 45, 40, i % 2 == 0 ? CHAIR_BROWN : CHAIR_GREEN));
+        }
+        model.getHistory().clear();
+        return model;
+    }
+    
+    /**
+     * Copies every item of a snapshot, the way snapshots and saves were taken before
+     * the item store shared its structure
+     * @param snapshot the snapshot to copy
+     * @return the copied items
+     */
+    private static List<FurnitureItem> deepCopy(DesignSnapshot snapshot) {
+        List<FurnitureItem> items = snapshot.getFurnitureItems();
+        List<FurnitureItem> copies = new ArrayList<>(items.size());
+        for (FurnitureItem item : items) {
+            copies.add(item.copy());
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,26 @@
+package com.furnitureapp.export;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of an animation that is encoded one frame at a time, so
+ * only the frame being written has to be kept in memory.
+ */
+public interface FrameSequenceWriter extends Closeable {
+    /**
+     * Encodes the next frame. The writer does not keep the image, so the
+     * caller may reuse it once this returns.
+     * @param frame the frame
+     * @throws IOException if the frame cannot be written
+     */
+    void writeFrame(BufferedImage frame) throws IOException;
+    
+    /**
+     * Finishes the sequence and releases its files
+     * @throws IOException if the sequence cannot be finished
+     */
+    @Override
+    void close() throws IOException;
+}
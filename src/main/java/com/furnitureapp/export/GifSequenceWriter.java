@@ -0,0 +1,108 @@
+package com.furnitureapp.export;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Writes an animated GIF that loops forever. Frames are appended to the
+ * file as they arrive, each with its own palette, so the file is never
+ * held in memory.
+ */
+public final class GifSequenceWriter implements FrameSequenceWriter {
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    
+    private final ImageWriter writer;
+    private final ImageOutputStream output;
+    private final int delayCentiseconds;
+    private boolean first = true;
+    
+    /**
+     * Creates a writer, replacing the file if it exists
+     * @param file the GIF file
+     * @param frameDelayMillis how long each frame is shown
+     * @throws IOException if the file cannot be created
+     */
+    public GifSequenceWriter(File file, int frameDelayMillis) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext()) {
+            throw new IOException("No GIF encoder available");
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        writer = writers.next();
+        output = ImageIO.createImageOutputStream(file);
+        if (output == null) {
+            writer.dispose();
+            throw new IOException("Could not open " + file);
+        }
+        writer.setOutput(output);
+        writer.prepareWriteSequence(null);
+        
+        // GIF delays are in hundredths of a second
+        delayCentiseconds = Math.max(1, Math.round(frameDelayMillis / 10.0f));
+    }
+    
+    @Override
+    public void writeFrame(BufferedImage frame) throws IOException {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(frame),
+                param);
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+        
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delayCentiseconds));
+        control.setAttribute("transparentColorIndex", "0");
+        
+        // The first frame carries the extension that makes players loop
+        if (first) {
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[] {1, 0, 0});
+            child(root, "ApplicationExtensions").appendChild(loop);
+            first = false;
+        }
+        metadata.setFromTree(METADATA_FORMAT, root);
+        writer.writeToSequence(new IIOImage(frame, null, metadata), param);
+    }
+    
+    /**
+     * Gets a child of a metadata node, adding it if it is missing
+     */
+    private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+        for (int i = 0; i < node.getLength(); i++) {
+            if (node.item(i).getNodeName().equals(name)) {
+                return (IIOMetadataNode) node.item(i);
+            }
+        }
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        node.appendChild(child);
+        return child;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!first) {
+                writer.endWriteSequence();
+            }
+        } finally {
+            writer.dispose();
+            output.close();
+        }
+    }
+}
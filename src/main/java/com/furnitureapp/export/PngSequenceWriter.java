@@ -0,0 +1,49 @@
+package com.furnitureapp.export;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes each frame of an animation to its own numbered PNG file, e.g.
+ * {@code turntable_0001.png}, ready for a video encoder.
+ */
+public final class PngSequenceWriter implements FrameSequenceWriter {
+    private final File directory;
+    private final String prefix;
+    private int frameCount;
+    
+    /**
+     * Creates a writer, creating the directory if needed
+     * @param directory the directory of the frames
+     * @param prefix the start of each file name
+     * @throws IOException if the directory cannot be created
+     */
+    public PngSequenceWriter(File directory, String prefix) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+    }
+    
+    @Override
+    public void writeFrame(BufferedImage frame) throws IOException {
+        File file = new File(directory, String.format("%s_%04d.png", prefix, ++frameCount));
+        if (!ImageIO.write(frame, "png", file)) {
+            throw new IOException("No PNG encoder for " + file);
+        }
+    }
+    
+    /**
+     * Gets the number of frames written so far
+     * @return the frame count
+     */
+    public int getFrameCount() { return frameCount; }
+    
+    @Override
+    public void close() {
+        // Every frame is a complete file already
+    }
+}
@@ -0,0 +1,128 @@
+package com.furnitureapp.export;
+
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.scene.Camera;
+import com.furnitureapp.scene.RenderOptions;
+import com.furnitureapp.scene.SceneRenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Exports a turntable animation: the camera turns once around the room in
+ * equal steps and every step becomes a frame. Frames are rendered in
+ * parallel off-screen and handed to the writer in order as soon as they are
+ * ready. At most a few frames per thread are in flight, and their images
+ * are recycled, so memory stays the same however many frames are exported.
+ */
+public final class TurntableExporter {
+    // Frames rendered ahead of the writer, per thread
+    private static final int FRAMES_AHEAD = 2;
+    
+    private final SceneRenderer renderer;
+    private final int threads;
+    
+    /**
+     * Creates an exporter with one render thread per core
+     * @param renderer the renderer of the frames
+     */
+    public TurntableExporter(SceneRenderer renderer) {
+        this(renderer, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates an exporter
+     * @param renderer the renderer of the frames
+     * @param threads the number of frames rendered at once
+     */
+    public TurntableExporter(SceneRenderer renderer, int threads) {
+        this.renderer = renderer;
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Renders and writes the frames of a full turn
+     * @param snapshot the design to render
+     * @param camera the view of the first frame
+     * @param options what to draw and how
+     * @param width the width of the frames
+     * @param height the height of the frames
+     * @param frameCount the number of frames of the turn
+     * @param writer receives the frames in order; it is not closed
+     * @param onFrame called with the number of frames written after each frame, may be null
+     * @throws IOException if a frame cannot be written
+     * @throws InterruptedException if the calling thread is interrupted; no more frames are written
+     */
+    public void export(DesignSnapshot snapshot, Camera camera, RenderOptions options, int width, int height,
+                       int frameCount, FrameSequenceWriter writer, IntConsumer onFrame)
+            throws IOException, InterruptedException {
+        if (width <= 0 || height <= 0 || frameCount <= 0) {
+            throw new IllegalArgumentException("Cannot export " + frameCount + " frames of "
+                    + width + "x" + height);
+        }
+        AtomicInteger created = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "Turntable export " + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<BufferedImage> freeImages = new ConcurrentLinkedDeque<>();
+        Deque<Future<BufferedImage>> pending = new ArrayDeque<>();
+        try {
+            int next = 0;
+            for (int written = 0; written < frameCount; written++) {
+                // Keep the pool busy, but never more than a few frames ahead of the writer
+                while (next < frameCount && pending.size() < threads * FRAMES_AHEAD) {
+                    Camera frameCamera = camera.orbitedBy(360.0 * next / frameCount);
+                    pending.addLast(workers.submit(() -> {
+                        BufferedImage image = freeImages.pollFirst();
+                        if (image == null) {
+                            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                        }
+                        renderer.render(snapshot, frameCamera, options, image);
+                        return image;
+                    }));
+                    next++;
+                }
+                BufferedImage frame = await(pending.removeFirst());
+                writer.writeFrame(frame);
+                freeImages.offerFirst(frame);
+                if (onFrame != null) {
+                    onFrame.accept(written + 1);
+                }
+            }
+        } finally {
+            for (Future<BufferedImage> future : pending) {
+                future.cancel(true);
+            }
+            workers.shutdownNow();
+        }
+    }
+    
+    /**
+     * Waits for a frame, passing on what went wrong while rendering it
+     */
+    private static BufferedImage await(Future<BufferedImage> frame) throws InterruptedException {
+        try {
+            return frame.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Rendering a frame failed", cause);
+        }
+    }
+}
@@ -1,16 +1,47 @@
 package com.furnitureapp.model;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 /**
- * Represents a furniture design with room properties and furniture items
+ * Represents a furniture design with room properties and furniture items.
+ * The items are kept in a {@link FurnitureStore} that shares its chunks
+ * with copies of the design, so copying a design is O(1).
  */
 public class Design implements Serializable {
+    // The stream form predates the item store; designs saved before it must still load
+    private static final long serialVersionUID = 3304509058998857047L;
+    
+    // The items are written as the list of items designs have always had
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("designerId", String.class),
+        new ObjectStreamField("roomWidth", Integer.TYPE),
+        new ObjectStreamField("roomLength", Integer.TYPE),
+        new ObjectStreamField("roomHeight", Integer.TYPE),
+        new ObjectStreamField("roomShape", String.class),
+        new ObjectStreamField("roomFloorColor", Color.class),
+        new ObjectStreamField("roomWallColor", Color.class),
+        new ObjectStreamField("roomCeilingColor", Color.class),
+        new ObjectStreamField("furnitureItems", List.class),
+        new ObjectStreamField("createdTime", LocalDateTime.class),
+        new ObjectStreamField("lastModifiedTime", LocalDateTime.class),
+        new ObjectStreamField("description", String.class),
+        new ObjectStreamField("lightIntensity", Float.TYPE),
+        new ObjectStreamField("shadowIntensity", Float.TYPE),
+        new ObjectStreamField("contrast", Float.TYPE)
+    };
+    
     private String id;
     private String name;
     private String designerId;
@@ -21,7 +52,7 @@ public class Design implements Serializable {
     private Color roomFloorColor;
     private Color roomWallColor;
     private Color roomCeilingColor;
-    private List<FurnitureItem> furnitureItems;
+    private transient FurnitureStore furnitureItems;
     private LocalDateTime createdTime;
     private LocalDateTime lastModifiedTime;
     private String description;
@@ -45,7 +76,7 @@ public class Design implements Serializable {
         this.roomFloorColor = new Color(240, 240, 240);
         this.roomWallColor = Color.WHITE;
         this.roomCeilingColor = Color.WHITE;
-        this.furnitureItems = new ArrayList<>();
+        this.furnitureItems = new FurnitureStore();
         this.createdTime = LocalDateTime.now();
         this.lastModifiedTime = this.createdTime;
         this.description = "";
@@ -138,14 +169,35 @@ public class Design implements Serializable {
         updateModifiedTime();
     }
     
-    public List<FurnitureItem> getFurnitureItems() { return furnitureItems; }
+    /**
+     * Gets views of the furniture items in the design
+     * @return an unmodifiable list of item views
+     */
+    public List<FurnitureItem> getFurnitureItems() {
+        return Collections.unmodifiableList(furnitureItems.views());
+    }
     
     /**
-     * Adds a furniture item to the design
+     * Gets the store holding the furniture items
+     * @return the item store
+     */
+    FurnitureStore getItemStore() { return furnitureItems; }
+    
+    /**
+     * Replaces the store holding the furniture items
+     * @param items a live item store owned by this design
+     */
+    void setItemStore(FurnitureStore items) {
+        this.furnitureItems = items;
+        updateModifiedTime();
+    }
+    
+    /**
+     * Adds a copy of a furniture item to the design, keeping the item's ID
      * @param item the furniture item to add
      */
     public void addFurnitureItem(FurnitureItem item) {
-        furnitureItems.add(item);
+        furnitureItems.appendCopy(item);
         updateModifiedTime();
     }
     
@@ -155,11 +207,13 @@ public class Design implements Serializable {
      * @return true if the item was removed, false otherwise
      */
     public boolean removeFurnitureItem(FurnitureItem item) {
-        boolean removed = furnitureItems.remove(item);
-        if (removed) {
-            updateModifiedTime();
+        int slot = furnitureItems.indexOfId(item.getNumericId());
+        if (slot < 0) {
+            return false;
         }
-        return removed;
+        furnitureItems.detach(slot);
+        updateModifiedTime();
+        return true;
     }
     
     /**
@@ -168,30 +222,28 @@ public class Design implements Serializable {
      * @return true if the item was removed, false otherwise
      */
     public boolean removeFurnitureItemById(String itemId) {
-        for (int i = 0; i < furnitureItems.size(); i++) {
-            if (furnitureItems.get(i).getId().equals(itemId)) {
-                furnitureItems.remove(i);
-                updateModifiedTime();
-                return true;
-            }
+        int slot = furnitureItems.indexOfId(ItemIds.fromUuid(itemId));
+        if (slot < 0) {
+            return false;
         }
-        return false;
+        furnitureItems.detach(slot);
+        updateModifiedTime();
+        return true;
     }
     
     /**
-     * Updates a furniture item in the design
+     * Updates a furniture item in the design with the values of an item with the same ID
      * @param updatedItem the updated furniture item
      * @return true if the item was updated, false otherwise
      */
     public boolean updateFurnitureItem(FurnitureItem updatedItem) {
-        for (int i = 0; i < furnitureItems.size(); i++) {
-            if (furnitureItems.get(i).getId().equals(updatedItem.getId())) {
-                furnitureItems.set(i, updatedItem);
-                updateModifiedTime();
-                return true;
-            }
+        int slot = furnitureItems.indexOfId(updatedItem.getNumericId());
+        if (slot < 0) {
+            return false;
         }
-        return false;
+        furnitureItems.overwrite(slot, updatedItem);
+        updateModifiedTime();
+        return true;
     }
     
     /**
@@ -200,12 +252,8 @@ public class Design implements Serializable {
      * @return the furniture item, or null if not found
      */
     public FurnitureItem getFurnitureItemById(String itemId) {
-        for (FurnitureItem item : furnitureItems) {
-            if (item.getId().equals(itemId)) {
-                return item;
-            }
-        }
-        return null;
+        int slot = furnitureItems.indexOfId(ItemIds.fromUuid(itemId));
+        return slot >= 0 ? furnitureItems.view(slot) : null;
     }
     
     public LocalDateTime getCreatedTime() { return createdTime; }
@@ -220,7 +268,10 @@ public class Design implements Serializable {
     }
     
     /**
-     * Creates a deep copy of this design
+     * Creates a copy of this design.
+     * The copy shares the item store's chunks with this design and each side
+     * copies a chunk before changing it, so the copy is O(1) and the two
+     * designs stay independent.
      * @return a new design with the same properties
      */
     public Design copy() {
@@ -236,15 +287,72 @@ public class Design implements Serializable {
         copy.lightIntensity = lightIntensity;
         copy.shadowIntensity = shadowIntensity;
         copy.contrast = contrast;
-        
-        // Deep copy of furniture items
-        for (FurnitureItem item : furnitureItems) {
-            copy.addFurnitureItem(item.copy());
-        }
+        copy.furnitureItems = furnitureItems.mutableCopy();
         
         return copy;
     }
     
+    /**
+     * Writes the design with its items as a plain list of items
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("name", name);
+        fields.put("designerId", designerId);
+        fields.put("roomWidth", roomWidth);
+        fields.put("roomLength", roomLength);
+        fields.put("roomHeight", roomHeight);
+        fields.put("roomShape", roomShape);
+        fields.put("roomFloorColor", roomFloorColor);
+        fields.put("roomWallColor", roomWallColor);
+        fields.put("roomCeilingColor", roomCeilingColor);
+        fields.put("furnitureItems", new ArrayList<>(furnitureItems.views()));
+        fields.put("createdTime", createdTime);
+        fields.put("lastModifiedTime", lastModifiedTime);
+        fields.put("description", description);
+        fields.put("lightIntensity", lightIntensity);
+        fields.put("shadowIntensity", shadowIntensity);
+        fields.put("contrast", contrast);
+        out.writeFields();
+    }
+    
+    /**
+     * Reads the design and rebuilds the item store from the list of items
+     * @param in the input stream
+     * @throws IOException if an I/O error occurs
+     * @throws ClassNotFoundException if a serialized class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = (String) fields.get("id", null);
+        name = (String) fields.get("name", null);
+        designerId = (String) fields.get("designerId", null);
+        roomWidth = fields.get("roomWidth", 500);
+        roomLength = fields.get("roomLength", 400);
+        roomHeight = fields.get("roomHeight", 250);
+        roomShape = (String) fields.get("roomShape", "Rectangle");
+        roomFloorColor = (Color) fields.get("roomFloorColor", null);
+        roomWallColor = (Color) fields.get("roomWallColor", null);
+        roomCeilingColor = (Color) fields.get("roomCeilingColor", null);
+        createdTime = (LocalDateTime) fields.get("createdTime", null);
+        lastModifiedTime = (LocalDateTime) fields.get("lastModifiedTime", null);
+        description = (String) fields.get("description", "");
+        lightIntensity = fields.get("lightIntensity", 0.7f);
+        shadowIntensity = fields.get("shadowIntensity", 0.5f);
+        contrast = fields.get("contrast", 1.0f);
+        
+        List<?> items = (List<?>) fields.get("furnitureItems", null);
+        furnitureItems = new FurnitureStore(items != null ? items.size() : 0);
+        if (items != null) {
+            for (Object item : items) {
+                furnitureItems.appendCopy((FurnitureItem) item);
+            }
+        }
+    }
+    
     @Override
     public String toString() {
         return name + " (" + furnitureItems.size() + " items)";
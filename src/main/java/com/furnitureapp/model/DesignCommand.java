@@ -0,0 +1,355 @@
+package com.furnitureapp.model;
+
+import java.awt.Color;
+
+/**
+ * A reversible change to the design model.
+ * Commands store only the data needed to invert themselves (an item
+ * reference and its before/after state, or the room/lighting values)
+ * so that the history never has to snapshot the whole model.
+ */
+public abstract class DesignCommand {
+    /** Consecutive edits of the same target within this window merge into one step */
+    static final long MERGE_WINDOW_MS = 750;
+    
+    /** Approximate heap footprint of a command object without its payload */
+    static final int HEADER_BYTES = 32;
+    
+    private long timestamp = System.currentTimeMillis();
+    
+    /**
+     * Reverts this command on the model
+     * @param model the design model
+     */
+    public abstract void undo(DesignModel model);
+    
+    /**
+     * Re-applies this command on the model
+     * @param model the design model
+     */
+    public abstract void redo(DesignModel model);
+    
+    /**
+     * Gets a short description of the command for menus and tooltips
+     * @return the description
+     */
+    public abstract String getDescription();
+    
+    /**
+     * Estimates how much memory this command retains
+     * @return the estimated size in bytes
+     */
+    public abstract long estimatedBytes();
+    
+    /**
+     * Attempts to fold a newer command into this one, so that continuous
+     * edits (drags, slider moves) become a single undo step
+     * @param next the command recorded after this one
+     * @return true if the command was merged and should not be recorded
+     */
+    boolean mergeWith(DesignCommand next) {
+        return false;
+    }
+    
+    /**
+     * Checks whether this command is close enough in time to merge with another
+     * @param next the newer command
+     * @return true if the two commands are within the merge window
+     */
+    protected boolean withinMergeWindow(DesignCommand next) {
+        return next.timestamp - timestamp <= MERGE_WINDOW_MS;
+    }
+    
+    /**
+     * Extends the merge window after a successful merge
+     * @param next the command that was merged
+     */
+    protected void touch(DesignCommand next) {
+        this.timestamp = next.timestamp;
+    }
+    
+    /**
+     * Adds an item to the model
+     */
+    static final class AddItem extends DesignCommand {
+        private final FurnitureItem item;
+        private final int index;
+        
+        AddItem(FurnitureItem item, int index) {
+            this.item = item;
+            this.index = index;
+        }
+        
+        @Override
+        public void undo(DesignModel model) {
+            model.removeFurnitureItem(item);
+        }
+        
+        @Override
+        public void redo(DesignModel model) {
+            model.insertFurnitureItem(index, item);
+        }
+        
+        @Override
+        public String getDescription() {
+            return "Add " + item.getName();
+        }
+        
+        @Override
+        public long estimatedBytes() {
+            // Once undone, the item lives on in a store of its own until redone or evicted
+            return HEADER_BYTES + 8 + FurnitureStore.SINGLE_ITEM_BYTES;
+        }
+    }
+    
+    /**
+     * Removes an item from the model
+     */
+    static final class RemoveItem extends DesignCommand {
+        private final FurnitureItem item;
+        private final int index;
+        
+        RemoveItem(FurnitureItem item, int index) {
+            this.item = item;
+            this.index = index;
+        }
+        
+        @Override
+        public void undo(DesignModel model) {
+            model.insertFurnitureItem(index, item);
+        }
+        
+        @Override
+        public void redo(DesignModel model) {
+            model.removeFurnitureItem(item);
+        }
+        
+        @Override
+        public String getDescription() {
+            return "Delete " + item.getName();
+        }
+        
+        @Override
+        public long estimatedBytes() {
+            // The removed item and its single-slot store are only reachable from the history
+            return HEADER_BYTES + 8 + FurnitureStore.SINGLE_ITEM_BYTES;
+        }
+    }
+    
+    /**
+     * Changes the properties of an item (move, scale, colour, rotation)
+     */
+    static final class UpdateItem extends DesignCommand {
+        private final FurnitureItem item;
+        private final ItemState before;
+        private ItemState after;
+        
+        UpdateItem(FurnitureItem item, ItemState before, ItemState after) {
+            this.item = item;
+            this.before = before;
+            this.after = after;
+        }
+        
+        @Override
+        public void undo(DesignModel model) {
+            before.applyTo(item);
+            model.updateFurnitureItem(item);
+        }
+        
+        @Override
+        public void redo(DesignModel model) {
+            after.applyTo(item);
+            model.updateFurnitureItem(item);
+        }
+        
+        @Override
+        boolean mergeWith(DesignCommand next) {
+            if (next instanceof UpdateItem && ((UpdateItem) next).item == item && withinMergeWindow(next)) {
+                this.after = ((UpdateItem) next).after;
+                touch(next);
+                return true;
+            }
+            return false;
+        }
+        
+        @Override
+        public String getDescription() {
+            return "Edit " + item.getName();
+        }
+        
+        @Override
+        public long estimatedBytes() {
+            return HEADER_BYTES + 24 + 2 * ItemState.ESTIMATED_BYTES;
+        }
+    }
+    
+    /**
+     * Changes the room dimensions, shape or colours
+     */
+    static final class RoomChange extends DesignCommand {
+        private final RoomState before;
+        private RoomState after;
+        
+        RoomChange(RoomState before, RoomState after) {
+            this.before = before;
+            this.after = after;
+        }
+        
+        @Override
+        public void undo(DesignModel model) {
+            before.applyTo(model);
+        }
+        
+        @Override
+        public void redo(DesignModel model) {
+            after.applyTo(model);
+        }
+        
+        @Override
+        boolean mergeWith(DesignCommand next) {
+            if (next instanceof RoomChange && withinMergeWindow(next)) {
+                this.after = ((RoomChange) next).after;
+                touch(next);
+                return true;
+            }
+            return false;
+        }
+        
+        @Override
+        public String getDescription() {
+            return "Room change";
+        }
+        
+        @Override
+        public long estimatedBytes() {
+            return HEADER_BYTES + 16 + 2 * RoomState.ESTIMATED_BYTES;
+        }
+    }
+    
+    /**
+     * Changes the lighting settings
+     */
+    static final class LightingChange extends DesignCommand {
+        private final LightingState before;
+        private LightingState after;
+        
+        LightingChange(LightingState before, LightingState after) {
+            this.before = before;
+            this.after = after;
+        }
+        
+        @Override
+        public void undo(DesignModel model) {
+            before.applyTo(model);
+        }
+        
+        @Override
+        public void redo(DesignModel model) {
+            after.applyTo(model);
+        }
+        
+        @Override
+        boolean mergeWith(DesignCommand next) {
+            if (next instanceof LightingChange && withinMergeWindow(next)) {
+                this.after = ((LightingChange) next).after;
+                touch(next);
+                return true;
+            }
+            return false;
+        }
+        
+        @Override
+        public String getDescription() {
+            return "Lighting change";
+        }
+        
+        @Override
+        public long estimatedBytes() {
+            return HEADER_BYTES + 16 + 2 * LightingState.ESTIMATED_BYTES;
+        }
+    }
+    
+    /**
+     * Compact record of the room properties
+     */
+    static final class RoomState {
+        static final int ESTIMATED_BYTES = 48;
+        
+        final int width, length, height;
+        final String shape;
+        final int floorRgb, wallRgb, ceilingRgb;
+        
+        RoomState(DesignModel model) {
+            this.width = model.getRoomWidth();
+            this.length = model.getRoomLength();
+            this.height = model.getRoomHeight();
+            this.shape = model.getRoomShape();
+            this.floorRgb = model.getRoomFloorColor().getRGB();
+            this.wallRgb = model.getRoomWallColor().getRGB();
+            this.ceilingRgb = model.getRoomCeilingColor().getRGB();
+        }
+        
+        void applyTo(DesignModel model) {
+            if (width != model.getRoomWidth() || length != model.getRoomLength() || height != model.getRoomHeight()) {
+                model.setRoomDimensions(width, length, height);
+            }
+            if (!shape.equals(model.getRoomShape())) {
+                model.setRoomShape(shape);
+            }
+            if (floorRgb != model.getRoomFloorColor().getRGB()) {
+                model.setRoomFloorColor(new Color(floorRgb, true));
+            }
+            if (wallRgb != model.getRoomWallColor().getRGB()) {
+                model.setRoomWallColor(new Color(wallRgb, true));
+            }
+            if (ceilingRgb != model.getRoomCeilingColor().getRGB()) {
+                model.setRoomCeilingColor(new Color(ceilingRgb, true));
+            }
+        }
+        
+        boolean sameAs(RoomState other) {
+            return width == other.width && length == other.length && height == other.height
+                    && shape.equals(other.shape)
+                    && floorRgb == other.floorRgb && wallRgb == other.wallRgb && ceilingRgb == other.ceilingRgb;
+        }
+    }
+    
+    /**
+     * Compact record of the lighting settings
+     */
+    static final class LightingState {
+        static final int ESTIMATED_BYTES = 32;
+        
+        final float lightIntensity;
+        final float shadowIntensity;
+        final float contrast;
+        final int ambientRgb;
+        
+        LightingState(DesignModel model) {
+            this.lightIntensity = model.getLightIntensity();
+            this.shadowIntensity = model.getShadowIntensity();
+            this.contrast = model.getContrast();
+            this.ambientRgb = model.getAmbientLightColor().getRGB();
+        }
+        
+        void applyTo(DesignModel model) {
+            if (lightIntensity != model.getLightIntensity()) {
+                model.setLightIntensity(lightIntensity);
+            }
+            if (shadowIntensity != model.getShadowIntensity()) {
+                model.setShadowIntensity(shadowIntensity);
+            }
+            if (contrast != model.getContrast()) {
+                model.setContrast(contrast);
+            }
+            if (ambientRgb != model.getAmbientLightColor().getRGB()) {
+                model.setAmbientLightColor(new Color(ambientRgb, true));
+            }
+        }
+        
+        boolean sameAs(LightingState other) {
+            return lightIntensity == other.lightIntensity && shadowIntensity == other.shadowIntensity
+                    && contrast == other.contrast && ambientRgb == other.ambientRgb;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.furnitureapp.model;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Undo/redo history for a design model.
+ * The history is bounded by an estimated memory budget rather than a step
+ * count: once the recorded commands exceed the budget, the oldest steps are
+ * evicted first.
+ */
+public class DesignHistory {
+    /** Default memory budget for the history (256 KB) */
+    public static final long DEFAULT_BUDGET_BYTES = 256 * 1024;
+    
+    private final Deque<DesignCommand> undoStack = new ArrayDeque<>();
+    private final Deque<DesignCommand> redoStack = new ArrayDeque<>();
+    private final long budgetBytes;
+    private long usedBytes = 0;
+    private boolean replaying = false;
+    private boolean mergeAllowed = true;
+    
+    /**
+     * Creates a new history with the default memory budget
+     */
+    public DesignHistory() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+    
+    /**
+     * Creates a new history with the given memory budget
+     * @param budgetBytes the maximum estimated size of all recorded steps
+     */
+    public DesignHistory(long budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("History budget must be positive");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+    
+    /**
+     * Records a command that has already been applied to the model
+     * @param command the command to record
+     */
+    void record(DesignCommand command) {
+        if (replaying) {
+            return;
+        }
+        
+        // Any new edit invalidates the redo branch
+        for (DesignCommand undone : redoStack) {
+            usedBytes -= undone.estimatedBytes();
+        }
+        redoStack.clear();
+        
+        DesignCommand last = undoStack.peekLast();
+        if (mergeAllowed && last != null) {
+            long sizeBefore = last.estimatedBytes();
+            if (last.mergeWith(command)) {
+                usedBytes += last.estimatedBytes() - sizeBefore;
+                return;
+            }
+        }
+        
+        undoStack.addLast(command);
+        usedBytes += command.estimatedBytes();
+        mergeAllowed = true;
+        trimToBudget();
+    }
+    
+    /**
+     * Evicts the oldest steps until the history fits in its budget
+     */
+    private void trimToBudget() {
+        while (usedBytes > budgetBytes && undoStack.size() > 1) {
+            usedBytes -= undoStack.removeFirst().estimatedBytes();
+        }
+    }
+    
+    /**
+     * Undoes the most recent step
+     * @param model the model to apply the inverse operation to
+     * @return true if a step was undone
+     */
+    public boolean undo(DesignModel model) {
+        DesignCommand command = undoStack.pollLast();
+        if (command == null) {
+            return false;
+        }
+        replay(command, model, true);
+        redoStack.addLast(command);
+        return true;
+    }
+    
+    /**
+     * Redoes the most recently undone step
+     * @param model the model to re-apply the operation to
+     * @return true if a step was redone
+     */
+    public boolean redo(DesignModel model) {
+        DesignCommand command = redoStack.pollLast();
+        if (command == null) {
+            return false;
+        }
+        replay(command, model, false);
+        undoStack.addLast(command);
+        return true;
+    }
+    
+    private void replay(DesignCommand command, DesignModel model, boolean undo) {
+        replaying = true;
+        try {
+            if (undo) {
+                command.undo(model);
+            } else {
+                command.redo(model);
+            }
+        } finally {
+            replaying = false;
+            // Never fold a new edit into a step the user just undid or redid
+            mergeAllowed = false;
+        }
+    }
+    
+    /**
+     * Ends the current merge group so the next edit starts a new step
+     */
+    public void breakMerge() {
+        mergeAllowed = false;
+    }
+    
+    /**
+     * Clears all recorded steps
+     */
+    public void clear() {
+        undoStack.clear();
+        redoStack.clear();
+        usedBytes = 0;
+        mergeAllowed = true;
+    }
+    
+    /**
+     * Checks whether the history is currently replaying a command
+     * @return true while an undo or redo is being applied
+     */
+    boolean isReplaying() {
+        return replaying;
+    }
+    
+    public boolean canUndo() { return !undoStack.isEmpty(); }
+    
+    public boolean canRedo() { return !redoStack.isEmpty(); }
+    
+    /**
+     * Gets the description of the step that would be undone next
+     * @return the description, or null if there is nothing to undo
+     */
+    public String getUndoDescription() {
+        DesignCommand command = undoStack.peekLast();
+        return command != null ? command.getDescription() : null;
+    }
+    
+    /**
+     * Gets the description of the step that would be redone next
+     * @return the description, or null if there is nothing to redo
+     */
+    public String getRedoDescription() {
+        DesignCommand command = redoStack.peekLast();
+        return command != null ? command.getDescription() : null;
+    }
+    
+    public int getUndoCount() { return undoStack.size(); }
+    
+    public long getUsedBytes() { return usedBytes; }
+    
+    public long getBudgetBytes() { return budgetBytes; }
+}
@@ -2,6 +2,7 @@ package com.furnitureapp.model;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -9,6 +10,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * Shared model class for the furniture design application
  * This class acts as a bridge between the 2D and 3D panels
  * to ensure that changes in one panel are reflected in the other
+ * 
+ * Edits are serialized on the model's monitor and are expected to come
+ * from the Swing event thread. After every committed change the model
+ * publishes an immutable {@link DesignSnapshot}; other threads should read
+ * the model only through {@link #getSnapshot()}.
  */
 public class DesignModel {
     /**
@@ -27,8 +33,8 @@ public class DesignModel {
     private Color roomCeilingColor = Color.WHITE;
     private String roomShape = "Rectangle";
     
-    // Furniture items
-    private List<FurnitureItem> furnitureItems = new ArrayList<>();
+    // Furniture items, stored as parallel primitive arrays
+    private final FurnitureStore furnitureItems = new FurnitureStore();
     
     // Listeners for model changes
     private List<DesignModelListener> listeners = new CopyOnWriteArrayList<>();
@@ -42,11 +48,20 @@ public class DesignModel {
     // Selection state
     private FurnitureItem selectedItem = null;
     
+    // Undo/redo history
+    private final DesignHistory history = new DesignHistory();
+    
+    // Latest published snapshot, read lock-free by background consumers
+    private volatile DesignSnapshot snapshot;
+    private long version = 0;
+    private int publishedItemsModCount = -1;
+    private FurnitureStore publishedItems;
+    
     /**
      * Creates a new design model with default settings
      */
     public DesignModel() {
-        // Default constructor
+        publish();
     }
     
     /**
@@ -70,17 +85,67 @@ public class DesignModel {
      * @param changeType the type of change that occurred
      */
     private void notifyListeners(String changeType) {
+        publish();
         for (DesignModelListener listener : listeners) {
             listener.onModelChanged(changeType);
         }
     }
     
+    /**
+     * Publishes an immutable snapshot of the current state.
+     * Freezing the items is O(1) because the snapshot shares their chunks;
+     * the live store copies a chunk only when it next writes to it.
+     */
+    private synchronized void publish() {
+        if (publishedItems == null || publishedItemsModCount != furnitureItems.getModCount()) {
+            publishedItems = furnitureItems.freeze();
+            publishedItemsModCount = furnitureItems.getModCount();
+        }
+        snapshot = new DesignSnapshot(++version, roomWidth, roomLength, roomHeight,
+                roomFloorColor, roomWallColor, roomCeilingColor, roomShape,
+                lightIntensity, shadowIntensity, contrast, ambientLightColor,
+                publishedItems, indexOf(selectedItem));
+    }
+    
+    /**
+     * Gets the latest published snapshot of the model.
+     * This never blocks and is safe to call from any thread.
+     * @return the current snapshot
+     */
+    public DesignSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Publishes a new snapshot after items were edited directly through
+     * their setters without going through the model
+     */
+    public synchronized void commit() {
+        if (publishedItemsModCount != furnitureItems.getModCount()) {
+            publish();
+        }
+    }
+    
     /**
      * Adds a furniture item to the model
      * @param item the furniture item to add
      */
-    public void addFurnitureItem(FurnitureItem item) {
-        furnitureItems.add(item);
+    public synchronized void addFurnitureItem(FurnitureItem item) {
+        insertFurnitureItem(furnitureItems.size(), item);
+    }
+    
+    /**
+     * Inserts a furniture item at a position in the drawing order
+     * @param index the position to insert at
+     * @param item the furniture item to add
+     */
+    public synchronized void insertFurnitureItem(int index, FurnitureItem item) {
+        if (item.store() == furnitureItems) {
+            throw new IllegalArgumentException("Item is already part of this design: " + item);
+        }
+        index = Math.max(0, Math.min(index, furnitureItems.size()));
+        furnitureItems.moveIn(index, item);
+        history.record(new DesignCommand.AddItem(item, index));
         notifyListeners("ITEM_ADDED");
     }
     
@@ -88,11 +153,16 @@ public class DesignModel {
      * Removes a furniture item from the model
      * @param item the furniture item to remove
      */
-    public void removeFurnitureItem(FurnitureItem item) {
-        furnitureItems.remove(item);
+    public synchronized void removeFurnitureItem(FurnitureItem item) {
+        int index = indexOf(item);
+        if (index < 0) {
+            return;
+        }
+        furnitureItems.detach(index);
         if (selectedItem == item) {
             selectedItem = null;
         }
+        history.record(new DesignCommand.RemoveItem(item, index));
         notifyListeners("ITEM_REMOVED");
     }
     
@@ -100,16 +170,67 @@ public class DesignModel {
      * Updates a furniture item in the model
      * @param item the furniture item to update
      */
-    public void updateFurnitureItem(FurnitureItem item) {
+    public synchronized void updateFurnitureItem(FurnitureItem item) {
+        notifyListeners("ITEM_UPDATED");
+    }
+    
+    /**
+     * Updates a furniture item in the model and records the edit for undo
+     * @param item the furniture item to update
+     * @param before the state of the item before it was edited
+     */
+    public synchronized void updateFurnitureItem(FurnitureItem item, ItemState before) {
+        ItemState after = ItemState.of(item);
+        if (!after.equals(before)) {
+            history.record(new DesignCommand.UpdateItem(item, before, after));
+        }
         notifyListeners("ITEM_UPDATED");
     }
     
     /**
      * Gets all furniture items in the model
-     * @return a list of all furniture items
+     * @return a read-only copy of the item list; later changes to the model do not show in it
+     */
+    public synchronized List<FurnitureItem> getFurnitureItems() {
+        return Collections.unmodifiableList(new ArrayList<>(furnitureItems.views()));
+    }
+    
+    /**
+     * Gets the item store for bulk, allocation-free loops over item properties.
+     * The store must only be read on the thread that edits the model.
+     * @return the furniture item store
+     */
+    public FurnitureStore getItemStore() {
+        return furnitureItems;
+    }
+    
+    /**
+     * Gets the furniture item at a position in the drawing order
+     * @param index the item index
+     * @return the furniture item
+     */
+    public FurnitureItem getFurnitureItem(int index) {
+        return furnitureItems.view(index);
+    }
+    
+    /**
+     * Gets the position of an item in the drawing order
+     * @param item the furniture item (may be null)
+     * @return the item index, or -1 if the item is not in the model
+     */
+    public int indexOf(FurnitureItem item) {
+        if (item == null || item.store() != furnitureItems) {
+            return -1;
+        }
+        return item.slot();
+    }
+    
+    /**
+     * Gets the number of furniture items in the model
+     * @return the item count
      */
-    public List<FurnitureItem> getFurnitureItems() {
-        return new ArrayList<>(furnitureItems);
+    public int getFurnitureItemCount() {
+        return furnitureItems.size();
     }
     
     /**
@@ -118,10 +239,12 @@ public class DesignModel {
      * @param length the room length
      * @param height the room height
      */
-    public void setRoomDimensions(int width, int length, int height) {
+    public synchronized void setRoomDimensions(int width, int length, int height) {
+        DesignCommand.RoomState before = new DesignCommand.RoomState(this);
         this.roomWidth = width;
         this.roomLength = length;
         this.roomHeight = height;
+        recordRoomChange(before);
         notifyListeners("ROOM_DIMENSIONS_CHANGED");
     }
     
@@ -129,8 +252,10 @@ public class DesignModel {
      * Sets the room floor color
      * @param color the room floor color
      */
-    public void setRoomFloorColor(Color color) {
+    public synchronized void setRoomFloorColor(Color color) {
+        DesignCommand.RoomState before = new DesignCommand.RoomState(this);
         this.roomFloorColor = color;
+        recordRoomChange(before);
         notifyListeners("ROOM_COLOR_CHANGED");
     }
     
@@ -138,8 +263,10 @@ public class DesignModel {
      * Sets the room wall color
      * @param color the room wall color
      */
-    public void setRoomWallColor(Color color) {
+    public synchronized void setRoomWallColor(Color color) {
+        DesignCommand.RoomState before = new DesignCommand.RoomState(this);
         this.roomWallColor = color;
+        recordRoomChange(before);
         notifyListeners("ROOM_COLOR_CHANGED");
     }
     
@@ -147,8 +274,10 @@ public class DesignModel {
      * Sets the room ceiling color
      * @param color the room ceiling color
      */
-    public void setRoomCeilingColor(Color color) {
+    public synchronized void setRoomCeilingColor(Color color) {
+        DesignCommand.RoomState before = new DesignCommand.RoomState(this);
         this.roomCeilingColor = color;
+        recordRoomChange(before);
         notifyListeners("ROOM_COLOR_CHANGED");
     }
     
@@ -212,8 +341,10 @@ public class DesignModel {
      * Sets the room shape
      * @param shape the new room shape
      */
-    public void setRoomShape(String shape) {
+    public synchronized void setRoomShape(String shape) {
+        DesignCommand.RoomState before = new DesignCommand.RoomState(this);
         this.roomShape = shape;
+        recordRoomChange(before);
         notifyListeners("ROOM_SHAPE_CHANGED");
     }
     
@@ -229,8 +360,10 @@ public class DesignModel {
      * Sets the light intensity
      * @param intensity the new light intensity (0.0-1.0)
      */
-    public void setLightIntensity(float intensity) {
+    public synchronized void setLightIntensity(float intensity) {
+        DesignCommand.LightingState before = new DesignCommand.LightingState(this);
         this.lightIntensity = Math.max(0.0f, Math.min(1.0f, intensity));
+        recordLightingChange(before);
         notifyListeners("LIGHTING_CHANGED");
     }
     
@@ -246,8 +379,10 @@ public class DesignModel {
      * Sets the shadow intensity
      * @param intensity the new shadow intensity (0.0-1.0)
      */
-    public void setShadowIntensity(float intensity) {
+    public synchronized void setShadowIntensity(float intensity) {
+        DesignCommand.LightingState before = new DesignCommand.LightingState(this);
         this.shadowIntensity = Math.max(0.0f, Math.min(1.0f, intensity));
+        recordLightingChange(before);
         notifyListeners("LIGHTING_CHANGED");
     }
     
@@ -263,8 +398,10 @@ public class DesignModel {
      * Sets the contrast level
      * @param contrast the new contrast level (0.5-1.5)
      */
-    public void setContrast(float contrast) {
+    public synchronized void setContrast(float contrast) {
+        DesignCommand.LightingState before = new DesignCommand.LightingState(this);
         this.contrast = Math.max(0.5f, Math.min(1.5f, contrast));
+        recordLightingChange(before);
         notifyListeners("LIGHTING_CHANGED");
     }
     
@@ -280,11 +417,59 @@ public class DesignModel {
      * Sets the ambient light color
      * @param color the new ambient light color
      */
-    public void setAmbientLightColor(Color color) {
+    public synchronized void setAmbientLightColor(Color color) {
+        DesignCommand.LightingState before = new DesignCommand.LightingState(this);
         this.ambientLightColor = color;
+        recordLightingChange(before);
         notifyListeners("LIGHTING_CHANGED");
     }
     
+    /**
+     * Records a room change if any room property actually changed
+     * @param before the room state before the change
+     */
+    private void recordRoomChange(DesignCommand.RoomState before) {
+        DesignCommand.RoomState after = new DesignCommand.RoomState(this);
+        if (!after.sameAs(before)) {
+            history.record(new DesignCommand.RoomChange(before, after));
+        }
+    }
+    
+    /**
+     * Records a lighting change if any lighting setting actually changed
+     * @param before the lighting state before the change
+     */
+    private void recordLightingChange(DesignCommand.LightingState before) {
+        DesignCommand.LightingState after = new DesignCommand.LightingState(this);
+        if (!after.sameAs(before)) {
+            history.record(new DesignCommand.LightingChange(before, after));
+        }
+    }
+    
+    /**
+     * Gets the undo/redo history of this model
+     * @return the design history
+     */
+    public DesignHistory getHistory() {
+        return history;
+    }
+    
+    /**
+     * Undoes the most recent change
+     * @return true if a change was undone
+     */
+    public synchronized boolean undo() {
+        return history.undo(this);
+    }
+    
+    /**
+     * Redoes the most recently undone change
+     * @return true if a change was redone
+     */
+    public synchronized boolean redo() {
+        return history.redo(this);
+    }
+    
     /**
      * Gets the currently selected furniture item
      * @return the selected item, or null if none is selected
@@ -297,7 +482,7 @@ public class DesignModel {
      * Sets the currently selected furniture item
      * @param item the item to select, or null to clear selection
      */
-    public void setSelectedItem(FurnitureItem item) {
+    public synchronized void setSelectedItem(FurnitureItem item) {
         this.selectedItem = item;
         notifyListeners("SELECTION_CHANGED");
     }
@@ -305,7 +490,7 @@ public class DesignModel {
     /**
      * Clears the selection
      */
-    public void clearSelection() {
+    public synchronized void clearSelection() {
         this.selectedItem = null;
         notifyListeners("SELECTION_CHANGED");
     }
@@ -316,32 +501,16 @@ public class DesignModel {
      * @param designerId the ID of the designer
      * @return a Design object representing the current state
      */
-    public Design toDesign(String name, String designerId) {
-        Design design = new Design(name, designerId);
-        design.setRoomWidth(roomWidth);
-        design.setRoomLength(roomLength);
-        design.setRoomHeight(roomHeight);
-        design.setRoomShape(roomShape);
-        design.setRoomFloorColor(roomFloorColor);
-        design.setRoomWallColor(roomWallColor);
-        design.setRoomCeilingColor(roomCeilingColor);
-        design.setLightIntensity(lightIntensity);
-        design.setShadowIntensity(shadowIntensity);
-        design.setContrast(contrast);
-        
-        // Add all furniture items
-        for (FurnitureItem item : furnitureItems) {
-            design.addFurnitureItem(item.copy());
-        }
-        
-        return design;
+    public synchronized Design toDesign(String name, String designerId) {
+        commit();
+        return snapshot.toDesign(name, designerId);
     }
     
     /**
      * Loads a Design object into this model
      * @param design the design to load
      */
-    public void loadFromDesign(Design design) {
+    public synchronized void loadFromDesign(Design design) {
         roomWidth = design.getRoomWidth();
         roomLength = design.getRoomLength();
         roomHeight = design.getRoomHeight();
@@ -353,13 +522,12 @@ public class DesignModel {
         shadowIntensity = design.getShadowIntensity();
         contrast = design.getContrast();
         
-        // Clear existing items and add new ones
-        furnitureItems.clear();
+        // Take over the design's items; the stores share chunks until either side edits them
+        furnitureItems.replaceContents(design.getItemStore());
         selectedItem = null;
         
-        for (FurnitureItem item : design.getFurnitureItems()) {
-            furnitureItems.add(item.copy());
-        }
+        // A freshly loaded design starts with an empty history
+        history.clear();
         
         // Notify listeners of the complete model change
         notifyListeners("MODEL_LOADED");
@@ -368,7 +536,7 @@ public class DesignModel {
     /**
      * Resets the model to default values
      */
-    public void reset() {
+    public synchronized void reset() {
         roomWidth = 500;
         roomLength = 400;
         roomHeight = 250;
@@ -383,6 +551,7 @@ public class DesignModel {
         
         furnitureItems.clear();
         selectedItem = null;
+        history.clear();
         
         notifyListeners("MODEL_RESET");
     }
@@ -0,0 +1,126 @@
+package com.furnitureapp.model;
+
+import java.awt.Color;
+import java.util.List;
+
+/**
+ * Immutable, consistent view of a design model at one point in time.
+ * The model publishes a new snapshot after every committed change, so
+ * background work (autosave, thumbnails, export, analysis) can read a
+ * snapshot from any thread without locking and without blocking the UI.
+ */
+public final class DesignSnapshot {
+    private final long version;
+    
+    private final int roomWidth;
+    private final int roomLength;
+    private final int roomHeight;
+    private final Color roomFloorColor;
+    private final Color roomWallColor;
+    private final Color roomCeilingColor;
+    private final String roomShape;
+    
+    private final float lightIntensity;
+    private final float shadowIntensity;
+    private final float contrast;
+    private final Color ambientLightColor;
+    
+    private final FurnitureStore items;
+    private final int selectedIndex;
+    
+    DesignSnapshot(long version, int roomWidth, int roomLength, int roomHeight,
+                   Color roomFloorColor, Color roomWallColor, Color roomCeilingColor, String roomShape,
+                   float lightIntensity, float shadowIntensity, float contrast, Color ambientLightColor,
+                   FurnitureStore items, int selectedIndex) {
+        this.version = version;
+        this.roomWidth = roomWidth;
+        this.roomLength = roomLength;
+        this.roomHeight = roomHeight;
+        this.roomFloorColor = roomFloorColor;
+        this.roomWallColor = roomWallColor;
+        this.roomCeilingColor = roomCeilingColor;
+        this.roomShape = roomShape;
+        this.lightIntensity = lightIntensity;
+        this.shadowIntensity = shadowIntensity;
+        this.contrast = contrast;
+        this.ambientLightColor = ambientLightColor;
+        this.items = items;
+        this.selectedIndex = selectedIndex;
+    }
+    
+    /**
+     * Gets the version of the model this snapshot was taken from.
+     * Versions increase with every committed change.
+     * @return the snapshot version
+     */
+    public long getVersion() { return version; }
+    
+    public int getRoomWidth() { return roomWidth; }
+    
+    public int getRoomLength() { return roomLength; }
+    
+    public int getRoomHeight() { return roomHeight; }
+    
+    public Color getRoomFloorColor() { return roomFloorColor; }
+    
+    public Color getRoomWallColor() { return roomWallColor; }
+    
+    public Color getRoomCeilingColor() { return roomCeilingColor; }
+    
+    public String getRoomShape() { return roomShape; }
+    
+    public float getLightIntensity() { return lightIntensity; }
+    
+    public float getShadowIntensity() { return shadowIntensity; }
+    
+    public float getContrast() { return contrast; }
+    
+    public Color getAmbientLightColor() { return ambientLightColor; }
+    
+    /**
+     * Gets the frozen item store for bulk loops over item properties
+     * @return the item store of this snapshot
+     */
+    public FurnitureStore getItems() { return items; }
+    
+    /**
+     * Gets read-only views of the furniture items.
+     * Calling a setter on one of these items throws UnsupportedOperationException.
+     * @return a read-only list of item views
+     */
+    public List<FurnitureItem> getFurnitureItems() {
+        return items.views();
+    }
+    
+    /**
+     * Gets the index of the selected item
+     * @return the selected item index, or -1 if nothing is selected
+     */
+    public int getSelectedIndex() { return selectedIndex; }
+    
+    /**
+     * Converts this snapshot to a Design object for saving.
+     * Safe to call from a background thread. Items keep their IDs.
+     * @param name the name of the design
+     * @param designerId the ID of the designer
+     * @return a Design object representing this snapshot
+     */
+    public Design toDesign(String name, String designerId) {
+        Design design = new Design(name, designerId);
+        design.setRoomWidth(roomWidth);
+        design.setRoomLength(roomLength);
+        design.setRoomHeight(roomHeight);
+        design.setRoomShape(roomShape);
+        design.setRoomFloorColor(roomFloorColor);
+        design.setRoomWallColor(roomWallColor);
+        design.setRoomCeilingColor(roomCeilingColor);
+        design.setLightIntensity(lightIntensity);
+        design.setShadowIntensity(shadowIntensity);
+        design.setContrast(contrast);
+        
+        // The design shares this snapshot's item chunks, so this is O(1)
+        design.setItemStore(items.mutableCopy());
+        
+        return design;
+    }
+}
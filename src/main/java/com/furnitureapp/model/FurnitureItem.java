@@ -1,23 +1,43 @@
 package com.furnitureapp.model;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
-import java.util.UUID;
+import java.util.Objects;
 
 /**
  * Model class for furniture items
  * This class is used by both the 2D and 3D panels
+ * 
+ * An item is a view over one slot of a {@link FurnitureStore}. Items that
+ * belong to a design model live in the model's store; a newly created or
+ * removed item owns a single-slot store of its own.
  */
 public class FurnitureItem implements Serializable {
-    private String id;
-    private String name;
-    private int x, y, z;
-    private int width, height, depth;
-    private Color color;
-    private float rotation;
-    private String material;
-    private float materialReflectivity;
-    private float materialRoughness;
+    // The stream form predates the store; designs saved before it must still load
+    private static final long serialVersionUID = 7644571890872903862L;
+    
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("id", String.class),
+        new ObjectStreamField("name", String.class),
+        new ObjectStreamField("x", Integer.TYPE),
+        new ObjectStreamField("y", Integer.TYPE),
+        new ObjectStreamField("z", Integer.TYPE),
+        new ObjectStreamField("width", Integer.TYPE),
+        new ObjectStreamField("height", Integer.TYPE),
+        new ObjectStreamField("depth", Integer.TYPE),
+        new ObjectStreamField("color", Color.class),
+        new ObjectStreamField("rotation", Float.TYPE),
+        new ObjectStreamField("material", String.class),
+        new ObjectStreamField("materialReflectivity", Float.TYPE),
+        new ObjectStreamField("materialRoughness", Float.TYPE)
+    };
+    
+    private transient FurnitureStore store;
+    private transient int slot;
     
     /**
      * Creates a new furniture item model
@@ -31,19 +51,68 @@ public class FurnitureItem implements Serializable {
      * @param color the color
      */
     public FurnitureItem(String name, int x, int y, int z, int width, int height, int depth, Color color) {
-        this.id = UUID.randomUUID().toString();
-        this.name = name;
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.width = width;
-        this.height = height;
-        this.depth = depth;
-        this.color = color;
-        this.rotation = 0.0f;
-        this.material = "wood";
-        this.materialReflectivity = 0.2f;
-        this.materialRoughness = 0.7f;
+        this(ItemIds.next(), name, x, y, z, width, height, depth,
+                Objects.requireNonNull(color, "color").getRGB(), 0.0f, "wood", 0.2f, 0.7f);
+    }
+    
+    /**
+     * Creates a standalone item with all properties given
+     */
+    private FurnitureItem(long id, String name, int x, int y, int z, int width, int height, int depth,
+                          int argb, float rotation, String material, float reflectivity, float roughness) {
+        FurnitureStore single = new FurnitureStore(1);
+        int newSlot = single.append(id, name, x, y, z, width, height, depth,
+                argb, rotation, material, reflectivity, roughness);
+        bind(single, newSlot);
+        single.adopt(newSlot, this);
+    }
+    
+    /**
+     * Creates a view over an existing slot of a store
+     * @param store the store holding the item data
+     * @param slot the slot of the item
+     */
+    FurnitureItem(FurnitureStore store, int slot) {
+        bind(store, slot);
+    }
+    
+    /**
+     * Points this view at a slot of a store
+     * @param store the store holding the item data
+     * @param slot the slot of the item
+     */
+    void bind(FurnitureStore store, int slot) {
+        this.store = store;
+        this.slot = slot;
+    }
+    
+    /**
+     * Moves this view to another slot of the same store, when items before it were added or removed
+     * @param slot the new slot
+     */
+    void rebind(int slot) {
+        this.slot = slot;
+    }
+    
+    /**
+     * Gets the store currently holding this item's data
+     * @return the store
+     */
+    FurnitureStore store() {
+        return store;
+    }
+    
+    /**
+     * Gets the current slot of this item in its store
+     * @return the slot
+     */
+    int slot() {
+        int current = store.locate(this, slot);
+        if (current < 0) {
+            throw new IllegalStateException("Furniture item is no longer in its store");
+        }
+        slot = current;
+        return current;
     }
     
     /**
@@ -103,12 +172,7 @@ public class FurnitureItem implements Serializable {
      * @return a new furniture item with the same properties
      */
     public FurnitureItem copy() {
-        FurnitureItem copy = new FurnitureItem(name, x, y, z, width, height, depth, color);
-        copy.setRotation(rotation);
-        copy.setMaterial(material);
-        copy.setMaterialReflectivity(materialReflectivity);
-        copy.setMaterialRoughness(materialRoughness);
-        return copy;
+        return store.copyOf(slot());
     }
     
     /**
@@ -118,9 +182,10 @@ public class FurnitureItem implements Serializable {
      * @param dz change in z
      */
     public void move(int dx, int dy, int dz) {
-        this.x += dx;
-        this.y += dy;
-        this.z += dz;
+        int s = slot();
+        store.setX(s, store.getX(s) + dx);
+        store.setY(s, store.getY(s) + dy);
+        store.setZ(s, store.getZ(s) + dz);
     }
     
     /**
@@ -128,52 +193,118 @@ public class FurnitureItem implements Serializable {
      * @param factor the scale factor
      */
     public void scale(float factor) {
-        this.width = (int)(this.width * factor);
-        this.height = (int)(this.height * factor);
-        this.depth = (int)(this.depth * factor);
+        int s = slot();
+        store.setWidth(s, (int)(store.getWidth(s) * factor));
+        store.setHeight(s, (int)(store.getHeight(s) * factor));
+        store.setDepth(s, (int)(store.getDepth(s) * factor));
     }
     
     // Getters and setters
-    public String getId() { return id; }
     
-    public String getName() { return name; }
-    public void setName(String name) { this.name = name; }
+    /**
+     * Gets the persistent id of this item in UUID form.
+     * Prefer {@link #getNumericId()} in code that does not cross a persistence boundary.
+     * @return the item id as a UUID string
+     */
+    public String getId() { return store.getUuid(slot()); }
+    
+    public long getNumericId() { return store.getId(slot()); }
+    
+    public String getName() { return store.getName(slot()); }
+    public void setName(String name) { store.setName(slot(), name); }
     
-    public int getX() { return x; }
-    public void setX(int x) { this.x = x; }
+    public int getX() { return store.getX(slot()); }
+    public void setX(int x) { store.setX(slot(), x); }
     
-    public int getY() { return y; }
-    public void setY(int y) { this.y = y; }
+    public int getY() { return store.getY(slot()); }
+    public void setY(int y) { store.setY(slot(), y); }
     
-    public int getZ() { return z; }
-    public void setZ(int z) { this.z = z; }
+    public int getZ() { return store.getZ(slot()); }
+    public void setZ(int z) { store.setZ(slot(), z); }
     
-    public int getWidth() { return width; }
-    public void setWidth(int width) { this.width = width; }
+    public int getWidth() { return store.getWidth(slot()); }
+    public void setWidth(int width) { store.setWidth(slot(), width); }
     
-    public int getHeight() { return height; }
-    public void setHeight(int height) { this.height = height; }
+    public int getHeight() { return store.getHeight(slot()); }
+    public void setHeight(int height) { store.setHeight(slot(), height); }
     
-    public int getDepth() { return depth; }
-    public void setDepth(int depth) { this.depth = depth; }
+    public int getDepth() { return store.getDepth(slot()); }
+    public void setDepth(int depth) { store.setDepth(slot(), depth); }
     
-    public Color getColor() { return color; }
-    public void setColor(Color color) { this.color = color; }
+    public Color getColor() { return store.getColor(slot()); }
+    public void setColor(Color color) { store.setArgb(slot(), Objects.requireNonNull(color, "color").getRGB()); }
     
-    public float getRotation() { return rotation; }
-    public void setRotation(float rotation) { this.rotation = rotation; }
+    public float getRotation() { return store.getRotation(slot()); }
+    public void setRotation(float rotation) { store.setRotation(slot(), rotation); }
     
-    public String getMaterial() { return material; }
-    public void setMaterial(String material) { this.material = material; }
+    // Corners of the footprint on the floor, turned by the rotation; see FurnitureStore.getFootprintX
+    public float getFootprintX(int corner) { return store.getFootprintX(slot(), corner); }
+    public float getFootprintZ(int corner) { return store.getFootprintZ(slot(), corner); }
     
-    public float getMaterialReflectivity() { return materialReflectivity; }
-    public void setMaterialReflectivity(float materialReflectivity) { this.materialReflectivity = materialReflectivity; }
+    public String getMaterial() { return store.getMaterial(slot()); }
+    public void setMaterial(String material) { store.setMaterial(slot(), material); }
     
-    public float getMaterialRoughness() { return materialRoughness; }
-    public void setMaterialRoughness(float materialRoughness) { this.materialRoughness = materialRoughness; }
+    public float getMaterialReflectivity() { return store.getReflectivity(slot()); }
+    public void setMaterialReflectivity(float materialReflectivity) { store.setReflectivity(slot(), materialReflectivity); }
+    
+    public float getMaterialRoughness() { return store.getRoughness(slot()); }
+    public void setMaterialRoughness(float materialRoughness) { store.setRoughness(slot(), materialRoughness); }
+    
+    /**
+     * Writes the item's values as the fields the item had before it became a
+     * view; the store itself is never serialized
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        int s = slot();
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", store.getUuid(s));
+        fields.put("name", store.getName(s));
+        fields.put("x", store.getX(s));
+        fields.put("y", store.getY(s));
+        fields.put("z", store.getZ(s));
+        fields.put("width", store.getWidth(s));
+        fields.put("height", store.getHeight(s));
+        fields.put("depth", store.getDepth(s));
+        fields.put("color", store.getColor(s));
+        fields.put("rotation", store.getRotation(s));
+        fields.put("material", store.getMaterial(s));
+        fields.put("materialReflectivity", store.getReflectivity(s));
+        fields.put("materialRoughness", store.getRoughness(s));
+        out.writeFields();
+    }
+    
+    /**
+     * Reads the item's values into a new standalone store
+     * @param in the input stream
+     * @throws IOException if an I/O error occurs
+     * @throws ClassNotFoundException if a serialized class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        String uuid = (String) fields.get("id", null);
+        Color color = (Color) fields.get("color", null);
+        long id = uuid != null ? ItemIds.fromUuid(uuid) : ItemIds.next();
+        int argb = color != null ? color.getRGB() : Color.GRAY.getRGB();
+        
+        FurnitureStore single = new FurnitureStore(1);
+        int newSlot = single.append(id, (String) fields.get("name", null),
+                fields.get("x", 0), fields.get("y", 0), fields.get("z", 0),
+                fields.get("width", 0), fields.get("height", 0), fields.get("depth", 0),
+                argb, fields.get("rotation", 0.0f), (String) fields.get("material", "wood"),
+                fields.get("materialReflectivity", 0.2f), fields.get("materialRoughness", 0.7f));
+        if (uuid != null) {
+            single.setForeignUuid(newSlot, ItemIds.foreignUuid(uuid));
+        }
+        bind(single, newSlot);
+        single.adopt(newSlot, this);
+    }
     
     @Override
     public String toString() {
-        return name + " [" + width + "x" + height + "x" + depth + "] at (" + x + "," + y + "," + z + ")";
+        int s = slot();
+        return store.getName(s) + " [" + store.getWidth(s) + "x" + store.getHeight(s) + "x" + store.getDepth(s)
+                + "] at (" + store.getX(s) + "," + store.getY(s) + "," + store.getZ(s) + ")";
     }
 }
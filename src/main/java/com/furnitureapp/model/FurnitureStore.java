@@ -0,0 +1,786 @@
+package com.furnitureapp.model;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Struct-of-arrays storage for furniture items.
+ * Every item property lives in a primitive array indexed by slot, so
+ * renderers and spatial queries can loop over positions and sizes without
+ * touching one heap object per item. {@link FurnitureItem} objects are thin
+ * views over a slot and are only created when something asks for one; the
+ * store lists only the views still in use, weakly, so an item nobody holds
+ * a view of costs nothing beyond its values.
+ * 
+ * The arrays are split into fixed-size chunks that stores share with each
+ * other. A store is either live (editable, confined to the thread that
+ * edits the model) or frozen. {@link #freeze()} and {@link #mutableCopy()}
+ * are O(1): the chunks are shared, and a live store copies a chunk the
+ * first time it writes to it afterwards. Frozen stores never change and can
+ * be read from any thread.
+ */
+public final class FurnitureStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private static final int CHUNK_SHIFT = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    /** Approximate heap footprint of a detached item: its view plus a single-slot store */
+    static final int SINGLE_ITEM_BYTES = 550;
+    
+    /** Number of corners of an item's footprint on the floor */
+    public static final int FOOTPRINT_CORNERS = 4;
+    
+    // Colours are shared between items, so the Color objects handed out by
+    // getColor are cached by their packed ARGB value
+    private static final ConcurrentHashMap<Integer, Color> COLOR_CACHE = new ConcurrentHashMap<>();
+    private static final int COLOR_CACHE_LIMIT = 4096;
+    
+    // Names and materials repeat across items, so slots share one style object per combination
+    private static final WeakInterner<ItemStyle> STYLES = new WeakInterner<>();
+    
+    // Turns by whole degrees are by far the most common, so their sines and
+    // cosines are worked out once instead of for every footprint corner read
+    private static final float[] WHOLE_DEGREE_COS = new float[360];
+    private static final float[] WHOLE_DEGREE_SIN = new float[360];
+    
+    static {
+        for (int degrees = 0; degrees < 360; degrees++) {
+            double angle = Math.toRadians(degrees);
+            WHOLE_DEGREE_COS[degrees] = (float) Math.cos(angle);
+            WHOLE_DEGREE_SIN[degrees] = (float) Math.sin(angle);
+        }
+    }
+    
+    /**
+     * Up to CHUNK_SIZE consecutive items, one primitive array per property.
+     * Only the store whose edit token owns a chunk may write to it.
+     */
+    private static final class Chunk {
+        final Object owner;
+        final long[] ids;
+        final ItemStyle[] styles;
+        final int[] x, y, z;
+        final int[] width, height, depth;
+        final float[] rotation;
+        final int[] argb;
+        // UUIDs of items read from older saves, which ids cannot reproduce;
+        // null until the chunk holds such an item
+        UUID[] foreignUuids;
+        
+        Chunk(Object owner, int capacity) {
+            this.owner = owner;
+            ids = new long[capacity];
+            styles = new ItemStyle[capacity];
+            x = new int[capacity];
+            y = new int[capacity];
+            z = new int[capacity];
+            width = new int[capacity];
+            height = new int[capacity];
+            depth = new int[capacity];
+            rotation = new float[capacity];
+            argb = new int[capacity];
+        }
+        
+        Chunk(Object owner, Chunk source, int capacity) {
+            this.owner = owner;
+            ids = Arrays.copyOf(source.ids, capacity);
+            styles = Arrays.copyOf(source.styles, capacity);
+            x = Arrays.copyOf(source.x, capacity);
+            y = Arrays.copyOf(source.y, capacity);
+            z = Arrays.copyOf(source.z, capacity);
+            width = Arrays.copyOf(source.width, capacity);
+            height = Arrays.copyOf(source.height, capacity);
+            depth = Arrays.copyOf(source.depth, capacity);
+            rotation = Arrays.copyOf(source.rotation, capacity);
+            argb = Arrays.copyOf(source.argb, capacity);
+            if (source.foreignUuids != null) {
+                foreignUuids = Arrays.copyOf(source.foreignUuids, capacity);
+            }
+        }
+        
+        int capacity() {
+            return ids.length;
+        }
+        
+        void copySlot(int to, Chunk source, int from) {
+            ids[to] = source.ids[from];
+            styles[to] = source.styles[from];
+            x[to] = source.x[from];
+            y[to] = source.y[from];
+            z[to] = source.z[from];
+            width[to] = source.width[from];
+            height[to] = source.height[from];
+            depth[to] = source.depth[from];
+            rotation[to] = source.rotation[from];
+            argb[to] = source.argb[from];
+            setForeignUuid(to, source.foreignUuids != null ? source.foreignUuids[from] : null);
+        }
+        
+        void setForeignUuid(int i, UUID uuid) {
+            if (foreignUuids == null && uuid != null) {
+                foreignUuids = new UUID[capacity()];
+            }
+            if (foreignUuids != null) {
+                foreignUuids[i] = uuid;
+            }
+        }
+    }
+    
+    private final transient boolean frozen;
+    private transient Chunk[] chunks;
+    private transient int size = 0;
+    private transient int modCount = 0;
+    // Changes only when items are added or removed, for the fail-fast item list
+    private transient int structureCount = 0;
+    
+    // Chunks (and the chunk table) owned by this token may be written in place.
+    // A new token is taken on every freeze, so shared chunks are copied first.
+    private transient Object editToken;
+    private transient Object tableOwner;
+    
+    // The views of a live store still in use; allocated on first use
+    private transient ViewTable views;
+    
+    /**
+     * Creates an empty store
+     */
+    public FurnitureStore() {
+        this(CHUNK_SIZE);
+    }
+    
+    /**
+     * Creates an empty store
+     * @param capacity the expected number of items; small stores start with a small chunk
+     */
+    public FurnitureStore(int capacity) {
+        this.frozen = false;
+        this.editToken = new Object();
+        this.tableOwner = editToken;
+        this.chunks = new Chunk[] { new Chunk(editToken, Math.max(1, Math.min(capacity, CHUNK_SIZE))) };
+    }
+    
+    /**
+     * Creates a store that shares the chunks of another store
+     * @param source the store to share with
+     * @param frozen whether the new store is frozen
+     */
+    private FurnitureStore(FurnitureStore source, boolean frozen) {
+        this.frozen = frozen;
+        this.chunks = source.chunks;
+        this.size = source.size;
+        this.modCount = source.modCount;
+        this.editToken = frozen ? null : new Object();
+        this.tableOwner = null;
+    }
+    
+    /**
+     * Gets an immutable version of this store that is safe to read from any thread.
+     * This is O(1): the chunks are shared, and this store copies a chunk
+     * before it next writes to it. Freezing a frozen store returns the store itself.
+     * @return the frozen store
+     */
+    public FurnitureStore freeze() {
+        if (frozen) {
+            return this;
+        }
+        FurnitureStore snapshot = new FurnitureStore(this, true);
+        // Everything written so far is now shared with the snapshot
+        editToken = new Object();
+        return snapshot;
+    }
+    
+    /**
+     * Gets a new live store with the same items and ids.
+     * This is O(1); the two stores share chunks until either one changes them.
+     * @return an editable copy of this store
+     */
+    public FurnitureStore mutableCopy() {
+        return new FurnitureStore(freeze(), false);
+    }
+    
+    /**
+     * Replaces the items of this live store with the items of another store.
+     * Views of the old items no longer resolve to a slot.
+     * @param source the store whose items to take
+     */
+    void replaceContents(FurnitureStore source) {
+        checkMutable();
+        FurnitureStore shared = source.freeze();
+        views = null;
+        chunks = shared.chunks;
+        size = shared.size;
+        editToken = new Object();
+        tableOwner = null;
+        modCount++;
+        structureCount++;
+    }
+    
+    /**
+     * Checks whether this store is an immutable snapshot
+     * @return true if the store is frozen
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+    
+    /**
+     * Gets a counter that changes whenever the store is modified
+     * @return the modification count
+     */
+    int getModCount() {
+        return modCount;
+    }
+    
+    private void checkMutable() {
+        if (frozen) {
+            throw new UnsupportedOperationException("Furniture items in a design snapshot are read-only");
+        }
+    }
+    
+    /**
+     * Gets the chunk holding a slot for writing, copying it (and the chunk
+     * table) first if it is shared with another store
+     * @param slot the slot to write
+     * @return the writable chunk
+     */
+    private Chunk writable(int slot) {
+        checkMutable();
+        int index = slot >>> CHUNK_SHIFT;
+        if (tableOwner != editToken) {
+            chunks = chunks.clone();
+            tableOwner = editToken;
+        }
+        Chunk chunk = chunks[index];
+        if (chunk.owner != editToken) {
+            chunk = new Chunk(editToken, chunk, chunk.capacity());
+            chunks[index] = chunk;
+        }
+        modCount++;
+        return chunk;
+    }
+    
+    private Chunk chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+    
+    /**
+     * Adds one slot at the end of the store
+     */
+    private void grow() {
+        int index = size >>> CHUNK_SHIFT;
+        if (index == chunks.length) {
+            Chunk[] table = Arrays.copyOf(chunks, index + 1);
+            table[index] = new Chunk(editToken, CHUNK_SIZE);
+            chunks = table;
+            tableOwner = editToken;
+        } else {
+            Chunk last = writable(size);
+            if ((size & CHUNK_MASK) == last.capacity()) {
+                // Only the last chunk can be short; double it up to the full chunk size
+                chunks[index] = new Chunk(editToken, last, Math.min(CHUNK_SIZE, last.capacity() * 2));
+            }
+        }
+        size++;
+        modCount++;
+        structureCount++;
+    }
+    
+    /**
+     * Opens a gap of one slot at the given index.
+     * Appending is O(1); inserting before the end shifts the later items.
+     * @param index the slot to free
+     */
+    private void openSlot(int index) {
+        checkMutable();
+        grow();
+        for (int i = size - 1; i > index; i--) {
+            writable(i).copySlot(i & CHUNK_MASK, chunk(i - 1), (i - 1) & CHUNK_MASK);
+        }
+        if (views != null) {
+            views.inserted(index);
+        }
+    }
+    
+    /**
+     * Removes a slot, shifting later items down
+     * @param slot the slot to remove
+     */
+    private void removeAt(int slot) {
+        checkMutable();
+        for (int i = slot; i < size - 1; i++) {
+            writable(i).copySlot(i & CHUNK_MASK, chunk(i + 1), (i + 1) & CHUNK_MASK);
+        }
+        if (views != null) {
+            views.removed(slot);
+        }
+        size--;
+        int used = Math.max(1, (size + CHUNK_MASK) >>> CHUNK_SHIFT);
+        if (chunks.length > used) {
+            // Drop the trailing chunk once it is empty
+            chunks = Arrays.copyOf(chunks, used);
+            tableOwner = editToken;
+        }
+        modCount++;
+        structureCount++;
+    }
+    
+    /**
+     * Adds a new item at the end of the store
+     * @return the slot of the new item
+     */
+    int append(long id, String name, int x, int y, int z, int width, int height, int depth,
+               int argb, float rotation, String material, float reflectivity, float roughness) {
+        int slot = size;
+        openSlot(slot);
+        Chunk chunk = writable(slot);
+        int i = slot & CHUNK_MASK;
+        chunk.ids[i] = id;
+        chunk.styles[i] = STYLES.intern(new ItemStyle(name, material, reflectivity, roughness));
+        chunk.x[i] = x;
+        chunk.y[i] = y;
+        chunk.z[i] = z;
+        chunk.width[i] = width;
+        chunk.height[i] = height;
+        chunk.depth[i] = depth;
+        chunk.argb[i] = argb;
+        chunk.rotation[i] = rotation;
+        return slot;
+    }
+    
+    /**
+     * Copies one slot of another store into this store
+     * @param index the slot to insert at
+     * @param source the store to copy from
+     * @param from the slot in the source store
+     */
+    private void insertFrom(int index, FurnitureStore source, int from) {
+        Chunk sourceChunk = source.chunk(from);
+        openSlot(index);
+        writable(index).copySlot(index & CHUNK_MASK, sourceChunk, from & CHUNK_MASK);
+    }
+    
+    /**
+     * Appends a copy of an item's values, keeping its id
+     * @param item the item to copy
+     * @return the slot of the copy
+     */
+    int appendCopy(FurnitureItem item) {
+        int index = size;
+        insertFrom(index, item.store(), item.slot());
+        return index;
+    }
+    
+    /**
+     * Overwrites the values in a slot with the values of an item.
+     * The slot keeps its own id.
+     * @param slot the slot to overwrite
+     * @param item the item to take the values from
+     */
+    void overwrite(int slot, FurnitureItem item) {
+        checkSlot(slot);
+        long id = getId(slot);
+        UUID foreign = getForeignUuid(slot);
+        Chunk source = item.store().chunk(item.slot());
+        Chunk chunk = writable(slot);
+        chunk.copySlot(slot & CHUNK_MASK, source, item.slot() & CHUNK_MASK);
+        chunk.ids[slot & CHUNK_MASK] = id;
+        chunk.setForeignUuid(slot & CHUNK_MASK, foreign);
+    }
+    
+    /**
+     * Moves an item's data into this store, keeping the item object as its view
+     * @param index the slot to insert at
+     * @param item the item to move
+     */
+    void moveIn(int index, FurnitureItem item) {
+        FurnitureStore source = item.store();
+        int from = item.slot();
+        insertFrom(index, source, from);
+        source.removeAt(from);
+        adopt(index, item);
+        item.bind(this, index);
+    }
+    
+    /**
+     * Moves the item in a slot out into a standalone store, so the item keeps
+     * its values after it has been removed
+     * @param slot the slot to remove
+     * @return the detached item
+     */
+    FurnitureItem detach(int slot) {
+        FurnitureItem item = view(slot);
+        FurnitureStore single = new FurnitureStore(1);
+        single.moveIn(0, item);
+        return item;
+    }
+    
+    /**
+     * Removes all items
+     */
+    void clear() {
+        checkMutable();
+        views = null;
+        editToken = new Object();
+        tableOwner = editToken;
+        chunks = new Chunk[] { new Chunk(editToken, CHUNK_SIZE) };
+        size = 0;
+        modCount++;
+        structureCount++;
+    }
+    
+    /**
+     * Gets the view object for a slot, creating it on first use
+     * @param slot the slot
+     * @return the furniture item view
+     */
+    FurnitureItem view(int slot) {
+        checkSlot(slot);
+        if (frozen) {
+            // Views of a frozen store are never cached, so readers on
+            // different threads never race on the view table
+            return new FurnitureItem(this, slot);
+        }
+        FurnitureItem view = viewAt(slot);
+        if (view == null) {
+            view = new FurnitureItem(this, slot);
+            adopt(slot, view);
+        }
+        return view;
+    }
+    
+    /**
+     * Registers an existing item object as the view of a slot
+     * @param slot the slot
+     * @param item the item view
+     */
+    void adopt(int slot, FurnitureItem item) {
+        checkMutable();
+        if (views == null) {
+            views = new ViewTable();
+        }
+        views.put(slot, item);
+    }
+    
+    /**
+     * Gets the registered view of a slot
+     * @param slot the slot
+     * @return the view, or null if none was created or it has been collected
+     */
+    private FurnitureItem viewAt(int slot) {
+        return views != null ? views.get(slot) : null;
+    }
+    
+    /**
+     * Checks that a view still belongs to this store.
+     * The view table moves views along when items are added or removed, so
+     * a view's own slot is current unless the view was dropped from the store.
+     * @param view the view to locate
+     * @param hint the slot the view holds
+     * @return the slot, or -1 if the view is not in this store
+     */
+    int locate(FurnitureItem view, int hint) {
+        if (frozen) {
+            // Slots of a frozen store never move
+            return hint < size ? hint : -1;
+        }
+        return viewAt(hint) == view ? hint : -1;
+    }
+    
+    /**
+     * Finds the slot of the item with the given id
+     * @param id the numeric item id
+     * @return the slot, or -1 if no item has the id
+     */
+    int indexOfId(long id) {
+        for (int c = 0; c << CHUNK_SHIFT < size; c++) {
+            long[] chunkIds = chunks[c].ids;
+            int count = Math.min(CHUNK_SIZE, size - (c << CHUNK_SHIFT));
+            for (int i = 0; i < count; i++) {
+                if (chunkIds[i] == id) {
+                    return (c << CHUNK_SHIFT) + i;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Creates a standalone copy of the item in a slot without creating a view for it
+     * @param slot the slot to copy
+     * @return a new furniture item with the same properties and a new id
+     */
+    FurnitureItem copyOf(int slot) {
+        checkSlot(slot);
+        FurnitureItem copy = new FurnitureItem(getName(slot), getX(slot), getY(slot), getZ(slot),
+                getWidth(slot), getHeight(slot), getDepth(slot), getColor(slot));
+        copy.setRotation(getRotation(slot));
+        copy.setMaterial(getMaterial(slot));
+        copy.setMaterialReflectivity(getReflectivity(slot));
+        copy.setMaterialRoughness(getRoughness(slot));
+        return copy;
+    }
+    
+    /**
+     * Gets a read-only list of the items, in drawing order.
+     * The list follows the store and creates each view only when it is read,
+     * so walking it does not keep a view of every item alive. Its iterators
+     * fail fast when items are added or removed.
+     * @return a list of furniture item views
+     */
+    List<FurnitureItem> views() {
+        return new ViewList();
+    }
+    
+    /**
+     * List over the slots of this store that hands out views on demand
+     */
+    private final class ViewList extends AbstractList<FurnitureItem> implements RandomAccess {
+        @Override
+        public FurnitureItem get(int index) {
+            // Iterators compare this with the count they started from, so
+            // adding or removing items while iterating fails fast
+            modCount = structureCount;
+            return view(index);
+        }
+        
+        @Override
+        public int size() {
+            modCount = structureCount;
+            return size;
+        }
+        
+        @Override
+        public Iterator<FurnitureItem> iterator() {
+            modCount = structureCount;
+            return super.iterator();
+        }
+        
+        @Override
+        public ListIterator<FurnitureItem> listIterator(int index) {
+            modCount = structureCount;
+            return super.listIterator(index);
+        }
+    }
+    
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " out of range 0.." + size);
+        }
+    }
+    
+    /**
+     * Gets a shared Color instance for a packed ARGB value
+     * @param argb the packed colour
+     * @return the colour
+     */
+    static Color colorOf(int argb) {
+        Color color = COLOR_CACHE.get(argb);
+        if (color == null) {
+            color = new Color(argb, true);
+            if (COLOR_CACHE.size() < COLOR_CACHE_LIMIT) {
+                COLOR_CACHE.putIfAbsent(argb, color);
+            }
+        }
+        return color;
+    }
+    
+    /**
+     * Writes the items as plain values, with ids in their persisted UUID form
+     * @param out the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(getUuid(i));
+            out.writeObject(getName(i));
+            out.writeInt(getX(i));
+            out.writeInt(getY(i));
+            out.writeInt(getZ(i));
+            out.writeInt(getWidth(i));
+            out.writeInt(getHeight(i));
+            out.writeInt(getDepth(i));
+            out.writeInt(getArgb(i));
+            out.writeFloat(getRotation(i));
+            out.writeObject(getMaterial(i));
+            out.writeFloat(getReflectivity(i));
+            out.writeFloat(getRoughness(i));
+        }
+    }
+    
+    /**
+     * Reads the items into a live store
+     * @param in the input stream
+     * @throws IOException if an I/O error occurs
+     * @throws ClassNotFoundException if a serialized class cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        editToken = new Object();
+        tableOwner = editToken;
+        chunks = new Chunk[] { new Chunk(editToken, CHUNK_SIZE) };
+        for (int i = 0; i < count; i++) {
+            String uuid = in.readUTF();
+            long id = ItemIds.fromUuid(uuid);
+            String name = (String) in.readObject();
+            int x = in.readInt();
+            int y = in.readInt();
+            int z = in.readInt();
+            int width = in.readInt();
+            int height = in.readInt();
+            int depth = in.readInt();
+            int argb = in.readInt();
+            float rotation = in.readFloat();
+            String material = (String) in.readObject();
+            float reflectivity = in.readFloat();
+            float roughness = in.readFloat();
+            int slot = append(id, name, x, y, z, width, height, depth, argb, rotation, material, reflectivity,
+                    roughness);
+            setForeignUuid(slot, ItemIds.foreignUuid(uuid));
+        }
+    }
+    
+    /**
+     * Gets the number of items in the store
+     * @return the item count
+     */
+    public int size() { return size; }
+    
+    // Slot accessors, used by the item views and by bulk loops in the renderers
+    public long getId(int slot) { return chunk(slot).ids[slot & CHUNK_MASK]; }
+    
+    /**
+     * Gets the persisted id of an item, the UUID it was read with if it came from an older save
+     * @param slot the slot
+     * @return the item id as a UUID string
+     */
+    public String getUuid(int slot) {
+        UUID foreign = getForeignUuid(slot);
+        return foreign != null ? foreign.toString() : ItemIds.toUuid(getId(slot));
+    }
+    
+    private UUID getForeignUuid(int slot) {
+        UUID[] foreign = chunk(slot).foreignUuids;
+        return foreign != null ? foreign[slot & CHUNK_MASK] : null;
+    }
+    
+    /**
+     * Keeps the UUID an item was read with, so it is written back unchanged
+     * @param slot the slot
+     * @param uuid the UUID from {@link ItemIds#foreignUuid(String)}, or null if the id reproduces it
+     */
+    void setForeignUuid(int slot, UUID uuid) {
+        if (uuid != null || chunk(slot).foreignUuids != null) {
+            writable(slot).setForeignUuid(slot & CHUNK_MASK, uuid);
+        }
+    }
+    
+    private ItemStyle getStyle(int slot) { return chunk(slot).styles[slot & CHUNK_MASK]; }
+    private void setStyle(int slot, ItemStyle style) {
+        writable(slot).styles[slot & CHUNK_MASK] = STYLES.intern(style);
+    }
+    
+    public String getName(int slot) { return getStyle(slot).name; }
+    void setName(int slot, String name) { setStyle(slot, getStyle(slot).withName(name)); }
+    
+    public int getX(int slot) { return chunk(slot).x[slot & CHUNK_MASK]; }
+    void setX(int slot, int value) { writable(slot).x[slot & CHUNK_MASK] = value; }
+    
+    public int getY(int slot) { return chunk(slot).y[slot & CHUNK_MASK]; }
+    void setY(int slot, int value) { writable(slot).y[slot & CHUNK_MASK] = value; }
+    
+    public int getZ(int slot) { return chunk(slot).z[slot & CHUNK_MASK]; }
+    void setZ(int slot, int value) { writable(slot).z[slot & CHUNK_MASK] = value; }
+    
+    public int getWidth(int slot) { return chunk(slot).width[slot & CHUNK_MASK]; }
+    void setWidth(int slot, int value) { writable(slot).width[slot & CHUNK_MASK] = value; }
+    
+    public int getHeight(int slot) { return chunk(slot).height[slot & CHUNK_MASK]; }
+    void setHeight(int slot, int value) { writable(slot).height[slot & CHUNK_MASK] = value; }
+    
+    public int getDepth(int slot) { return chunk(slot).depth[slot & CHUNK_MASK]; }
+    void setDepth(int slot, int value) { writable(slot).depth[slot & CHUNK_MASK] = value; }
+    
+    public float getRotation(int slot) { return chunk(slot).rotation[slot & CHUNK_MASK]; }
+    void setRotation(int slot, float value) { writable(slot).rotation[slot & CHUNK_MASK] = value; }
+    
+    /**
+     * Gets the x of a corner of an item's footprint, turned by its rotation
+     * around its center. Corners run (x, z), (x + width, z),
+     * (x + width, z + depth), (x, z + depth) before the turn.
+     * @param slot the slot
+     * @param corner the corner, 0 to 3, in order around the footprint
+     * @return the x coordinate of the corner
+     */
+    public float getFootprintX(int slot, int corner) {
+        Chunk chunk = chunk(slot);
+        int i = slot & CHUNK_MASK;
+        float halfWidth = chunk.width[i] / 2.0f;
+        float halfDepth = chunk.depth[i] / 2.0f;
+        float localX = corner == 1 || corner == 2 ? halfWidth : -halfWidth;
+        float localZ = corner >= 2 ? halfDepth : -halfDepth;
+        float rotation = chunk.rotation[i];
+        return chunk.x[i] + halfWidth + localX * cos(rotation) - localZ * sin(rotation);
+    }
+    
+    /**
+     * Gets the z of a corner of an item's footprint
+     * @param slot the slot
+     * @param corner the corner, 0 to 3, in order around the footprint
+     * @return the z coordinate of the corner
+     */
+    public float getFootprintZ(int slot, int corner) {
+        Chunk chunk = chunk(slot);
+        int i = slot & CHUNK_MASK;
+        float halfWidth = chunk.width[i] / 2.0f;
+        float halfDepth = chunk.depth[i] / 2.0f;
+        float localX = corner == 1 || corner == 2 ? halfWidth : -halfWidth;
+        float localZ = corner >= 2 ? halfDepth : -halfDepth;
+        float rotation = chunk.rotation[i];
+        return chunk.z[i] + halfDepth + localX * sin(rotation) + localZ * cos(rotation);
+    }
+    
+    private static float cos(float degrees) {
+        int whole = (int) degrees;
+        if (whole == degrees && whole >= 0 && whole < 360) {
+            return WHOLE_DEGREE_COS[whole];
+        }
+        return (float) Math.cos(Math.toRadians(degrees));
+    }
+    
+    private static float sin(float degrees) {
+        int whole = (int) degrees;
+        if (whole == degrees && whole >= 0 && whole < 360) {
+            return WHOLE_DEGREE_SIN[whole];
+        }
+        return (float) Math.sin(Math.toRadians(degrees));
+    }
+    
+    public int getArgb(int slot) { return chunk(slot).argb[slot & CHUNK_MASK]; }
+    public Color getColor(int slot) { return colorOf(getArgb(slot)); }
+    void setArgb(int slot, int value) { writable(slot).argb[slot & CHUNK_MASK] = value; }
+    
+    public String getMaterial(int slot) { return getStyle(slot).material; }
+    void setMaterial(int slot, String value) { setStyle(slot, getStyle(slot).withMaterial(value)); }
+    
+    public float getReflectivity(int slot) { return getStyle(slot).reflectivity; }
+    void setReflectivity(int slot, float value) { setStyle(slot, getStyle(slot).withReflectivity(value)); }
+    
+    public float getRoughness(int slot) { return getStyle(slot).roughness; }
+    void setRoughness(int slot, float value) { setStyle(slot, getStyle(slot).withRoughness(value)); }
+}
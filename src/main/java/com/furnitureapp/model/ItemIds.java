@@ -0,0 +1,79 @@
+package com.furnitureapp.model;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates compact numeric ids for furniture items.
+ * Ids are 64-bit values from a SplitMix64 sequence: one atomic add and a
+ * few multiplies per id, with no SecureRandom and no string allocation.
+ * Items are only converted to UUID strings where a design is persisted.
+ * UUIDs from elsewhere, such as the random ones of older saves, are hashed
+ * to an id; the store that holds the item keeps the original UUID, so it is
+ * written back unchanged and freed with the item.
+ */
+public final class ItemIds {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    // Marks UUIDs that were produced from a numeric id by toUuid
+    private static final long UUID_MARKER = 0x46_55_52_4E_49_54_55_52L;
+    
+    private static final AtomicLong SEQUENCE = new AtomicLong(mix(System.nanoTime() ^ System.currentTimeMillis()));
+    
+    private ItemIds() {
+    }
+    
+    /**
+     * Gets a new item id.
+     * SplitMix64 is a bijection over the counter, so ids never repeat within
+     * a session.
+     * @return a new id
+     */
+    public static long next() {
+        return mix(SEQUENCE.getAndAdd(GOLDEN_GAMMA));
+    }
+    
+    /**
+     * Converts an item id to its persisted UUID form
+     * @param id the item id
+     * @return the UUID string
+     */
+    public static String toUuid(long id) {
+        return new UUID(id, UUID_MARKER).toString();
+    }
+    
+    /**
+     * Converts a persisted UUID back to an item id.
+     * UUIDs that were not produced by {@link #toUuid(long)} (for example
+     * random ones from older saves) are hashed to 64 bits, so the same UUID
+     * always gets the same id; keep such a UUID with the item, see
+     * {@link #foreignUuid(String)}.
+     * @param uuid the UUID string
+     * @return the item id
+     * @throws IllegalArgumentException if the string is not a valid UUID
+     */
+    public static long fromUuid(String uuid) {
+        UUID parsed = UUID.fromString(uuid);
+        if (parsed.getLeastSignificantBits() == UUID_MARKER) {
+            return parsed.getMostSignificantBits();
+        }
+        return mix(parsed.getMostSignificantBits() ^ parsed.getLeastSignificantBits());
+    }
+    
+    /**
+     * Gets the UUID an item must keep to be written back unchanged
+     * @param uuid the UUID string
+     * @return the parsed UUID if {@link #toUuid(long)} cannot reproduce it, otherwise null
+     * @throws IllegalArgumentException if the string is not a valid UUID
+     */
+    public static UUID foreignUuid(String uuid) {
+        UUID parsed = UUID.fromString(uuid);
+        return parsed.getLeastSignificantBits() == UUID_MARKER ? null : parsed;
+    }
+    
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,97 @@
+package com.furnitureapp.model;
+
+import java.awt.Color;
+
+/**
+ * Immutable record of the editable properties of a furniture item.
+ * Used by the design history to describe an item before and after an edit
+ * without keeping a copy of the whole model.
+ */
+public final class ItemState {
+    /** Approximate heap footprint of one state record, in bytes */
+    static final int ESTIMATED_BYTES = 80;
+    
+    private final String name;
+    private final int x, y, z;
+    private final int width, height, depth;
+    private final int rgb;
+    private final float rotation;
+    private final String material;
+    private final float materialReflectivity;
+    private final float materialRoughness;
+    
+    private ItemState(FurnitureItem item) {
+        this.name = item.getName();
+        this.x = item.getX();
+        this.y = item.getY();
+        this.z = item.getZ();
+        this.width = item.getWidth();
+        this.height = item.getHeight();
+        this.depth = item.getDepth();
+        this.rgb = item.getColor().getRGB();
+        this.rotation = item.getRotation();
+        this.material = item.getMaterial();
+        this.materialReflectivity = item.getMaterialReflectivity();
+        this.materialRoughness = item.getMaterialRoughness();
+    }
+    
+    /**
+     * Captures the current state of a furniture item
+     * @param item the furniture item
+     * @return a state record for the item
+     */
+    public static ItemState of(FurnitureItem item) {
+        return new ItemState(item);
+    }
+    
+    /**
+     * Writes this state back into a furniture item
+     * @param item the furniture item to update
+     */
+    public void applyTo(FurnitureItem item) {
+        item.setName(name);
+        item.setX(x);
+        item.setY(y);
+        item.setZ(z);
+        item.setWidth(width);
+        item.setHeight(height);
+        item.setDepth(depth);
+        if (item.getColor() == null || item.getColor().getRGB() != rgb) {
+            item.setColor(new Color(rgb, true));
+        }
+        item.setRotation(rotation);
+        item.setMaterial(material);
+        item.setMaterialReflectivity(materialReflectivity);
+        item.setMaterialRoughness(materialRoughness);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ItemState)) return false;
+        ItemState other = (ItemState) o;
+        return x == other.x && y == other.y && z == other.z
+                && width == other.width && height == other.height && depth == other.depth
+                && rgb == other.rgb
+                && Float.compare(rotation, other.rotation) == 0
+                && Float.compare(materialReflectivity, other.materialReflectivity) == 0
+                && Float.compare(materialRoughness, other.materialRoughness) == 0
+                && equalStrings(name, other.name)
+                && equalStrings(material, other.material);
+    }
+    
+    @Override
+    public int hashCode() {
+        int result = 31 * x + y;
+        result = 31 * result + z;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + depth;
+        result = 31 * result + rgb;
+        return 31 * result + Float.floatToIntBits(rotation);
+    }
+    
+    private static boolean equalStrings(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
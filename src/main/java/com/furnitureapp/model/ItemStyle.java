@@ -0,0 +1,57 @@
+package com.furnitureapp.model;
+
+import java.util.Objects;
+
+/**
+ * The name and material of an item, which repeat across most items of a
+ * design. Immutable, so a store keeps one shared instance per distinct
+ * combination instead of four values per slot.
+ */
+final class ItemStyle {
+    final String name;
+    final String material;
+    final float reflectivity;
+    final float roughness;
+    
+    ItemStyle(String name, String material, float reflectivity, float roughness) {
+        this.name = name;
+        this.material = material;
+        this.reflectivity = reflectivity;
+        this.roughness = roughness;
+    }
+    
+    ItemStyle withName(String value) {
+        return new ItemStyle(value, material, reflectivity, roughness);
+    }
+    
+    ItemStyle withMaterial(String value) {
+        return new ItemStyle(name, value, reflectivity, roughness);
+    }
+    
+    ItemStyle withReflectivity(float value) {
+        return new ItemStyle(name, material, value, roughness);
+    }
+    
+    ItemStyle withRoughness(float value) {
+        return new ItemStyle(name, material, reflectivity, value);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ItemStyle)) {
+            return false;
+        }
+        ItemStyle other = (ItemStyle) o;
+        return Objects.equals(name, other.name) && Objects.equals(material, other.material)
+                && Float.compare(reflectivity, other.reflectivity) == 0
+                && Float.compare(roughness, other.roughness) == 0;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, material, reflectivity, roughness);
+    }
+}
@@ -0,0 +1,137 @@
+package com.furnitureapp.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * The item views of a live store that are still in use, by slot.
+ * Only views somebody asked for are listed, sorted by slot, so the table
+ * costs nothing per item that has no view. Views are held weakly and
+ * collected ones are purged through a reference queue. When slots shift,
+ * the table moves the views with them, so a view always knows its slot.
+ * Confined to the thread that edits the store, like the store itself.
+ */
+final class ViewTable {
+    private static final class ViewRef extends WeakReference<FurnitureItem> {
+        int slot;
+        
+        ViewRef(FurnitureItem view, int slot, ReferenceQueue<FurnitureItem> queue) {
+            super(view, queue);
+            this.slot = slot;
+        }
+    }
+    
+    private final ReferenceQueue<FurnitureItem> queue = new ReferenceQueue<>();
+    private ViewRef[] refs = new ViewRef[4];
+    private int count = 0;
+    
+    /**
+     * Gets the view of a slot
+     * @param slot the slot
+     * @return the view, or null if there is none or it has been collected
+     */
+    FurnitureItem get(int slot) {
+        int index = indexOf(slot);
+        return index >= 0 ? refs[index].get() : null;
+    }
+    
+    /**
+     * Registers the view of a slot, replacing any previous one
+     * @param slot the slot
+     * @param view the view
+     */
+    void put(int slot, FurnitureItem view) {
+        purge();
+        int index = indexOf(slot);
+        if (index >= 0) {
+            refs[index] = new ViewRef(view, slot, queue);
+            return;
+        }
+        index = -index - 1;
+        if (count == refs.length) {
+            refs = Arrays.copyOf(refs, count * 2);
+        }
+        System.arraycopy(refs, index, refs, index + 1, count - index);
+        refs[index] = new ViewRef(view, slot, queue);
+        count++;
+    }
+    
+    /**
+     * Moves the views of all slots from a given one up by one, after a slot was opened there
+     * @param slot the opened slot
+     */
+    void inserted(int slot) {
+        purge();
+        int index = indexOf(slot);
+        shift(index >= 0 ? index : -index - 1, 1);
+    }
+    
+    /**
+     * Drops the view of a removed slot and moves the views of later slots down by one
+     * @param slot the removed slot
+     */
+    void removed(int slot) {
+        purge();
+        int index = indexOf(slot);
+        if (index >= 0) {
+            removeAt(index);
+        } else {
+            index = -index - 1;
+        }
+        shift(index, -1);
+    }
+    
+    /**
+     * Drops the entries of views that have been collected
+     */
+    void purge() {
+        Reference<? extends FurnitureItem> ref;
+        while ((ref = queue.poll()) != null) {
+            int index = indexOf(((ViewRef) ref).slot);
+            // The slot may have been given a new view since
+            if (index >= 0 && refs[index] == ref) {
+                removeAt(index);
+            }
+        }
+    }
+    
+    private void shift(int from, int delta) {
+        for (int i = from; i < count; i++) {
+            ViewRef ref = refs[i];
+            ref.slot += delta;
+            FurnitureItem view = ref.get();
+            if (view != null) {
+                view.rebind(ref.slot);
+            }
+        }
+    }
+    
+    private void removeAt(int index) {
+        System.arraycopy(refs, index + 1, refs, index, count - index - 1);
+        refs[--count] = null;
+    }
+    
+    /**
+     * Finds the entry of a slot by binary search
+     * @param slot the slot
+     * @return the index of the entry, or (-(insertion point) - 1) if the slot has none
+     */
+    private int indexOf(int slot) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midSlot = refs[mid].slot;
+            if (midSlot < slot) {
+                low = mid + 1;
+            } else if (midSlot > slot) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.furnitureapp.model;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Hands out one canonical instance per distinct value, so stores that hold
+ * many equal values, such as item styles, keep only one copy of each.
+ * Values are held weakly: once no store refers to a value any more, it
+ * drops out of the table, so names read from old designs are not kept for
+ * the life of the process. Thread-safe.
+ * @param <T> the type of the values; must have value-based equals and hashCode
+ */
+final class WeakInterner<T> {
+    // The value side is weak too, since a strong value would keep its own key alive
+    private final WeakHashMap<T, WeakReference<T>> canonical = new WeakHashMap<>();
+    
+    /**
+     * Gets the canonical instance of a value, making the value canonical if it is new
+     * @param value the value to intern (may be null)
+     * @return the canonical instance equal to the value, or null for null
+     */
+    synchronized T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<T> ref = canonical.get(value);
+        T known = ref != null ? ref.get() : null;
+        if (known != null) {
+            return known;
+        }
+        canonical.put(value, new WeakReference<>(value));
+        return value;
+    }
+    
+    /**
+     * Gets the number of distinct values still in use
+     * @return the table size
+     */
+    synchronized int size() {
+        return canonical.size();
+    }
+}
@@ -0,0 +1,144 @@
+package com.furnitureapp.render;
+
+import java.util.Objects;
+
+/**
+ * Picks the rendering hints of a view from how long its frames take.
+ * While the view is in use, a smoothed frame time above the budget steps
+ * the hints down and one well below it steps them up again; a few frames
+ * in a row must agree, so one slow frame does not flip them. Once the view
+ * is idle it gets the best hints, and when it is used again it resumes
+ * from the hints it had adapted to. Thread-safe: frames may be recorded on
+ * a render thread while the event thread reads the hints.
+ */
+public final class AdaptiveQualityController {
+    /** Default frame budget, one frame at 60 Hz */
+    public static final double DEFAULT_BUDGET_MILLIS = 1000.0 / 60;
+    
+    // Weight of the newest frame in the smoothed frame time
+    private static final double SMOOTHING = 0.25;
+    
+    // Frames in a row outside the budget before the hints change
+    private static final int FRAMES_TO_SWITCH = 3;
+    
+    // Hints step up only when frames take less than this part of the budget
+    private static final double STEP_UP_FRACTION = 0.5;
+    
+    private QualityPolicy policy = QualityPolicy.ADAPTIVE;
+    private double budgetMillis = DEFAULT_BUDGET_MILLIS;
+    private RenderHints adapted = RenderHints.QUALITY;
+    private boolean idle = true;
+    private double averageMillis = -1;
+    private int slowFrames;
+    private int fastFrames;
+    private int switches;
+    
+    /**
+     * Gets the hints for the next frame
+     * @return the rendering hints
+     */
+    public synchronized RenderHints getHints() {
+        switch (policy) {
+            case QUALITY:
+                return RenderHints.QUALITY;
+            case SPEED:
+                return RenderHints.SPEED;
+            default:
+                return idle ? RenderHints.QUALITY : adapted;
+        }
+    }
+    
+    /**
+     * Records how long a frame took; frames drawn while the view is idle are not counted
+     * @param nanos the frame time in nanoseconds
+     */
+    public synchronized void recordFrame(long nanos) {
+        if (policy != QualityPolicy.ADAPTIVE || idle) {
+            return;
+        }
+        double millis = nanos / 1e6;
+        averageMillis = averageMillis < 0 ? millis : averageMillis + SMOOTHING * (millis - averageMillis);
+        if (averageMillis > budgetMillis) {
+            fastFrames = 0;
+            if (++slowFrames >= FRAMES_TO_SWITCH && adapted != RenderHints.SPEED) {
+                switchTo(adapted.faster());
+            }
+        } else if (averageMillis < budgetMillis * STEP_UP_FRACTION) {
+            slowFrames = 0;
+            if (++fastFrames >= FRAMES_TO_SWITCH && adapted != RenderHints.QUALITY) {
+                switchTo(adapted.better());
+            }
+        } else {
+            slowFrames = 0;
+            fastFrames = 0;
+        }
+    }
+    
+    /**
+     * Adopts new hints and measures them afresh
+     */
+    private void switchTo(RenderHints hints) {
+        adapted = hints;
+        averageMillis = -1;
+        slowFrames = 0;
+        fastFrames = 0;
+        switches++;
+    }
+    
+    /**
+     * Marks the view as in use, e.g. when a drag starts
+     * @return true if the hints changed
+     */
+    public synchronized boolean wake() {
+        RenderHints before = getHints();
+        idle = false;
+        return getHints() != before;
+    }
+    
+    /**
+     * Marks the view as idle, which switches to the best hints
+     * @return true if the hints changed and the view should be redrawn
+     */
+    public synchronized boolean settle() {
+        RenderHints before = getHints();
+        idle = true;
+        return getHints() != before;
+    }
+    
+    public synchronized QualityPolicy getPolicy() { return policy; }
+    
+    /**
+     * Sets how hints are picked
+     * @param policy the quality policy
+     */
+    public synchronized void setPolicy(QualityPolicy policy) {
+        this.policy = Objects.requireNonNull(policy, "policy");
+    }
+    
+    public synchronized double getFrameBudgetMillis() { return budgetMillis; }
+    
+    /**
+     * Sets the frame time the adaptive policy aims to stay within
+     * @param budgetMillis the frame budget in milliseconds
+     */
+    public synchronized void setFrameBudgetMillis(double budgetMillis) {
+        if (!(budgetMillis > 0)) {
+            throw new IllegalArgumentException("Frame budget must be positive: " + budgetMillis);
+        }
+        this.budgetMillis = budgetMillis;
+        slowFrames = 0;
+        fastFrames = 0;
+    }
+    
+    /**
+     * Gets the smoothed frame time of the current hints
+     * @return the frame time in milliseconds, or -1 before a frame is recorded
+     */
+    public synchronized double getAverageFrameMillis() { return averageMillis; }
+    
+    /**
+     * Gets how often the adaptive policy has changed the hints
+     * @return the number of switches
+     */
+    public synchronized int getSwitches() { return switches; }
+}
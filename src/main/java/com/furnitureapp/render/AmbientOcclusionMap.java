@@ -0,0 +1,395 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ambient occlusion of the floor, baked into a low-resolution texture.
+ * Each texel is darkened by the items around it, depending on its distance
+ * to their footprints and on their heights, so items look like they stand
+ * on the floor. The bake runs in bands of rows on a fork-join pool.
+ *
+ * After the first bake only the area around items that were added, removed
+ * or moved is recomputed. The texture is kept as nested regions of
+ * increasing occlusion, each merged into world-space quads; drawing every
+ * region with the same translucent colour stacks up to the baked darkness.
+ * Not thread-safe; each renderer owns its own map.
+ */
+public final class AmbientOcclusionMap {
+    /** Number of occlusion levels; level k covers the texels at least k steps dark */
+    public static final int LEVELS = 8;
+    
+    // World units per texel, grown so the texture stays small
+    private static final float TEXEL_SIZE = 5;
+    private static final int MAX_MAP_SIZE = 256;
+    private static final int BAND_ROWS = 8;
+    private static final int QUAD_FLOATS = 12;
+    
+    // How far occlusion reaches, relative to the item height, and its maximum reach
+    private static final float REACH = 0.6f;
+    private static final float MAX_REACH = 60;
+    
+    private final ForkJoinPool pool;
+    
+    // Floor rectangle and texture
+    private float floorX0;
+    private float floorZ0;
+    private float floorX1;
+    private float floorZ1;
+    private double texel;
+    private int columns;
+    private int rows;
+    private float[] occlusion = new float[0];
+    private byte[] levels = new byte[0];
+    private byte[] mask = new byte[0];
+    private boolean floorSet;
+    private boolean floorBaked;
+    
+    // Items of the last bake, by id, to find what moved
+    private Map<Long, Integer> previousIndex = new HashMap<>();
+    private float[] previousBoxes = new float[0];
+    private float[] boxes = new float[0];
+    private int count;
+    
+    // Dirty texel rectangle of the current update
+    private int dirtyColumn0;
+    private int dirtyRow0;
+    private int dirtyColumn1;
+    private int dirtyRow1;
+    
+    // Quads of all levels, lowest level first
+    private float[] quads = new float[QUAD_FLOATS * 16];
+    private int quadCount;
+    private final int[] levelStarts = new int[LEVELS + 1];
+    
+    private long fullBakes;
+    private long partialBakes;
+    private long texelsBaked;
+    private long lastBakeNanos;
+    
+    /**
+     * Creates an occlusion map on the common fork-join pool
+     */
+    public AmbientOcclusionMap() {
+        this(ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates an occlusion map
+     * @param pool the pool that bakes the bands of the texture
+     */
+    public AmbientOcclusionMap(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * Sets the floor rectangle, dropping the whole bake if it changed
+     * @param x0 the minimum x
+     * @param z0 the minimum z
+     * @param x1 the maximum x
+     * @param z1 the maximum z
+     */
+    public void setFloor(float x0, float z0, float x1, float z1) {
+        if (floorSet && x0 == floorX0 && z0 == floorZ0 && x1 == floorX1 && z1 == floorZ1) {
+            return;
+        }
+        floorX0 = x0;
+        floorZ0 = z0;
+        floorX1 = x1;
+        floorZ1 = z1;
+        texel = Math.max(TEXEL_SIZE, Math.max(x1 - x0, z1 - z0) / MAX_MAP_SIZE);
+        columns = Math.max(1, (int) Math.ceil((x1 - x0) / texel));
+        rows = Math.max(1, (int) Math.ceil((z1 - z0) / texel));
+        if (levels.length < columns * rows) {
+            occlusion = new float[columns * rows];
+            levels = new byte[columns * rows];
+            mask = new byte[columns * rows];
+        }
+        floorSet = true;
+        floorBaked = false;
+    }
+    
+    /**
+     * Updates the bake for the current items, recomputing only the area
+     * around items that were added, removed or moved since the last update
+     * @param ids the id of each item
+     * @param itemBoxes min x, y, z and max x, y, z of each item; the floor is at y = 0 and y points down
+     * @param itemCount the number of items
+     * @return true if any texel was recomputed
+     */
+    public boolean update(long[] ids, float[] itemBoxes, int itemCount) {
+        long start = System.nanoTime();
+        if (boxes.length < itemCount * 6) {
+            boxes = new float[itemCount * 6];
+        }
+        System.arraycopy(itemBoxes, 0, boxes, 0, itemCount * 6);
+        count = itemCount;
+        
+        // Collect the reach of every item that changed, before and after
+        dirtyColumn0 = columns;
+        dirtyRow0 = rows;
+        dirtyColumn1 = -1;
+        dirtyRow1 = -1;
+        boolean full = !floorBaked;
+        Map<Long, Integer> index = new HashMap<>(itemCount * 2);
+        for (int i = 0; i < itemCount; i++) {
+            index.put(ids[i], i);
+            Integer before = previousIndex.remove(ids[i]);
+            if (full) {
+                continue;
+            }
+            if (before == null) {
+                markDirty(boxes, i);
+            } else if (!sameBox(previousBoxes, before, boxes, i)) {
+                markDirty(previousBoxes, before);
+                markDirty(boxes, i);
+            }
+        }
+        // What is left was removed
+        for (int removed : previousIndex.values()) {
+            markDirty(previousBoxes, removed);
+        }
+        if (full) {
+            dirtyColumn0 = 0;
+            dirtyRow0 = 0;
+            dirtyColumn1 = columns - 1;
+            dirtyRow1 = rows - 1;
+        }
+        previousIndex = index;
+        if (previousBoxes.length < boxes.length) {
+            previousBoxes = new float[boxes.length];
+        }
+        System.arraycopy(boxes, 0, previousBoxes, 0, itemCount * 6);
+        floorBaked = true;
+        
+        if (dirtyColumn1 < dirtyColumn0 || dirtyRow1 < dirtyRow0) {
+            return false;
+        }
+        bake();
+        buildQuads();
+        if (full) {
+            fullBakes++;
+        } else {
+            partialBakes++;
+        }
+        texelsBaked += (long) (dirtyColumn1 - dirtyColumn0 + 1) * (dirtyRow1 - dirtyRow0 + 1);
+        lastBakeNanos = System.nanoTime() - start;
+        return true;
+    }
+    
+    private static boolean sameBox(float[] a, int i, float[] b, int j) {
+        for (int k = 0; k < 6; k++) {
+            if (a[i * 6 + k] != b[j * 6 + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Grows the dirty rectangle by the texels an item can darken
+     * @param source the boxes the item is in
+     * @param i the index of the item
+     */
+    private void markDirty(float[] source, int i) {
+        float reach = reach(source, i);
+        dirtyColumn0 = Math.min(dirtyColumn0, Math.max(0, column(source[i * 6] - reach)));
+        dirtyRow0 = Math.min(dirtyRow0, Math.max(0, row(source[i * 6 + 2] - reach)));
+        dirtyColumn1 = Math.max(dirtyColumn1, Math.min(columns - 1, column(source[i * 6 + 3] + reach)));
+        dirtyRow1 = Math.max(dirtyRow1, Math.min(rows - 1, row(source[i * 6 + 5] + reach)));
+    }
+    
+    private int column(double x) {
+        return (int) Math.floor((x - floorX0) / texel);
+    }
+    
+    private int row(double z) {
+        return (int) Math.floor((z - floorZ0) / texel);
+    }
+    
+    private static float reach(float[] source, int i) {
+        return Math.min(source[i * 6 + 4] - source[i * 6 + 1], MAX_REACH) * REACH;
+    }
+    
+    /**
+     * Recomputes the texels in the dirty rectangle
+     */
+    private void bake() {
+        int bands = (dirtyRow1 - dirtyRow0 + BAND_ROWS) / BAND_ROWS;
+        pool.invoke(new BandTask(0, bands));
+    }
+    
+    /**
+     * Bakes one band of rows of the dirty rectangle
+     * @param band the index of the band
+     */
+    private void bakeBand(int band) {
+        int firstRow = dirtyRow0 + band * BAND_ROWS;
+        int lastRow = Math.min(dirtyRow1, firstRow + BAND_ROWS - 1);
+        double bandZ0 = floorZ0 + firstRow * texel;
+        double bandZ1 = floorZ0 + (lastRow + 1) * texel;
+        double dirtyX0 = floorX0 + dirtyColumn0 * texel;
+        double dirtyX1 = floorX0 + (dirtyColumn1 + 1) * texel;
+        
+        for (int row = firstRow; row <= lastRow; row++) {
+            Arrays.fill(occlusion, row * columns + dirtyColumn0, row * columns + dirtyColumn1 + 1, 0);
+        }
+        for (int i = 0; i < count; i++) {
+            float reach = reach(boxes, i);
+            float x0 = boxes[i * 6], z0 = boxes[i * 6 + 2];
+            float x1 = boxes[i * 6 + 3], z1 = boxes[i * 6 + 5];
+            if (reach <= 0 || x1 + reach < dirtyX0 || x0 - reach > dirtyX1
+                    || z1 + reach < bandZ0 || z0 - reach > bandZ1) {
+                continue;
+            }
+            // Raised items darken the floor less
+            float elevation = Math.max(0, -boxes[i * 6 + 4]);
+            int fromColumn = Math.max(dirtyColumn0, column(x0 - reach));
+            int toColumn = Math.min(dirtyColumn1, column(x1 + reach));
+            int fromRow = Math.max(firstRow, row(z0 - reach));
+            int toRow = Math.min(lastRow, row(z1 + reach));
+            for (int row = fromRow; row <= toRow; row++) {
+                double z = floorZ0 + (row + 0.5) * texel;
+                double dz = Math.max(0, Math.max(z0 - z, z - z1));
+                for (int column = fromColumn; column <= toColumn; column++) {
+                    double x = floorX0 + (column + 0.5) * texel;
+                    double dx = Math.max(0, Math.max(x0 - x, x - x1));
+                    double distance = Math.sqrt(dx * dx + dz * dz + elevation * elevation);
+                    if (distance >= reach) {
+                        continue;
+                    }
+                    double amount = 1 - distance / reach;
+                    
+                    // Occlusion from several items combines like independent coverage
+                    int texelIndex = row * columns + column;
+                    occlusion[texelIndex] = (float) (1 - (1 - occlusion[texelIndex]) * (1 - amount * amount));
+                }
+            }
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = dirtyColumn0; column <= dirtyColumn1; column++) {
+                int texelIndex = row * columns + column;
+                levels[texelIndex] = (byte) Math.round(occlusion[texelIndex] * LEVELS);
+            }
+        }
+    }
+    
+    /**
+     * Merges the texels of each level into quads on the floor
+     */
+    private void buildQuads() {
+        quadCount = 0;
+        int texels = columns * rows;
+        for (int level = 1; level <= LEVELS; level++) {
+            levelStarts[level - 1] = quadCount;
+            for (int i = 0; i < texels; i++) {
+                mask[i] = (byte) (levels[i] >= level ? 1 : 0);
+            }
+            TexelRectangles.merge(mask, columns, rows, this::addQuad);
+        }
+        levelStarts[LEVELS] = quadCount;
+    }
+    
+    private void addQuad(int column, int row, int endColumn, int endRow) {
+        if ((quadCount + 1) * QUAD_FLOATS > quads.length) {
+            quads = Arrays.copyOf(quads, quads.length * 2);
+        }
+        float x0 = (float) (floorX0 + column * texel);
+        float x1 = (float) Math.min(floorX1, floorX0 + endColumn * texel);
+        float z0 = (float) (floorZ0 + row * texel);
+        float z1 = (float) Math.min(floorZ1, floorZ0 + endRow * texel);
+        int i = quadCount * QUAD_FLOATS;
+        for (int corner = 0; corner < 4; corner++) {
+            quads[i++] = corner == 1 || corner == 2 ? x1 : x0;
+            quads[i++] = 0;
+            quads[i++] = corner >= 2 ? z1 : z0;
+        }
+        quadCount++;
+    }
+    
+    /**
+     * Adds the quads of all levels to a vertex buffer, lowest level first, four vertices per quad
+     * @param vertices the vertex buffer
+     * @param lift how far above the floor to place the quads
+     * @return the index of the first vertex added
+     */
+    public int addQuads(VertexBuffer vertices, float lift) {
+        int base = vertices.size();
+        vertices.ensureCapacity(base + quadCount * 4);
+        for (int q = 0; q < quadCount; q++) {
+            for (int corner = 0; corner < 4; corner++) {
+                int i = q * QUAD_FLOATS + corner * 3;
+                vertices.add(quads[i], quads[i + 1] - lift, quads[i + 2]);
+            }
+        }
+        return base;
+    }
+    
+    /**
+     * Gets the first quad of a level, as added by addQuads
+     * @param level the level, from 1 to LEVELS; LEVELS + 1 gives the total quad count
+     * @return the index of the level's first quad
+     */
+    public int getLevelStart(int level) { return levelStarts[level - 1]; }
+    
+    public int getQuadCount() { return quadCount; }
+    
+    /**
+     * Gets how often the whole floor was baked
+     * @return the number of full bakes
+     */
+    public long getFullBakes() { return fullBakes; }
+    
+    /**
+     * Gets how often only the area around changed items was baked
+     * @return the number of partial bakes
+     */
+    public long getPartialBakes() { return partialBakes; }
+    
+    /**
+     * Gets the number of texels baked over all updates
+     * @return the texel count
+     */
+    public long getTexelsBaked() { return texelsBaked; }
+    
+    /**
+     * Gets how long the last bake took
+     * @return the duration in milliseconds
+     */
+    public double getLastBakeMillis() { return lastBakeNanos / 1e6; }
+    
+    @Override
+    public String toString() {
+        return String.format("%dx%d texels, %d quads, %d full / %d partial bakes, %d texels baked, last %.1f ms",
+                columns, rows, quadCount, fullBakes, partialBakes, texelsBaked, getLastBakeMillis());
+    }
+    
+    /**
+     * Bakes a range of bands, splitting the range across the pool
+     */
+    private final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        
+        BandTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int i = from; i < to; i++) {
+                    bakeBand(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(from, middle), new BandTask(middle, to));
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over axis-aligned boxes.
+ * Nodes are stored in flat arrays and built top-down by splitting each
+ * node's boxes at the median of its longest axis. Frustum queries skip
+ * whole subtrees that are outside the frustum and stop testing subtrees
+ * that are completely inside it. Ray queries visit the boxes a ray passes
+ * through; they only read the hierarchy, so several threads may trace rays
+ * through it at once.
+ */
+public final class BoundingVolumeHierarchy {
+    private static final int LEAF_SIZE = 4;
+    
+    /**
+     * Tests a ray against the contents of a box it passes through
+     */
+    public interface RayVisitor {
+        /**
+         * Tests the contents of a box
+         * @param box the index of the box
+         * @param nearest the distance along the ray of the nearest hit so far
+         * @return the distance of the nearest hit including this box, or 0 to end the query
+         */
+        float visit(int box, float nearest);
+    }
+    
+    // Input boxes, six floats per box: min x, y, z, then max x, y, z
+    private float[] boxes = new float[0];
+    private int boxCount = 0;
+    
+    // Box indices, permuted so every node covers a contiguous range
+    private int[] order = new int[0];
+    
+    // Nodes: bounds, and either two children (internal) or a range of order (leaf)
+    private float[] nodeBounds = new float[0];
+    private int[] nodeStart = new int[0];
+    private int[] nodeEnd = new int[0];
+    private int[] nodeLeft = new int[0];
+    private int[] nodeRight = new int[0];
+    private int nodeCount = 0;
+    private int depth = 0;
+    
+    // Scratch stack for queries; queries run on the thread that owns the hierarchy
+    private int[] stack = new int[64];
+    private float[] centers = new float[0];
+    private int nodesVisited = 0;
+    
+    /**
+     * Rebuilds the hierarchy
+     * @param bounds six floats per box: min x, y, z, then max x, y, z (copied)
+     * @param count the number of boxes
+     */
+    public void build(float[] bounds, int count) {
+        if (boxes.length < count * 6) {
+            boxes = new float[count * 6];
+            order = new int[count];
+            centers = new float[count];
+            int maxNodes = Math.max(1, 2 * count);
+            nodeBounds = new float[maxNodes * 6];
+            nodeStart = new int[maxNodes];
+            nodeEnd = new int[maxNodes];
+            nodeLeft = new int[maxNodes];
+            nodeRight = new int[maxNodes];
+        }
+        System.arraycopy(bounds, 0, boxes, 0, count * 6);
+        boxCount = count;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        nodeCount = 0;
+        depth = 0;
+        if (count > 0) {
+            buildNode(0, count, 1);
+        }
+    }
+    
+    /**
+     * Builds the node covering a range of the order array
+     * @return the node index
+     */
+    private int buildNode(int start, int end, int level) {
+        int node = nodeCount++;
+        depth = Math.max(depth, level);
+        int b = node * 6;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            int box = order[i] * 6;
+            minX = Math.min(minX, boxes[box]);
+            minY = Math.min(minY, boxes[box + 1]);
+            minZ = Math.min(minZ, boxes[box + 2]);
+            maxX = Math.max(maxX, boxes[box + 3]);
+            maxY = Math.max(maxY, boxes[box + 4]);
+            maxZ = Math.max(maxZ, boxes[box + 5]);
+        }
+        nodeBounds[b] = minX;
+        nodeBounds[b + 1] = minY;
+        nodeBounds[b + 2] = minZ;
+        nodeBounds[b + 3] = maxX;
+        nodeBounds[b + 4] = maxY;
+        nodeBounds[b + 5] = maxZ;
+        nodeStart[node] = start;
+        nodeEnd[node] = end;
+        nodeLeft[node] = -1;
+        if (end - start <= LEAF_SIZE) {
+            return node;
+        }
+        
+        // Split at the median centre along the longest axis
+        float extentX = maxX - minX, extentY = maxY - minY, extentZ = maxZ - minZ;
+        int axis = extentX >= extentY && extentX >= extentZ ? 0 : (extentY >= extentZ ? 1 : 2);
+        for (int i = start; i < end; i++) {
+            int box = order[i] * 6;
+            centers[i] = boxes[box + axis] + boxes[box + 3 + axis];
+        }
+        int middle = (start + end) >>> 1;
+        select(start, end - 1, middle);
+        
+        nodeLeft[node] = buildNode(start, middle, level + 1);
+        nodeRight[node] = buildNode(middle, end, level + 1);
+        return node;
+    }
+    
+    /**
+     * Partially sorts order[from..to] by centre so that position k holds the
+     * median and everything before it is not larger (quickselect)
+     */
+    private void select(int from, int to, int k) {
+        while (from < to) {
+            float pivot = centers[(from + to) >>> 1];
+            int i = from, j = to;
+            while (i <= j) {
+                while (centers[i] < pivot) i++;
+                while (centers[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                to = j;
+            } else if (k >= i) {
+                from = i;
+            } else {
+                return;
+            }
+        }
+    }
+    
+    private void swap(int i, int j) {
+        int o = order[i]; order[i] = order[j]; order[j] = o;
+        float c = centers[i]; centers[i] = centers[j]; centers[j] = c;
+    }
+    
+    /**
+     * Finds the boxes that are at least partly inside a frustum
+     * @param frustum the frustum
+     * @param result receives the indices of the visible boxes; must hold at least {@link #size()} entries
+     * @return the number of visible boxes
+     */
+    public int queryVisible(Frustum frustum, int[] result) {
+        nodesVisited = 0;
+        if (nodeCount == 0) {
+            return 0;
+        }
+        int count = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            nodesVisited++;
+            int b = node * 6;
+            int side = frustum.classify(nodeBounds[b], nodeBounds[b + 1], nodeBounds[b + 2],
+                    nodeBounds[b + 3], nodeBounds[b + 4], nodeBounds[b + 5]);
+            if (side == Frustum.OUTSIDE) {
+                continue;
+            }
+            int left = nodeLeft[node];
+            if (side == Frustum.INSIDE || left < 0) {
+                // Everything below is visible, or this is a leaf whose boxes are tested one by one
+                for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                    int box = order[i];
+                    int bb = box * 6;
+                    if (side == Frustum.INSIDE || frustum.classify(boxes[bb], boxes[bb + 1], boxes[bb + 2],
+                            boxes[bb + 3], boxes[bb + 4], boxes[bb + 5]) != Frustum.OUTSIDE) {
+                        result[count++] = box;
+                    }
+                }
+                continue;
+            }
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[top++] = nodeRight[node];
+            stack[top++] = left;
+        }
+        return count;
+    }
+    
+    /**
+     * Visits the boxes a ray passes through, skipping subtrees that start
+     * beyond the nearest hit found so far
+     * @param originX the x of the ray origin
+     * @param originY the y of the ray origin
+     * @param originZ the z of the ray origin
+     * @param directionX the x of the ray direction
+     * @param directionY the y of the ray direction
+     * @param directionZ the z of the ray direction
+     * @param maxDistance the distance along the ray beyond which hits do not count
+     * @param stack scratch space of the calling thread; must hold at least {@link #getDepth()} entries
+     * @param visitor tests the contents of each box the ray passes through
+     * @return the distance of the nearest hit, maxDistance if nothing was hit, or 0 if the visitor ended the query
+     */
+    public float traceRay(float originX, float originY, float originZ,
+                          float directionX, float directionY, float directionZ,
+                          float maxDistance, int[] stack, RayVisitor visitor) {
+        if (nodeCount == 0) {
+            return maxDistance;
+        }
+        float inverseX = 1 / directionX;
+        float inverseY = 1 / directionY;
+        float inverseZ = 1 / directionZ;
+        float nearest = maxDistance;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (entryDistance(nodeBounds, node * 6, originX, originY, originZ, inverseX, inverseY, inverseZ)
+                    > nearest) {
+                continue;
+            }
+            int left = nodeLeft[node];
+            if (left >= 0) {
+                stack[top++] = nodeRight[node];
+                stack[top++] = left;
+                continue;
+            }
+            for (int i = nodeStart[node]; i < nodeEnd[node]; i++) {
+                int box = order[i];
+                if (entryDistance(boxes, box * 6, originX, originY, originZ, inverseX, inverseY, inverseZ)
+                        <= nearest) {
+                    nearest = visitor.visit(box, nearest);
+                    if (nearest <= 0) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+    
+    /**
+     * Gets the distance at which a ray enters a box (slab test)
+     * @return the entry distance, 0 if the origin is inside, or infinity if the ray misses the box
+     */
+    private static float entryDistance(float[] bounds, int b, float originX, float originY, float originZ,
+                                       float inverseX, float inverseY, float inverseZ) {
+        float near = 0;
+        float far = Float.POSITIVE_INFINITY;
+        float t0 = (bounds[b] - originX) * inverseX;
+        float t1 = (bounds[b + 3] - originX) * inverseX;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+        t0 = (bounds[b + 1] - originY) * inverseY;
+        t1 = (bounds[b + 4] - originY) * inverseY;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+        t0 = (bounds[b + 2] - originZ) * inverseZ;
+        t1 = (bounds[b + 5] - originZ) * inverseZ;
+        near = Math.max(near, Math.min(t0, t1));
+        far = Math.min(far, Math.max(t0, t1));
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Gets the number of boxes in the hierarchy
+     * @return the box count
+     */
+    public int size() { return boxCount; }
+    
+    /**
+     * Gets the number of nodes the last query visited
+     * @return the visited node count
+     */
+    public int getNodesVisited() { return nodesVisited; }
+    
+    /**
+     * Gets the number of levels of the hierarchy, the stack size a ray query needs
+     * @return the depth of the deepest leaf
+     */
+    public int getDepth() { return depth; }
+}
@@ -0,0 +1,63 @@
+package com.furnitureapp.render;
+
+/**
+ * Per-frame counts of what the culling stage kept and rejected
+ */
+public final class CullingStats {
+    private int itemsVisible;
+    private int itemsCulled;
+    private int facesDrawn;
+    private int facesCulled;
+    private int nodesVisited;
+    
+    /**
+     * Clears the counts at the start of a frame
+     */
+    public void reset() {
+        itemsVisible = 0;
+        itemsCulled = 0;
+        facesDrawn = 0;
+        facesCulled = 0;
+        nodesVisited = 0;
+    }
+    
+    /**
+     * Records the result of the frustum test for the items
+     * @param visible the number of items at least partly inside the frustum
+     * @param total the number of items in the scene
+     * @param nodesVisited the number of hierarchy nodes the query visited
+     */
+    public void recordItems(int visible, int total, int nodesVisited) {
+        this.itemsVisible += visible;
+        this.itemsCulled += total - visible;
+        this.nodesVisited += nodesVisited;
+    }
+    
+    /**
+     * Records the result of the back-face test for one face
+     * @param drawn whether the face was drawn
+     */
+    public void recordFace(boolean drawn) {
+        if (drawn) {
+            facesDrawn++;
+        } else {
+            facesCulled++;
+        }
+    }
+    
+    public int getItemsVisible() { return itemsVisible; }
+    
+    public int getItemsCulled() { return itemsCulled; }
+    
+    public int getFacesDrawn() { return facesDrawn; }
+    
+    public int getFacesCulled() { return facesCulled; }
+    
+    public int getNodesVisited() { return nodesVisited; }
+    
+    @Override
+    public String toString() {
+        return "items " + itemsVisible + " visible / " + itemsCulled + " culled, faces "
+                + facesDrawn + " drawn / " + facesCulled + " culled";
+    }
+}
@@ -0,0 +1,153 @@
+package com.furnitureapp.render;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Renders the reflection of the scene in the floor at reduced resolution.
+ * Mirrored geometry is drawn into one layer per roughness range; each layer
+ * is blurred by its own radius, so glossy items reflect sharply and rough
+ * ones only as a haze, and the layers are then composited into the target.
+ * Callers usually cache the target with a {@link LayerCache}.
+ * Not thread-safe; each renderer owns its own reflection.
+ */
+public final class FloorReflection {
+    /** Resolution of the reflection relative to the frame */
+    public static final double SCALE = 0.5;
+    
+    // Blur radius in reflection pixels of each roughness range, from glossy to rough
+    private static final int[] BLUR_RADII = {0, 2, 5};
+    private static final int BLUR_PASSES = 2;
+    
+    /**
+     * Draws the mirrored geometry
+     */
+    public interface Painter {
+        /**
+         * Draws the mirrored geometry into the layers of the reflection
+         * @param reflection the reflection, whose layers are set up for drawing
+         */
+        void paint(FloorReflection reflection);
+    }
+    
+    private final BufferedImage[] layers = new BufferedImage[BLUR_RADII.length];
+    private final Graphics2D[] graphics = new Graphics2D[BLUR_RADII.length];
+    private int[] scratch = new int[0];
+    
+    /**
+     * Renders the reflection
+     * @param target the graphics to composite the reflection into, at reflection resolution
+     * @param width the width of the reflection in pixels
+     * @param height the height of the reflection in pixels
+     * @param painter draws the mirrored geometry in frame coordinates
+     */
+    public void render(Graphics2D target, int width, int height, Painter painter) {
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i] == null || layers[i].getWidth() != width || layers[i].getHeight() != height) {
+                // Premultiplied, so blurring spreads colour and coverage together
+                layers[i] = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            }
+            Graphics2D g2d = layers[i].createGraphics();
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, width, height);
+            
+            // Nearer faces replace farther ones, so overlapping faces do not stack their translucency
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g2d.scale(SCALE, SCALE);
+            graphics[i] = g2d;
+        }
+        try {
+            painter.paint(this);
+        } finally {
+            for (int i = 0; i < graphics.length; i++) {
+                graphics[i].dispose();
+                graphics[i] = null;
+            }
+        }
+        
+        for (int i = 0; i < layers.length; i++) {
+            if (BLUR_RADII[i] > 0) {
+                blur(layers[i], BLUR_RADII[i]);
+            }
+            target.drawImage(layers[i], 0, 0, null);
+        }
+    }
+    
+    /**
+     * Gets the graphics of the layer for a roughness; valid only while the painter runs
+     * @param roughness the roughness of the reflected material, from 0 (mirror) to 1
+     * @return the graphics of the layer, in frame coordinates
+     */
+    public Graphics2D getGraphics(float roughness) {
+        int layer = (int) (Math.max(0, Math.min(1, roughness)) * layers.length);
+        return graphics[Math.min(layers.length - 1, layer)];
+    }
+    
+    /**
+     * Blurs an image in place with repeated horizontal and vertical box blurs
+     * @param image the premultiplied image
+     * @param radius the blur radius in pixels
+     */
+    private void blur(BufferedImage image, int radius) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        if (scratch.length < pixels.length) {
+            scratch = new int[pixels.length];
+        }
+        for (int pass = 0; pass < BLUR_PASSES; pass++) {
+            for (int y = 0; y < height; y++) {
+                boxBlur(pixels, scratch, y * width, 1, width, radius);
+            }
+            for (int x = 0; x < width; x++) {
+                boxBlur(scratch, pixels, x, width, height, radius);
+            }
+        }
+    }
+    
+    /**
+     * Box-blurs one row or column of packed pixels with a running sum per channel
+     * @param from the source pixels
+     * @param to the destination pixels
+     * @param start the index of the first pixel of the line
+     * @param stride the distance between neighbouring pixels of the line
+     * @param length the number of pixels in the line
+     * @param radius the blur radius
+     */
+    private static void boxBlur(int[] from, int[] to, int start, int stride, int length, int radius) {
+        int window = radius * 2 + 1;
+        int a = 0, r = 0, g = 0, b = 0;
+        
+        // Pixels beyond the ends count as transparent
+        for (int i = 0; i < Math.min(radius, length); i++) {
+            int p = from[start + i * stride];
+            a += p >>> 24;
+            r += (p >> 16) & 0xFF;
+            g += (p >> 8) & 0xFF;
+            b += p & 0xFF;
+        }
+        for (int i = 0; i < length; i++) {
+            int enter = i + radius;
+            if (enter < length) {
+                int p = from[start + enter * stride];
+                a += p >>> 24;
+                r += (p >> 16) & 0xFF;
+                g += (p >> 8) & 0xFF;
+                b += p & 0xFF;
+            }
+            to[start + i * stride] = (a / window) << 24 | (r / window) << 16 | (g / window) << 8 | b / window;
+            int leave = i - radius;
+            if (leave >= 0) {
+                int p = from[start + leave * stride];
+                a -= p >>> 24;
+                r -= (p >> 16) & 0xFF;
+                g -= (p >> 8) & 0xFF;
+                b -= p & 0xFF;
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.furnitureapp.render;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the repaints of a component. Any number of invalidations between
+ * two frames result in a single repaint, and repaints are spaced at least
+ * one frame interval apart so bursts of model events or mouse motion cannot
+ * paint faster than the frame rate cap. The time each paint takes is
+ * recorded in frame statistics.
+ */
+public final class FrameScheduler {
+    /** The default frame rate cap */
+    public static final int DEFAULT_MAX_FPS = 60;
+    
+    private static final int STATS_WINDOW = 240;
+    
+    private final JComponent component;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final Timer timer;
+    private final FrameStats stats = new FrameStats(STATS_WINDOW);
+    private volatile long frameIntervalNanos;
+    private long lastFrameStart;
+    private long frameStart;
+    private final AtomicLong coalesced = new AtomicLong();
+    
+    /**
+     * Creates a frame scheduler
+     * @param component the component to repaint
+     */
+    public FrameScheduler(JComponent component) {
+        this.component = component;
+        this.timer = new Timer(0, e -> component.repaint());
+        timer.setRepeats(false);
+        setMaxFps(DEFAULT_MAX_FPS);
+    }
+    
+    /**
+     * Sets the frame rate cap
+     * @param maxFps the highest number of frames per second
+     */
+    public void setMaxFps(int maxFps) {
+        frameIntervalNanos = 1_000_000_000L / Math.max(1, maxFps);
+    }
+    
+    /**
+     * Marks the component as needing a new frame. Safe to call from any thread.
+     */
+    public void invalidate() {
+        if (!pending.compareAndSet(false, true)) {
+            coalesced.incrementAndGet();
+            return;
+        }
+        if (SwingUtilities.isEventDispatchThread()) {
+            schedule();
+        } else {
+            SwingUtilities.invokeLater(this::schedule);
+        }
+    }
+    
+    /**
+     * Repaints now if the last frame is at least one frame interval ago,
+     * otherwise when the interval has passed
+     */
+    private void schedule() {
+        long wait = lastFrameStart + frameIntervalNanos - System.nanoTime();
+        if (wait <= 0) {
+            component.repaint();
+        } else {
+            timer.setInitialDelay((int) Math.max(1, wait / 1_000_000));
+            timer.restart();
+        }
+    }
+    
+    /**
+     * Called by the component when it starts painting a frame
+     */
+    public void beginFrame() {
+        pending.set(false);
+        frameStart = System.nanoTime();
+        lastFrameStart = frameStart;
+    }
+    
+    /**
+     * Called by the component when it has finished painting a frame
+     */
+    public void endFrame() {
+        stats.record(frameStart, System.nanoTime() - frameStart);
+    }
+    
+    /**
+     * Gets the timings of the recent frames
+     * @return the frame statistics
+     */
+    public FrameStats getStats() {
+        return stats;
+    }
+    
+    /**
+     * Gets the number of invalidations merged into an already pending frame
+     * @return the number of coalesced invalidations
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,86 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Records the durations of the most recent frames and reports frame-time
+ * percentiles and the frame rate over them. Safe to record from one thread
+ * and read from another.
+ */
+public final class FrameStats {
+    private static final long SECOND_NANOS = 1_000_000_000L;
+    
+    // Ring buffers of frame start times and durations
+    private final long[] starts;
+    private final long[] durations;
+    private int next;
+    private int count;
+    private long totalFrames;
+    
+    /**
+     * Creates frame statistics
+     * @param window the number of recent frames the statistics cover
+     */
+    public FrameStats(int window) {
+        starts = new long[window];
+        durations = new long[window];
+    }
+    
+    /**
+     * Records a frame
+     * @param startNanos the System.nanoTime() at which the frame started
+     * @param durationNanos how long the frame took
+     */
+    public synchronized void record(long startNanos, long durationNanos) {
+        starts[next] = startNanos;
+        durations[next] = durationNanos;
+        next = (next + 1) % durations.length;
+        count = Math.min(count + 1, durations.length);
+        totalFrames++;
+    }
+    
+    /**
+     * Gets a frame-time percentile over the recent frames
+     * @param percentile the percentile, for example 50, 95 or 99
+     * @return the frame time in milliseconds, or 0 before the first frame
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(durations, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+    }
+    
+    /**
+     * Gets the number of frames started in the last second
+     * @return the current frame rate
+     */
+    public synchronized int getFramesPerSecond() {
+        long since = System.nanoTime() - SECOND_NANOS;
+        int frames = 0;
+        for (int i = 0; i < count; i++) {
+            if (starts[i] - since > 0) {
+                frames++;
+            }
+        }
+        return frames;
+    }
+    
+    /**
+     * Gets the number of frames recorded so far
+     * @return the total number of frames
+     */
+    public synchronized long getTotalFrames() {
+        return totalFrames;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, %d fps",
+                getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99),
+                getFramesPerSecond());
+    }
+}
@@ -0,0 +1,43 @@
+package com.furnitureapp.render;
+
+/**
+ * View frustum as five world-space planes: the near plane and the four
+ * planes through the eye and the edges of the viewport.
+ * A point is inside when it is on the positive side of every plane.
+ * Frustums are filled in by {@link ViewProjection#computeFrustum}.
+ */
+public final class Frustum {
+    /** The box is completely outside the frustum */
+    public static final int OUTSIDE = 0;
+    /** The box crosses at least one plane */
+    public static final int INTERSECTS = 1;
+    /** The box is completely inside the frustum */
+    public static final int INSIDE = 2;
+    
+    static final int PLANES = 5;
+    
+    // a, b, c, d for each plane: a*x + b*y + c*z + d >= 0 inside
+    final double[] planes = new double[PLANES * 4];
+    
+    /**
+     * Classifies an axis-aligned box against the frustum.
+     * For each plane only the corner furthest along the plane normal (and
+     * the one furthest against it) is tested.
+     * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}
+     */
+    public int classify(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = INSIDE;
+        for (int i = 0; i < PLANES * 4; i += 4) {
+            double a = planes[i], b = planes[i + 1], c = planes[i + 2], d = planes[i + 3];
+            double nearest = a * (a >= 0 ? maxX : minX) + b * (b >= 0 ? maxY : minY) + c * (c >= 0 ? maxZ : minZ) + d;
+            if (nearest < 0) {
+                return OUTSIDE;
+            }
+            double furthest = a * (a >= 0 ? minX : maxX) + b * (b >= 0 ? minY : maxY) + c * (c >= 0 ? minZ : maxZ) + d;
+            if (furthest < 0) {
+                result = INTERSECTS;
+            }
+        }
+        return result;
+    }
+}
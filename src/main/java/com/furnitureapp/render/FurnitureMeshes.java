@@ -0,0 +1,142 @@
+package com.furnitureapp.render;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the meshes of the furniture types out of boxes in unit space.
+ * Proportions are relative to the item's bounds, so one mesh fits every
+ * size of its type. Types without a model of their own are plain boxes.
+ * A model file named after the type in the models directory, such as
+ * {@code models/Chair.obj}, replaces the built-in mesh.
+ */
+final class FurnitureMeshes {
+    private static final Logger LOGGER = Logger.getLogger(FurnitureMeshes.class.getName());
+    
+    /** Directory of imported models, relative to the working directory */
+    static final String MODELS_DIRECTORY = "models";
+    private static final String[] MODEL_EXTENSIONS = {".obj", ".ply"};
+    
+    // Thickness of legs, panels and boards relative to the item's size
+    private static final float LEG = 0.08f;
+    private static final float PANEL = 0.05f;
+    
+    private FurnitureMeshes() {
+    }
+    
+    /**
+     * Creates the mesh of a furniture type
+     * @param type the furniture type, as used for item names
+     * @return the mesh
+     */
+    static Mesh create(String type) {
+        Mesh imported = importModel(type);
+        if (imported != null) {
+            return imported;
+        }
+        Mesh.Builder mesh = new Mesh.Builder(type);
+        switch (type) {
+            case "Dining Table":
+                return table(mesh, 0.9f);
+            case "Coffee Table":
+                return table(mesh, 0.8f);
+            case "Chair":
+                legs(mesh, 0.45f);
+                mesh.addBox(0, 0.45f, 0, 1, 0.55f, 1);
+                return mesh.addBox(0, 0.55f, 0, 1, 1, 0.12f).build();
+            case "Sofa":
+                mesh.addBox(0, 0, 0, 1, 1, 0.3f);
+                mesh.addBox(0, 0, 0.3f, 0.15f, 0.65f, 1);
+                mesh.addBox(0.85f, 0, 0.3f, 1, 0.65f, 1);
+                return mesh.addBox(0.15f, 0, 0.3f, 0.85f, 0.45f, 1).build();
+            case "Bed":
+                mesh.addBox(0, 0, 0, 1, 1, PANEL);
+                mesh.addBox(0, 0, PANEL, 1, 0.35f, 1);
+                mesh.addBox(0.03f, 0.35f, PANEL, 0.97f, 0.55f, 0.99f);
+                return mesh.addBox(0.15f, 0.55f, 0.08f, 0.85f, 0.65f, 0.25f).build();
+            case "Wardrobe":
+                mesh.addBox(0.02f, 0, 0.02f, 0.98f, PANEL, 0.98f);
+                mesh.addBox(0, PANEL, 0, 0.495f, 1, 1);
+                return mesh.addBox(0.505f, PANEL, 0, 1, 1, 1).build();
+            case "Bookshelf":
+                mesh.addBox(0, 0, 0, 1, 1, PANEL);
+                mesh.addBox(0, 0, PANEL, PANEL, 1, 1);
+                mesh.addBox(1 - PANEL, 0, PANEL, 1, 1, 1);
+                for (int shelf = 0; shelf < 5; shelf++) {
+                    float y = shelf * (1 - PANEL) / 4;
+                    mesh.addBox(PANEL, y, PANEL, 1 - PANEL, y + PANEL, 1);
+                }
+                return mesh.build();
+            case "Desk":
+                mesh.addBox(0, 0.92f, 0, 1, 1, 1);
+                mesh.addBox(0, 0, 0, PANEL, 0.92f, 1);
+                mesh.addBox(1 - PANEL, 0, 0, 1, 0.92f, 1);
+                return mesh.addBox(PANEL, 0.4f, 0, 1 - PANEL, 0.92f, PANEL).build();
+            case "Cabinet":
+                mesh.addBox(0.03f, 0, 0.03f, 0.97f, PANEL, 0.97f);
+                mesh.addBox(0, PANEL, 0, 1, 0.95f, 0.97f);
+                return mesh.addBox(0, 0.95f, 0, 1, 1, 1).build();
+            case "Lamp":
+                mesh.addBox(0.25f, 0, 0.25f, 0.75f, PANEL, 0.75f);
+                mesh.addBox(0.46f, PANEL, 0.46f, 0.54f, 0.7f, 0.54f);
+                return mesh.addBox(0.1f, 0.7f, 0.1f, 0.9f, 1, 0.9f).build();
+            default:
+                return Mesh.BOX;
+        }
+    }
+    
+    /**
+     * Imports the model file of a furniture type, if there is one
+     * @param type the furniture type
+     * @return the imported mesh, or null to use the built-in one
+     */
+    private static Mesh importModel(String type) {
+        if (type.isEmpty() || type.indexOf('/') >= 0 || type.indexOf('\\') >= 0 || type.startsWith(".")) {
+            return null;
+        }
+        for (String extension : MODEL_EXTENSIONS) {
+            Path path = Paths.get(MODELS_DIRECTORY, type + extension);
+            if (!Files.isRegularFile(path)) {
+                continue;
+            }
+            try {
+                long start = System.nanoTime();
+                Mesh mesh = MeshImporter.load(path, type);
+                LOGGER.info(String.format("Imported %s in %d ms: %s", path,
+                        (System.nanoTime() - start) / 1_000_000, mesh));
+                return mesh;
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to import model " + path + ": " + e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Builds a table: four legs under a top
+     * @param mesh the builder
+     * @param legHeight the height of the legs, where the top starts
+     * @return the mesh
+     */
+    private static Mesh table(Mesh.Builder mesh, float legHeight) {
+        legs(mesh, legHeight);
+        return mesh.addBox(0, legHeight, 0, 1, 1, 1).build();
+    }
+    
+    /**
+     * Adds four legs in the corners
+     * @param mesh the builder
+     * @param height the height of the legs
+     */
+    private static void legs(Mesh.Builder mesh, float height) {
+        for (int corner = 0; corner < 4; corner++) {
+            float x = (corner & 1) == 0 ? 0 : 1 - LEG;
+            float z = (corner & 2) == 0 ? 0 : 1 - LEG;
+            mesh.addBox(x, 0, z, x + LEG, height, z + LEG);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.furnitureapp.render;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches a static scene layer, such as the room shell or the floor grid,
+ * as an off-screen image. The layer is redrawn only when its size or one
+ * of its key parts changes; every redraw is counted under the name of the
+ * first key part that changed, so hit rates and invalidation causes can be
+ * measured.
+ */
+public final class LayerCache {
+    
+    /**
+     * Draws the content of a layer
+     */
+    public interface Painter {
+        /**
+         * Draws the layer
+         * @param g2d the graphics of the layer image
+         */
+        void paint(Graphics2D g2d);
+    }
+    
+    /** Invalidation cause when the layer is drawn for the first time, or again after a draw failed */
+    public static final String FIRST_USE = "first use";
+    /** Invalidation cause when the layer image changes size */
+    public static final String SIZE = "size";
+    
+    private final boolean translucent;
+    private final String[] partNames;
+    private final Map<String, Long> invalidations = new LinkedHashMap<>();
+    private BufferedImage image;
+    private Object[] key;
+    private long hits;
+    private long misses;
+    
+    /**
+     * Creates a layer cache
+     * @param translucent whether the layer has transparent areas to composite over other layers
+     * @param partNames the names of the key parts, used to report invalidation causes
+     */
+    public LayerCache(boolean translucent, String... partNames) {
+        this.translucent = translucent;
+        this.partNames = partNames.clone();
+    }
+    
+    /**
+     * Gets the layer image, redrawing it if the size or key changed
+     * @param width the width of the layer
+     * @param height the height of the layer
+     * @param key the key parts the layer depends on, compared with equals; one per part name
+     * @param painter draws the layer if it has to be redrawn
+     * @return the layer image
+     * @throws IllegalArgumentException if the key does not have one entry per part name
+     */
+    public synchronized BufferedImage get(int width, int height, Object[] key, Painter painter) {
+        if (key.length != partNames.length) {
+            throw new IllegalArgumentException("Layer key has " + key.length + " parts, expected "
+                    + partNames.length + " " + Arrays.toString(partNames));
+        }
+        String cause = findCause(width, height, key);
+        if (cause == null) {
+            hits++;
+            return image;
+        }
+        misses++;
+        invalidations.merge(cause, 1L, Long::sum);
+        
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height,
+                    translucent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        }
+        // Until the painter returns, the image matches no key, so a painter
+        // that throws leaves the layer to be redrawn by the next call
+        this.key = null;
+        Graphics2D g2d = image.createGraphics();
+        try {
+            if (translucent) {
+                g2d.setComposite(AlphaComposite.Clear);
+                g2d.fillRect(0, 0, width, height);
+                g2d.setComposite(AlphaComposite.SrcOver);
+            }
+            painter.paint(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        this.key = key;
+        return image;
+    }
+    
+    /**
+     * Finds why the cached layer cannot be used
+     * @param width the requested width
+     * @param height the requested height
+     * @param key the requested key
+     * @return the invalidation cause, or null if the cached layer is still valid
+     */
+    private String findCause(int width, int height, Object[] key) {
+        if (image == null || this.key == null) {
+            return FIRST_USE;
+        }
+        if (image.getWidth() != width || image.getHeight() != height) {
+            return SIZE;
+        }
+        for (int i = 0; i < partNames.length; i++) {
+            if (!this.key[i].equals(key[i])) {
+                return partNames[i];
+            }
+        }
+        return null;
+    }
+    
+    public synchronized long getHits() { return hits; }
+    
+    public synchronized long getMisses() { return misses; }
+    
+    /**
+     * Gets the share of requests served from the cached image
+     * @return the hit rate between 0 and 1, or 0 before the first request
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+    
+    /**
+     * Gets how often the layer was redrawn, by cause
+     * @return a copy of the counts, keyed by key part name, FIRST_USE or SIZE
+     */
+    public synchronized Map<String, Long> getInvalidations() {
+        return new LinkedHashMap<>(invalidations);
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits / %d misses (%.0f%%), invalidated by %s",
+                hits, misses, getHitRate() * 100, invalidations);
+    }
+}
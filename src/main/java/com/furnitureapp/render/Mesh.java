@@ -0,0 +1,408 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Immutable geometry of a furniture type in unit space: x, y and z run from
+ * 0 to 1 across the item's width, height and depth, with y pointing up from
+ * the floor and the front at z = 1. Faces are quads with one normal each.
+ * Items do not own a mesh; they reference one shared mesh per type and are
+ * placed by {@link VertexBuffer#addInstance}, which scales and turns it onto
+ * the item's footprint.
+ *
+ * The first eight vertices of every mesh are the corners of the unit cube in
+ * {@link VertexBuffer#addBox} order, so the bounds of an instance are always
+ * at hand for culling, selection outlines and simplified drawing.
+ *
+ * Detailed meshes, such as imported models, may link to a simplified
+ * version of themselves for items that cover only a few pixels.
+ */
+public final class Mesh {
+    /** Number of vertices of a quad */
+    public static final int QUAD_VERTICES = 4;
+    
+    // Largest on-screen size of a simplification cell that still passes for full detail
+    private static final double MAX_CELL_PIXELS = 2.0;
+    
+    /** A plain box, the mesh of furniture types without a model of their own */
+    public static final Mesh BOX = new Builder("Box").addBox(0, 0, 0, 1, 1, 1).build();
+    
+    private final String name;
+    private final float[] positions;
+    private final int[] quads;
+    private final float[] normals;
+    private final byte[] faces;
+    private final float[] parts;
+    private final int[] partQuads;
+    private final int[] edges;
+    private final boolean boxes;
+    private final int resolution;
+    private final Mesh simplified;
+    
+    private Mesh(Builder builder) {
+        name = builder.name;
+        positions = trim(builder.positions, builder.vertexCount * 3);
+        quads = builder.quads.length == builder.quadCount * QUAD_VERTICES ? builder.quads
+                : Arrays.copyOf(builder.quads, builder.quadCount * QUAD_VERTICES);
+        normals = trim(builder.normals, builder.quadCount * 3);
+        faces = builder.faces.length == builder.quadCount ? builder.faces
+                : Arrays.copyOf(builder.faces, builder.quadCount);
+        resolution = builder.resolution;
+        simplified = builder.simplified;
+        boxes = builder.partCount > 0;
+        if (boxes) {
+            parts = Arrays.copyOf(builder.parts, builder.partCount * 6);
+            partQuads = new int[builder.partCount + 1];
+            for (int part = 0; part <= builder.partCount; part++) {
+                partQuads[part] = part * ShadingCache.FACES;
+            }
+        } else {
+            parts = new float[] {0, 0, 0, 1, 1, 1};
+            partQuads = new int[] {0, builder.quadCount};
+        }
+        edges = findEdges(quads);
+    }
+    
+    /**
+     * Lists every edge of the quads once, although neighbouring quads share
+     * them; the repeated corner of a triangle adds no edge
+     * @param quads four vertex indices per quad
+     * @return two vertex indices per edge
+     */
+    private static int[] findEdges(int[] quads) {
+        VertexTable.LongIndex seen = new VertexTable.LongIndex(quads.length);
+        int[] found = new int[quads.length * 2];
+        int count = 0;
+        for (int i = 0; i < quads.length; i++) {
+            int a = quads[i];
+            int b = quads[i % QUAD_VERTICES == QUAD_VERTICES - 1 ? i - (QUAD_VERTICES - 1) : i + 1];
+            if (a == b) {
+                continue;
+            }
+            long key = (long) Math.min(a, b) << 32 | Math.max(a, b);
+            if (seen.indexOf(key) == count) {
+                found[count * 2] = a;
+                found[count * 2 + 1] = b;
+                count++;
+            }
+        }
+        return Arrays.copyOf(found, count * 2);
+    }
+    
+    /**
+     * Shrinks a builder array to its used length; large imported meshes are
+     * built at their exact size and keep their arrays
+     */
+    private static float[] trim(float[] values, int length) {
+        return values.length == length ? values : Arrays.copyOf(values, length);
+    }
+    
+    public String getName() { return name; }
+    
+    public int getVertexCount() { return positions.length / 3; }
+    
+    public float getX(int vertex) { return positions[vertex * 3]; }
+    
+    public float getY(int vertex) { return positions[vertex * 3 + 1]; }
+    
+    public float getZ(int vertex) { return positions[vertex * 3 + 2]; }
+    
+    public int getQuadCount() { return faces.length; }
+    
+    /**
+     * Gets a vertex of a quad
+     * @param quad the quad
+     * @param corner the corner of the quad, 0 to 3
+     * @return the index of the vertex in the mesh
+     */
+    public int getQuadVertex(int quad, int corner) { return quads[quad * QUAD_VERTICES + corner]; }
+    
+    public float getNormalX(int quad) { return normals[quad * 3]; }
+    
+    public float getNormalY(int quad) { return normals[quad * 3 + 1]; }
+    
+    public float getNormalZ(int quad) { return normals[quad * 3 + 2]; }
+    
+    /**
+     * Gets the box face a quad is shaded as, by the main direction of its normal
+     * @param quad the quad
+     * @return ShadingCache.TOP, BOTTOM, FRONT, BACK, RIGHT or LEFT
+     */
+    public int getFace(int quad) { return faces[quad]; }
+    
+    public int getEdgeCount() { return edges.length / 2; }
+    
+    /**
+     * Gets an end of an edge; edges shared by several quads are listed once
+     * @param edge the edge
+     * @param end 0 or 1
+     * @return the index of the vertex in the mesh
+     */
+    public int getEdgeVertex(int edge, int end) { return edges[edge * 2 + end]; }
+    
+    /**
+     * Gets the number of boxes the mesh is made of; meshes that are not made
+     * of boxes have one part, their bounds
+     * @return the number of parts
+     */
+    public int getPartCount() { return parts.length / 6; }
+    
+    /**
+     * Gets the unit-space bounds of a part
+     * @param part the part
+     * @param bound 0 to 2 for the minimum x, y and z, 3 to 5 for the maximum
+     * @return the bound
+     */
+    public float getPartBound(int part, int bound) { return parts[part * 6 + bound]; }
+    
+    /**
+     * Gets the first quad of a part; the quads of a part are consecutive
+     * @param part the part, or the part count for the end of the last part
+     * @return the index of the first quad
+     */
+    public int getPartQuad(int part) { return partQuads[part]; }
+    
+    /**
+     * Checks whether every part is a box, whose front faces never overlap
+     * @return false for meshes made of loose quads, such as imported models
+     */
+    public boolean isMadeOfBoxes() { return boxes; }
+    
+    /**
+     * Gets the number of simplification cells along each axis this mesh was reduced to
+     * @return the resolution, or 0 for a mesh at full detail
+     */
+    public int getResolution() { return resolution; }
+    
+    /**
+     * Gets the next simpler level of detail
+     * @return the simplified mesh, or null if there is none
+     */
+    public Mesh getSimplified() { return simplified; }
+    
+    /**
+     * Picks the simplest level of detail that still looks like this mesh at a size on screen
+     * @param screenSize the size of the instance on screen in pixels
+     * @return this mesh or one of its simplified versions
+     */
+    public Mesh selectLevel(double screenSize) {
+        Mesh level = this;
+        while (level.simplified != null && screenSize <= level.simplified.resolution * MAX_CELL_PIXELS) {
+            level = level.simplified;
+        }
+        return level;
+    }
+    
+    /**
+     * Orders the parts for the painter's algorithm: a part comes after every
+     * part it may cover as seen from the eye. Parts are boxes that do not
+     * overlap, so a plane between two parts shows which one is in front.
+     * @param eyeX the unit-space x of the eye
+     * @param eyeY the unit-space y of the eye
+     * @param eyeZ the unit-space z of the eye
+     * @param order receives the parts, furthest first
+     */
+    public void orderParts(float eyeX, float eyeY, float eyeZ, int[] order) {
+        int count = getPartCount();
+        for (int i = 0; i < count; i++) {
+            // Insertion sort; only a handful of parts per mesh
+            int part = i;
+            int j = i;
+            while (j > 0 && covers(order[j - 1], part, eyeX, eyeY, eyeZ)) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = part;
+        }
+    }
+    
+    /**
+     * Checks whether a part is in front of another as seen from the eye
+     * @param a the part that may be in front
+     * @param b the other part
+     * @return true if a separating plane has the eye on the side of a
+     */
+    private boolean covers(int a, int b, float eyeX, float eyeY, float eyeZ) {
+        for (int axis = 0; axis < 3; axis++) {
+            float eye = axis == 0 ? eyeX : axis == 1 ? eyeY : eyeZ;
+            float aMin = parts[a * 6 + axis];
+            float aMax = parts[a * 6 + 3 + axis];
+            float bMin = parts[b * 6 + axis];
+            float bMax = parts[b * 6 + 3 + axis];
+            if (aMax <= bMin && eye <= aMax || bMax <= aMin && eye >= aMin) {
+                return true;
+            }
+            if (aMax <= bMin && eye >= bMin || bMax <= aMin && eye <= bMax) {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Mesh[%s, %d vertices, %d quads, %d parts, resolution %d]",
+                name, getVertexCount(), getQuadCount(), getPartCount(), resolution);
+    }
+    
+    /**
+     * Assembles a mesh from boxes and quads in unit space
+     */
+    public static final class Builder {
+        private final String name;
+        private float[] positions;
+        private int vertexCount;
+        private int[] quads;
+        private float[] normals;
+        private byte[] faces;
+        private int quadCount;
+        private float[] parts = new float[8 * 6];
+        private int partCount;
+        private int resolution;
+        private Mesh simplified;
+        
+        /**
+         * Creates a builder holding the corners of the unit cube
+         * @param name the name of the mesh
+         */
+        public Builder(String name) {
+            this(name, 64, 32);
+        }
+        
+        /**
+         * Creates a builder holding the corners of the unit cube, sized for a mesh
+         * @param name the name of the mesh
+         * @param vertices the number of vertices to make room for, besides the corners
+         * @param quads the number of quads to make room for
+         */
+        public Builder(String name, int vertices, int quads) {
+            this.name = name;
+            positions = new float[(VertexBuffer.BOX_VERTICES + Math.max(0, vertices)) * 3];
+            quads = Math.max(1, quads);
+            this.quads = new int[quads * QUAD_VERTICES];
+            normals = new float[quads * 3];
+            faces = new byte[quads];
+            for (int i = 0; i < VertexBuffer.BOX_VERTICES; i++) {
+                addVertex(i & 1, (i & 2) == 0 ? 1 : 0, (i >> 2) & 1);
+            }
+        }
+        
+        /**
+         * Adds a vertex
+         * @param x the unit-space x coordinate
+         * @param y the unit-space y coordinate, 0 on the floor
+         * @param z the unit-space z coordinate
+         * @return the index of the vertex
+         */
+        public int addVertex(float x, float y, float z) {
+            if ((vertexCount + 1) * 3 > positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[vertexCount * 3] = x;
+            positions[vertexCount * 3 + 1] = y;
+            positions[vertexCount * 3 + 2] = z;
+            return vertexCount++;
+        }
+        
+        /**
+         * Adds a quad. A triangle repeats its last vertex.
+         * @param a the first vertex
+         * @param b the second vertex
+         * @param c the third vertex
+         * @param d the fourth vertex
+         * @param nx the x component of the outward normal
+         * @param ny the y component of the outward normal
+         * @param nz the z component of the outward normal
+         * @return this builder
+         */
+        public Builder addQuad(int a, int b, int c, int d, float nx, float ny, float nz) {
+            if (quadCount == faces.length) {
+                quads = Arrays.copyOf(quads, quads.length * 2);
+                normals = Arrays.copyOf(normals, normals.length * 2);
+                faces = Arrays.copyOf(faces, faces.length * 2);
+            }
+            int q = quadCount * QUAD_VERTICES;
+            quads[q] = a;
+            quads[q + 1] = b;
+            quads[q + 2] = c;
+            quads[q + 3] = d;
+            normals[quadCount * 3] = nx;
+            normals[quadCount * 3 + 1] = ny;
+            normals[quadCount * 3 + 2] = nz;
+            faces[quadCount] = (byte) faceOf(nx, ny, nz);
+            quadCount++;
+            return this;
+        }
+        
+        /**
+         * Adds an axis-aligned box with its six faces
+         * @return this builder
+         */
+        public Builder addBox(float x0, float y0, float z0, float x1, float y1, float z1) {
+            if (partCount * 6 == parts.length) {
+                parts = Arrays.copyOf(parts, parts.length * 2);
+            }
+            float[] bounds = {x0, y0, z0, x1, y1, z1};
+            System.arraycopy(bounds, 0, parts, partCount * 6, 6);
+            partCount++;
+            
+            // The unit cube itself reuses the bounds corners
+            int base = 0;
+            if (x0 != 0 || y0 != 0 || z0 != 0 || x1 != 1 || y1 != 1 || z1 != 1) {
+                base = vertexCount;
+                for (int i = 0; i < VertexBuffer.BOX_VERTICES; i++) {
+                    addVertex((i & 1) == 0 ? x0 : x1, (i & 2) == 0 ? y1 : y0, (i & 4) == 0 ? z0 : z1);
+                }
+            }
+            
+            // Same corners as VertexBuffer.addBox, with y pointing up instead of down
+            addQuad(base, base + 1, base + 5, base + 4, 0, 1, 0);
+            addQuad(base + 2, base + 3, base + 7, base + 6, 0, -1, 0);
+            addQuad(base + 6, base + 7, base + 5, base + 4, 0, 0, 1);
+            addQuad(base, base + 1, base + 3, base + 2, 0, 0, -1);
+            addQuad(base + 3, base + 1, base + 5, base + 7, 1, 0, 0);
+            addQuad(base, base + 2, base + 6, base + 4, -1, 0, 0);
+            return this;
+        }
+        
+        /**
+         * Links the mesh to a simpler level of detail
+         * @param resolution the simplification cells along each axis this mesh was reduced to, 0 for full detail
+         * @param simplified the next simpler level, or null
+         * @return this builder
+         */
+        public Builder setDetail(int resolution, Mesh simplified) {
+            this.resolution = resolution;
+            this.simplified = simplified;
+            return this;
+        }
+        
+        /**
+         * Creates the mesh
+         * @return the immutable mesh
+         * @throws IllegalStateException if boxes and loose quads were mixed
+         */
+        public Mesh build() {
+            if (partCount > 0 && quadCount != partCount * ShadingCache.FACES) {
+                throw new IllegalStateException("A mesh is made either of boxes or of quads, not both");
+            }
+            return new Mesh(this);
+        }
+        
+        /**
+         * Finds the box face whose normal is closest to a direction
+         */
+        private static int faceOf(float nx, float ny, float nz) {
+            float ax = Math.abs(nx);
+            float ay = Math.abs(ny);
+            float az = Math.abs(nz);
+            if (ay >= ax && ay >= az) {
+                return ny >= 0 ? ShadingCache.TOP : ShadingCache.BOTTOM;
+            }
+            if (az >= ax) {
+                return nz >= 0 ? ShadingCache.FRONT : ShadingCache.BACK;
+            }
+            return nx >= 0 ? ShadingCache.RIGHT : ShadingCache.LEFT;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.furnitureapp.render;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * Shares one mesh per name between all items and renderers. A mesh is
+ * loaded on first use and held only weakly: renderers keep the meshes of
+ * the items they show, and once no item references a mesh any more the
+ * garbage collector may release it, to be loaded again when it is next used.
+ * Thread-safe. Meshes are loaded outside the cache's lock: callers asking
+ * for a mesh that is being loaded wait for that one load, while callers
+ * asking for other meshes go ahead.
+ */
+public final class MeshCache {
+    /** Shared cache of the furniture meshes */
+    public static final MeshCache SHARED = new MeshCache(FurnitureMeshes::create);
+    
+    private final Function<String, Mesh> loader;
+    private final Map<String, Entry> meshes = new HashMap<>();
+    // Loads in progress by name, so concurrent callers share one load
+    private final Map<String, FutureTask<Mesh>> loading = new HashMap<>();
+    private final ReferenceQueue<Mesh> released = new ReferenceQueue<>();
+    private int loads;
+    
+    /**
+     * A weakly held mesh that remembers its name, so it can be removed once released
+     */
+    private static final class Entry extends WeakReference<Mesh> {
+        private final String name;
+        
+        Entry(String name, Mesh mesh, ReferenceQueue<Mesh> queue) {
+            super(mesh, queue);
+            this.name = name;
+        }
+    }
+    
+    /**
+     * Creates an empty cache
+     * @param loader creates the mesh of a name; must not return null
+     */
+    public MeshCache(Function<String, Mesh> loader) {
+        this.loader = loader;
+    }
+    
+    /**
+     * Gets the mesh of a name, loading it if it is not in use
+     * @param name the name of the mesh, such as a furniture type
+     * @return the shared mesh
+     */
+    public Mesh get(String name) {
+        FutureTask<Mesh> task;
+        boolean loadHere = false;
+        synchronized (this) {
+            Entry entry = meshes.get(name);
+            Mesh mesh = entry != null ? entry.get() : null;
+            if (mesh != null) {
+                return mesh;
+            }
+            task = loading.get(name);
+            if (task == null) {
+                purge();
+                task = new FutureTask<>(() -> load(name));
+                loading.put(name, task);
+                loadHere = true;
+            }
+        }
+        if (loadHere) {
+            task.run();
+        }
+        return await(task);
+    }
+    
+    /**
+     * Loads a mesh and publishes it, or drops the pending load if it fails
+     * so the next caller tries again
+     * @param name the name of the mesh
+     * @return the loaded mesh
+     */
+    private Mesh load(String name) {
+        Mesh mesh = null;
+        try {
+            mesh = loader.apply(name);
+            return mesh;
+        } finally {
+            synchronized (this) {
+                loading.remove(name);
+                if (mesh != null) {
+                    meshes.put(name, new Entry(name, mesh, released));
+                    loads++;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Waits for a load, rethrowing what the loader threw.
+     * Like waiting for the lock of a synchronized method, this cannot be
+     * interrupted; the interrupt is kept for the caller.
+     * @param task the load
+     * @return the mesh
+     */
+    private static Mesh await(FutureTask<Mesh> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException("Mesh failed to load", cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of meshes currently loaded
+     * @return the number of meshes not yet released
+     */
+    public synchronized int size() {
+        purge();
+        return meshes.size();
+    }
+    
+    /**
+     * Gets how often a mesh was loaded, including reloads after a release
+     * @return the number of loads
+     */
+    public synchronized int getLoads() {
+        return loads;
+    }
+    
+    /**
+     * Removes the entries of released meshes
+     */
+    private void purge() {
+        Entry entry;
+        while ((entry = (Entry) released.poll()) != null) {
+            // A newer entry may have replaced the released one already
+            if (meshes.get(entry.name) == entry) {
+                meshes.remove(entry.name);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Raw triangle geometry as read from a model file: packed positions, three
+ * floats per vertex, and packed triangles, three vertex indices each.
+ * Unlike a {@link Mesh} it is in the model's own coordinates and can be
+ * simplified into coarser levels of detail before it is turned into meshes.
+ */
+public final class MeshData {
+    private final float[] positions;
+    private final int vertexCount;
+    private final int[] triangles;
+    private final int triangleCount;
+    
+    /**
+     * Wraps packed geometry without copying it
+     * @param positions x, y and z of each vertex
+     * @param vertexCount the number of vertices used
+     * @param triangles three vertex indices per triangle
+     * @param triangleCount the number of triangles used
+     */
+    public MeshData(float[] positions, int vertexCount, int[] triangles, int triangleCount) {
+        this.positions = positions;
+        this.vertexCount = vertexCount;
+        this.triangles = triangles;
+        this.triangleCount = triangleCount;
+    }
+    
+    public int getVertexCount() { return vertexCount; }
+    
+    public int getTriangleCount() { return triangleCount; }
+    
+    public float getX(int vertex) { return positions[vertex * 3]; }
+    
+    public float getY(int vertex) { return positions[vertex * 3 + 1]; }
+    
+    public float getZ(int vertex) { return positions[vertex * 3 + 2]; }
+    
+    /**
+     * Gets a vertex of a triangle
+     * @param triangle the triangle
+     * @param corner the corner, 0 to 2
+     * @return the index of the vertex
+     */
+    public int getTriangleVertex(int triangle, int corner) { return triangles[triangle * 3 + corner]; }
+    
+    /**
+     * Gets the bounds of the vertices
+     * @return the minimum x, y and z followed by the maximum x, y and z
+     */
+    public float[] getBounds() {
+        float[] bounds = {0, 0, 0, 0, 0, 0};
+        if (vertexCount > 0) {
+            Arrays.fill(bounds, 0, 3, Float.MAX_VALUE);
+            Arrays.fill(bounds, 3, 6, -Float.MAX_VALUE);
+        }
+        for (int i = 0; i < vertexCount * 3; i++) {
+            int axis = i % 3;
+            bounds[axis] = Math.min(bounds[axis], positions[i]);
+            bounds[axis + 3] = Math.max(bounds[axis + 3], positions[i]);
+        }
+        return bounds;
+    }
+    
+    /**
+     * Simplifies the geometry by vertex clustering: the bounds are divided
+     * into a grid, the vertices in each cell are merged into their average,
+     * and triangles that collapse are dropped. Runs in linear time and
+     * memory, so it copes with models of millions of triangles.
+     * @param resolution the number of grid cells along each axis
+     * @return the simplified geometry
+     */
+    public MeshData simplify(int resolution) {
+        float[] bounds = getBounds();
+        float[] cellScale = new float[3];
+        for (int axis = 0; axis < 3; axis++) {
+            float extent = bounds[axis + 3] - bounds[axis];
+            cellScale[axis] = extent > 0 ? resolution / extent : 0;
+        }
+        
+        // One cluster per occupied cell; a cell is found by its packed grid coordinates
+        long cells = (long) resolution * resolution * resolution;
+        int capacity = (int) Math.min(vertexCount, cells);
+        VertexTable.LongIndex clusters = new VertexTable.LongIndex(capacity);
+        int[] clusterOf = new int[vertexCount];
+        float[] sums = new float[capacity * 3];
+        int[] counts = new int[capacity];
+        for (int v = 0; v < vertexCount; v++) {
+            long key = 0;
+            for (int axis = 0; axis < 3; axis++) {
+                int cell = (int) ((positions[v * 3 + axis] - bounds[axis]) * cellScale[axis]);
+                key = key * resolution + Math.min(resolution - 1, cell);
+            }
+            int cluster = clusters.indexOf(key);
+            clusterOf[v] = cluster;
+            sums[cluster * 3] += positions[v * 3];
+            sums[cluster * 3 + 1] += positions[v * 3 + 1];
+            sums[cluster * 3 + 2] += positions[v * 3 + 2];
+            counts[cluster]++;
+        }
+        int clusterCount = clusters.size();
+        float[] merged = new float[clusterCount * 3];
+        for (int c = 0; c < clusterCount; c++) {
+            merged[c * 3] = sums[c * 3] / counts[c];
+            merged[c * 3 + 1] = sums[c * 3 + 1] / counts[c];
+            merged[c * 3 + 2] = sums[c * 3 + 2] / counts[c];
+        }
+        
+        // Keep the triangles whose corners still fall into three different cells
+        int[] kept = new int[triangleCount * 3];
+        int keptCount = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int a = clusterOf[triangles[t * 3]];
+            int b = clusterOf[triangles[t * 3 + 1]];
+            int c = clusterOf[triangles[t * 3 + 2]];
+            if (a != b && b != c && a != c) {
+                kept[keptCount * 3] = a;
+                kept[keptCount * 3 + 1] = b;
+                kept[keptCount * 3 + 2] = c;
+                keptCount++;
+            }
+        }
+        return new MeshData(merged, clusterCount, Arrays.copyOf(kept, keptCount * 3), keptCount);
+    }
+    
+    /**
+     * Turns the geometry into a mesh, scaled into unit space. Each triangle
+     * becomes a quad that repeats its last vertex, with the normal given by
+     * its counter-clockwise winding.
+     * @param name the name of the mesh
+     * @param resolution the grid resolution the geometry was simplified to, 0 for full detail
+     * @param simplified the next simpler level of detail, or null
+     * @return the mesh
+     */
+    public Mesh toMesh(String name, int resolution, Mesh simplified) {
+        float[] bounds = getBounds();
+        float[] scale = new float[3];
+        for (int axis = 0; axis < 3; axis++) {
+            float extent = bounds[axis + 3] - bounds[axis];
+            scale[axis] = extent > 0 ? 1 / extent : 0;
+        }
+        Mesh.Builder builder = new Mesh.Builder(name, vertexCount, triangleCount);
+        int base = VertexBuffer.BOX_VERTICES;
+        for (int v = 0; v < vertexCount; v++) {
+            builder.addVertex((positions[v * 3] - bounds[0]) * scale[0],
+                    (positions[v * 3 + 1] - bounds[1]) * scale[1],
+                    (positions[v * 3 + 2] - bounds[2]) * scale[2]);
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            int a = triangles[t * 3];
+            int b = triangles[t * 3 + 1];
+            int c = triangles[t * 3 + 2];
+            
+            // Normal in unit space, where the mesh is drawn
+            float ux = (positions[b * 3] - positions[a * 3]) * scale[0];
+            float uy = (positions[b * 3 + 1] - positions[a * 3 + 1]) * scale[1];
+            float uz = (positions[b * 3 + 2] - positions[a * 3 + 2]) * scale[2];
+            float vx = (positions[c * 3] - positions[a * 3]) * scale[0];
+            float vy = (positions[c * 3 + 1] - positions[a * 3 + 1]) * scale[1];
+            float vz = (positions[c * 3 + 2] - positions[a * 3 + 2]) * scale[2];
+            float nx = uy * vz - uz * vy;
+            float ny = uz * vx - ux * vz;
+            float nz = ux * vy - uy * vx;
+            if (nx != 0 || ny != 0 || nz != 0) {
+                builder.addQuad(base + a, base + b, base + c, base + c, nx, ny, nz);
+            }
+        }
+        return builder.setDetail(resolution, simplified).build();
+    }
+}
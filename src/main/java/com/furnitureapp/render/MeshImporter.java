@@ -0,0 +1,83 @@
+package com.furnitureapp.render;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Imports furniture models from Wavefront OBJ and binary PLY files. Files
+ * are memory-mapped and parsed in place, equal vertices are merged, and the
+ * model is simplified into coarser levels of detail so that items far away
+ * or small on screen draw only a few hundred faces.
+ */
+public final class MeshImporter {
+    /** Most triangles in the most detailed level drawn; denser models start at a simplified level */
+    public static final int MAX_TRIANGLES = 65_536;
+    
+    // Simplification grids of the levels of detail, from fine to coarse
+    private static final int[] LEVEL_RESOLUTIONS = {128, 32, 8};
+    
+    private MeshImporter() {
+    }
+    
+    /**
+     * Imports a model as a mesh with its levels of detail
+     * @param path the OBJ or PLY file
+     * @param name the name of the mesh
+     * @return the most detailed level, linked to its simplified versions
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static Mesh load(Path path, String name) throws IOException {
+        MeshData model = read(path);
+        
+        // Each level is simplified from the one before, which is far smaller than the model
+        MeshData[] levels = new MeshData[LEVEL_RESOLUTIONS.length];
+        MeshData finer = model;
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = finer.simplify(LEVEL_RESOLUTIONS[i]);
+            finer = levels[i];
+        }
+        
+        // Meshes link to their simplified versions, so build them from coarse to fine
+        Mesh mesh = null;
+        for (int i = levels.length - 1; i >= 0; i--) {
+            if (levels[i].getTriangleCount() > MAX_TRIANGLES) {
+                break;
+            }
+            mesh = levels[i].toMesh(name, LEVEL_RESOLUTIONS[i], mesh);
+        }
+        if (model.getTriangleCount() <= MAX_TRIANGLES) {
+            mesh = model.toMesh(name, 0, mesh);
+        }
+        if (mesh == null) {
+            throw new IOException("Model is too dense even when simplified: " + path);
+        }
+        return mesh;
+    }
+    
+    /**
+     * Reads the geometry of a model file, choosing the format by the file extension
+     * @param path the OBJ or PLY file
+     * @return the geometry with equal vertices merged
+     * @throws IOException if the file cannot be read, is malformed or has an unknown format
+     */
+    public static MeshData read(Path path) throws IOException {
+        String file = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean obj = file.endsWith(".obj");
+        if (!obj && !file.endsWith(".ply")) {
+            throw new IOException("Unsupported model format: " + path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Model file is larger than 2 GB: " + path);
+            }
+            // The mapping stays valid after the channel is closed and is released with the buffer
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return obj ? new ObjReader(buffer).read() : new PlyReader(buffer).read();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.furnitureapp.render;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the geometry of a Wavefront OBJ file straight from its bytes.
+ * Only vertex positions ({@code v}) and faces ({@code f}) are used; faces
+ * with more than three corners are split into a triangle fan. A first pass
+ * counts vertices and triangles so the second pass fills buffers of exactly
+ * the right size, and numbers are parsed in place, so no strings are
+ * created per line.
+ */
+final class ObjReader {
+    // Exactly representable powers of ten
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_DIGITS = 18;
+    
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private int line;
+    
+    /**
+     * Creates a reader
+     * @param buffer the file contents, usually memory-mapped
+     */
+    ObjReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+    }
+    
+    /**
+     * Reads the geometry
+     * @return the geometry with equal vertices merged
+     * @throws IOException if the file is malformed
+     */
+    MeshData read() throws IOException {
+        // First pass: sizes only
+        int vertexCount = 0;
+        long triangleCount = 0;
+        for (position = 0; position < limit; nextLine()) {
+            if (isKeyword('v')) {
+                vertexCount++;
+            } else if (isKeyword('f')) {
+                position++;
+                triangleCount += Math.max(0, countTokens() - 2);
+            }
+        }
+        if (triangleCount * 3 > Integer.MAX_VALUE) {
+            throw new IOException("Too many triangles: " + triangleCount);
+        }
+        
+        // Second pass: positions and faces
+        VertexTable table = new VertexTable(vertexCount);
+        int[] vertexOf = new int[vertexCount];
+        int[] triangles = new int[(int) triangleCount * 3];
+        int vertices = 0;
+        int t = 0;
+        line = 1;
+        for (position = 0; position < limit; nextLine()) {
+            if (isKeyword('v')) {
+                position++;
+                float x = parseFloat();
+                float y = parseFloat();
+                float z = parseFloat();
+                vertexOf[vertices++] = table.add(x, y, z);
+            } else if (isKeyword('f')) {
+                position++;
+                int first = vertexOf[parseIndex(vertices)];
+                int previous = vertexOf[parseIndex(vertices)];
+                while (hasToken()) {
+                    int current = vertexOf[parseIndex(vertices)];
+                    triangles[t++] = first;
+                    triangles[t++] = previous;
+                    triangles[t++] = current;
+                    previous = current;
+                }
+            }
+        }
+        return table.toMeshData(triangles, t / 3);
+    }
+    
+    /**
+     * Checks whether the current line starts with a one-letter keyword
+     */
+    private boolean isKeyword(char keyword) {
+        return buffer.get(position) == keyword && position + 1 < limit && isSpace(buffer.get(position + 1));
+    }
+    
+    /**
+     * Moves to the start of the next line
+     */
+    private void nextLine() {
+        while (position < limit && buffer.get(position) != '\n') {
+            position++;
+        }
+        position++;
+        line++;
+    }
+    
+    /**
+     * Counts the whitespace-separated tokens left on the line, without moving
+     */
+    private int countTokens() {
+        int start = position;
+        int tokens = 0;
+        while (hasToken()) {
+            tokens++;
+            while (position < limit && !isSpace(buffer.get(position)) && !isLineEnd(buffer.get(position))) {
+                position++;
+            }
+        }
+        position = start;
+        return tokens;
+    }
+    
+    /**
+     * Skips spaces and checks whether another token follows on the line
+     */
+    private boolean hasToken() {
+        while (position < limit && isSpace(buffer.get(position))) {
+            position++;
+        }
+        return position < limit && !isLineEnd(buffer.get(position)) && buffer.get(position) != '#';
+    }
+    
+    /**
+     * Parses the vertex of a face corner such as {@code 7}, {@code 7/2} or {@code -1//3}
+     * @param vertices the number of vertices read so far, for relative indices
+     * @return the zero-based vertex index
+     */
+    private int parseIndex(int vertices) throws IOException {
+        if (!hasToken()) {
+            throw error("face with fewer than three corners");
+        }
+        boolean negative = buffer.get(position) == '-';
+        if (negative) {
+            position++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (position < limit && isDigit(buffer.get(position))) {
+            value = value * 10 + buffer.get(position++) - '0';
+            if (++digits > 10) {
+                throw error("vertex index out of range");
+            }
+        }
+        // Texture and normal indices are not used
+        while (position < limit && !isSpace(buffer.get(position)) && !isLineEnd(buffer.get(position))) {
+            position++;
+        }
+        long index = negative ? vertices - value : value - 1;
+        if (digits == 0 || index < 0 || index >= vertices) {
+            throw error("vertex index out of range");
+        }
+        return (int) index;
+    }
+    
+    /**
+     * Parses a decimal number such as {@code -1.25e-3}
+     */
+    private float parseFloat() throws IOException {
+        if (!hasToken()) {
+            throw error("missing coordinate");
+        }
+        boolean negative = false;
+        byte b = buffer.get(position);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean any = false;
+        boolean fraction = false;
+        while (position < limit) {
+            b = buffer.get(position);
+            if (isDigit(b)) {
+                any = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    if (fraction) {
+                        exponent--;
+                    }
+                } else if (!fraction) {
+                    exponent++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (!any) {
+            throw error("malformed number");
+        }
+        if (position < limit && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+            position++;
+            boolean negativeExponent = position < limit && buffer.get(position) == '-';
+            if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                position++;
+            }
+            int value = 0;
+            while (position < limit && isDigit(buffer.get(position))) {
+                value = Math.min(1000, value * 10 + buffer.get(position++) - '0');
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        double result = mantissa;
+        if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result /= POWERS_OF_TEN[-exponent];
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            result *= POWERS_OF_TEN[exponent];
+        } else {
+            result *= Math.pow(10, exponent);
+        }
+        return (float) (negative ? -result : result);
+    }
+    
+    private IOException error(String message) {
+        return new IOException("OBJ line " + line + ": " + message);
+    }
+    
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+    
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+    
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
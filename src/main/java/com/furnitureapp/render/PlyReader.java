@@ -0,0 +1,368 @@
+package com.furnitureapp.render;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the geometry of a binary PLY file straight from its bytes. The
+ * text header is parsed once; the body is then read in place, taking the
+ * {@code x}, {@code y} and {@code z} properties of the {@code vertex}
+ * element and the {@code vertex_indices} list of the {@code face} element,
+ * and skipping everything else. Faces are split into triangle fans.
+ */
+final class PlyReader {
+    private static final String END_HEADER = "end_header";
+    
+    // Property types, indexing TYPE_NAMES and TYPE_SIZES
+    private static final int INT8 = 0;
+    private static final int UINT8 = 1;
+    private static final int INT16 = 2;
+    private static final int UINT16 = 3;
+    private static final int INT32 = 4;
+    private static final int UINT32 = 5;
+    private static final int FLOAT32 = 6;
+    private static final int NONE = -1;
+    private static final String[][] TYPE_NAMES = {
+            {"char", "int8"}, {"uchar", "uint8"}, {"short", "int16"}, {"ushort", "uint16"},
+            {"int", "int32"}, {"uint", "uint32"}, {"float", "float32"}, {"double", "float64"}
+    };
+    private static final int[] TYPE_SIZES = {1, 1, 2, 2, 4, 4, 4, 8};
+    
+    /**
+     * A property of an element, either a scalar or a list
+     */
+    private static final class Property {
+        final String name;
+        final int type;
+        final int countType;
+        
+        Property(String name, int type, int countType) {
+            this.name = name;
+            this.type = type;
+            this.countType = countType;
+        }
+    }
+    
+    /**
+     * An element of the header with its properties
+     */
+    private static final class Element {
+        final String name;
+        final int count;
+        final List<Property> properties = new ArrayList<>();
+        
+        Element(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+    
+    private final ByteBuffer buffer;
+    private final List<Element> elements = new ArrayList<>();
+    private int position;
+    
+    /**
+     * Creates a reader
+     * @param buffer the file contents, usually memory-mapped
+     */
+    PlyReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+    
+    /**
+     * Reads the geometry
+     * @return the geometry with equal vertices merged
+     * @throws IOException if the file is malformed or not binary
+     */
+    MeshData read() throws IOException {
+        readHeader();
+        checkCounts();
+        
+        // First pass: find the vertices and faces and count the triangles
+        int vertexStart = -1;
+        int faceStart = -1;
+        Element vertexElement = null;
+        Element faceElement = null;
+        long triangleCount = 0;
+        for (Element element : elements) {
+            if (element.name.equals("vertex")) {
+                vertexElement = element;
+                vertexStart = position;
+            } else if (element.name.equals("face")) {
+                faceElement = element;
+                faceStart = position;
+            }
+            for (int i = 0; i < element.count; i++) {
+                for (Property property : element.properties) {
+                    if (property.countType == NONE) {
+                        skip(property.type, 1);
+                    } else {
+                        int corners = readCount(property.countType);
+                        if (element == faceElement && isIndexList(property)) {
+                            triangleCount += Math.max(0, corners - 2);
+                        }
+                        skip(property.type, corners);
+                    }
+                }
+            }
+        }
+        if (vertexElement == null || faceElement == null) {
+            throw new IOException("PLY file without vertex or face element");
+        }
+        if (triangleCount * 3 > Integer.MAX_VALUE) {
+            throw new IOException("Too many triangles: " + triangleCount);
+        }
+        
+        // Second pass: positions, then faces
+        VertexTable table = new VertexTable(vertexElement.count);
+        int[] vertexOf = new int[vertexElement.count];
+        position = vertexStart;
+        for (int i = 0; i < vertexElement.count; i++) {
+            float x = 0;
+            float y = 0;
+            float z = 0;
+            for (Property property : vertexElement.properties) {
+                if (property.countType != NONE) {
+                    skip(property.type, readCount(property.countType));
+                } else if (property.name.equals("x")) {
+                    x = (float) readDouble(property.type);
+                } else if (property.name.equals("y")) {
+                    y = (float) readDouble(property.type);
+                } else if (property.name.equals("z")) {
+                    z = (float) readDouble(property.type);
+                } else {
+                    skip(property.type, 1);
+                }
+            }
+            vertexOf[i] = table.add(x, y, z);
+        }
+        
+        int[] triangles = new int[(int) triangleCount * 3];
+        int t = 0;
+        position = faceStart;
+        for (int i = 0; i < faceElement.count; i++) {
+            for (Property property : faceElement.properties) {
+                if (property.countType == NONE) {
+                    skip(property.type, 1);
+                    continue;
+                }
+                int corners = readCount(property.countType);
+                if (!isIndexList(property)) {
+                    skip(property.type, corners);
+                    continue;
+                }
+                int first = 0;
+                int previous = 0;
+                for (int corner = 0; corner < corners; corner++) {
+                    int index = readInt(property.type);
+                    if (index < 0 || index >= vertexOf.length) {
+                        throw new IOException("PLY face " + i + ": vertex index out of range");
+                    }
+                    int current = vertexOf[index];
+                    if (corner == 0) {
+                        first = current;
+                    } else if (corner >= 2) {
+                        triangles[t++] = first;
+                        triangles[t++] = previous;
+                        triangles[t++] = current;
+                    }
+                    previous = current;
+                }
+            }
+        }
+        return table.toMeshData(triangles, t / 3);
+    }
+    
+    /**
+     * Parses the text header and leaves the position at the start of the body
+     */
+    private void readHeader() throws IOException {
+        String magic = readHeaderLine();
+        if (!magic.equals("ply")) {
+            throw new IOException("Not a PLY file");
+        }
+        Element element = null;
+        for (String line = readHeaderLine(); !line.equals(END_HEADER); line = readHeaderLine()) {
+            String[] words = line.trim().split("\\s+");
+            switch (words[0]) {
+                case "format":
+                    if (words.length < 2 || words[1].equals("ascii")) {
+                        throw new IOException("Only binary PLY files are supported");
+                    }
+                    buffer.order(words[1].equals("binary_big_endian") ? ByteOrder.BIG_ENDIAN
+                            : ByteOrder.LITTLE_ENDIAN);
+                    break;
+                case "element":
+                    if (words.length < 3) {
+                        throw new IOException("Malformed PLY element: " + line);
+                    }
+                    element = new Element(words[1], parseCount(words[2]));
+                    elements.add(element);
+                    break;
+                case "property":
+                    if (element == null) {
+                        throw new IOException("PLY property outside an element");
+                    }
+                    if (words.length >= 5 && words[1].equals("list")) {
+                        element.properties.add(new Property(words[4], typeOf(words[3]), typeOf(words[2])));
+                    } else if (words.length >= 3 && !words[1].equals("list")) {
+                        element.properties.add(new Property(words[2], typeOf(words[1]), NONE));
+                    } else {
+                        throw new IOException("Malformed PLY property: " + line);
+                    }
+                    break;
+                default:
+                    // Comments and object info
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Checks that the body can hold the element counts of the header, before
+     * anything is allocated or looped over by those counts. Each element
+     * takes at least its scalar properties and the lengths of its lists.
+     * @throws IOException if the counts cannot fit in the file
+     */
+    private void checkCounts() throws IOException {
+        long remaining = buffer.limit() - position;
+        for (Element element : elements) {
+            long minimumSize = 0;
+            for (Property property : element.properties) {
+                minimumSize += TYPE_SIZES[property.countType == NONE ? property.type : property.countType];
+            }
+            boolean geometry = element.name.equals("vertex") || element.name.equals("face");
+            if (minimumSize == 0 && geometry && element.count > 0) {
+                throw new IOException("PLY " + element.name + " element without properties");
+            }
+            remaining -= element.count * minimumSize;
+            if (remaining < 0) {
+                throw new IOException("PLY file is too short for its " + element.name + " count " + element.count);
+            }
+        }
+    }
+    
+    /**
+     * Parses an element count of the header
+     * @return the count
+     * @throws IOException if the count is not a non-negative integer
+     */
+    private static int parseCount(String word) throws IOException {
+        int count;
+        try {
+            count = Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed PLY element count: " + word, e);
+        }
+        if (count < 0) {
+            throw new IOException("Negative PLY element count: " + word);
+        }
+        return count;
+    }
+    
+    /**
+     * Reads one line of the header
+     */
+    private String readHeaderLine() throws IOException {
+        int start = position;
+        while (position < buffer.limit() && buffer.get(position) != '\n') {
+            position++;
+        }
+        if (position >= buffer.limit()) {
+            throw new IOException("PLY header is not terminated");
+        }
+        byte[] bytes = new byte[position - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        position++;
+        return new String(bytes, StandardCharsets.US_ASCII).trim();
+    }
+    
+    private static boolean isIndexList(Property property) {
+        return property.name.equals("vertex_indices") || property.name.equals("vertex_index");
+    }
+    
+    /**
+     * Looks up a property type by its name
+     * @return the type
+     * @throws IOException if the type is unknown
+     */
+    private static int typeOf(String name) throws IOException {
+        for (int type = 0; type < TYPE_NAMES.length; type++) {
+            if (name.equals(TYPE_NAMES[type][0]) || name.equals(TYPE_NAMES[type][1])) {
+                return type;
+            }
+        }
+        throw new IOException("Unknown PLY property type: " + name);
+    }
+    
+    private void skip(int type, int count) throws IOException {
+        long end = position + (long) TYPE_SIZES[type] * count;
+        if (end > buffer.limit()) {
+            throw new IOException("PLY file is truncated");
+        }
+        position = (int) end;
+    }
+    
+    /**
+     * Reads the length of a list property
+     * @throws IOException if the length is negative or does not fit in an int
+     */
+    private int readCount(int type) throws IOException {
+        double count = readDouble(type);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("Invalid PLY list length: " + (long) count);
+        }
+        return (int) count;
+    }
+    
+    /**
+     * Reads an integer property, such as a vertex index
+     */
+    private int readInt(int type) throws IOException {
+        return (int) readDouble(type);
+    }
+    
+    /**
+     * Reads a property of any type
+     */
+    private double readDouble(int type) throws IOException {
+        if (position + TYPE_SIZES[type] > buffer.limit()) {
+            throw new IOException("PLY file is truncated");
+        }
+        double value;
+        switch (type) {
+            case INT8:
+                value = buffer.get(position);
+                break;
+            case UINT8:
+                value = buffer.get(position) & 0xFF;
+                break;
+            case INT16:
+                value = buffer.getShort(position);
+                break;
+            case UINT16:
+                value = buffer.getShort(position) & 0xFFFF;
+                break;
+            case INT32:
+                value = buffer.getInt(position);
+                break;
+            case UINT32:
+                value = buffer.getInt(position) & 0xFFFFFFFFL;
+                break;
+            case FLOAT32:
+                value = buffer.getFloat(position);
+                break;
+            default:
+                value = buffer.getDouble(position);
+                break;
+        }
+        position += TYPE_SIZES[type];
+        return value;
+    }
+}
@@ -0,0 +1,24 @@
+package com.furnitureapp.render;
+
+/**
+ * How the design views pick their rendering hints
+ */
+public enum QualityPolicy {
+    /** Cheaper hints while frames take longer than the budget, the best hints once the view is idle */
+    ADAPTIVE("Adaptive"),
+    /** Always the most accurate hints */
+    QUALITY("Best quality"),
+    /** Always the cheapest hints */
+    SPEED("Fastest");
+    
+    private final String displayName;
+    
+    QualityPolicy(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
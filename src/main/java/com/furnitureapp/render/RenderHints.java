@@ -0,0 +1,70 @@
+package com.furnitureapp.render;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * Sets of Java2D rendering hints, from the most accurate to the cheapest.
+ * Antialiasing costs the most with many small shapes but is also the most
+ * visible, so only the cheapest set gives it up; the balanced set saves on
+ * stroke control and rendering quality first.
+ */
+public enum RenderHints {
+    /** Antialiased shapes with pure strokes, quality rendering and bilinear images */
+    QUALITY(true, RenderingHints.VALUE_RENDER_QUALITY, RenderingHints.VALUE_STROKE_PURE,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR),
+    /** Antialiased shapes with normalized strokes and speed rendering */
+    BALANCED(true, RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_STROKE_NORMALIZE,
+            RenderingHints.VALUE_INTERPOLATION_BILINEAR),
+    /** Aliased shapes with normalized strokes and nearest-neighbour images */
+    SPEED(false, RenderingHints.VALUE_RENDER_SPEED, RenderingHints.VALUE_STROKE_NORMALIZE,
+            RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+    
+    private final boolean antialiased;
+    private final Object rendering;
+    private final Object strokeControl;
+    private final Object interpolation;
+    
+    RenderHints(boolean antialiased, Object rendering, Object strokeControl, Object interpolation) {
+        this.antialiased = antialiased;
+        this.rendering = rendering;
+        this.strokeControl = strokeControl;
+        this.interpolation = interpolation;
+    }
+    
+    /**
+     * Sets these hints on a graphics context
+     * @param g2d the graphics context
+     */
+    public void apply(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialiased ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, rendering);
+        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, strokeControl);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+    }
+    
+    public boolean isAntialiased() { return antialiased; }
+    
+    /**
+     * Gets the interpolation hint for scaled images
+     * @return a KEY_INTERPOLATION value
+     */
+    public Object getInterpolation() { return interpolation; }
+    
+    /**
+     * Gets the next cheaper set
+     * @return the next cheaper hints, or SPEED if these are already the cheapest
+     */
+    public RenderHints faster() {
+        return this == SPEED ? SPEED : values()[ordinal() + 1];
+    }
+    
+    /**
+     * Gets the next more accurate set
+     * @return the next more accurate hints, or QUALITY if these are already the best
+     */
+    public RenderHints better() {
+        return this == QUALITY ? QUALITY : values()[ordinal() - 1];
+    }
+}
@@ -0,0 +1,24 @@
+package com.furnitureapp.render;
+
+/**
+ * Rendering backends available to the 3D preview
+ */
+public enum RenderMode {
+    /** Painter's algorithm with Java2D fills */
+    JAVA2D("Java2D"),
+    /** Multithreaded software rasterizer with a depth buffer */
+    SOFTWARE("Software (z-buffer)"),
+    /** Progressive multicore ray tracer for still images; moving views are previewed with Java2D */
+    RAY_TRACED("Ray traced");
+    
+    private final String displayName;
+    
+    RenderMode(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
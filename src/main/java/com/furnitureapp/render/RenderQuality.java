@@ -0,0 +1,44 @@
+package com.furnitureapp.render;
+
+/**
+ * Quality steps of the 3D preview. Frames are drawn at INTERACTIVE quality
+ * while the view moves and refined one step at a time once input stops.
+ * Antialiasing and the other rendering hints are chosen separately, see
+ * {@link RenderHints}.
+ */
+public enum RenderQuality {
+    /** Half resolution without shadows or grid; small items are simplified */
+    INTERACTIVE(0.5, false),
+    /** Full resolution with all details, still drawn with the hints of the moving view */
+    DRAFT(1.0, true),
+    /** Full resolution with all details, drawn once the view has come to rest */
+    FULL(1.0, true);
+    
+    private final double scale;
+    private final boolean detailed;
+    
+    RenderQuality(double scale, boolean detailed) {
+        this.scale = scale;
+        this.detailed = detailed;
+    }
+    
+    /**
+     * Gets the resolution of the frame relative to the view
+     * @return the resolution scale
+     */
+    public double getScale() { return scale; }
+    
+    /**
+     * Checks whether shadows, the floor grid and full item geometry are drawn
+     * @return true if details are drawn
+     */
+    public boolean isDetailed() { return detailed; }
+    
+    /**
+     * Gets the next refinement step
+     * @return the next higher quality, or FULL if this is already the highest
+     */
+    public RenderQuality refine() {
+        return this == FULL ? FULL : values()[ordinal() + 1];
+    }
+}
@@ -0,0 +1,225 @@
+package com.furnitureapp.render;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Renders frames on a dedicated background thread into two off-screen
+ * buffers. The thread draws into the back buffer while the event thread
+ * blits the front one, and the two are swapped when a frame completes.
+ * Only the newest request is kept: requests that arrive while a frame is
+ * being drawn replace each other, so fast input never queues up stale frames.
+ * @param <R> the immutable description of a frame
+ */
+public final class RenderThread<R> {
+    private static final Logger LOGGER = Logger.getLogger(RenderThread.class.getName());
+    
+    /**
+     * Draws one frame into an off-screen buffer on the render thread
+     * @param <R> the frame description
+     */
+    public interface Painter<R> {
+        /**
+         * Draws a frame
+         * @param g2d the graphics of the back buffer
+         * @param request the frame to draw
+         * @param width the width of the buffer
+         * @param height the height of the buffer
+         */
+        void paint(Graphics2D g2d, R request, int width, int height);
+    }
+    
+    private final String name;
+    private final Painter<R> painter;
+    private final Runnable frameReady;
+    private final Object lock = new Object();
+    private final FrameStats stats = new FrameStats(240);
+    
+    // Guarded by lock
+    private Thread thread;
+    private R pending;
+    private int pendingWidth;
+    private int pendingHeight;
+    private BufferedImage front;
+    private R frontRequest;
+    private long framesRendered;
+    private long requestsDropped;
+    
+    // Only touched by the render thread
+    private BufferedImage back;
+    
+    /**
+     * Creates a render thread; the thread itself starts with the first request
+     * @param name the name of the thread
+     * @param painter draws the frames
+     * @param frameReady called on the render thread after each completed frame
+     */
+    public RenderThread(String name, Painter<R> painter, Runnable frameReady) {
+        this.name = name;
+        this.painter = painter;
+        this.frameReady = frameReady;
+    }
+    
+    /**
+     * Requests a frame. Replaces any request that has not been started yet.
+     * @param request the frame to draw
+     * @param width the width of the frame
+     * @param height the height of the frame
+     */
+    public void request(R request, int width, int height) {
+        synchronized (lock) {
+            if (pending != null) {
+                requestsDropped++;
+            }
+            pending = request;
+            pendingWidth = width;
+            pendingHeight = height;
+            if (thread == null) {
+                thread = new Thread(this::run, name);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Draws the latest completed frame, scaled to the given size so that
+     * reduced-resolution frames still cover the whole view
+     * @param g the graphics to draw to
+     * @param x the x position of the frame
+     * @param y the y position of the frame
+     * @param width the width to draw the frame at
+     * @param height the height to draw the frame at
+     * @return the request the frame was drawn for, or null if no frame is ready yet
+     */
+    public R drawFrame(Graphics g, int x, int y, int width, int height) {
+        synchronized (lock) {
+            if (front == null) {
+                return null;
+            }
+            g.drawImage(front, x, y, width, height, null);
+            return frontRequest;
+        }
+    }
+    
+    /**
+     * Stops the render thread and waits for the frame in progress to finish.
+     * A later request starts a new thread; the last completed frame stays available.
+     */
+    public void shutdown() {
+        Thread stopping;
+        synchronized (lock) {
+            stopping = thread;
+            thread = null;
+            pending = null;
+            lock.notifyAll();
+        }
+        if (stopping != null) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of frames completed so far
+     * @return the number of completed frames
+     */
+    public long getFramesRendered() {
+        synchronized (lock) {
+            return framesRendered;
+        }
+    }
+    
+    /**
+     * Gets the number of requests replaced by a newer one before they were drawn
+     * @return the number of dropped requests
+     */
+    public long getRequestsDropped() {
+        synchronized (lock) {
+            return requestsDropped;
+        }
+    }
+    
+    /**
+     * Gets the timings of the recently drawn frames
+     * @return the frame statistics of the render thread
+     */
+    public FrameStats getStats() {
+        return stats;
+    }
+    
+    private void run() {
+        Thread self = Thread.currentThread();
+        try {
+            renderLoop(self);
+        } finally {
+            // If the loop died, e.g. of an OutOfMemoryError, the next request starts a new thread
+            synchronized (lock) {
+                if (thread == self) {
+                    thread = null;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Draws requested frames until the thread is shut down or interrupted
+     * @param self the current thread
+     */
+    private void renderLoop(Thread self) {
+        while (true) {
+            R request;
+            int width;
+            int height;
+            synchronized (lock) {
+                while (pending == null && thread == self) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (thread != self) {
+                    return;
+                }
+                request = pending;
+                width = pendingWidth;
+                height = pendingHeight;
+                pending = null;
+            }
+            
+            if (back == null || back.getWidth() != width || back.getHeight() != height) {
+                back = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D g2d = back.createGraphics();
+            long start = System.nanoTime();
+            try {
+                painter.paint(g2d, request, width, height);
+            } catch (RuntimeException e) {
+                // Keep the last good frame and wait for the next request
+                LOGGER.log(Level.WARNING, "Error rendering frame", e);
+                continue;
+            } finally {
+                g2d.dispose();
+            }
+            stats.record(start, System.nanoTime() - start);
+            
+            // Swap the buffers; the old front is only reused once the event thread has let go of it
+            synchronized (lock) {
+                BufferedImage shown = front;
+                front = back;
+                frontRequest = request;
+                back = shown;
+                framesRendered++;
+            }
+            frameReady.run();
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.furnitureapp.render;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches the lit face colors of items. Each face is lit by a directional
+ * light (Lambert) plus the ambient light color of the model. The result only
+ * depends on the base color, the item's rotation, which turns the normals of
+ * its side faces, and the lighting state, so it is computed once per face of
+ * each distinct color and rotation and reused until the lighting changes.
+ * Not thread-safe; each renderer owns its own cache.
+ */
+public final class ShadingCache {
+    /** Face at minimum y, facing up */
+    public static final int TOP = 0;
+    /** Face at maximum y, resting on the floor */
+    public static final int BOTTOM = 1;
+    /** Face at maximum z before rotation */
+    public static final int FRONT = 2;
+    /** Face at minimum z before rotation */
+    public static final int BACK = 3;
+    /** Face at maximum x before rotation */
+    public static final int RIGHT = 4;
+    /** Face at minimum x before rotation */
+    public static final int LEFT = 5;
+    /** Number of faces of a box */
+    public static final int FACES = 6;
+    
+    /** Share of the ambient color in the lit color */
+    public static final float AMBIENT = 0.35f;
+    /** Share of the directional light in the lit color */
+    public static final float DIFFUSE = 0.7f;
+    
+    private static final int INITIAL_CAPACITY = 64;
+    // Scenes use a handful of colors and rotations; a table this full means something is off, so start over
+    private static final int MAX_ENTRIES = 1 << 16;
+    
+    /**
+     * The prepared fill and outline colors of one base color at one rotation
+     */
+    public static final class Shade {
+        private final Color[] fills = new Color[FACES];
+        private final Color[] outlines = new Color[FACES];
+        
+        /**
+         * Gets the fill color of a face
+         * @param face TOP, BOTTOM, FRONT, BACK, RIGHT or LEFT
+         * @return the fill color
+         */
+        public Color getFill(int face) { return fills[face]; }
+        
+        /**
+         * Gets the outline color of a face
+         * @param face TOP, BOTTOM, FRONT, BACK, RIGHT or LEFT
+         * @return the outline color
+         */
+        public Color getOutline(int face) { return outlines[face]; }
+    }
+    
+    // Direction towards the light, the reverse of the direction the shadows are cast in
+    private static final float[] TO_LIGHT = normalize(
+            -ShadowMap.DEFAULT_LIGHT_X, -ShadowMap.DEFAULT_LIGHT_Y, -ShadowMap.DEFAULT_LIGHT_Z);
+    
+    // Open addressing on (color, rotation) keys; a null shade marks a free slot
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private Shade[] shades = new Shade[INITIAL_CAPACITY];
+    private int size;
+    
+    // Lighting state the cached shades were computed for
+    private boolean lightingSet;
+    private float lightIntensity;
+    private float contrast;
+    private Color ambientLightColor;
+    
+    // Face normals per rotation; items share a handful of rotations
+    private final Map<Float, float[]> normals = new HashMap<>();
+    
+    private long hits;
+    private long misses;
+    private long invalidations;
+    
+    /**
+     * Sets the lighting state, dropping all cached shades if it changed
+     * @param lightIntensity the intensity of the directional light
+     * @param contrast the contrast
+     * @param ambientLightColor the ambient light color
+     */
+    public void setLighting(float lightIntensity, float contrast, Color ambientLightColor) {
+        if (lightingSet
+                && lightIntensity == this.lightIntensity
+                && contrast == this.contrast
+                && ambientLightColor.equals(this.ambientLightColor)) {
+            return;
+        }
+        if (lightingSet) {
+            invalidations++;
+        }
+        clear();
+        lightingSet = true;
+        this.lightIntensity = lightIntensity;
+        this.contrast = contrast;
+        this.ambientLightColor = ambientLightColor;
+    }
+    
+    /**
+     * Gets the shade of an item
+     * @param argb the packed base color of the item
+     * @param rotation the rotation of the item around the vertical axis, in degrees
+     * @return the shade, computed on first use
+     */
+    public Shade get(int argb, float rotation) {
+        long key = ((long) argb << 32) | (Float.floatToIntBits(rotation) & 0xFFFFFFFFL);
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; shades[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                hits++;
+                return shades[i];
+            }
+        }
+        misses++;
+        
+        Shade shade = shade(argb, rotation);
+        if (size >= MAX_ENTRIES) {
+            clear();
+        } else if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        insert(key, shade);
+        return shade;
+    }
+    
+    /**
+     * Lights the faces of a base color at a rotation
+     * @param argb the packed base color
+     * @param rotation the rotation around the vertical axis, in degrees
+     * @return the new shade
+     */
+    private Shade shade(int argb, float rotation) {
+        // Apply contrast
+        float r = Math.max(0, Math.min(1, (((argb >> 16) & 0xFF) / 255.0f - 0.5f) * contrast + 0.5f));
+        float g = Math.max(0, Math.min(1, (((argb >> 8) & 0xFF) / 255.0f - 0.5f) * contrast + 0.5f));
+        float b = Math.max(0, Math.min(1, ((argb & 0xFF) / 255.0f - 0.5f) * contrast + 0.5f));
+        
+        // Ambient light tints every face alike
+        float ambientR = ambientLightColor.getRed() / 255.0f * AMBIENT;
+        float ambientG = ambientLightColor.getGreen() / 255.0f * AMBIENT;
+        float ambientB = ambientLightColor.getBlue() / 255.0f * AMBIENT;
+        
+        float[] faceNormals = getNormals(rotation);
+        Shade shade = new Shade();
+        for (int face = 0; face < FACES; face++) {
+            float lambert = Math.max(0, faceNormals[face * 3] * TO_LIGHT[0]
+                    + faceNormals[face * 3 + 1] * TO_LIGHT[1]
+                    + faceNormals[face * 3 + 2] * TO_LIGHT[2]);
+            float diffuse = lightIntensity * DIFFUSE * lambert;
+            shade.fills[face] = new Color(
+                    Math.min(1, r * (ambientR + diffuse)),
+                    Math.min(1, g * (ambientG + diffuse)),
+                    Math.min(1, b * (ambientB + diffuse)));
+            shade.outlines[face] = darken(shade.fills[face], 0.7f);
+        }
+        return shade;
+    }
+    
+    /**
+     * Gets the face normals of a box, computed once per rotation
+     * @param rotation the rotation around the vertical axis, in degrees
+     * @return x, y and z of the outward normal of each face, in face order; y points down
+     */
+    private float[] getNormals(float rotation) {
+        return normals.computeIfAbsent(rotation, degrees -> {
+            double angle = Math.toRadians(degrees);
+            float cos = (float) Math.cos(angle);
+            float sin = (float) Math.sin(angle);
+            return new float[] {
+                    0, -1, 0,
+                    0, 1, 0,
+                    -sin, 0, cos,
+                    sin, 0, -cos,
+                    cos, 0, sin,
+                    -cos, 0, -sin
+            };
+        });
+    }
+    
+    private static float[] normalize(float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        return new float[] {x / length, y / length, z / length};
+    }
+    
+    /**
+     * Brightens a color
+     * @param color the color to brighten
+     * @param factor the brightening factor
+     * @return the brightened color
+     */
+    public static Color brighten(Color color, float factor) {
+        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+        hsb[1] = Math.max(0, Math.min(1, hsb[1] * 0.9f)); // Reduce saturation slightly
+        hsb[2] = Math.max(0, Math.min(1, hsb[2] * factor)); // Increase brightness
+        return Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
+    }
+    
+    /**
+     * Darkens a color
+     * @param color the color to darken
+     * @param factor the darkening factor
+     * @return the darkened color
+     */
+    public static Color darken(Color color, float factor) {
+        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+        hsb[2] = Math.max(0, Math.min(1, hsb[2] * factor)); // Decrease brightness
+        return Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
+    }
+    
+    private void insert(long key, Shade shade) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (shades[i] != null) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        shades[i] = shade;
+        size++;
+    }
+    
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Shade[] oldShades = shades;
+        keys = new long[capacity];
+        shades = new Shade[capacity];
+        size = 0;
+        for (int i = 0; i < oldShades.length; i++) {
+            if (oldShades[i] != null) {
+                insert(oldKeys[i], oldShades[i]);
+            }
+        }
+    }
+    
+    private void clear() {
+        normals.clear();
+        keys = new long[INITIAL_CAPACITY];
+        shades = new Shade[INITIAL_CAPACITY];
+        size = 0;
+    }
+    
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+    
+    /**
+     * Gets the number of cached shades
+     * @return the number of distinct color and rotation pairs in the cache
+     */
+    public int size() { return size; }
+    
+    public long getHits() { return hits; }
+    
+    public long getMisses() { return misses; }
+    
+    /**
+     * Gets how often a lighting change dropped the cached shades
+     * @return the number of invalidations
+     */
+    public long getInvalidations() { return invalidations; }
+    
+    @Override
+    public String toString() {
+        return size + " shades, " + hits + " hits / " + misses + " misses, "
+                + invalidations + " invalidations";
+    }
+}
@@ -0,0 +1,469 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Shadows of box-shaped casters on the floor and the back and left walls of
+ * the room, computed with a shadow map.
+ * A depth map is rendered from a directional light with an orthographic
+ * projection, then every texel of the floor and walls is looked up in it.
+ * Both passes run in bands of rows on a fork-join pool. The shadowed texels
+ * of each surface are merged into rectangles, which are kept as world-space
+ * quads so any backend can draw them like other geometry.
+ *
+ * The result is cached until the casters, the room or the light direction
+ * change. Not thread-safe; each renderer owns its own shadow map.
+ */
+public final class ShadowMap {
+    /** Default direction the light travels in: down (+y) and towards the back left of the room */
+    public static final float DEFAULT_LIGHT_X = -0.45f;
+    public static final float DEFAULT_LIGHT_Y = 1.0f;
+    public static final float DEFAULT_LIGHT_Z = -0.6f;
+    
+    // World units per texel of the depth map and of the surfaces, grown for large rooms
+    private static final float TEXEL_SIZE = 2;
+    private static final int MAX_MAP_SIZE = 1024;
+    private static final int BAND_ROWS = 16;
+    private static final int QUAD_FLOATS = 12;
+    
+    private final ForkJoinPool pool;
+    
+    // Inputs; any change marks the map dirty
+    private float[] casters = new float[0];
+    private int casterCount;
+    private final float[] room = new float[6];
+    private final double[] light = new double[3];
+    private boolean dirty = true;
+    
+    // Light space: u and v span the map, t runs along the light direction
+    private final double[] axisU = new double[3];
+    private final double[] axisV = new double[3];
+    private double minU;
+    private double minV;
+    private double texel;
+    private int mapWidth;
+    private int mapHeight;
+    private float[] depth = new float[0];
+    private int[] casterTexels = new int[0];
+    
+    // Shadowed texels per surface and the quads merged from them
+    private byte[] mask = new byte[0];
+    private float[] quads = new float[QUAD_FLOATS * 16];
+    private float[] normals = new float[3 * 16];
+    private int quadCount;
+    
+    private long rebuilds;
+    private long lastBuildNanos;
+    
+    /**
+     * Creates a shadow map on the common fork-join pool
+     */
+    public ShadowMap() {
+        this(ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates a shadow map
+     * @param pool the pool that renders the bands of the map
+     */
+    public ShadowMap(ForkJoinPool pool) {
+        this.pool = pool;
+        setLightDirection(DEFAULT_LIGHT_X, DEFAULT_LIGHT_Y, DEFAULT_LIGHT_Z);
+    }
+    
+    /**
+     * Sets the shadow casters
+     * @param boxes min x, y, z and max x, y, z of each caster
+     * @param count the number of casters
+     */
+    public void setCasters(float[] boxes, int count) {
+        if (casters.length < count * 6) {
+            casters = new float[count * 6];
+        }
+        System.arraycopy(boxes, 0, casters, 0, count * 6);
+        casterCount = count;
+        dirty = true;
+    }
+    
+    /**
+     * Sets the room whose floor and walls receive the shadows
+     * @param x0 the minimum x, where the left wall stands
+     * @param y0 the minimum y, the ceiling
+     * @param z0 the minimum z, where the back wall stands
+     * @param x1 the maximum x
+     * @param y1 the maximum y, the floor
+     * @param z1 the maximum z
+     */
+    public void setRoom(float x0, float y0, float z0, float x1, float y1, float z1) {
+        if (room[0] == x0 && room[1] == y0 && room[2] == z0 && room[3] == x1 && room[4] == y1 && room[5] == z1) {
+            return;
+        }
+        room[0] = x0;
+        room[1] = y0;
+        room[2] = z0;
+        room[3] = x1;
+        room[4] = y1;
+        room[5] = z1;
+        dirty = true;
+    }
+    
+    /**
+     * Sets the direction the light travels in
+     * @param x the x component
+     * @param y the y component; positive values point down
+     * @param z the z component
+     */
+    public void setLightDirection(double x, double y, double z) {
+        double length = Math.sqrt(x * x + y * y + z * z);
+        x /= length;
+        y /= length;
+        z /= length;
+        if (light[0] == x && light[1] == y && light[2] == z) {
+            return;
+        }
+        light[0] = x;
+        light[1] = y;
+        light[2] = z;
+        dirty = true;
+    }
+    
+    /**
+     * Recomputes the shadows if the casters, the room or the light changed
+     * @return true if the shadows were recomputed
+     */
+    public boolean update() {
+        if (!dirty) {
+            return false;
+        }
+        long start = System.nanoTime();
+        setupLightSpace();
+        renderDepth();
+        quadCount = 0;
+        float x0 = room[0], y0 = room[1], z0 = room[2];
+        float x1 = room[3], y1 = room[4], z1 = room[5];
+        
+        // Floor, back wall and left wall, each with its inward normal
+        addSurface(x0, y1, z0, 1, 0, 0, x1 - x0, 0, 0, 1, z1 - z0, 0, -1, 0);
+        addSurface(x0, y0, z0, 1, 0, 0, x1 - x0, 0, 1, 0, y1 - y0, 0, 0, 1);
+        addSurface(x0, y0, z0, 0, 0, 1, z1 - z0, 0, 1, 0, y1 - y0, 1, 0, 0);
+        
+        dirty = false;
+        rebuilds++;
+        lastBuildNanos = System.nanoTime() - start;
+        return true;
+    }
+    
+    /**
+     * Chooses the light-space axes and the extent of the depth map, which
+     * covers the room as seen from the light
+     */
+    private void setupLightSpace() {
+        // Any two axes perpendicular to the light and to each other
+        double[] helper = Math.abs(light[1]) < 0.9 ? new double[] {0, 1, 0} : new double[] {1, 0, 0};
+        cross(light, helper, axisU);
+        normalize(axisU);
+        cross(light, axisU, axisV);
+        normalize(axisV);
+        
+        minU = Double.MAX_VALUE;
+        minV = Double.MAX_VALUE;
+        double maxU = -Double.MAX_VALUE;
+        double maxV = -Double.MAX_VALUE;
+        for (int corner = 0; corner < VertexBuffer.BOX_VERTICES; corner++) {
+            double x = room[(corner & 1) == 0 ? 0 : 3];
+            double y = room[(corner & 2) == 0 ? 1 : 4];
+            double z = room[(corner & 4) == 0 ? 2 : 5];
+            double u = dot(axisU, x, y, z);
+            double v = dot(axisV, x, y, z);
+            minU = Math.min(minU, u);
+            minV = Math.min(minV, v);
+            maxU = Math.max(maxU, u);
+            maxV = Math.max(maxV, v);
+        }
+        
+        // The surfaces are sampled at the same texel size, so it also has to fit the room itself
+        double extent = Math.max(Math.max(maxU - minU, maxV - minV),
+                Math.max(room[3] - room[0], Math.max(room[4] - room[1], room[5] - room[2])));
+        texel = Math.max(TEXEL_SIZE, extent / MAX_MAP_SIZE);
+        mapWidth = Math.max(1, (int) Math.ceil((maxU - minU) / texel));
+        mapHeight = Math.max(1, (int) Math.ceil((maxV - minV) / texel));
+        if (depth.length < mapWidth * mapHeight) {
+            depth = new float[mapWidth * mapHeight];
+        }
+    }
+    
+    /**
+     * Renders the distance from the light to the nearest caster into the depth map
+     */
+    private void renderDepth() {
+        Arrays.fill(depth, 0, mapWidth * mapHeight, Float.POSITIVE_INFINITY);
+        
+        // Texel bounds of each caster as seen from the light, so bands only visit the casters they overlap
+        if (casterTexels.length < casterCount * 4) {
+            casterTexels = new int[casterCount * 4];
+        }
+        for (int i = 0; i < casterCount; i++) {
+            double lowU = Double.MAX_VALUE, lowV = Double.MAX_VALUE;
+            double highU = -Double.MAX_VALUE, highV = -Double.MAX_VALUE;
+            for (int corner = 0; corner < VertexBuffer.BOX_VERTICES; corner++) {
+                double x = casters[i * 6 + ((corner & 1) == 0 ? 0 : 3)];
+                double y = casters[i * 6 + ((corner & 2) == 0 ? 1 : 4)];
+                double z = casters[i * 6 + ((corner & 4) == 0 ? 2 : 5)];
+                double u = dot(axisU, x, y, z);
+                double v = dot(axisV, x, y, z);
+                lowU = Math.min(lowU, u);
+                lowV = Math.min(lowV, v);
+                highU = Math.max(highU, u);
+                highV = Math.max(highV, v);
+            }
+            casterTexels[i * 4] = Math.max(0, (int) Math.floor((lowU - minU) / texel));
+            casterTexels[i * 4 + 1] = Math.max(0, (int) Math.floor((lowV - minV) / texel));
+            casterTexels[i * 4 + 2] = Math.min(mapWidth - 1, (int) Math.floor((highU - minU) / texel));
+            casterTexels[i * 4 + 3] = Math.min(mapHeight - 1, (int) Math.floor((highV - minV) / texel));
+        }
+        
+        runBands(mapHeight, this::renderDepthBand);
+    }
+    
+    /**
+     * Renders one band of rows of the depth map
+     * @param band the index of the band
+     */
+    private void renderDepthBand(int band) {
+        int firstRow = band * BAND_ROWS;
+        int lastRow = Math.min(mapHeight, firstRow + BAND_ROWS) - 1;
+        for (int i = 0; i < casterCount; i++) {
+            int fromRow = Math.max(firstRow, casterTexels[i * 4 + 1]);
+            int toRow = Math.min(lastRow, casterTexels[i * 4 + 3]);
+            int fromColumn = casterTexels[i * 4];
+            int toColumn = casterTexels[i * 4 + 2];
+            for (int row = fromRow; row <= toRow; row++) {
+                double v = minV + (row + 0.5) * texel;
+                for (int column = fromColumn; column <= toColumn; column++) {
+                    double u = minU + (column + 0.5) * texel;
+                    float entry = (float) enterBox(i, u, v);
+                    int index = row * mapWidth + column;
+                    if (entry < depth[index]) {
+                        depth[index] = entry;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Intersects the light ray through a texel with a caster (slab test)
+     * @param caster the index of the caster
+     * @param u the u coordinate of the ray
+     * @param v the v coordinate of the ray
+     * @return the light-space depth where the ray enters the caster, or infinity if it misses
+     */
+    private double enterBox(int caster, double u, double v) {
+        double near = -Double.MAX_VALUE;
+        double far = Double.MAX_VALUE;
+        for (int axis = 0; axis < 3; axis++) {
+            double origin = u * axisU[axis] + v * axisV[axis];
+            double min = casters[caster * 6 + axis];
+            double max = casters[caster * 6 + 3 + axis];
+            double direction = light[axis];
+            if (Math.abs(direction) < 1e-9) {
+                if (origin < min || origin > max) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                continue;
+            }
+            double t0 = (min - origin) / direction;
+            double t1 = (max - origin) / direction;
+            near = Math.max(near, Math.min(t0, t1));
+            far = Math.min(far, Math.max(t0, t1));
+        }
+        return near <= far ? near : Double.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Finds the shadowed texels of a rectangular surface and adds them as quads
+     * @param ox the x of the surface's origin corner
+     * @param oy the y of the surface's origin corner
+     * @param oz the z of the surface's origin corner
+     * @param ax the x of the first edge direction
+     * @param ay the y of the first edge direction
+     * @param az the z of the first edge direction
+     * @param lengthA the length of the first edge
+     * @param bx the x of the second edge direction
+     * @param by the y of the second edge direction
+     * @param bz the z of the second edge direction
+     * @param lengthB the length of the second edge
+     * @param nx the x of the normal towards the inside of the room
+     * @param ny the y of the normal towards the inside of the room
+     * @param nz the z of the normal towards the inside of the room
+     */
+    private void addSurface(float ox, float oy, float oz, float ax, float ay, float az, float lengthA,
+                            float bx, float by, float bz, float lengthB, float nx, float ny, float nz) {
+        // A surface facing away from the light is entirely in its own shadow, which the shading already shows
+        if (nx * light[0] + ny * light[1] + nz * light[2] >= 0 || lengthA <= 0 || lengthB <= 0) {
+            return;
+        }
+        int columns = (int) Math.ceil(lengthA / texel);
+        int rows = (int) Math.ceil(lengthB / texel);
+        if (mask.length < columns * rows) {
+            mask = new byte[columns * rows];
+        }
+        
+        // A texel is shadowed if a caster is nearer to the light along the ray through its center
+        double bias = texel;
+        runBands(rows, band -> {
+            int lastRow = Math.min(rows, (band + 1) * BAND_ROWS);
+            for (int row = band * BAND_ROWS; row < lastRow; row++) {
+                double b = Math.min(lengthB, (row + 0.5) * texel);
+                for (int column = 0; column < columns; column++) {
+                    double a = Math.min(lengthA, (column + 0.5) * texel);
+                    double x = ox + a * ax + b * bx;
+                    double y = oy + a * ay + b * by;
+                    double z = oz + a * az + b * bz;
+                    int mapColumn = (int) Math.floor((dot(axisU, x, y, z) - minU) / texel);
+                    int mapRow = (int) Math.floor((dot(axisV, x, y, z) - minV) / texel);
+                    boolean shadowed = mapColumn >= 0 && mapColumn < mapWidth && mapRow >= 0 && mapRow < mapHeight
+                            && dot(light, x, y, z) > depth[mapRow * mapWidth + mapColumn] + bias;
+                    mask[row * columns + column] = (byte) (shadowed ? 1 : 0);
+                }
+            }
+        });
+        
+        // Merge the shadowed texels into as few quads as possible
+        TexelRectangles.merge(mask, columns, rows, (column, row, endColumn, endRow) -> {
+            float a0 = (float) (column * texel);
+            float a1 = (float) Math.min(lengthA, endColumn * texel);
+            float b0 = (float) (row * texel);
+            float b1 = (float) Math.min(lengthB, endRow * texel);
+            addQuad(ox, oy, oz, ax, ay, az, bx, by, bz, nx, ny, nz, a0, a1, b0, b1);
+        });
+    }
+    
+    private void addQuad(float ox, float oy, float oz, float ax, float ay, float az,
+                         float bx, float by, float bz, float nx, float ny, float nz,
+                         float a0, float a1, float b0, float b1) {
+        if ((quadCount + 1) * QUAD_FLOATS > quads.length) {
+            quads = Arrays.copyOf(quads, quads.length * 2);
+            normals = Arrays.copyOf(normals, normals.length * 2);
+        }
+        int i = quadCount * QUAD_FLOATS;
+        for (int corner = 0; corner < 4; corner++) {
+            float a = corner == 1 || corner == 2 ? a1 : a0;
+            float b = corner >= 2 ? b1 : b0;
+            quads[i++] = ox + a * ax + b * bx;
+            quads[i++] = oy + a * ay + b * by;
+            quads[i++] = oz + a * az + b * bz;
+        }
+        normals[quadCount * 3] = nx;
+        normals[quadCount * 3 + 1] = ny;
+        normals[quadCount * 3 + 2] = nz;
+        quadCount++;
+    }
+    
+    /**
+     * Adds the shadow quads to a vertex buffer, four vertices per quad
+     * @param vertices the vertex buffer
+     * @param inset how far to move the quads off their surface into the room
+     * @return the index of the first vertex added
+     */
+    public int addQuads(VertexBuffer vertices, float inset) {
+        int base = vertices.size();
+        vertices.ensureCapacity(base + quadCount * 4);
+        for (int q = 0; q < quadCount; q++) {
+            float dx = normals[q * 3] * inset;
+            float dy = normals[q * 3 + 1] * inset;
+            float dz = normals[q * 3 + 2] * inset;
+            for (int corner = 0; corner < 4; corner++) {
+                int i = q * QUAD_FLOATS + corner * 3;
+                vertices.add(quads[i] + dx, quads[i + 1] + dy, quads[i + 2] + dz);
+            }
+        }
+        return base;
+    }
+    
+    /**
+     * Runs a pass in bands of rows on the pool
+     * @param rows the number of rows
+     * @param band renders the band with the given index
+     */
+    private void runBands(int rows, IntConsumer band) {
+        int bands = (rows + BAND_ROWS - 1) / BAND_ROWS;
+        pool.invoke(new BandTask(band, 0, bands));
+    }
+    
+    private static void cross(double[] a, double[] b, double[] result) {
+        result[0] = a[1] * b[2] - a[2] * b[1];
+        result[1] = a[2] * b[0] - a[0] * b[2];
+        result[2] = a[0] * b[1] - a[1] * b[0];
+    }
+    
+    private static void normalize(double[] v) {
+        double length = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        v[0] /= length;
+        v[1] /= length;
+        v[2] /= length;
+    }
+    
+    private static double dot(double[] axis, double x, double y, double z) {
+        return axis[0] * x + axis[1] * y + axis[2] * z;
+    }
+    
+    /**
+     * Gets the number of shadow quads
+     * @return the number of quads addQuads adds
+     */
+    public int getQuadCount() { return quadCount; }
+    
+    public int getMapWidth() { return mapWidth; }
+    
+    public int getMapHeight() { return mapHeight; }
+    
+    /**
+     * Gets how often the shadows were recomputed
+     * @return the number of rebuilds
+     */
+    public long getRebuilds() { return rebuilds; }
+    
+    /**
+     * Gets how long the last rebuild took
+     * @return the duration in milliseconds
+     */
+    public double getLastBuildMillis() { return lastBuildNanos / 1e6; }
+    
+    @Override
+    public String toString() {
+        return String.format("%dx%d map, %d quads, %d rebuilds, last %.1f ms",
+                mapWidth, mapHeight, quadCount, rebuilds, getLastBuildMillis());
+    }
+    
+    /**
+     * Runs a range of bands, splitting the range across the pool
+     */
+    private static final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final IntConsumer band;
+        private final int from;
+        private final int to;
+        
+        BandTask(IntConsumer band, int from, int to) {
+            this.band = band;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int i = from; i < to; i++) {
+                    band.accept(i);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BandTask(band, from, middle), new BandTask(band, middle, to));
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.furnitureapp.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Software rasterizer with a depth buffer.
+ * Triangles and lines are collected from a projected {@link VertexBuffer},
+ * binned into screen tiles and rasterized tile by tile on a fork-join pool.
+ * Each tile owns its pixels, so tiles never need to synchronize. The colour
+ * buffer is the backing array of a {@link BufferedImage}, which is drawn to
+ * the screen with a single blit.
+ * 
+ * Opaque primitives are depth-tested and write depth. Translucent
+ * primitives are depth-tested against the opaque ones and blended in
+ * submission order, so they should be submitted back to front.
+ */
+public final class SoftwareRasterizer {
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    
+    // Primitive kinds
+    private static final int TRIANGLE = 0;
+    private static final int LINE = 1;
+    
+    // Lines and translucent faces (shadows) are drawn on top of the faces they lie on
+    private static final float COPLANAR_DEPTH_BIAS = 1.002f;
+    
+    // Nearest allowed distance between the eye and a vertex
+    private static final double NEAR_PLANE = 1.0;
+    
+    private final ForkJoinPool pool;
+    
+    // Frame buffers
+    private BufferedImage image;
+    private int[] colorBuffer;
+    private float[] depthBuffer;
+    private int width;
+    private int height;
+    private int background;
+    
+    // Primitives of the current frame: kind, up to three vertex indices and a colour
+    private VertexBuffer vertices;
+    private float[] inverseW = new float[0];
+    private int[] kinds = new int[64];
+    private int[] indices = new int[64 * 3];
+    private int[] colors = new int[64];
+    private int primitiveCount = 0;
+    private int triangleCount = 0;
+    
+    // Primitive indices per tile, in submission order
+    private int tilesX;
+    private int tilesY;
+    private int[][] bins = new int[0][];
+    private int[] binSizes = new int[0];
+    
+    /**
+     * Creates a rasterizer on the common fork-join pool
+     */
+    public SoftwareRasterizer() {
+        this(ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates a rasterizer
+     * @param pool the pool that rasterizes the tiles
+     */
+    public SoftwareRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * Starts a new frame
+     * @param width the frame width in pixels
+     * @param height the frame height in pixels
+     * @param background the background colour (RGB)
+     * @param vertices the projected vertices the primitives refer to
+     * @param distance the projection distance the vertices were projected with
+     */
+    public void begin(int width, int height, int background, VertexBuffer vertices, double distance) {
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+            colorBuffer = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            depthBuffer = new float[colorBuffer.length];
+        }
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.vertices = vertices;
+        primitiveCount = 0;
+        triangleCount = 0;
+        
+        // Perspective-correct depth: 1/w is linear in screen space
+        int count = vertices.size();
+        if (inverseW.length < count) {
+            inverseW = new float[Math.max(count, inverseW.length * 2)];
+        }
+        float[] depth = vertices.depth;
+        for (int i = 0; i < count; i++) {
+            double w = distance + depth[i];
+            inverseW[i] = w > NEAR_PLANE ? (float) (1.0 / w) : -1f;
+        }
+    }
+    
+    private void ensurePrimitiveCapacity() {
+        if (primitiveCount == kinds.length) {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            indices = Arrays.copyOf(indices, capacity * 3);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+    }
+    
+    /**
+     * Adds a triangle
+     * @param a the index of the first vertex
+     * @param b the index of the second vertex
+     * @param c the index of the third vertex
+     * @param argb the colour, with alpha
+     */
+    public void addTriangle(int a, int b, int c, int argb) {
+        if (inverseW[a] < 0 || inverseW[b] < 0 || inverseW[c] < 0) {
+            // Crosses the eye plane; the projection is not meaningful
+            return;
+        }
+        ensurePrimitiveCapacity();
+        kinds[primitiveCount] = TRIANGLE;
+        indices[primitiveCount * 3] = a;
+        indices[primitiveCount * 3 + 1] = b;
+        indices[primitiveCount * 3 + 2] = c;
+        colors[primitiveCount] = argb;
+        primitiveCount++;
+        triangleCount++;
+    }
+    
+    /**
+     * Adds a convex quad as two triangles
+     * @param a the index of the first vertex
+     * @param b the index of the second vertex
+     * @param c the index of the third vertex
+     * @param d the index of the fourth vertex
+     * @param argb the colour, with alpha
+     */
+    public void addQuad(int a, int b, int c, int d, int argb) {
+        addTriangle(a, b, c, argb);
+        addTriangle(a, c, d, argb);
+    }
+    
+    /**
+     * Adds a one pixel wide line
+     * @param a the index of the first vertex
+     * @param b the index of the second vertex
+     * @param argb the colour, with alpha
+     */
+    public void addLine(int a, int b, int argb) {
+        if (inverseW[a] < 0 || inverseW[b] < 0) {
+            return;
+        }
+        ensurePrimitiveCapacity();
+        kinds[primitiveCount] = LINE;
+        indices[primitiveCount * 3] = a;
+        indices[primitiveCount * 3 + 1] = b;
+        colors[primitiveCount] = argb;
+        primitiveCount++;
+    }
+    
+    /**
+     * Rasterizes all primitives of the frame into the image
+     */
+    public void render() {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        binPrimitives();
+        pool.invoke(new TileTask(0, tilesX * tilesY));
+    }
+    
+    /**
+     * Gets the rendered frame.
+     * The image is reused for the next frame of the same size.
+     * @return the frame image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+    
+    /**
+     * Gets the number of triangles submitted in the current frame
+     * @return the triangle count
+     */
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+    
+    /**
+     * Sorts the primitives into the tiles their screen bounds overlap
+     */
+    private void binPrimitives() {
+        tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        int tileCount = tilesX * tilesY;
+        if (bins.length < tileCount) {
+            bins = Arrays.copyOf(bins, tileCount);
+            binSizes = new int[tileCount];
+        }
+        Arrays.fill(binSizes, 0, tileCount, 0);
+        
+        float[] sx = vertices.screenX;
+        float[] sy = vertices.screenY;
+        for (int p = 0; p < primitiveCount; p++) {
+            int vertexCount = kinds[p] == TRIANGLE ? 3 : 2;
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+            float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int k = 0; k < vertexCount; k++) {
+                int v = indices[p * 3 + k];
+                minX = Math.min(minX, sx[v]);
+                maxX = Math.max(maxX, sx[v]);
+                minY = Math.min(minY, sy[v]);
+                maxY = Math.max(maxY, sy[v]);
+            }
+            if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+                continue;
+            }
+            int firstX = Math.max(0, (int) minX) >> TILE_SHIFT;
+            int lastX = Math.min(width - 1, (int) maxX) >> TILE_SHIFT;
+            int firstY = Math.max(0, (int) minY) >> TILE_SHIFT;
+            int lastY = Math.min(height - 1, (int) maxY) >> TILE_SHIFT;
+            for (int ty = firstY; ty <= lastY; ty++) {
+                for (int tx = firstX; tx <= lastX; tx++) {
+                    int tile = ty * tilesX + tx;
+                    int[] bin = bins[tile];
+                    if (bin == null || binSizes[tile] == bin.length) {
+                        bin = bin == null ? new int[64] : Arrays.copyOf(bin, bin.length * 2);
+                        bins[tile] = bin;
+                    }
+                    bin[binSizes[tile]++] = p;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Rasterizes a range of tiles, splitting the range across the pool
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        
+        TileTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= 2) {
+                for (int tile = from; tile < to; tile++) {
+                    renderTile(tile);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(from, middle), new TileTask(middle, to));
+        }
+    }
+    
+    /**
+     * Clears and rasterizes one tile: opaque primitives first, then translucent ones
+     * @param tile the tile index
+     */
+    private void renderTile(int tile) {
+        int x0 = (tile % tilesX) << TILE_SHIFT;
+        int y0 = (tile / tilesX) << TILE_SHIFT;
+        int x1 = Math.min(width, x0 + TILE_SIZE);
+        int y1 = Math.min(height, y0 + TILE_SIZE);
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            Arrays.fill(colorBuffer, row + x0, row + x1, background);
+            Arrays.fill(depthBuffer, row + x0, row + x1, 0f);
+        }
+        
+        int[] bin = bins[tile];
+        int size = binSizes[tile];
+        for (int pass = 0; pass < 2; pass++) {
+            boolean opaquePass = pass == 0;
+            for (int i = 0; i < size; i++) {
+                int p = bin[i];
+                int color = colors[p];
+                if (((color >>> 24) == 255) != opaquePass) {
+                    continue;
+                }
+                if (kinds[p] == TRIANGLE) {
+                    rasterizeTriangle(p, color, x0, y0, x1, y1);
+                } else {
+                    rasterizeLine(p, color, x0, y0, x1, y1);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Rasterizes the part of a triangle that falls inside a tile
+     */
+    private void rasterizeTriangle(int p, int color, int tileX0, int tileY0, int tileX1, int tileY1) {
+        float[] sx = vertices.screenX;
+        float[] sy = vertices.screenY;
+        int a = indices[p * 3];
+        int b = indices[p * 3 + 1];
+        int c = indices[p * 3 + 2];
+        
+        float ax = sx[a], ay = sy[a];
+        float bx = sx[b], by = sy[b];
+        float cx = sx[c], cy = sy[c];
+        float wa = inverseW[a], wb = inverseW[b], wc = inverseW[c];
+        
+        float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            // Use one winding so the edge functions are positive inside
+            float t = bx; bx = cx; cx = t;
+            t = by; by = cy; cy = t;
+            t = wb; wb = wc; wc = t;
+            area = -area;
+        }
+        
+        int minX = Math.max(tileX0, (int) Math.floor(Math.min(ax, Math.min(bx, cx))));
+        int maxX = Math.min(tileX1 - 1, (int) Math.ceil(Math.max(ax, Math.max(bx, cx))));
+        int minY = Math.max(tileY0, (int) Math.floor(Math.min(ay, Math.min(by, cy))));
+        int maxY = Math.min(tileY1 - 1, (int) Math.ceil(Math.max(ay, Math.max(by, cy))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+        
+        // Edge functions, each opposite one vertex, stepped per pixel
+        float e0dx = -(cy - by), e0dy = cx - bx;
+        float e1dx = -(ay - cy), e1dy = ax - cx;
+        float e2dx = -(by - ay), e2dy = bx - ax;
+        // Pixels exactly on a shared edge belong to one of the two triangles only
+        boolean own0 = e0dx > 0 || (e0dx == 0 && e0dy < 0);
+        boolean own1 = e1dx > 0 || (e1dx == 0 && e1dy < 0);
+        boolean own2 = e2dx > 0 || (e2dx == 0 && e2dy < 0);
+        
+        float px = minX + 0.5f;
+        float py = minY + 0.5f;
+        float row0 = (cx - bx) * (py - by) - (cy - by) * (px - bx);
+        float row1 = (ax - cx) * (py - cy) - (ay - cy) * (px - cx);
+        float row2 = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        float inverseArea = 1f / area;
+        boolean opaque = (color >>> 24) == 255;
+        
+        for (int y = minY; y <= maxY; y++) {
+            float e0 = row0, e1 = row1, e2 = row2;
+            int index = y * width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if ((e0 > 0 || (e0 == 0 && own0)) && (e1 > 0 || (e1 == 0 && own1)) && (e2 > 0 || (e2 == 0 && own2))) {
+                    float depth = (e0 * wa + e1 * wb + e2 * wc) * inverseArea;
+                    if (opaque) {
+                        if (depth > depthBuffer[index]) {
+                            colorBuffer[index] = color;
+                            depthBuffer[index] = depth;
+                        }
+                    } else if (depth * COPLANAR_DEPTH_BIAS >= depthBuffer[index]) {
+                        colorBuffer[index] = blend(colorBuffer[index], color);
+                    }
+                }
+                e0 += e0dx;
+                e1 += e1dx;
+                e2 += e2dx;
+            }
+            row0 += e0dy;
+            row1 += e1dy;
+            row2 += e2dy;
+        }
+    }
+    
+    /**
+     * Rasterizes the part of a line that falls inside a tile
+     */
+    private void rasterizeLine(int p, int color, int tileX0, int tileY0, int tileX1, int tileY1) {
+        int a = indices[p * 3];
+        int b = indices[p * 3 + 1];
+        float ax = vertices.screenX[a], ay = vertices.screenY[a];
+        float bx = vertices.screenX[b], by = vertices.screenY[b];
+        float wa = inverseW[a], wb = inverseW[b];
+        
+        int steps = (int) Math.ceil(Math.max(Math.abs(bx - ax), Math.abs(by - ay)));
+        if (steps == 0) {
+            steps = 1;
+        }
+        float dx = (bx - ax) / steps;
+        float dy = (by - ay) / steps;
+        float dw = (wb - wa) / steps;
+        boolean opaque = (color >>> 24) == 255;
+        
+        float x = ax, y = ay, w = wa;
+        for (int i = 0; i <= steps; i++, x += dx, y += dy, w += dw) {
+            int px = (int) Math.floor(x);
+            int py = (int) Math.floor(y);
+            if (px < tileX0 || px >= tileX1 || py < tileY0 || py >= tileY1) {
+                continue;
+            }
+            int index = py * width + px;
+            if (w * COPLANAR_DEPTH_BIAS >= depthBuffer[index]) {
+                colorBuffer[index] = opaque ? color : blend(colorBuffer[index], color);
+            }
+        }
+    }
+    
+    /**
+     * Blends a translucent colour over an opaque one
+     * @param dst the existing colour (RGB)
+     * @param src the colour to draw (ARGB)
+     * @return the blended colour (RGB)
+     */
+    private static int blend(int dst, int src) {
+        int alpha = src >>> 24;
+        int inverse = 255 - alpha;
+        int r = (((src >> 16) & 0xFF) * alpha + ((dst >> 16) & 0xFF) * inverse) / 255;
+        int g = (((src >> 8) & 0xFF) * alpha + ((dst >> 8) & 0xFF) * inverse) / 255;
+        int b = ((src & 0xFF) * alpha + (dst & 0xFF) * inverse) / 255;
+        return (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,69 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Merges the set texels of a mask into rectangles, so a texture that is
+ * mostly empty can be drawn as a few quads
+ */
+final class TexelRectangles {
+    
+    /**
+     * Receives the merged rectangles
+     */
+    interface Sink {
+        /**
+         * Adds a rectangle of texels
+         * @param column the first column
+         * @param row the first row
+         * @param endColumn the column after the last one
+         * @param endRow the row after the last one
+         */
+        void add(int column, int row, int endColumn, int endRow);
+    }
+    
+    private static final byte SET = 1;
+    private static final byte CLAIMED = 2;
+    
+    private TexelRectangles() {
+    }
+    
+    /**
+     * Greedy merge: grows each unclaimed set texel into the widest, then
+     * tallest rectangle. Set texels are claimed as they are merged.
+     * @param mask one byte per texel, row by row; 1 marks a set texel
+     * @param columns the number of columns
+     * @param rows the number of rows
+     * @param sink receives the rectangles
+     */
+    static void merge(byte[] mask, int columns, int rows, Sink sink) {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                if (mask[row * columns + column] != SET) {
+                    continue;
+                }
+                int endColumn = column + 1;
+                while (endColumn < columns && mask[row * columns + endColumn] == SET) {
+                    endColumn++;
+                }
+                int endRow = row + 1;
+                while (endRow < rows && isRunSet(mask, endRow * columns, column, endColumn)) {
+                    endRow++;
+                }
+                for (int r = row; r < endRow; r++) {
+                    Arrays.fill(mask, r * columns + column, r * columns + endColumn, CLAIMED);
+                }
+                sink.add(column, row, endColumn, endRow);
+            }
+        }
+    }
+    
+    private static boolean isRunSet(byte[] mask, int rowStart, int fromColumn, int toColumn) {
+        for (int column = fromColumn; column < toColumn; column++) {
+            if (mask[rowStart + column] != SET) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,165 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer of scene vertices and their projected screen positions.
+ * Vertices are stored in parallel primitive arrays that grow as needed and
+ * are kept between frames, so filling and projecting a frame allocates
+ * nothing once the buffer has reached the scene size.
+ */
+public final class VertexBuffer {
+    private static final int DEFAULT_CAPACITY = 256;
+    
+    /** Number of vertices added by {@link #addBox} */
+    public static final int BOX_VERTICES = 8;
+    
+    // World-space input
+    float[] x;
+    float[] y;
+    float[] z;
+    
+    // Projected output, written by ViewProjection.project
+    float[] screenX;
+    float[] screenY;
+    float[] depth;
+    
+    private int size = 0;
+    
+    /**
+     * Creates an empty buffer with the default capacity
+     */
+    public VertexBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Creates an empty buffer
+     * @param capacity the initial number of vertices
+     */
+    public VertexBuffer(int capacity) {
+        capacity = Math.max(1, capacity);
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+        screenX = new float[capacity];
+        screenY = new float[capacity];
+        depth = new float[capacity];
+    }
+    
+    /**
+     * Removes all vertices, keeping the arrays for the next frame
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Makes sure the buffer can hold the given number of vertices without growing again
+     * @param capacity the number of vertices
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= x.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        z = Arrays.copyOf(z, newCapacity);
+        screenX = Arrays.copyOf(screenX, newCapacity);
+        screenY = Arrays.copyOf(screenY, newCapacity);
+        depth = Arrays.copyOf(depth, newCapacity);
+    }
+    
+    /**
+     * Adds a vertex
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @param z the world z coordinate
+     * @return the index of the vertex
+     */
+    public int add(float x, float y, float z) {
+        ensureCapacity(size + 1);
+        this.x[size] = x;
+        this.y[size] = y;
+        this.z[size] = z;
+        return size++;
+    }
+    
+    /**
+     * Adds the eight corners of an axis-aligned box.
+     * Corner {@code i} of the box is at index {@code base + i}, where bit 0 of
+     * {@code i} selects x1 over x0, bit 1 selects y1 over y0 and bit 2
+     * selects z1 over z0.
+     * @return the index of the first corner
+     */
+    public int addBox(float x0, float y0, float z0, float x1, float y1, float z1) {
+        ensureCapacity(size + BOX_VERTICES);
+        int base = size;
+        for (int i = 0; i < BOX_VERTICES; i++) {
+            x[base + i] = (i & 1) == 0 ? x0 : x1;
+            y[base + i] = (i & 2) == 0 ? y0 : y1;
+            z[base + i] = (i & 4) == 0 ? z0 : z1;
+        }
+        size += BOX_VERTICES;
+        return base;
+    }
+    
+    /**
+     * Adds the vertices of a mesh scaled and turned into an item's bounds.
+     * Mesh vertex {@code i} is at index {@code base + i}. The mesh's x and z
+     * axes are mapped onto the edges of the item's footprint, which already
+     * include its rotation, so no angles are needed here. A negative height
+     * places the mesh upright in the y-down world; a positive one mirrors it
+     * below the floor.
+     * @param mesh the shared mesh
+     * @param x the world x of the mesh's origin corner
+     * @param y the world y of the mesh's floor
+     * @param z the world z of the mesh's origin corner
+     * @param widthX the x of the footprint edge along the mesh's x axis
+     * @param widthZ the z of the footprint edge along the mesh's x axis
+     * @param height the extent along y
+     * @param depthX the x of the footprint edge along the mesh's z axis
+     * @param depthZ the z of the footprint edge along the mesh's z axis
+     * @return the index of the first vertex
+     */
+    public int addInstance(Mesh mesh, float x, float y, float z, float widthX, float widthZ, float height,
+                           float depthX, float depthZ) {
+        int count = mesh.getVertexCount();
+        ensureCapacity(size + count);
+        int base = size;
+        for (int i = 0; i < count; i++) {
+            float meshX = mesh.getX(i);
+            float meshZ = mesh.getZ(i);
+            this.x[base + i] = x + meshX * widthX + meshZ * depthX;
+            this.y[base + i] = y + mesh.getY(i) * height;
+            this.z[base + i] = z + meshX * widthZ + meshZ * depthZ;
+        }
+        size += count;
+        return base;
+    }
+    
+    /**
+     * Gets the number of vertices in the buffer
+     * @return the vertex count
+     */
+    public int size() { return size; }
+    
+    public float getX(int index) { return x[index]; }
+    
+    public float getY(int index) { return y[index]; }
+    
+    public float getZ(int index) { return z[index]; }
+    
+    // Projected positions; valid after the buffer has been projected
+    public float getScreenX(int index) { return screenX[index]; }
+    
+    public float getScreenY(int index) { return screenY[index]; }
+    
+    /**
+     * Gets the view-space depth of a projected vertex
+     * @param index the vertex index
+     * @return the distance along the view direction; larger is further away
+     */
+    public float getDepth(int index) { return depth[index]; }
+}
@@ -0,0 +1,141 @@
+package com.furnitureapp.render;
+
+import java.util.Arrays;
+
+/**
+ * Collects model vertices into a packed position array, merging vertices
+ * at exactly the same position. Hash tables of primitive ints with open
+ * addressing keep the cost at a few bytes per vertex, even for models of
+ * millions of vertices. Not thread-safe.
+ */
+final class VertexTable {
+    private final float[] positions;
+    private final int[] slots;
+    private final int mask;
+    private int count;
+    
+    /**
+     * Creates an empty table
+     * @param capacity the most vertices the model can have
+     */
+    VertexTable(int capacity) {
+        positions = new float[capacity * 3];
+        slots = new int[tableSize(capacity)];
+        Arrays.fill(slots, -1);
+        mask = slots.length - 1;
+    }
+    
+    /**
+     * Adds a vertex unless an equal one is already in the table
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     * @return the index of the vertex
+     */
+    int add(float x, float y, float z) {
+        // Adding zero turns -0 into 0, so both land on the same vertex
+        x += 0.0f;
+        y += 0.0f;
+        z += 0.0f;
+        int hash = (Float.floatToIntBits(x) * 31 + Float.floatToIntBits(y)) * 31 + Float.floatToIntBits(z);
+        int slot = mix(hash) & mask;
+        while (slots[slot] >= 0) {
+            int index = slots[slot];
+            if (positions[index * 3] == x && positions[index * 3 + 1] == y && positions[index * 3 + 2] == z) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (count * 3 == positions.length) {
+            throw new IllegalStateException("More vertices than the table was sized for");
+        }
+        positions[count * 3] = x;
+        positions[count * 3 + 1] = y;
+        positions[count * 3 + 2] = z;
+        slots[slot] = count;
+        return count++;
+    }
+    
+    /**
+     * Gets the number of distinct vertices
+     * @return the vertex count
+     */
+    int size() {
+        return count;
+    }
+    
+    /**
+     * Creates the geometry of the collected vertices
+     * @param triangles three vertex indices per triangle
+     * @param triangleCount the number of triangles
+     * @return the geometry, sharing the position array when it is full
+     */
+    MeshData toMeshData(int[] triangles, int triangleCount) {
+        float[] packed = count * 3 == positions.length ? positions : Arrays.copyOf(positions, count * 3);
+        return new MeshData(packed, count, triangles, triangleCount);
+    }
+    
+    /**
+     * Gets a power of two table size that keeps the table at most half full
+     */
+    private static int tableSize(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+        return Math.max(16, size);
+    }
+    
+    /**
+     * Spreads the bits of a hash so neighbouring keys do not cluster
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+    
+    /**
+     * Numbers distinct long keys in the order they are first seen
+     */
+    static final class LongIndex {
+        private final long[] keys;
+        private final int[] indices;
+        private final int mask;
+        private int count;
+        
+        /**
+         * Creates an empty index
+         * @param capacity the most distinct keys
+         */
+        LongIndex(int capacity) {
+            int size = tableSize(capacity);
+            keys = new long[size];
+            indices = new int[size];
+            Arrays.fill(indices, -1);
+            mask = size - 1;
+        }
+        
+        /**
+         * Gets the number of a key, numbering it if it is new
+         * @param key the key
+         * @return the number of the key
+         */
+        int indexOf(long key) {
+            int slot = mix((int) (key ^ (key >>> 32))) & mask;
+            while (indices[slot] >= 0) {
+                if (keys[slot] == key) {
+                    return indices[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            indices[slot] = count;
+            return count++;
+        }
+        
+        /**
+         * Gets the number of distinct keys
+         * @return the key count
+         */
+        int size() {
+            return count;
+        }
+    }
+}
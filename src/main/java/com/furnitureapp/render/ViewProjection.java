@@ -0,0 +1,247 @@
+package com.furnitureapp.render;
+
+import java.awt.geom.AffineTransform;
+
+/**
+ * Combined view, perspective and screen transform for the 3D preview.
+ * The camera rotation is turned into a matrix once per frame, so projecting
+ * a vertex costs a handful of multiply-adds and one division instead of
+ * trigonometry per point, and whole vertex buffers are projected in one
+ * pass without allocating.
+ */
+public final class ViewProjection {
+    /** Default distance from the eye to the projection plane */
+    public static final double DEFAULT_DISTANCE = 1000;
+    
+    // World to view: rotation rows and translation
+    private double m00, m01, m02, m03;
+    private double m10, m11, m12, m13;
+    private double m20, m21, m22, m23;
+    
+    private double distance = DEFAULT_DISTANCE;
+    
+    // Projection plane to screen (2D affine)
+    private double s00 = 1, s01, s02;
+    private double s10, s11 = 1, s12;
+    
+    // Scratch space for computeFrustum
+    private final double[] corners = new double[8];
+    
+    /**
+     * Sets the camera.
+     * The view applies yaw (around Y) first and then pitch (around X),
+     * both relative to the camera position.
+     * @param cameraX the camera x position
+     * @param cameraY the camera y position
+     * @param cameraZ the camera z position
+     * @param pitchDegrees the rotation around the X axis in degrees
+     * @param yawDegrees the rotation around the Y axis in degrees
+     */
+    public void setCamera(double cameraX, double cameraY, double cameraZ, double pitchDegrees, double yawDegrees) {
+        double yaw = Math.toRadians(yawDegrees);
+        double pitch = Math.toRadians(pitchDegrees);
+        double cy = Math.cos(yaw);
+        double sy = Math.sin(yaw);
+        double cx = Math.cos(pitch);
+        double sx = Math.sin(pitch);
+        
+        m00 = cy;        m01 = 0;   m02 = -sy;
+        m10 = -sx * sy;  m11 = cx;  m12 = -sx * cy;
+        m20 = cx * sy;   m21 = sx;  m22 = cx * cy;
+        
+        m03 = -(m00 * cameraX + m01 * cameraY + m02 * cameraZ);
+        m13 = -(m10 * cameraX + m11 * cameraY + m12 * cameraZ);
+        m23 = -(m20 * cameraX + m21 * cameraY + m22 * cameraZ);
+    }
+    
+    /**
+     * Sets the distance from the eye to the projection plane
+     * @param distance the projection distance
+     */
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+    
+    /**
+     * Sets the 2D transform from the projection plane to screen coordinates
+     * @param transform the screen transform (copied)
+     */
+    public void setScreenTransform(AffineTransform transform) {
+        s00 = transform.getScaleX();
+        s01 = transform.getShearX();
+        s02 = transform.getTranslateX();
+        s10 = transform.getShearY();
+        s11 = transform.getScaleY();
+        s12 = transform.getTranslateY();
+    }
+    
+    /**
+     * Gets the world position of the eye, the centre of the perspective projection
+     * @return the eye x coordinate
+     */
+    public double getEyeX() { return -(m00 * m03 + m10 * m13 + m20 * (m23 + distance)); }
+    
+    public double getEyeY() { return -(m01 * m03 + m11 * m13 + m21 * (m23 + distance)); }
+    
+    public double getEyeZ() { return -(m02 * m03 + m12 * m13 + m22 * (m23 + distance)); }
+    
+    /**
+     * Checks whether a face points towards the eye.
+     * This is the sign of the view-space normal against the view-space
+     * direction to the face, computed in world space where it is the same.
+     * @param nx the x component of the face's outward normal
+     * @param ny the y component of the face's outward normal
+     * @param nz the z component of the face's outward normal
+     * @param x the x coordinate of any point on the face
+     * @param y the y coordinate of any point on the face
+     * @param z the z coordinate of any point on the face
+     * @return true if the front of the face is visible
+     */
+    public boolean isFrontFacing(double nx, double ny, double nz, double x, double y, double z) {
+        return nx * (getEyeX() - x) + ny * (getEyeY() - y) + nz * (getEyeZ() - z) > 0;
+    }
+    
+    /**
+     * Computes the world-space direction of the ray from the eye through a
+     * screen point. This only reads the projection, so several threads may
+     * cast rays through the same projection at once.
+     * @param screenX the x coordinate on screen
+     * @param screenY the y coordinate on screen
+     * @param direction receives the x, y and z of the direction, not normalized
+     */
+    public void computeRayDirection(double screenX, double screenY, double[] direction) {
+        // Back onto the projection plane (inverse of the screen transform)
+        double det = s00 * s11 - s01 * s10;
+        double x = screenX - s02;
+        double y = screenY - s12;
+        double px = (s11 * x - s01 * y) / det;
+        double py = (-s10 * x + s00 * y) / det;
+        
+        // The view-space ray from the eye at (0, 0, -distance) through (px, py, 0), rotated into the world
+        direction[0] = m00 * px + m10 * py + m20 * distance;
+        direction[1] = m01 * px + m11 * py + m21 * distance;
+        direction[2] = m02 * px + m12 * py + m22 * distance;
+    }
+    
+    /**
+     * Computes the world-space frustum of a viewport
+     * @param frustum the frustum to fill in
+     * @param width the viewport width in screen coordinates
+     * @param height the viewport height in screen coordinates
+     * @param near the nearest distance from the eye that is still visible
+     */
+    public void computeFrustum(Frustum frustum, double width, double height, double near) {
+        // Viewport corners back on the projection plane (inverse of the screen transform)
+        double det = s00 * s11 - s01 * s10;
+        corners[0] = 0;
+        corners[1] = 0;
+        corners[2] = width;
+        corners[3] = 0;
+        corners[4] = width;
+        corners[5] = height;
+        corners[6] = 0;
+        corners[7] = height;
+        double centerX = 0, centerY = 0;
+        for (int i = 0; i < 8; i += 2) {
+            double x = corners[i] - s02;
+            double y = corners[i + 1] - s12;
+            corners[i] = (s11 * x - s01 * y) / det;
+            corners[i + 1] = (-s10 * x + s00 * y) / det;
+            centerX += corners[i] / 4;
+            centerY += corners[i + 1] / 4;
+        }
+        
+        double[] planes = frustum.planes;
+        for (int edge = 0; edge < 4; edge++) {
+            double ax = corners[edge * 2], ay = corners[edge * 2 + 1];
+            double bx = corners[(edge * 2 + 2) % 8], by = corners[(edge * 2 + 3) % 8];
+            
+            // Edge line on the projection plane: a*px + b*py + c >= 0 on the inside
+            double a = -(by - ay);
+            double b = bx - ax;
+            double c = -(a * ax + b * ay);
+            if (a * centerX + b * centerY + c < 0) {
+                a = -a;
+                b = -b;
+                c = -c;
+            }
+            
+            // With px = D*vx/w, py = D*vy/w and w = D + vz > 0 this is a plane through the eye
+            setWorldPlane(planes, edge, a * distance, b * distance, c, c * distance);
+        }
+        // Near plane: w >= near
+        setWorldPlane(planes, 4, 0, 0, 1, distance - near);
+    }
+    
+    /**
+     * Stores a view-space plane as a world-space plane
+     */
+    private void setWorldPlane(double[] planes, int index, double a, double b, double c, double d) {
+        int i = index * 4;
+        planes[i] = a * m00 + b * m10 + c * m20;
+        planes[i + 1] = a * m01 + b * m11 + c * m21;
+        planes[i + 2] = a * m02 + b * m12 + c * m22;
+        planes[i + 3] = a * m03 + b * m13 + c * m23 + d;
+    }
+    
+    /**
+     * Projects every vertex of a buffer into its screen position and depth
+     * @param vertices the vertex buffer
+     */
+    public void project(VertexBuffer vertices) {
+        project(vertices, 0, vertices.size());
+    }
+    
+    /**
+     * Projects a range of vertices into their screen positions and depths
+     * @param vertices the vertex buffer
+     * @param from the first vertex to project
+     * @param to one past the last vertex to project
+     */
+    public void project(VertexBuffer vertices, int from, int to) {
+        float[] x = vertices.x;
+        float[] y = vertices.y;
+        float[] z = vertices.z;
+        float[] screenX = vertices.screenX;
+        float[] screenY = vertices.screenY;
+        float[] depth = vertices.depth;
+        for (int i = from; i < to; i++) {
+            double wx = x[i];
+            double wy = y[i];
+            double wz = z[i];
+            double vx = m00 * wx + m01 * wy + m02 * wz + m03;
+            double vy = m10 * wx + m11 * wy + m12 * wz + m13;
+            double vz = m20 * wx + m21 * wy + m22 * wz + m23;
+            double factor = distance / (distance + vz);
+            double px = vx * factor;
+            double py = vy * factor;
+            screenX[i] = (float) (s00 * px + s01 * py + s02);
+            screenY[i] = (float) (s10 * px + s11 * py + s12);
+            depth[i] = (float) vz;
+        }
+    }
+    
+    /**
+     * Gets the approximate size on screen of a length at a point
+     * @param length the world-space length
+     * @param x the world x coordinate of the point
+     * @param y the world y coordinate of the point
+     * @param z the world z coordinate of the point
+     * @return the projected length in screen coordinates
+     */
+    public double screenSize(double length, double x, double y, double z) {
+        double factor = distance / Math.max(1e-6, distance + viewDepth(x, y, z));
+        return length * factor * Math.hypot(s00, s10);
+    }
+    
+    /**
+     * Gets the view-space depth of a single point
+     * @param x the world x coordinate
+     * @param y the world y coordinate
+     * @param z the world z coordinate
+     * @return the distance along the view direction; larger is further away
+     */
+    public double viewDepth(double x, double y, double z) {
+        return m20 * x + m21 * y + m22 * z + m23;
+    }
+}
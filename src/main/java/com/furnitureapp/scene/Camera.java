@@ -0,0 +1,145 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.render.ViewProjection;
+
+import java.awt.geom.AffineTransform;
+
+/**
+ * Immutable description of the 3D camera: where it stands, how it is
+ * turned and how far the view is zoomed. A camera can also be orbited
+ * around the vertical axis through the room centre, which turns the room
+ * in place on screen like a turntable. Cameras are compared by value, so
+ * cached layers can use them as keys.
+ */
+public final class Camera {
+    /** The view the 3D panel starts with */
+    public static final Camera DEFAULT = new Camera(0, 200, 500, 30, -30, 1.0);
+    
+    private final double x;
+    private final double y;
+    private final double z;
+    private final double rotationX;
+    private final double rotationY;
+    private final double zoom;
+    private final double orbit;
+    
+    /**
+     * Creates a camera
+     * @param x the x of the camera position
+     * @param y the y of the camera position
+     * @param z the z of the camera position
+     * @param rotationX the rotation around the X axis (pitch) in degrees
+     * @param rotationY the rotation around the Y axis (yaw) in degrees
+     * @param zoom the zoom factor, 1 for the unzoomed view
+     */
+    public Camera(double x, double y, double z, double rotationX, double rotationY, double zoom) {
+        this(x, y, z, rotationX, rotationY, zoom, 0);
+    }
+    
+    private Camera(double x, double y, double z, double rotationX, double rotationY, double zoom, double orbit) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.rotationX = rotationX;
+        this.rotationY = rotationY;
+        this.zoom = zoom;
+        this.orbit = orbit;
+    }
+    
+    public double getX() { return x; }
+    
+    public double getY() { return y; }
+    
+    public double getZ() { return z; }
+    
+    public double getRotationX() { return rotationX; }
+    
+    public double getRotationY() { return rotationY; }
+    
+    public double getZoom() { return zoom; }
+    
+    public double getOrbit() { return orbit; }
+    
+    /**
+     * Gets this camera moved further around the room centre. The room turns
+     * on screen while the framing stays the same.
+     * @param degrees the angle to orbit by
+     * @return the orbited camera
+     */
+    public Camera orbitedBy(double degrees) {
+        return new Camera(x, y, z, rotationX, rotationY, zoom, orbit + degrees);
+    }
+    
+    /**
+     * Gets the world x of the camera position after the orbit
+     * @return the orbited x coordinate
+     */
+    public double getOrbitedX() {
+        double angle = Math.toRadians(orbit);
+        return Math.cos(angle) * x + Math.sin(angle) * z;
+    }
+    
+    /**
+     * Gets the world z of the camera position after the orbit
+     * @return the orbited z coordinate
+     */
+    public double getOrbitedZ() {
+        double angle = Math.toRadians(orbit);
+        return Math.cos(angle) * z - Math.sin(angle) * x;
+    }
+    
+    /**
+     * Points a projection through this camera for a frame
+     * @param projection the projection to set up
+     * @param screenTransform scratch transform for the projection plane
+     * @param width the width of the frame
+     * @param height the height of the frame
+     * @param scale the resolution of the frame relative to the view
+     */
+    void setUp(ViewProjection projection, AffineTransform screenTransform, int width, int height, double scale) {
+        // Orbiting moves the camera around the room and turns it by the same angle,
+        // which is the same view as the room turned the other way
+        projection.setCamera(getOrbitedX(), y, getOrbitedZ(), rotationX, rotationY + orbit);
+        
+        // Center the view, apply zoom and rotations on the projection plane;
+        // reduced-resolution frames are drawn at a smaller scale
+        double scaledZoom = zoom * scale;
+        screenTransform.setToTranslation(width / 2, height / 2);
+        screenTransform.scale(scaledZoom, scaledZoom);
+        screenTransform.rotate(Math.toRadians(rotationY), 0, 0);
+        screenTransform.rotate(Math.toRadians(rotationX), 1, 0);
+        projection.setScreenTransform(screenTransform);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Camera)) {
+            return false;
+        }
+        Camera other = (Camera) o;
+        return x == other.x && y == other.y && z == other.z
+                && rotationX == other.rotationX && rotationY == other.rotationY && zoom == other.zoom
+                && orbit == other.orbit;
+    }
+    
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(x);
+        bits = 31 * bits + Double.doubleToLongBits(y);
+        bits = 31 * bits + Double.doubleToLongBits(z);
+        bits = 31 * bits + Double.doubleToLongBits(rotationX);
+        bits = 31 * bits + Double.doubleToLongBits(rotationY);
+        bits = 31 * bits + Double.doubleToLongBits(zoom);
+        bits = 31 * bits + Double.doubleToLongBits(orbit);
+        return (int) (bits ^ (bits >>> 32));
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("Camera[(%.1f, %.1f, %.1f), pitch %.1f, yaw %.1f, zoom %.2f, orbit %.1f]",
+                x, y, z, rotationX, rotationY, zoom, orbit);
+    }
+}
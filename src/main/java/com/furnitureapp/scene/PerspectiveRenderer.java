@@ -0,0 +1,1086 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.model.FurnitureStore;
+import com.furnitureapp.render.AmbientOcclusionMap;
+import com.furnitureapp.render.BoundingVolumeHierarchy;
+import com.furnitureapp.render.CullingStats;
+import com.furnitureapp.render.FloorReflection;
+import com.furnitureapp.render.FrameStats;
+import com.furnitureapp.render.Frustum;
+import com.furnitureapp.render.LayerCache;
+import com.furnitureapp.render.Mesh;
+import com.furnitureapp.render.MeshCache;
+import com.furnitureapp.render.RenderMode;
+import com.furnitureapp.render.RenderQuality;
+import com.furnitureapp.render.ShadingCache;
+import com.furnitureapp.render.ShadowMap;
+import com.furnitureapp.render.SoftwareRasterizer;
+import com.furnitureapp.render.VertexBuffer;
+import com.furnitureapp.render.ViewProjection;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Draws the 3D perspective view of a design. A renderer keeps its buffers,
+ * caches and shadow maps between frames, so the same renderer should draw
+ * consecutive frames of one view. Not thread-safe; {@link SceneRenderer}
+ * hands each thread a renderer of its own.
+ */
+final class PerspectiveRenderer {
+    // The frame being drawn
+    private DesignSnapshot snapshot;
+    private Camera camera;
+    private RenderOptions options;
+    private CullingStats stats;
+    
+    // Items smaller than this on screen are drawn as plain boxes
+    private static final float SIMPLIFY_PIXELS = 6;
+    
+    // Scene geometry
+    private static final int GRID_SPACING = 50;
+    private static final Color GRID_COLOR = new Color(200, 200, 200, 100);
+    // Shadow alpha at full shadow intensity; the default intensity of 0.5 gives the old fixed alpha of 50
+    private static final int MAX_SHADOW_ALPHA = 100;
+    // Alpha of each ambient occlusion level; all levels stacked darken the floor by about 45%
+    private static final Color OCCLUSION_COLOR = new Color(0, 0, 0, 18);
+    private static final Color WIREFRAME_COLOR = new Color(60, 60, 60);
+    // Zero width draws aliased one-pixel lines, which Java2D draws far faster than stroked outlines
+    private static final Stroke WIREFRAME_STROKE = new BasicStroke(0);
+    
+    // Per-frame state, reused so frames do not allocate geometry
+    private final ViewProjection viewProjection = new ViewProjection();
+    private final AffineTransform screenTransform = new AffineTransform();
+    private final VertexBuffer vertices = new VertexBuffer();
+    private final Path2D.Float quad = new Path2D.Float();
+    private final Line2D.Float edge = new Line2D.Float();
+    private final Rectangle itemRect = new Rectangle();
+    private final ShadingCache shadingCache = new ShadingCache();
+    private final SoftwareRasterizer rasterizer = new SoftwareRasterizer();
+    private boolean software;
+    private int bufferWidth;
+    private int bufferHeight;
+    
+    // Culling: item bounds in a hierarchy, rebuilt when the model changes
+    private static final double NEAR_DISTANCE = 1.0;
+    private final Frustum frustum = new Frustum();
+    private final BoundingVolumeHierarchy itemHierarchy = new BoundingVolumeHierarchy();
+    private float[] itemBounds = new float[0];
+    private FurnitureStore hierarchyItems;
+    private int[] visibleSlots = new int[0];
+    private int visibleCount;
+    private long[] drawOrder = new long[0];
+    private int roomBase;
+    private int gridBase;
+    private int gridEnd;
+    private int shadowBase;
+    private int shadowEnd;
+    private int[] instanceBases = new int[0];
+    private int[] reflectionBases = new int[0];
+    
+    // Each item is an instance of its type's shared mesh; holding them per slot keeps them loaded
+    private final MeshCache meshCache = MeshCache.SHARED;
+    private Mesh[] itemMeshes = new Mesh[0];
+    private Mesh[] visibleMeshes = new Mesh[0];
+    private long[] quadDepths = new long[0];
+    private int[] partOrder = new int[0];
+    private int[] quadOrder = new int[0];
+    private float[] casterBounds = new float[0];
+    
+    // Item shadows on the floor and walls, recomputed only when the items or the room change
+    private final ShadowMap shadowMap = new ShadowMap();
+    private final Path2D.Float quadPath = new Path2D.Float();
+    
+    // Contact darkening on the floor, baked once per model version
+    private final AmbientOcclusionMap occlusionMap = new AmbientOcclusionMap();
+    private long occlusionVersion = -1;
+    private long[] itemIds = new long[0];
+    private int occlusionBase;
+    
+    // Floor reflection at reduced resolution, redrawn only when the items, lighting or camera change
+    private final FloorReflection reflection = new FloorReflection();
+    private final LayerCache reflectionLayer = new LayerCache(true, "items", "lighting", "camera");
+    private final FrameStats reflectionStats = new FrameStats(240);
+    private final Path2D.Float floorPath = new Path2D.Float();
+    
+    // All edges of a wireframe frame, drawn as one path
+    private final Path2D.Float wireframePath = new Path2D.Float();
+    
+    // The room shell and floor grid, cached as an image until the room, the view or the hints change
+    private final LayerCache roomLayer = new LayerCache(false, "room size", "room colors", "camera", "quality",
+            "hints");
+    
+    private double strokeZoom = Double.NaN;
+    private Stroke outlineStroke;
+    private Stroke gridStroke;
+    private Stroke selectionStroke;
+    
+    /**
+     * Draws a frame
+     * @param snapshot the design to draw
+     * @param camera the view of the design
+     * @param options what to draw and how
+     * @param g2d the graphics to draw into
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     * @return what the culling stage kept and rejected
+     */
+    CullingStats render(DesignSnapshot snapshot, Camera camera, RenderOptions options, Graphics2D g2d,
+                        int width, int height) {
+        this.snapshot = snapshot;
+        this.camera = camera;
+        this.options = options;
+        stats = new CullingStats();
+        bufferWidth = width;
+        bufferHeight = height;
+        drawFrame(g2d, width, height);
+        return stats;
+    }
+    
+    /**
+     * Draws the frame set up by render
+     */
+    private void drawFrame(Graphics2D g2d, int width, int height) {
+        // Set up the camera view
+        setupCamera(width, height);
+        
+        // The software backend collects the primitives drawn below and rasterizes them in one go
+        software = options.getRenderMode() == RenderMode.SOFTWARE;
+        
+        // Collect the scene vertices and project them in one pass
+        buildScene();
+        viewProjection.project(vertices);
+        
+        // Wireframe frames skip shading, sorting and the floor effects altogether
+        if (options.isWireframe()) {
+            drawWireframe(g2d);
+            return;
+        }
+        
+        // Shaded face colors are reused across frames until the lighting changes
+        DesignSnapshot scene = snapshot;
+        shadingCache.setLighting(scene.getLightIntensity(), scene.getContrast(), scene.getAmbientLightColor());
+        sortItems();
+        
+        // Draw the room. The depth buffer needs the room's depth, so only the
+        // Java2D backend, which paints the items over it, can use the cached layer.
+        applyQuality(g2d);
+        if (software) {
+            rasterizer.begin(width, height, options.getBackground().getRGB(), vertices,
+                    ViewProjection.DEFAULT_DISTANCE);
+            drawRoom(g2d);
+        } else {
+            g2d.drawImage(roomLayer.get(width, height, roomLayerKey(), this::drawRoomLayer), 0, 0, null);
+        }
+        if (isReflecting()) {
+            drawReflection(g2d);
+        }
+        drawOcclusion(g2d);
+        drawShadows(g2d);
+        
+        // Draw furniture items; their outlines have always used the thin stroke the grid left behind
+        g2d.setStroke(gridStroke);
+        drawFurnitureItems(g2d);
+        
+        if (software) {
+            rasterizer.render();
+            g2d.drawImage(rasterizer.getImage(), 0, 0, null);
+        }
+    }
+    
+    /**
+     * Sets the rendering hints for the quality of the current frame
+     * @param g2d the graphics context
+     */
+    private void applyQuality(Graphics2D g2d) {
+        // The view picks the hints of every frame, including the reduced ones drawn while it moves
+        options.getHints().apply(g2d);
+    }
+    
+    /**
+     * Gets what the room layer depends on, one entry per key part of roomLayer
+     * @return the key of the room layer for the current frame
+     */
+    private Object[] roomLayerKey() {
+        DesignSnapshot scene = snapshot;
+        return new Object[] {
+                Arrays.asList(scene.getRoomWidth(), scene.getRoomLength(), scene.getRoomHeight()),
+                Arrays.asList(scene.getRoomFloorColor(), scene.getRoomWallColor(), scene.getRoomCeilingColor(),
+                        options.getBackground()),
+                camera,
+                options.getQuality(),
+                options.getHints()
+        };
+    }
+    
+    /**
+     * Draws the background, room and floor grid into the room layer
+     * @param g2d the graphics of the layer
+     */
+    private void drawRoomLayer(Graphics2D g2d) {
+        g2d.setColor(options.getBackground());
+        g2d.fillRect(0, 0, bufferWidth, bufferHeight);
+        applyQuality(g2d);
+        drawRoom(g2d);
+    }
+    
+    /**
+     * Sets up the camera view for this frame
+     * @param width the width of the frame
+     * @param height the height of the frame
+     */
+    private void setupCamera(int width, int height) {
+        camera.setUp(viewProjection, screenTransform, width, height, options.getQuality().getScale());
+        double zoom = camera.getZoom() * options.getQuality().getScale();
+        
+        // Strokes used to be scaled by the graphics transform along with the geometry
+        if (zoom != strokeZoom) {
+            outlineStroke = new BasicStroke((float) zoom);
+            gridStroke = new BasicStroke(0.5f * (float) zoom);
+            selectionStroke = new BasicStroke(2.0f * (float) zoom);
+            strokeZoom = zoom;
+        }
+    }
+    
+    /**
+     * Fills the vertex buffer with the room, floor grid and the vertices of the
+     * items inside the view frustum
+     */
+    private void buildScene() {
+        DesignSnapshot scene = snapshot;
+        int roomWidth = scene.getRoomWidth();
+        int roomLength = scene.getRoomLength();
+        int roomHeight = scene.getRoomHeight();
+        FurnitureStore items = scene.getItems();
+        int gridLines = roomWidth / GRID_SPACING + roomLength / GRID_SPACING + 2;
+        
+        // Reject whole items outside the frustum before any of their vertices are projected
+        cullItems(items);
+        
+        vertices.clear();
+        vertices.ensureCapacity((visibleCount + 1) * VertexBuffer.BOX_VERTICES + gridLines * 2);
+        
+        // Room box, centered on the origin and standing on the floor (y = 0)
+        int roomX = -roomWidth / 2;
+        int roomZ = -roomLength / 2;
+        roomBase = vertices.addBox(roomX, -roomHeight, roomZ, roomX + roomWidth, 0, roomZ + roomLength);
+        
+        // Floor grid, two vertices per line
+        gridBase = vertices.size();
+        for (int i = 0; i <= roomWidth; i += GRID_SPACING) {
+            vertices.add(roomX + i, 0, roomZ);
+            vertices.add(roomX + i, 0, roomZ + roomLength);
+        }
+        for (int i = 0; i <= roomLength; i += GRID_SPACING) {
+            vertices.add(roomX, 0, roomZ + i);
+            vertices.add(roomX + roomWidth, 0, roomZ + i);
+        }
+        gridEnd = vertices.size();
+        
+        // Baked occlusion levels and shadow quads of all items, lifted just off the
+        // floor and walls so the depth buffer keeps them visible
+        occlusionBase = vertices.size();
+        shadowBase = occlusionBase;
+        if (options.isShowingShadows() && options.getQuality().isDetailed() && !options.isWireframe()) {
+            occlusionMap.setFloor(roomX, roomZ, roomX + roomWidth, roomZ + roomLength);
+            if (scene.getVersion() != occlusionVersion) {
+                occlusionMap.update(itemIds, itemBounds, items.size());
+                occlusionVersion = scene.getVersion();
+            }
+            occlusionMap.addQuads(vertices, 1);
+            shadowBase = vertices.size();
+            shadowMap.setRoom(roomX, -roomHeight, roomZ, roomX + roomWidth, 0, roomZ + roomLength);
+            shadowMap.update();
+            shadowMap.addQuads(vertices, 1);
+        }
+        shadowEnd = vertices.size();
+        
+        // Each visible item is an instance of its mesh, scaled into its bounds
+        for (int i = 0; i < visibleCount; i++) {
+            int slot = visibleSlots[i];
+            int x = items.getX(slot);
+            int y = items.getY(slot);
+            int z = items.getZ(slot);
+            int width = items.getWidth(slot);
+            int height = items.getHeight(slot);
+            int depth = items.getDepth(slot);
+            
+            // Invert the Y-coordinate so items appear above the floor instead of below
+            // In 3D graphics, Y typically points up, but in our coordinate system it points down
+            Mesh mesh = itemMeshes[slot];
+            if (mesh.getSimplified() != null) {
+                // Detailed models are drawn only as detailed as their size on screen needs
+                mesh = mesh.selectLevel(viewProjection.screenSize(Math.max(width, Math.max(height, depth)),
+                        x + width / 2.0, -(y + height / 2.0), z + depth / 2.0));
+            }
+            visibleMeshes[i] = mesh;
+            instanceBases[i] = addInstance(mesh, items, slot, false);
+        }
+        
+        // Mirror images of the visible items below the floor
+        if (isReflecting()) {
+            for (int i = 0; i < visibleCount; i++) {
+                reflectionBases[i] = addInstance(visibleMeshes[i], items, visibleSlots[i], true);
+            }
+        }
+    }
+    
+    /**
+     * Adds a mesh instance on an item's footprint, which carries the item's rotation
+     * @param mesh the mesh
+     * @param items the item store
+     * @param slot the slot of the item
+     * @param mirrored whether to add the mirror image below the floor
+     * @return the index of the instance's first vertex
+     */
+    private int addInstance(Mesh mesh, FurnitureStore items, int slot, boolean mirrored) {
+        float x = items.getFootprintX(slot, 0);
+        float z = items.getFootprintZ(slot, 0);
+        int y = items.getY(slot);
+        int height = items.getHeight(slot);
+        return vertices.addInstance(mesh, x, mirrored ? y : -y, z,
+                items.getFootprintX(slot, 1) - x, items.getFootprintZ(slot, 1) - z, mirrored ? height : -height,
+                items.getFootprintX(slot, 3) - x, items.getFootprintZ(slot, 3) - z);
+    }
+    
+    /**
+     * Checks whether the current frame shows floor reflections. Only the Java2D
+     * backend composites them, and moving views skip them.
+     * @return true if the reflection pass runs
+     */
+    private boolean isReflecting() {
+        return options.isShowingReflections() && options.getQuality().isDetailed() && !software
+                && !options.isWireframe();
+    }
+    
+    /**
+     * Finds the items whose bounds intersect the view frustum
+     * @param items the item store
+     */
+    private void cullItems(FurnitureStore items) {
+        // Snapshots share the frozen store until the items change, so a new store means new bounds
+        int count = items.size();
+        if (items != hierarchyItems) {
+            if (itemBounds.length < count * 6) {
+                itemBounds = new float[count * 6];
+                itemIds = new long[count];
+                itemMeshes = new Mesh[count];
+            }
+            int casters = 0;
+            for (int slot = 0; slot < count; slot++) {
+                // Rotated items are bounded by the box around their footprint
+                int b = slot * 6;
+                int y = items.getY(slot);
+                itemBounds[b] = Float.MAX_VALUE;
+                itemBounds[b + 1] = -(y + items.getHeight(slot));
+                itemBounds[b + 2] = Float.MAX_VALUE;
+                itemBounds[b + 3] = -Float.MAX_VALUE;
+                itemBounds[b + 4] = -y;
+                itemBounds[b + 5] = -Float.MAX_VALUE;
+                for (int corner = 0; corner < FurnitureStore.FOOTPRINT_CORNERS; corner++) {
+                    float x = items.getFootprintX(slot, corner);
+                    float z = items.getFootprintZ(slot, corner);
+                    itemBounds[b] = Math.min(itemBounds[b], x);
+                    itemBounds[b + 2] = Math.min(itemBounds[b + 2], z);
+                    itemBounds[b + 3] = Math.max(itemBounds[b + 3], x);
+                    itemBounds[b + 5] = Math.max(itemBounds[b + 5], z);
+                }
+                itemIds[slot] = items.getId(slot);
+                String name = items.getName(slot);
+                itemMeshes[slot] = name != null ? meshCache.get(name) : Mesh.BOX;
+                casters += itemMeshes[slot].getPartCount();
+            }
+            Arrays.fill(itemMeshes, count, itemMeshes.length, null);
+            itemHierarchy.build(itemBounds, count);
+            
+            // All items cast shadows, including those outside the view, one box per mesh part
+            shadowMap.setCasters(partBounds(items, casters), casters);
+            hierarchyItems = items;
+        }
+        if (visibleSlots.length < count) {
+            visibleSlots = new int[count];
+            instanceBases = new int[count];
+            reflectionBases = new int[count];
+            visibleMeshes = new Mesh[count];
+        }
+        
+        viewProjection.computeFrustum(frustum, bufferWidth, bufferHeight, NEAR_DISTANCE);
+        visibleCount = itemHierarchy.queryVisible(frustum, visibleSlots);
+        stats.recordItems(visibleCount, count, itemHierarchy.getNodesVisited());
+    }
+    
+    /**
+     * Gets the world bounds of the parts of all item meshes; the parts of
+     * rotated items are bounded by the box around their turned footprint
+     * @param items the item store
+     * @param parts the total number of parts
+     * @return six bounds per part, in the same layout as itemBounds
+     */
+    private float[] partBounds(FurnitureStore items, int parts) {
+        if (casterBounds.length < parts * 6) {
+            casterBounds = new float[parts * 6];
+        }
+        int b = 0;
+        for (int slot = 0; slot < items.size(); slot++) {
+            Mesh mesh = itemMeshes[slot];
+            float x = items.getFootprintX(slot, 0);
+            float z = items.getFootprintZ(slot, 0);
+            float widthX = items.getFootprintX(slot, 1) - x;
+            float widthZ = items.getFootprintZ(slot, 1) - z;
+            float depthX = items.getFootprintX(slot, 3) - x;
+            float depthZ = items.getFootprintZ(slot, 3) - z;
+            int y = items.getY(slot);
+            int height = items.getHeight(slot);
+            for (int part = 0; part < mesh.getPartCount(); part++) {
+                float minX = Float.MAX_VALUE;
+                float minZ = Float.MAX_VALUE;
+                float maxX = -Float.MAX_VALUE;
+                float maxZ = -Float.MAX_VALUE;
+                for (int corner = 0; corner < FurnitureStore.FOOTPRINT_CORNERS; corner++) {
+                    float partX = mesh.getPartBound(part, corner == 1 || corner == 2 ? 3 : 0);
+                    float partZ = mesh.getPartBound(part, corner >= 2 ? 5 : 2);
+                    float cornerX = x + partX * widthX + partZ * depthX;
+                    float cornerZ = z + partX * widthZ + partZ * depthZ;
+                    minX = Math.min(minX, cornerX);
+                    minZ = Math.min(minZ, cornerZ);
+                    maxX = Math.max(maxX, cornerX);
+                    maxZ = Math.max(maxZ, cornerZ);
+                }
+                casterBounds[b++] = minX;
+                casterBounds[b++] = -(y + mesh.getPartBound(part, 4) * height);
+                casterBounds[b++] = minZ;
+                casterBounds[b++] = maxX;
+                casterBounds[b++] = -(y + mesh.getPartBound(part, 1) * height);
+                casterBounds[b++] = maxZ;
+            }
+        }
+        return casterBounds;
+    }
+    
+    /**
+     * Draws the room and the visible items as edges only. All edges go into
+     * one path, or straight into the software raster, and each mesh lists
+     * an edge shared by several of its quads only once.
+     * @param g2d the graphics context
+     */
+    private void drawWireframe(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        if (software) {
+            rasterizer.begin(bufferWidth, bufferHeight, options.getBackground().getRGB(), vertices,
+                    ViewProjection.DEFAULT_DISTANCE);
+        } else {
+            g2d.setColor(options.getBackground());
+            g2d.fillRect(0, 0, bufferWidth, bufferHeight);
+        }
+        if (options.getQuality().isDetailed()) {
+            drawFloorGrid(g2d);
+        }
+        
+        wireframePath.reset();
+        addEdges(Mesh.BOX, roomBase);
+        int selectedSlot = snapshot.getSelectedIndex();
+        int selectedBase = -1;
+        for (int i = 0; i < visibleCount; i++) {
+            addEdges(visibleMeshes[i], instanceBases[i]);
+            if (visibleSlots[i] == selectedSlot) {
+                selectedBase = instanceBases[i];
+            }
+        }
+        if (!software) {
+            g2d.setColor(WIREFRAME_COLOR);
+            g2d.setStroke(WIREFRAME_STROKE);
+            g2d.draw(wireframePath);
+        }
+        
+        if (selectedBase >= 0) {
+            g2d.setStroke(selectionStroke);
+            g2d.setColor(Color.BLUE);
+            drawWireframeBox(g2d, selectedBase);
+        }
+        
+        if (software) {
+            rasterizer.render();
+            g2d.drawImage(rasterizer.getImage(), 0, 0, null);
+        }
+    }
+    
+    /**
+     * Adds the edges of a mesh instance to the wireframe
+     * @param mesh the mesh
+     * @param base the index of the mesh instance's first vertex
+     */
+    private void addEdges(Mesh mesh, int base) {
+        int edges = mesh.getEdgeCount();
+        if (software) {
+            int rgb = WIREFRAME_COLOR.getRGB();
+            for (int e = 0; e < edges; e++) {
+                rasterizer.addLine(base + mesh.getEdgeVertex(e, 0), base + mesh.getEdgeVertex(e, 1), rgb);
+            }
+            return;
+        }
+        for (int e = 0; e < edges; e++) {
+            int from = base + mesh.getEdgeVertex(e, 0);
+            int to = base + mesh.getEdgeVertex(e, 1);
+            wireframePath.moveTo(vertices.getScreenX(from), vertices.getScreenY(from));
+            wireframePath.lineTo(vertices.getScreenX(to), vertices.getScreenY(to));
+        }
+    }
+    
+    /**
+     * Draws the room
+     * @param g2d the graphics context
+     */
+    private void drawRoom(Graphics2D g2d) {
+        DesignSnapshot scene = snapshot;
+        g2d.setStroke(outlineStroke);
+        
+        // Room faces are seen from inside, so their normals point into the room
+        
+        // Draw floor
+        g2d.setColor(scene.getRoomFloorColor());
+        drawFace(g2d, roomBase, 2, 3, 7, 6, 0, -1, 0, ShadingCache.darken(g2d.getColor(), 0.7f));
+        
+        // Draw walls with semi-transparency
+        g2d.setColor(new Color(
+                scene.getRoomWallColor().getRed(),
+                scene.getRoomWallColor().getGreen(),
+                scene.getRoomWallColor().getBlue(),
+                180)); // Semi-transparent
+        Color wallOutline = ShadingCache.darken(g2d.getColor(), 0.7f);
+        
+        // Back wall
+        drawFace(g2d, roomBase, 0, 1, 3, 2, 0, 0, 1, wallOutline);
+        
+        // Left wall
+        drawFace(g2d, roomBase, 0, 2, 6, 4, 1, 0, 0, wallOutline);
+        
+        // Draw ceiling
+        g2d.setColor(scene.getRoomCeilingColor());
+        drawFace(g2d, roomBase, 0, 1, 5, 4, 0, 1, 0, ShadingCache.darken(g2d.getColor(), 0.7f));
+        
+        // Draw grid on floor
+        if (options.getQuality().isDetailed()) {
+            drawFloorGrid(g2d);
+        }
+    }
+    
+    /**
+     * Draws a grid on the floor
+     * @param g2d the graphics context
+     */
+    private void drawFloorGrid(Graphics2D g2d) {
+        g2d.setColor(GRID_COLOR);
+        g2d.setStroke(gridStroke);
+        
+        for (int i = gridBase; i < gridEnd; i += 2) {
+            drawEdge(g2d, i, i + 1);
+        }
+    }
+    
+    /**
+     * Draws the furniture items
+     * @param g2d the graphics context
+     */
+    private void drawFurnitureItems(Graphics2D g2d) {
+        DesignSnapshot scene = snapshot;
+        FurnitureStore items = scene.getItems();
+        int selectedSlot = scene.getSelectedIndex();
+        
+        // Draw furthest first
+        for (int i = visibleCount - 1; i >= 0; i--) {
+            int visible = (int) drawOrder[i];
+            int slot = visibleSlots[visible];
+            drawFurnitureItem(g2d, items, slot, visibleMeshes[visible], instanceBases[visible],
+                    slot == selectedSlot);
+        }
+    }
+    
+    /**
+     * Sorts the visible items by distance from camera (painter's algorithm).
+     * Each key packs the distance above the item's position in the visible
+     * list, so a primitive sort orders both.
+     */
+    private void sortItems() {
+        FurnitureStore items = snapshot.getItems();
+        int count = visibleCount;
+        if (drawOrder.length < count) {
+            drawOrder = new long[Math.max(count, drawOrder.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = visibleSlots[i];
+            float distance = (float) distance3D(items.getX(slot), items.getY(slot), items.getZ(slot),
+                    camera.getOrbitedX(), camera.getY(), camera.getOrbitedZ());
+            drawOrder[i] = ((long) Float.floatToIntBits(distance) << 32) | i;
+        }
+        Arrays.sort(drawOrder, 0, count);
+    }
+    
+    /**
+     * Draws the floor reflection of the items, clipped to the floor
+     * @param g2d the graphics context
+     */
+    private void drawReflection(Graphics2D g2d) {
+        long start = System.nanoTime();
+        int width = Math.max(1, (int) (bufferWidth * FloorReflection.SCALE));
+        int height = Math.max(1, (int) (bufferHeight * FloorReflection.SCALE));
+        BufferedImage image = reflectionLayer.get(width, height, reflectionLayerKey(),
+                layer -> reflection.render(layer, width, height, this::paintReflection));
+        
+        floorPath.reset();
+        floorPath.moveTo(vertices.getScreenX(roomBase + 2), vertices.getScreenY(roomBase + 2));
+        floorPath.lineTo(vertices.getScreenX(roomBase + 3), vertices.getScreenY(roomBase + 3));
+        floorPath.lineTo(vertices.getScreenX(roomBase + 7), vertices.getScreenY(roomBase + 7));
+        floorPath.lineTo(vertices.getScreenX(roomBase + 6), vertices.getScreenY(roomBase + 6));
+        floorPath.closePath();
+        
+        Shape clip = g2d.getClip();
+        g2d.clip(floorPath);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, options.getHints().getInterpolation());
+        g2d.drawImage(image, 0, 0, bufferWidth, bufferHeight, null);
+        g2d.setClip(clip);
+        reflectionStats.record(start, System.nanoTime() - start);
+    }
+    
+    /**
+     * Gets what the reflection layer depends on, one entry per key part of reflectionLayer
+     * @return the key of the reflection layer for the current frame
+     */
+    private Object[] reflectionLayerKey() {
+        DesignSnapshot scene = snapshot;
+        return new Object[] {
+                scene.getItems(),
+                Arrays.asList(scene.getLightIntensity(), scene.getContrast(), scene.getAmbientLightColor()),
+                camera
+        };
+    }
+    
+    /**
+     * Draws the mirrored items into the reflection, furthest first, each as
+     * translucent as its material is unreflective
+     * @param target the reflection to draw into
+     */
+    private void paintReflection(FloorReflection target) {
+        FurnitureStore items = snapshot.getItems();
+        for (int i = visibleCount - 1; i >= 0; i--) {
+            int visible = (int) drawOrder[i];
+            int slot = visibleSlots[visible];
+            int alpha = Math.round(Math.max(0, Math.min(1, items.getReflectivity(slot))) * 255);
+            if (alpha == 0) {
+                continue;
+            }
+            Graphics2D g2d = target.getGraphics(items.getRoughness(slot));
+            ShadingCache.Shade shade = shadingCache.get(items.getArgb(slot), items.getRotation(slot));
+            Mesh mesh = visibleMeshes[visible];
+            int base = reflectionBases[visible];
+            
+            // A positive height mirrors the normals along with the vertices
+            int count = collectFrontQuads(mesh, base, items, slot, true, false);
+            for (int k = 0; k < count; k++) {
+                int q = quadOrder[k];
+                Color color = shade.getFill(mesh.getFace(q));
+                g2d.setColor(new Color(color.getRGB() & 0xFFFFFF | alpha << 24, true));
+                fillQuad(g2d, base, mesh.getQuadVertex(q, 0), mesh.getQuadVertex(q, 1),
+                        mesh.getQuadVertex(q, 2), mesh.getQuadVertex(q, 3));
+            }
+        }
+    }
+    
+    /**
+     * Draws a single furniture item
+     * @param g2d the graphics context
+     * @param items the item store
+     * @param slot the slot of the item
+     * @param mesh the mesh of the item at the level of detail drawn
+     * @param base the index of the item's first vertex
+     * @param isSelected whether the item is selected
+     */
+    private void drawFurnitureItem(Graphics2D g2d, FurnitureStore items, int slot, Mesh mesh, int base,
+                                   boolean isSelected) {
+        // Apply lighting effect
+        ShadingCache.Shade shade = shadingCache.get(items.getArgb(slot), items.getRotation(slot));
+        g2d.setColor(shade.getFill(ShadingCache.TOP));
+        
+        // While the view moves, items only a few pixels across are drawn as a single face
+        boolean detailed = options.getQuality().isDetailed();
+        if (!detailed && !isSelected && isSmallOnScreen(base)) {
+            drawSimplifiedBox(g2d, base);
+            return;
+        }
+        
+        // Draw the 3D mesh
+        drawMesh(g2d, items, slot, mesh, base, shade, isSelected);
+    }
+    
+    /**
+     * Checks whether a projected box covers only a few pixels and keeps its
+     * screen bounds for drawSimplifiedBox
+     * @param base the index of the box's first corner in the vertex buffer
+     * @return true if the box is smaller than SIMPLIFY_PIXELS in both directions
+     */
+    private boolean isSmallOnScreen(int base) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = base; i < base + VertexBuffer.BOX_VERTICES; i++) {
+            float x = vertices.getScreenX(i);
+            float y = vertices.getScreenY(i);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        itemRect.setBounds((int) minX, (int) minY, (int) maxX - (int) minX + 1, (int) maxY - (int) minY + 1);
+        return maxX - minX < SIMPLIFY_PIXELS && maxY - minY < SIMPLIFY_PIXELS;
+    }
+    
+    /**
+     * Draws a box as a plain rectangle over its screen bounds. The depth-buffered
+     * backend needs real geometry, so it gets the top face (or the front face
+     * if the top faces away from the camera) without outlines.
+     * @param g2d the graphics context
+     * @param base the index of the box's first corner in the vertex buffer
+     */
+    private void drawSimplifiedBox(Graphics2D g2d, int base) {
+        if (!software) {
+            g2d.fillRect(itemRect.x, itemRect.y, itemRect.width, itemRect.height);
+            return;
+        }
+        boolean top = viewProjection.isFrontFacing(0, -1, 0,
+                vertices.getX(base), vertices.getY(base), vertices.getZ(base));
+        if (top) {
+            fillQuad(g2d, base, 0, 1, 5, 4);
+        } else {
+            fillQuad(g2d, base, 6, 7, 5, 4);
+        }
+    }
+    
+    /**
+     * Draws the item shadows over the floor and walls, darker for a higher shadow intensity
+     * @param g2d the graphics context
+     */
+    private void drawShadows(Graphics2D g2d) {
+        int alpha = Math.round(snapshot.getShadowIntensity() * MAX_SHADOW_ALPHA);
+        if (shadowEnd == shadowBase || alpha <= 0) {
+            return;
+        }
+        fillQuads(g2d, shadowBase, shadowEnd, new Color(0, 0, 0, Math.min(255, alpha)));
+    }
+    
+    /**
+     * Draws the baked ambient occlusion, one translucent layer per level
+     * @param g2d the graphics context
+     */
+    private void drawOcclusion(Graphics2D g2d) {
+        if (shadowBase == occlusionBase) {
+            return;
+        }
+        for (int level = 1; level <= AmbientOcclusionMap.LEVELS; level++) {
+            fillQuads(g2d, occlusionBase + occlusionMap.getLevelStart(level) * 4,
+                    occlusionBase + occlusionMap.getLevelStart(level + 1) * 4, OCCLUSION_COLOR);
+        }
+    }
+    
+    /**
+     * Fills a run of quads, four vertices each, in a translucent color
+     * @param g2d the graphics context
+     * @param from the index of the first vertex
+     * @param to the index after the last vertex
+     * @param color the fill color
+     */
+    private void fillQuads(Graphics2D g2d, int from, int to, Color color) {
+        if (software) {
+            for (int i = from; i < to; i += 4) {
+                rasterizer.addQuad(i, i + 1, i + 2, i + 3, color.getRGB());
+            }
+            return;
+        }
+        
+        // One path for all quads, so antialiased edges between neighbouring quads do not show as seams
+        quadPath.reset();
+        for (int i = from; i < to; i += 4) {
+            quadPath.moveTo(vertices.getScreenX(i), vertices.getScreenY(i));
+            for (int k = 1; k < 4; k++) {
+                quadPath.lineTo(vertices.getScreenX(i + k), vertices.getScreenY(i + k));
+            }
+            quadPath.closePath();
+        }
+        g2d.setColor(color);
+        g2d.fill(quadPath);
+    }
+    
+    /**
+     * Draws the faces of an item's mesh that point towards the camera
+     * @param g2d the graphics context
+     * @param items the item store
+     * @param slot the slot of the item
+     * @param mesh the mesh of the item
+     * @param base the index of the mesh instance's first vertex
+     * @param shade the shaded face colors of the item
+     * @param isSelected whether the item is selected
+     */
+    private void drawMesh(Graphics2D g2d, FurnitureStore items, int slot, Mesh mesh, int base,
+                          ShadingCache.Shade shade, boolean isSelected) {
+        Color originalColor = g2d.getColor();
+        int count = collectFrontQuads(mesh, base, items, slot, false, true);
+        for (int i = 0; i < count; i++) {
+            int q = quadOrder[i];
+            int face = mesh.getFace(q);
+            g2d.setColor(shade.getFill(face));
+            drawQuad(g2d, base, mesh.getQuadVertex(q, 0), mesh.getQuadVertex(q, 1), mesh.getQuadVertex(q, 2),
+                    mesh.getQuadVertex(q, 3), isSelected ? Color.BLUE : shade.getOutline(face));
+        }
+        
+        // If selected, draw with a highlight
+        if (isSelected) {
+            Stroke originalStroke = g2d.getStroke();
+            g2d.setStroke(selectionStroke);
+            g2d.setColor(Color.BLUE);
+            
+            // Draw the wireframe of the item's bounds
+            drawWireframeBox(g2d, base);
+            
+            g2d.setStroke(originalStroke);
+        }
+        g2d.setColor(originalColor);
+    }
+    
+    /**
+     * Finds the quads of a mesh instance that face the camera (back-face culling)
+     * and puts them in quadOrder. The parts of a mesh are boxes that may cover
+     * each other, so unless the depth buffer sorts them out they are ordered
+     * furthest first; within a box, the faces that face the camera never overlap.
+     * The quads of imported meshes are sorted by depth instead.
+     * @param mesh the mesh
+     * @param base the index of the mesh instance's first vertex
+     * @param items the item store
+     * @param slot the slot of the item the instance belongs to
+     * @param mirrored whether the instance is the item's mirror image below the floor
+     * @param record whether to count the faces in the culling statistics
+     * @return the number of quads in quadOrder
+     */
+    private int collectFrontQuads(Mesh mesh, int base, FurnitureStore items, int slot, boolean mirrored,
+                                  boolean record) {
+        int quads = mesh.getQuadCount();
+        int parts = mesh.getPartCount();
+        if (quadOrder.length < quads) {
+            quadOrder = new int[Math.max(quads, quadOrder.length * 2)];
+        }
+        if (partOrder.length < parts) {
+            partOrder = new int[Math.max(parts, partOrder.length * 2)];
+        }
+        
+        // Normals scale inversely to the instance, which also flips them along with a mirrored
+        // height; the item's turn is read off the width edge of its footprint
+        float width = Math.max(1, items.getWidth(slot));
+        float height = Math.max(1, items.getHeight(slot));
+        float depth = Math.max(1, items.getDepth(slot));
+        float originX = items.getFootprintX(slot, 0);
+        float originZ = items.getFootprintZ(slot, 0);
+        float cos = (items.getFootprintX(slot, 1) - originX) / width;
+        float sin = (items.getFootprintZ(slot, 1) - originZ) / width;
+        float sx = 1.0f / width;
+        float sy = mirrored ? 1.0f / height : -1.0f / height;
+        float sz = 1.0f / depth;
+        if (parts > 1 && !software) {
+            // The eye in the mesh's unit space, turned back by the item's rotation
+            float eyeX = (float) viewProjection.getEyeX() - originX;
+            float eyeZ = (float) viewProjection.getEyeZ() - originZ;
+            float floor = mirrored ? items.getY(slot) : -items.getY(slot);
+            mesh.orderParts((eyeX * cos + eyeZ * sin) * sx, (float) (viewProjection.getEyeY() - floor) * sy,
+                    (eyeZ * cos - eyeX * sin) * sz, partOrder);
+        } else {
+            for (int part = 0; part < parts; part++) {
+                partOrder[part] = part;
+            }
+        }
+        
+        int count = 0;
+        for (int i = 0; i < parts; i++) {
+            int part = partOrder[i];
+            for (int q = mesh.getPartQuad(part); q < mesh.getPartQuad(part + 1); q++) {
+                int first = base + mesh.getQuadVertex(q, 0);
+                float nx = mesh.getNormalX(q) * sx;
+                float nz = mesh.getNormalZ(q) * sz;
+                boolean front = viewProjection.isFrontFacing(nx * cos - nz * sin, mesh.getNormalY(q) * sy,
+                        nx * sin + nz * cos, vertices.getX(first), vertices.getY(first), vertices.getZ(first));
+                if (record) {
+                    stats.recordFace(front);
+                }
+                if (front) {
+                    quadOrder[count++] = q;
+                }
+            }
+        }
+        if (!mesh.isMadeOfBoxes() && !software) {
+            sortByDepth(mesh, base, count);
+        }
+        return count;
+    }
+    
+    /**
+     * Sorts the first quads in quadOrder furthest first by the depth of their centres
+     * @param mesh the mesh
+     * @param base the index of the mesh instance's first vertex
+     * @param count the number of quads to sort
+     */
+    private void sortByDepth(Mesh mesh, int base, int count) {
+        if (quadDepths.length < count) {
+            quadDepths = new long[Math.max(count, quadDepths.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            int q = quadOrder[i];
+            float depth = 0;
+            for (int k = 0; k < Mesh.QUAD_VERTICES; k++) {
+                depth += vertices.getDepth(base + mesh.getQuadVertex(q, k));
+            }
+            // Depths in front of the near plane are positive, so their bits sort like the floats
+            quadDepths[i] = ((long) Float.floatToIntBits(Math.max(0, depth)) << 32) | q;
+        }
+        Arrays.sort(quadDepths, 0, count);
+        for (int i = 0; i < count; i++) {
+            quadOrder[count - 1 - i] = (int) quadDepths[i];
+        }
+    }
+    
+    /**
+     * Draws a wireframe box
+     * @param g2d the graphics context
+     * @param base the index of the box's first corner in the vertex buffer
+     */
+    private void drawWireframeBox(Graphics2D g2d, int base) {
+        // Corners differ in exactly one bit along each of the 12 edges
+        for (int corner = 0; corner < VertexBuffer.BOX_VERTICES; corner++) {
+            for (int bit = 1; bit < VertexBuffer.BOX_VERTICES; bit <<= 1) {
+                if ((corner & bit) == 0) {
+                    drawEdge(g2d, base + corner, base + (corner | bit));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Draws a quad of a box if its front faces the camera (back-face culling)
+     * @param g2d the graphics context
+     * @param base the index of the box's first corner in the vertex buffer
+     * @param a the first corner
+     * @param b the second corner
+     * @param c the third corner
+     * @param d the fourth corner
+     * @param nx the x component of the face normal
+     * @param ny the y component of the face normal
+     * @param nz the z component of the face normal
+     * @param outline the outline color
+     */
+    private void drawFace(Graphics2D g2d, int base, int a, int b, int c, int d,
+                          int nx, int ny, int nz, Color outline) {
+        boolean front = viewProjection.isFrontFacing(nx, ny, nz,
+                vertices.getX(base + a), vertices.getY(base + a), vertices.getZ(base + a));
+        stats.recordFace(front);
+        if (front) {
+            drawQuad(g2d, base, a, b, c, d, outline);
+        }
+    }
+    
+    /**
+     * Draws a filled and outlined quad from four projected box corners
+     * @param g2d the graphics context
+     * @param base the index of the box's first corner in the vertex buffer
+     * @param a the first corner
+     * @param b the second corner
+     * @param c the third corner
+     * @param d the fourth corner
+     * @param outline the outline color
+     */
+    private void drawQuad(Graphics2D g2d, int base, int a, int b, int c, int d, Color outline) {
+        // Draw the filled quad
+        fillQuad(g2d, base, a, b, c, d);
+        
+        if (software) {
+            int rgb = outline.getRGB();
+            rasterizer.addLine(base + a, base + b, rgb);
+            rasterizer.addLine(base + b, base + c, rgb);
+            rasterizer.addLine(base + c, base + d, rgb);
+            rasterizer.addLine(base + d, base + a, rgb);
+            return;
+        }
+        
+        // Draw the outline
+        Color originalColor = g2d.getColor();
+        g2d.setColor(outline);
+        g2d.draw(quad);
+        g2d.setColor(originalColor);
+    }
+    
+    /**
+     * Fills a quad from four projected box corners in the current color
+     * @param g2d the graphics context
+     * @param base the index of the box's first corner in the vertex buffer
+     * @param a the first corner
+     * @param b the second corner
+     * @param c the third corner
+     * @param d the fourth corner
+     */
+    private void fillQuad(Graphics2D g2d, int base, int a, int b, int c, int d) {
+        if (software) {
+            rasterizer.addQuad(base + a, base + b, base + c, base + d, g2d.getColor().getRGB());
+            return;
+        }
+        quad.reset();
+        quad.moveTo(vertices.getScreenX(base + a), vertices.getScreenY(base + a));
+        quad.lineTo(vertices.getScreenX(base + b), vertices.getScreenY(base + b));
+        quad.lineTo(vertices.getScreenX(base + c), vertices.getScreenY(base + c));
+        quad.lineTo(vertices.getScreenX(base + d), vertices.getScreenY(base + d));
+        quad.closePath();
+        g2d.fill(quad);
+    }
+    
+    /**
+     * Draws a line between two projected vertices
+     * @param g2d the graphics context
+     * @param from the index of the first vertex
+     * @param to the index of the second vertex
+     */
+    private void drawEdge(Graphics2D g2d, int from, int to) {
+        if (software) {
+            rasterizer.addLine(from, to, g2d.getColor().getRGB());
+            return;
+        }
+        edge.setLine(vertices.getScreenX(from), vertices.getScreenY(from),
+                vertices.getScreenX(to), vertices.getScreenY(to));
+        g2d.draw(edge);
+    }
+    
+    /**
+     * Calculates the 3D distance between two points
+     * @param x1 the x coordinate of the first point
+     * @param y1 the y coordinate of the first point
+     * @param z1 the z coordinate of the first point
+     * @param x2 the x coordinate of the second point
+     * @param y2 the y coordinate of the second point
+     * @param z2 the z coordinate of the second point
+     * @return the distance
+     */
+    private double distance3D(double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double dz = z2 - z1;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+    
+    ShadowMap getShadowMap() { return shadowMap; }
+    
+    AmbientOcclusionMap getOcclusionMap() { return occlusionMap; }
+    
+    LayerCache getRoomLayerCache() { return roomLayer; }
+    
+    LayerCache getReflectionLayerCache() { return reflectionLayer; }
+    
+    FrameStats getReflectionStats() { return reflectionStats; }
+}
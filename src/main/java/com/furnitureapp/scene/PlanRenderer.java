@@ -0,0 +1,197 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.model.FurnitureStore;
+import com.furnitureapp.render.LayerCache;
+import com.furnitureapp.render.RenderHints;
+
+import java.awt.*;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Draws the 2D floor plan of a design: the room floor, the item footprints
+ * and the floor grid, with the room centered in the drawing area. The room
+ * and grid are cached as layers until the room changes. Not thread-safe;
+ * {@link SceneRenderer} hands each thread a renderer of its own.
+ */
+final class PlanRenderer {
+    // The room floor below the items and the grid above them, cached until the room changes
+    private static final int ROOM_MARGIN = 2;
+    private static final Color GRID_COLOR = new Color(200, 200, 200, 100);
+    private final LayerCache roomLayer = new LayerCache(true, "room size", "room colors");
+    private final LayerCache gridLayer = new LayerCache(true, "room size");
+    
+    // Reused for the footprint of each item as it is drawn
+    private final Path2D.Float footprintPath = new Path2D.Float();
+    
+    /**
+     * Draws the plan
+     * @param snapshot the design to draw
+     * @param hints the rendering hints of the items; the cached layers are always antialiased
+     * @param g2d the graphics to draw into
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     */
+    void render(DesignSnapshot snapshot, RenderHints hints, Graphics2D g2d, int width, int height) {
+        hints.apply(g2d);
+        
+        // Calculate room position (centered in the drawing area)
+        int roomX = (width - snapshot.getRoomWidth()) / 2;
+        int roomY = (height - snapshot.getRoomLength()) / 2;
+        
+        // Draw room outline
+        drawRoom(g2d, snapshot, roomX, roomY);
+        
+        // Draw furniture items
+        drawFurnitureItems(g2d, snapshot, roomX, roomY);
+        
+        // Draw grid
+        drawGrid(g2d, snapshot, roomX, roomY);
+    }
+    
+    /**
+     * Draws the room outline from its cached layer
+     * @param g2d the graphics context
+     * @param snapshot the design
+     * @param roomX the x of the room's top-left corner
+     * @param roomY the y of the room's top-left corner
+     */
+    private void drawRoom(Graphics2D g2d, DesignSnapshot snapshot, int roomX, int roomY) {
+        int roomWidth = snapshot.getRoomWidth();
+        int roomLength = snapshot.getRoomLength();
+        Color floorColor = snapshot.getRoomFloorColor();
+        
+        // The layer has a margin for the outline stroke and does not depend on
+        // where the room sits in the drawing area
+        Object[] key = { Arrays.asList(roomWidth, roomLength), floorColor };
+        g2d.drawImage(roomLayer.get(roomWidth + 2 * ROOM_MARGIN, roomLength + 2 * ROOM_MARGIN, key,
+                layer -> drawRoomLayer(layer, roomWidth, roomLength, floorColor)),
+                roomX - ROOM_MARGIN, roomY - ROOM_MARGIN, null);
+    }
+    
+    /**
+     * Draws the room floor and outline into the room layer
+     * @param g2d the graphics of the layer
+     * @param roomWidth the width of the room
+     * @param roomLength the length of the room
+     * @param floorColor the color of the floor
+     */
+    private void drawRoomLayer(Graphics2D g2d, int roomWidth, int roomLength, Color floorColor) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        
+        // Draw room floor
+        g2d.setColor(floorColor);
+        g2d.fillRect(ROOM_MARGIN, ROOM_MARGIN, roomWidth, roomLength);
+        
+        // Draw room outline
+        g2d.setColor(Color.BLACK);
+        g2d.setStroke(new BasicStroke(2));
+        g2d.drawRect(ROOM_MARGIN, ROOM_MARGIN, roomWidth, roomLength);
+    }
+    
+    /**
+     * Draws the furniture items
+     * @param g2d the graphics context
+     * @param snapshot the design
+     * @param roomX the x of the room's top-left corner
+     * @param roomY the y of the room's top-left corner
+     */
+    private void drawFurnitureItems(Graphics2D g2d, DesignSnapshot snapshot, int roomX, int roomY) {
+        FurnitureStore items = snapshot.getItems();
+        
+        // Offset from room coordinates to screen coordinates
+        int offsetX = roomX + snapshot.getRoomWidth() / 2;
+        int offsetY = roomY + snapshot.getRoomLength() / 2;
+        int selectedIndex = snapshot.getSelectedIndex();
+        
+        for (int i = 0; i < items.size(); i++) {
+            // Convert the footprint, turned by the item's rotation, to 2D screen coordinates
+            footprintPath.reset();
+            float minX = Float.MAX_VALUE;
+            float minY = Float.MAX_VALUE;
+            for (int corner = 0; corner < FurnitureStore.FOOTPRINT_CORNERS; corner++) {
+                float x = offsetX + items.getFootprintX(i, corner);
+                float y = offsetY + items.getFootprintZ(i, corner);
+                if (corner == 0) {
+                    footprintPath.moveTo(x, y);
+                } else {
+                    footprintPath.lineTo(x, y);
+                }
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+            }
+            footprintPath.closePath();
+            
+            // Draw the furniture item
+            g2d.setColor(items.getColor(i));
+            g2d.fill(footprintPath);
+            
+            // Draw outline
+            if (i == selectedIndex) {
+                // Selected item has a thicker outline
+                g2d.setColor(Color.BLUE);
+                g2d.setStroke(new BasicStroke(2));
+            } else {
+                g2d.setColor(Color.BLACK);
+                g2d.setStroke(new BasicStroke(1));
+            }
+            g2d.draw(footprintPath);
+            
+            // Draw item name
+            g2d.setColor(Color.BLACK);
+            g2d.setFont(new Font("SansSerif", Font.BOLD, 10));
+            g2d.drawString(items.getName(i), minX + 5, minY + 15);
+        }
+    }
+    
+    /**
+     * Draws a grid on the room floor from its cached layer
+     * @param g2d the graphics context
+     * @param snapshot the design
+     * @param roomX the x of the room's top-left corner
+     * @param roomY the y of the room's top-left corner
+     */
+    private void drawGrid(Graphics2D g2d, DesignSnapshot snapshot, int roomX, int roomY) {
+        int roomWidth = snapshot.getRoomWidth();
+        int roomLength = snapshot.getRoomLength();
+        
+        Object[] key = { Arrays.asList(roomWidth, roomLength) };
+        g2d.drawImage(gridLayer.get(roomWidth + 2 * ROOM_MARGIN, roomLength + 2 * ROOM_MARGIN, key,
+                layer -> drawGridLayer(layer, roomWidth, roomLength)),
+                roomX - ROOM_MARGIN, roomY - ROOM_MARGIN, null);
+    }
+    
+    /**
+     * Draws the grid lines into the grid layer
+     * @param g2d the graphics of the layer
+     * @param roomWidth the width of the room
+     * @param roomLength the length of the room
+     */
+    private void drawGridLayer(Graphics2D g2d, int roomWidth, int roomLength) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.translate(ROOM_MARGIN, ROOM_MARGIN);
+        
+        // Draw grid
+        g2d.setColor(GRID_COLOR);
+        g2d.setStroke(new BasicStroke(0.5f));
+        
+        // Vertical grid lines
+        for (int x = 0; x <= roomWidth; x += 50) {
+            g2d.drawLine(x, 0, x, roomLength);
+        }
+        
+        // Horizontal grid lines
+        for (int y = 0; y <= roomLength; y += 50) {
+            g2d.drawLine(0, y, roomWidth, y);
+        }
+    }
+    
+    /**
+     * Gets the caches of the static room and grid layers
+     * @return the room layer cache and the grid layer cache
+     */
+    LayerCache[] getLayerCaches() {
+        return new LayerCache[] { roomLayer, gridLayer };
+    }
+}
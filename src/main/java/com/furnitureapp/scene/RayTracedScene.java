@@ -0,0 +1,711 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.model.FurnitureStore;
+import com.furnitureapp.render.BoundingVolumeHierarchy;
+import com.furnitureapp.render.Mesh;
+import com.furnitureapp.render.MeshCache;
+import com.furnitureapp.render.ShadingCache;
+import com.furnitureapp.render.ShadowMap;
+
+import java.awt.Color;
+import java.util.Map;
+
+/**
+ * The geometry, materials and lighting of a snapshot prepared for ray
+ * tracing. Items are found through a hierarchy of their bounds and hit in
+ * the unit space of their mesh: box meshes part by part, imported meshes
+ * quad by quad through a hierarchy of their own. Surfaces are lit like the
+ * preview, items by Lambert plus ambient light and the room in its own
+ * colors, with traced shadows, ambient occlusion and floor reflections on
+ * top. The scene is immutable once
+ * built, so any number of threads may trace it, each with its own
+ * {@link Tracer}.
+ */
+final class RayTracedScene {
+    // Surfaces a ray can hit besides items, whose slots are not negative
+    private static final int MISS = -1;
+    private static final int FLOOR = -2;
+    private static final int BACK_WALL = -3;
+    private static final int LEFT_WALL = -4;
+    private static final int CEILING = -5;
+    
+    // Secondary rays start this far off the surface they leave, so they do not hit it again
+    private static final float EPSILON = 0.01f;
+    private static final float FAR = 1e7f;
+    // Walls are as translucent as in the preview; rays pass through a few of them at most
+    private static final float WALL_ALPHA = 180 / 255.0f;
+    private static final int MAX_LAYERS = 4;
+    // Spread of the light direction in radians, which softens shadow edges
+    private static final float LIGHT_SPREAD = 0.04f;
+    // Occluders further away than this do not darken the ambient light; fully
+    // occluded points lose about as much light as under the preview's baked occlusion
+    private static final float OCCLUSION_DISTANCE = 60;
+    private static final float OCCLUSION_STRENGTH = 0.45f;
+    // Darkening of room surfaces in full shadow at full shadow intensity, as in the preview
+    private static final float ROOM_SHADOW = 100 / 255.0f;
+    // Spread of reflections in radians at full roughness
+    private static final float MAX_GLOSS_SPREAD = 0.35f;
+    
+    // Items: the unit-space frame of each mesh instance and its material
+    private final float[] originX;
+    private final float[] originY;
+    private final float[] originZ;
+    private final float[] widthX;
+    private final float[] widthZ;
+    private final float[] depthX;
+    private final float[] depthZ;
+    private final float[] inverseWidth;
+    private final float[] inverseHeight;
+    private final float[] inverseDepth;
+    private final Mesh[] meshes;
+    private final BoundingVolumeHierarchy[] quadHierarchies;
+    private final float[] colors;
+    private final float[] reflectivity;
+    private final float[] roughness;
+    private final BoundingVolumeHierarchy itemHierarchy = new BoundingVolumeHierarchy();
+    private final int stackSize;
+    
+    // Room box, centered on the origin and standing on the floor (y = 0)
+    private final float roomX0;
+    private final float roomX1;
+    private final float roomZ0;
+    private final float roomZ1;
+    private final float roomTop;
+    private final float[] floorColor;
+    private final float[] wallColor;
+    private final float[] ceilingColor;
+    private final float[] background;
+    
+    // Lighting
+    private final float[] ambient;
+    private final float diffuse;
+    private final float shadowIntensity;
+    private final float lightX;
+    private final float lightY;
+    private final float lightZ;
+    private final boolean shadows;
+    private final boolean reflections;
+    
+    /**
+     * Prepares a snapshot for tracing
+     * @param snapshot the design
+     * @param options what to draw
+     * @param quadHierarchies the quad hierarchies of imported meshes, shared between scenes and filled as needed
+     */
+    RayTracedScene(DesignSnapshot snapshot, RenderOptions options,
+                   Map<Mesh, BoundingVolumeHierarchy> quadHierarchies) {
+        FurnitureStore items = snapshot.getItems();
+        int itemCount = items.size();
+        originX = new float[itemCount];
+        originY = new float[itemCount];
+        originZ = new float[itemCount];
+        widthX = new float[itemCount];
+        widthZ = new float[itemCount];
+        depthX = new float[itemCount];
+        depthZ = new float[itemCount];
+        inverseWidth = new float[itemCount];
+        inverseHeight = new float[itemCount];
+        inverseDepth = new float[itemCount];
+        meshes = new Mesh[itemCount];
+        this.quadHierarchies = new BoundingVolumeHierarchy[itemCount];
+        colors = new float[itemCount * 3];
+        reflectivity = new float[itemCount];
+        roughness = new float[itemCount];
+        
+        float contrast = snapshot.getContrast();
+        float[] bounds = new float[itemCount * 6];
+        int deepest = 1;
+        for (int slot = 0; slot < itemCount; slot++) {
+            // The mesh's x and z axes run along the footprint edges and its y axis up from the item's floor
+            originX[slot] = items.getFootprintX(slot, 0);
+            originY[slot] = -items.getY(slot);
+            originZ[slot] = items.getFootprintZ(slot, 0);
+            widthX[slot] = items.getFootprintX(slot, 1) - originX[slot];
+            widthZ[slot] = items.getFootprintZ(slot, 1) - originZ[slot];
+            depthX[slot] = items.getFootprintX(slot, 3) - originX[slot];
+            depthZ[slot] = items.getFootprintZ(slot, 3) - originZ[slot];
+            float width = widthX[slot] * widthX[slot] + widthZ[slot] * widthZ[slot];
+            float depth = depthX[slot] * depthX[slot] + depthZ[slot] * depthZ[slot];
+            int height = items.getHeight(slot);
+            
+            int b = slot * 6;
+            if (width > 0 && depth > 0 && height > 0) {
+                inverseWidth[slot] = 1 / width;
+                inverseDepth[slot] = 1 / depth;
+                inverseHeight[slot] = -1.0f / height;
+                bounds[b] = Float.MAX_VALUE;
+                bounds[b + 1] = originY[slot] - height;
+                bounds[b + 2] = Float.MAX_VALUE;
+                bounds[b + 3] = -Float.MAX_VALUE;
+                bounds[b + 4] = originY[slot];
+                bounds[b + 5] = -Float.MAX_VALUE;
+                for (int corner = 0; corner < FurnitureStore.FOOTPRINT_CORNERS; corner++) {
+                    bounds[b] = Math.min(bounds[b], items.getFootprintX(slot, corner));
+                    bounds[b + 2] = Math.min(bounds[b + 2], items.getFootprintZ(slot, corner));
+                    bounds[b + 3] = Math.max(bounds[b + 3], items.getFootprintX(slot, corner));
+                    bounds[b + 5] = Math.max(bounds[b + 5], items.getFootprintZ(slot, corner));
+                }
+            } else {
+                // Flat items cannot be hit; empty bounds keep them out of every query
+                bounds[b] = bounds[b + 1] = bounds[b + 2] = Float.MAX_VALUE;
+                bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = -Float.MAX_VALUE;
+            }
+            
+            String name = items.getName(slot);
+            Mesh mesh = name != null ? MeshCache.SHARED.get(name) : Mesh.BOX;
+            meshes[slot] = mesh;
+            if (!mesh.isMadeOfBoxes()) {
+                BoundingVolumeHierarchy quads =
+                        quadHierarchies.computeIfAbsent(mesh, RayTracedScene::buildQuadHierarchy);
+                this.quadHierarchies[slot] = quads;
+                deepest = Math.max(deepest, quads.getDepth());
+            }
+            
+            int argb = items.getArgb(slot);
+            colors[slot * 3] = applyContrast((argb >> 16) & 0xFF, contrast);
+            colors[slot * 3 + 1] = applyContrast((argb >> 8) & 0xFF, contrast);
+            colors[slot * 3 + 2] = applyContrast(argb & 0xFF, contrast);
+            reflectivity[slot] = Math.max(0, Math.min(1, items.getReflectivity(slot)));
+            roughness[slot] = Math.max(0, Math.min(1, items.getRoughness(slot)));
+        }
+        itemHierarchy.build(bounds, itemCount);
+        stackSize = Math.max(itemHierarchy.getDepth(), deepest) + 1;
+        
+        roomX0 = -snapshot.getRoomWidth() / 2;
+        roomZ0 = -snapshot.getRoomLength() / 2;
+        roomX1 = roomX0 + snapshot.getRoomWidth();
+        roomZ1 = roomZ0 + snapshot.getRoomLength();
+        roomTop = -snapshot.getRoomHeight();
+        floorColor = components(snapshot.getRoomFloorColor());
+        wallColor = components(snapshot.getRoomWallColor());
+        ceilingColor = components(snapshot.getRoomCeilingColor());
+        background = components(options.getBackground());
+        
+        ambient = components(snapshot.getAmbientLightColor());
+        for (int i = 0; i < ambient.length; i++) {
+            ambient[i] *= ShadingCache.AMBIENT;
+        }
+        diffuse = snapshot.getLightIntensity() * ShadingCache.DIFFUSE;
+        shadowIntensity = Math.max(0, Math.min(1, snapshot.getShadowIntensity()));
+        float length = (float) Math.sqrt(ShadowMap.DEFAULT_LIGHT_X * ShadowMap.DEFAULT_LIGHT_X
+                + ShadowMap.DEFAULT_LIGHT_Y * ShadowMap.DEFAULT_LIGHT_Y
+                + ShadowMap.DEFAULT_LIGHT_Z * ShadowMap.DEFAULT_LIGHT_Z);
+        lightX = -ShadowMap.DEFAULT_LIGHT_X / length;
+        lightY = -ShadowMap.DEFAULT_LIGHT_Y / length;
+        lightZ = -ShadowMap.DEFAULT_LIGHT_Z / length;
+        shadows = options.isShowingShadows();
+        reflections = options.isShowingReflections();
+    }
+    
+    /**
+     * Builds the hierarchy of the quads of a mesh in unit space
+     * @param mesh the mesh
+     * @return the hierarchy, one box per quad
+     */
+    private static BoundingVolumeHierarchy buildQuadHierarchy(Mesh mesh) {
+        int count = mesh.getQuadCount();
+        float[] bounds = new float[count * 6];
+        for (int q = 0; q < count; q++) {
+            int b = q * 6;
+            bounds[b] = bounds[b + 1] = bounds[b + 2] = Float.MAX_VALUE;
+            bounds[b + 3] = bounds[b + 4] = bounds[b + 5] = -Float.MAX_VALUE;
+            for (int corner = 0; corner < Mesh.QUAD_VERTICES; corner++) {
+                int v = mesh.getQuadVertex(q, corner);
+                bounds[b] = Math.min(bounds[b], mesh.getX(v));
+                bounds[b + 1] = Math.min(bounds[b + 1], mesh.getY(v));
+                bounds[b + 2] = Math.min(bounds[b + 2], mesh.getZ(v));
+                bounds[b + 3] = Math.max(bounds[b + 3], mesh.getX(v));
+                bounds[b + 4] = Math.max(bounds[b + 4], mesh.getY(v));
+                bounds[b + 5] = Math.max(bounds[b + 5], mesh.getZ(v));
+            }
+        }
+        BoundingVolumeHierarchy hierarchy = new BoundingVolumeHierarchy();
+        hierarchy.build(bounds, count);
+        return hierarchy;
+    }
+    
+    /**
+     * Applies the contrast to a color channel the way the shading cache does
+     */
+    private static float applyContrast(int channel, float contrast) {
+        return Math.max(0, Math.min(1, (channel / 255.0f - 0.5f) * contrast + 0.5f));
+    }
+    
+    private static float[] components(Color color) {
+        return new float[] {color.getRed() / 255.0f, color.getGreen() / 255.0f, color.getBlue() / 255.0f};
+    }
+    
+    /**
+     * Traces rays through the scene. Each thread needs a tracer of its own;
+     * its random numbers are seeded, so the same seed traces the same image.
+     */
+    final class Tracer implements BoundingVolumeHierarchy.RayVisitor {
+        // The color of the last traced sample
+        float red;
+        float green;
+        float blue;
+        
+        // The light at the last lit point: the share of the ambient light that
+        // reaches it, the directional light, and whether an item shadows it
+        private float ambientLight;
+        private float directLight;
+        private boolean shadowed;
+        
+        private final int[] itemStack = new int[stackSize];
+        private final int[] quadStack = new int[stackSize];
+        private final QuadVisitor quadVisitor = new QuadVisitor();
+        private long random;
+        
+        // The world-space ray being traced
+        private float rayX;
+        private float rayY;
+        private float rayZ;
+        private float rayDirectionX;
+        private float rayDirectionY;
+        private float rayDirectionZ;
+        private boolean anyHit;
+        
+        // The ray in the unit space of the item being tested
+        private float unitX;
+        private float unitY;
+        private float unitZ;
+        private float unitDirectionX;
+        private float unitDirectionY;
+        private float unitDirectionZ;
+        private Mesh unitMesh;
+        
+        // The nearest hit: the surface, its unit-space normal for items, and the world-space normal
+        private int hitSurface;
+        private float unitNormalX;
+        private float unitNormalY;
+        private float unitNormalZ;
+        private float normalX;
+        private float normalY;
+        private float normalZ;
+        
+        /**
+         * Creates a tracer
+         * @param seed the seed of its random numbers
+         */
+        Tracer(long seed) {
+            random = seed * 0x9E3779B97F4A7C15L + 0x632BE59BD9B4E019L;
+            if (random == 0) {
+                random = 1;
+            }
+        }
+        
+        /**
+         * Gets a random number
+         * @return a number from 0 up to 1
+         */
+        float nextRandom() {
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            return (random >>> 40) * 0x1.0p-24f;
+        }
+        
+        /**
+         * Traces a camera ray into red, green and blue
+         * @param x the x of the eye
+         * @param y the y of the eye
+         * @param z the z of the eye
+         * @param dx the x of the ray direction
+         * @param dy the y of the ray direction
+         * @param dz the z of the ray direction
+         */
+        void trace(float x, float y, float z, float dx, float dy, float dz) {
+            float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            dx /= length;
+            dy /= length;
+            dz /= length;
+            red = 0;
+            green = 0;
+            blue = 0;
+            float weight = 1;
+            for (int layer = 0; layer < MAX_LAYERS; layer++) {
+                float t = intersect(x, y, z, dx, dy, dz, FAR, true);
+                if (hitSurface == MISS) {
+                    break;
+                }
+                float px = x + t * dx;
+                float py = y + t * dy;
+                float pz = z + t * dz;
+                if (hitSurface == BACK_WALL || hitSurface == LEFT_WALL) {
+                    // Translucent walls let the rest of the room show through
+                    float alpha = weight * WALL_ALPHA;
+                    light(px, py, pz, normalX, normalY, normalZ);
+                    addRoom(wallColor, alpha);
+                    weight -= alpha;
+                    x = px + dx * EPSILON;
+                    y = py + dy * EPSILON;
+                    z = pz + dz * EPSILON;
+                    continue;
+                }
+                if (hitSurface == CEILING) {
+                    light(px, py, pz, normalX, normalY, normalZ);
+                    addRoom(ceilingColor, weight);
+                } else if (hitSurface == FLOOR) {
+                    traceFloor(px, pz, dx, dy, dz, weight);
+                } else {
+                    int item = hitSurface;
+                    light(px, py, pz, normalX, normalY, normalZ);
+                    addLit(colors, item * 3, weight);
+                }
+                return;
+            }
+            red += weight * background[0];
+            green += weight * background[1];
+            blue += weight * background[2];
+        }
+        
+        /**
+         * Shades a point of the floor with the reflection of the items above it.
+         * Like in the preview, each item shows in the floor as strongly as it
+         * is reflective, and as blurred as it is rough.
+         */
+        private void traceFloor(float px, float pz, float dx, float dy, float dz, float weight) {
+            float floorWeight = weight;
+            if (reflections) {
+                float t = intersect(px, -EPSILON, pz, dx, -dy, dz, FAR, false);
+                if (hitSurface >= 0 && roughness[hitSurface] > 0) {
+                    // Glossy items blur their reflection by spreading the mirrored ray
+                    float spread = roughness[hitSurface] * MAX_GLOSS_SPREAD;
+                    float rx = dx + (nextRandom() - 0.5f) * 2 * spread;
+                    float ry = Math.min(-0.01f, -dy + (nextRandom() - 0.5f) * 2 * spread);
+                    float rz = dz + (nextRandom() - 0.5f) * 2 * spread;
+                    float length = (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+                    dx = rx / length;
+                    dy = -ry / length;
+                    dz = rz / length;
+                    t = intersect(px, -EPSILON, pz, dx, -dy, dz, FAR, false);
+                }
+                if (hitSurface >= 0 && reflectivity[hitSurface] > 0) {
+                    int item = hitSurface;
+                    float amount = weight * reflectivity[item];
+                    light(px + t * dx, -EPSILON - t * dy, pz + t * dz, normalX, normalY, normalZ);
+                    addLit(colors, item * 3, amount);
+                    floorWeight -= amount;
+                }
+            }
+            light(px, 0, pz, 0, -1, 0);
+            addRoom(floorColor, floorWeight);
+        }
+        
+        /**
+         * Adds a color lit by the light at the last lit point to the sample
+         */
+        private void addLit(float[] color, int offset, float weight) {
+            red += weight * Math.min(1, color[offset] * (ambient[0] * ambientLight + directLight));
+            green += weight * Math.min(1, color[offset + 1] * (ambient[1] * ambientLight + directLight));
+            blue += weight * Math.min(1, color[offset + 2] * (ambient[2] * ambientLight + directLight));
+        }
+        
+        /**
+         * Adds the color of a room surface to the sample. The preview draws
+         * the room unlit, so only shadows and occlusion darken it.
+         */
+        private void addRoom(float[] color, float weight) {
+            float light = ambientLight;
+            if (shadowed) {
+                light *= 1 - shadowIntensity * ROOM_SHADOW;
+            }
+            red += weight * color[0] * light;
+            green += weight * color[1] * light;
+            blue += weight * color[2] * light;
+        }
+        
+        /**
+         * Lights a surface point: ambient light, darkened where nearby geometry
+         * blocks it, plus the directional light unless an item shadows the point
+         */
+        private void light(float px, float py, float pz, float nx, float ny, float nz) {
+            ambientLight = 1;
+            float x = px + nx * EPSILON;
+            float y = py + ny * EPSILON;
+            float z = pz + nz * EPSILON;
+            if (shadows) {
+                // Cosine-weighted direction around the normal
+                float r = (float) Math.sqrt(nextRandom());
+                float angle = nextRandom() * (float) (2 * Math.PI);
+                float u = r * (float) Math.cos(angle);
+                float v = r * (float) Math.sin(angle);
+                float w = (float) Math.sqrt(Math.max(0, 1 - r * r));
+                float ax = Math.abs(nx) < 0.9f ? 1 : 0;
+                float ay = 1 - ax;
+                float tx = ay * nz;
+                float ty = -ax * nz;
+                float tz = ax * ny - ay * nx;
+                float tLength = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+                tx /= tLength;
+                ty /= tLength;
+                tz /= tLength;
+                float bx = ny * tz - nz * ty;
+                float by = nz * tx - nx * tz;
+                float bz = nx * ty - ny * tx;
+                if (isOccluded(x, y, z, u * tx + v * bx + w * nx, u * ty + v * by + w * ny,
+                        u * tz + v * bz + w * nz, OCCLUSION_DISTANCE, true)) {
+                    ambientLight *= 1 - OCCLUSION_STRENGTH;
+                }
+            }
+            
+            float lx = lightX;
+            float ly = lightY;
+            float lz = lightZ;
+            if (shadows) {
+                lx += (nextRandom() - 0.5f) * 2 * LIGHT_SPREAD;
+                ly += (nextRandom() - 0.5f) * 2 * LIGHT_SPREAD;
+                lz += (nextRandom() - 0.5f) * 2 * LIGHT_SPREAD;
+            }
+            float lambert = nx * lx + ny * ly + nz * lz;
+            directLight = 0;
+            shadowed = false;
+            if (lambert > 0) {
+                directLight = diffuse * lambert;
+                shadowed = shadows && isOccluded(x, y, z, lx, ly, lz, FAR, false);
+                if (shadowed) {
+                    directLight *= 1 - shadowIntensity;
+                }
+            }
+        }
+        
+        /**
+         * Checks whether anything blocks a ray within a distance
+         * @param floor whether the floor blocks the ray as well as the items
+         */
+        private boolean isOccluded(float x, float y, float z, float dx, float dy, float dz, float distance,
+                                   boolean floor) {
+            if (floor && dy > 0 && y < 0 && -y / dy < distance) {
+                return true;
+            }
+            rayX = x;
+            rayY = y;
+            rayZ = z;
+            rayDirectionX = dx;
+            rayDirectionY = dy;
+            rayDirectionZ = dz;
+            anyHit = true;
+            return itemHierarchy.traceRay(x, y, z, dx, dy, dz, distance, itemStack, this) < distance;
+        }
+        
+        /**
+         * Finds the nearest surface a ray hits and its world-space normal
+         * @param room whether the room's floor, walls and ceiling can be hit as well as the items
+         * @return the distance to the hit; hitSurface is MISS if nothing was hit
+         */
+        private float intersect(float x, float y, float z, float dx, float dy, float dz, float distance,
+                                boolean room) {
+            rayX = x;
+            rayY = y;
+            rayZ = z;
+            rayDirectionX = dx;
+            rayDirectionY = dy;
+            rayDirectionZ = dz;
+            anyHit = false;
+            hitSurface = MISS;
+            float nearest = itemHierarchy.traceRay(x, y, z, dx, dy, dz, distance, itemStack, this);
+            if (hitSurface >= 0) {
+                // The inverse transpose of the unit-space frame turns the normal into the world
+                int slot = hitSurface;
+                float wx = unitNormalX * inverseWidth[slot];
+                float wz = unitNormalZ * inverseDepth[slot];
+                normalX = wx * widthX[slot] + wz * depthX[slot];
+                normalY = unitNormalY * inverseHeight[slot];
+                normalZ = wx * widthZ[slot] + wz * depthZ[slot];
+                float length = (float) Math.sqrt(normalX * normalX + normalY * normalY + normalZ * normalZ);
+                normalX /= length;
+                normalY /= length;
+                normalZ /= length;
+            }
+            if (!room) {
+                return nearest;
+            }
+            
+            // Room faces are seen from inside only, like in the preview
+            if (dy > 0) {
+                nearest = hitRoomFace(FLOOR, (0 - y) / dy, nearest, x, z, dx, dz, roomX0, roomX1, roomZ0, roomZ1);
+            } else if (dy < 0) {
+                nearest = hitRoomFace(CEILING, (roomTop - y) / dy, nearest, x, z, dx, dz,
+                        roomX0, roomX1, roomZ0, roomZ1);
+            }
+            if (dz < 0) {
+                nearest = hitRoomFace(BACK_WALL, (roomZ0 - z) / dz, nearest, x, y, dx, dy,
+                        roomX0, roomX1, roomTop, 0);
+            }
+            if (dx < 0) {
+                nearest = hitRoomFace(LEFT_WALL, (roomX0 - x) / dx, nearest, y, z, dy, dz,
+                        roomTop, 0, roomZ0, roomZ1);
+            }
+            return nearest;
+        }
+        
+        /**
+         * Checks a hit with a rectangle of the room and records it if it is the nearest
+         * @param face the room face
+         * @param t the distance to the plane of the face
+         * @param nearest the distance of the nearest hit so far
+         * @return the distance of the nearest hit
+         */
+        private float hitRoomFace(int face, float t, float nearest, float a, float b, float da, float db,
+                                  float minA, float maxA, float minB, float maxB) {
+            if (t <= 0 || t >= nearest) {
+                return nearest;
+            }
+            float hitA = a + t * da;
+            float hitB = b + t * db;
+            if (hitA < minA || hitA > maxA || hitB < minB || hitB > maxB) {
+                return nearest;
+            }
+            hitSurface = face;
+            normalX = face == LEFT_WALL ? 1 : 0;
+            normalY = face == FLOOR ? -1 : (face == CEILING ? 1 : 0);
+            normalZ = face == BACK_WALL ? 1 : 0;
+            return t;
+        }
+        
+        /**
+         * Tests the ray against an item in the unit space of its mesh
+         */
+        @Override
+        public float visit(int slot, float nearest) {
+            float rx = rayX - originX[slot];
+            float ry = rayY - originY[slot];
+            float rz = rayZ - originZ[slot];
+            unitX = (rx * widthX[slot] + rz * widthZ[slot]) * inverseWidth[slot];
+            unitY = ry * inverseHeight[slot];
+            unitZ = (rx * depthX[slot] + rz * depthZ[slot]) * inverseDepth[slot];
+            unitDirectionX = (rayDirectionX * widthX[slot] + rayDirectionZ * widthZ[slot]) * inverseWidth[slot];
+            unitDirectionY = rayDirectionY * inverseHeight[slot];
+            unitDirectionZ = (rayDirectionX * depthX[slot] + rayDirectionZ * depthZ[slot]) * inverseDepth[slot];
+            unitMesh = meshes[slot];
+            
+            // Distances along the ray are the same in unit space, as the frame is affine
+            BoundingVolumeHierarchy quads = quadHierarchies[slot];
+            float t = quads == null ? hitParts(nearest)
+                    : quads.traceRay(unitX, unitY, unitZ, unitDirectionX, unitDirectionY, unitDirectionZ,
+                    nearest, quadStack, quadVisitor);
+            if (t >= nearest) {
+                return nearest;
+            }
+            if (anyHit) {
+                return 0;
+            }
+            hitSurface = slot;
+            return t;
+        }
+        
+        /**
+         * Tests the unit-space ray against the boxes of a mesh made of boxes
+         * @param nearest the distance of the nearest hit so far
+         * @return the distance of the nearest hit, with the normal of the face hit recorded
+         */
+        private float hitParts(float nearest) {
+            Mesh mesh = unitMesh;
+            float origin0 = unitX;
+            float origin1 = unitY;
+            float origin2 = unitZ;
+            for (int part = 0; part < mesh.getPartCount(); part++) {
+                float near = 0;
+                float far = nearest;
+                int axis = -1;
+                for (int a = 0; a < 3 && near <= far; a++) {
+                    float origin = a == 0 ? origin0 : (a == 1 ? origin1 : origin2);
+                    float direction = a == 0 ? unitDirectionX : (a == 1 ? unitDirectionY : unitDirectionZ);
+                    float t0 = (mesh.getPartBound(part, a) - origin) / direction;
+                    float t1 = (mesh.getPartBound(part, a + 3) - origin) / direction;
+                    if (t0 > t1) {
+                        float swap = t0;
+                        t0 = t1;
+                        t1 = swap;
+                    }
+                    if (t0 > near) {
+                        near = t0;
+                        axis = a;
+                    }
+                    far = Math.min(far, t1);
+                }
+                // Rays that start inside a box, or miss it, do not hit its front
+                if (axis < 0 || !(near <= far)) {
+                    continue;
+                }
+                float direction = axis == 0 ? unitDirectionX : (axis == 1 ? unitDirectionY : unitDirectionZ);
+                float sign = direction > 0 ? -1 : 1;
+                unitNormalX = axis == 0 ? sign : 0;
+                unitNormalY = axis == 1 ? sign : 0;
+                unitNormalZ = axis == 2 ? sign : 0;
+                nearest = near;
+            }
+            return nearest;
+        }
+        
+        /**
+         * Tests the unit-space ray against single quads of an imported mesh
+         */
+        private final class QuadVisitor implements BoundingVolumeHierarchy.RayVisitor {
+            @Override
+            public float visit(int quad, float nearest) {
+                Mesh mesh = unitMesh;
+                float nx = mesh.getNormalX(quad);
+                float ny = mesh.getNormalY(quad);
+                float nz = mesh.getNormalZ(quad);
+                
+                // Quads are seen from the front only, like in the preview
+                if (nx * unitDirectionX + ny * unitDirectionY + nz * unitDirectionZ >= 0) {
+                    return nearest;
+                }
+                int a = mesh.getQuadVertex(quad, 0);
+                int c = mesh.getQuadVertex(quad, 2);
+                float t = Math.min(hitTriangle(mesh, a, mesh.getQuadVertex(quad, 1), c),
+                        hitTriangle(mesh, a, c, mesh.getQuadVertex(quad, 3)));
+                if (t >= nearest) {
+                    return nearest;
+                }
+                unitNormalX = nx;
+                unitNormalY = ny;
+                unitNormalZ = nz;
+                return t;
+            }
+            
+            /**
+             * Intersects the unit-space ray with a triangle (Moller-Trumbore)
+             * @return the distance to the hit, or infinity if the ray misses it
+             */
+            private float hitTriangle(Mesh mesh, int a, int b, int c) {
+                float ax = mesh.getX(a);
+                float ay = mesh.getY(a);
+                float az = mesh.getZ(a);
+                float e1x = mesh.getX(b) - ax;
+                float e1y = mesh.getY(b) - ay;
+                float e1z = mesh.getZ(b) - az;
+                float e2x = mesh.getX(c) - ax;
+                float e2y = mesh.getY(c) - ay;
+                float e2z = mesh.getZ(c) - az;
+                float px = unitDirectionY * e2z - unitDirectionZ * e2y;
+                float py = unitDirectionZ * e2x - unitDirectionX * e2z;
+                float pz = unitDirectionX * e2y - unitDirectionY * e2x;
+                float det = e1x * px + e1y * py + e1z * pz;
+                if (det > -1e-12f && det < 1e-12f) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                float inverse = 1 / det;
+                float sx = unitX - ax;
+                float sy = unitY - ay;
+                float sz = unitZ - az;
+                float u = (sx * px + sy * py + sz * pz) * inverse;
+                if (u < 0 || u > 1) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                float qx = sy * e1z - sz * e1y;
+                float qy = sz * e1x - sx * e1z;
+                float qz = sx * e1y - sy * e1x;
+                float v = (unitDirectionX * qx + unitDirectionY * qy + unitDirectionZ * qz) * inverse;
+                if (v < 0 || u + v > 1) {
+                    return Float.POSITIVE_INFINITY;
+                }
+                float t = (e2x * qx + e2y * qy + e2z * qz) * inverse;
+                return t > 1e-6f ? t : Float.POSITIVE_INFINITY;
+            }
+        }
+    }
+}
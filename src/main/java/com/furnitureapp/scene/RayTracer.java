@@ -0,0 +1,291 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.render.BoundingVolumeHierarchy;
+import com.furnitureapp.render.Mesh;
+import com.furnitureapp.render.ViewProjection;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progressive multicore ray tracer for still images. A render is split into
+ * tiles that worker threads, one per core, trace in parallel. Every pass
+ * adds one jittered sample to each pixel, so the image starts noisy and
+ * converges as passes accumulate; a job publishes its image after every
+ * pass and can be cancelled at any time. Thread-safe: several jobs may run
+ * at once and share the workers.
+ */
+public final class RayTracer {
+    private static final int TILE_SIZE = 32;
+    private static final long IDLE_SECONDS = 30;
+    
+    private final ThreadPoolExecutor workers;
+    
+    // Quad hierarchies of imported meshes, kept while the mesh is in use
+    private final Map<Mesh, BoundingVolumeHierarchy> quadHierarchies =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    
+    /**
+     * Creates a ray tracer with one worker per core
+     */
+    public RayTracer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Creates a ray tracer
+     * @param threads the number of worker threads; idle workers exit after a while
+     */
+    public RayTracer(int threads) {
+        AtomicInteger created = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, "Ray tracer " + created.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        workers.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * Gets the number of worker threads
+     * @return the thread count
+     */
+    public int getThreadCount() { return workers.getMaximumPoolSize(); }
+    
+    /**
+     * Starts rendering an image in the background
+     * @param snapshot the design to render
+     * @param camera the view of the design
+     * @param options what to draw; reduced quality levels trace at a reduced scale
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param samples the number of samples per pixel after which the job is done
+     * @param onPass called on a worker thread after each pass and when the job ends, may be null
+     * @return the running job
+     */
+    public Job start(DesignSnapshot snapshot, Camera camera, RenderOptions options, int width, int height,
+                     int samples, Runnable onPass) {
+        if (width <= 0 || height <= 0 || samples <= 0) {
+            throw new IllegalArgumentException("Cannot trace " + samples + " samples of a "
+                    + width + "x" + height + " image");
+        }
+        Job job = new Job(snapshot, camera, options, width, height, samples, onPass);
+        workers.execute(job::prepare);
+        return job;
+    }
+    
+    /**
+     * A running render. Its image gets sharper with every pass until it has
+     * the requested number of samples or is cancelled.
+     */
+    public final class Job {
+        private final DesignSnapshot snapshot;
+        private final RenderOptions options;
+        private final int width;
+        private final int height;
+        private final int maxSamples;
+        private final Runnable onPass;
+        private final ViewProjection projection = new ViewProjection();
+        private final float eyeX;
+        private final float eyeY;
+        private final float eyeZ;
+        private final int tilesX;
+        private final int tileCount;
+        private final long startNanos = System.nanoTime();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        
+        // Sum of the samples of every pixel, three floats per pixel; each tile is traced by one thread at a time
+        private final float[] sums;
+        private RayTracedScene scene;
+        private int pass;
+        private int[] passPixels;
+        private BufferedImage passImage;
+        private final AtomicInteger tilesLeft = new AtomicInteger();
+        
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile BufferedImage image;
+        private volatile int samples;
+        private volatile long elapsedNanos;
+        
+        private Job(DesignSnapshot snapshot, Camera camera, RenderOptions options, int width, int height,
+                    int maxSamples, Runnable onPass) {
+            this.snapshot = snapshot;
+            this.options = options;
+            this.width = width;
+            this.height = height;
+            this.maxSamples = maxSamples;
+            this.onPass = onPass;
+            camera.setUp(projection, new AffineTransform(), width, height, options.getQuality().getScale());
+            eyeX = (float) projection.getEyeX();
+            eyeY = (float) projection.getEyeY();
+            eyeZ = (float) projection.getEyeZ();
+            tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+            tileCount = tilesX * ((height + TILE_SIZE - 1) / TILE_SIZE);
+            sums = new float[width * height * 3];
+        }
+        
+        /**
+         * Prepares the scene on a worker and starts the first pass
+         */
+        private void prepare() {
+            try {
+                if (!cancelled) {
+                    scene = new RayTracedScene(snapshot, options, quadHierarchies);
+                    startPass();
+                    return;
+                }
+            } catch (RuntimeException e) {
+                cancelled = true;
+                finish();
+                throw e;
+            }
+            finish();
+        }
+        
+        /**
+         * Queues the tiles of the next pass
+         */
+        private void startPass() {
+            passImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            passPixels = ((DataBufferInt) passImage.getRaster().getDataBuffer()).getData();
+            tilesLeft.set(tileCount);
+            for (int tile = 0; tile < tileCount; tile++) {
+                int t = tile;
+                workers.execute(() -> traceTile(t));
+            }
+        }
+        
+        /**
+         * Adds one sample to every pixel of a tile and resolves the tile into the pass image
+         * @param tile the tile
+         */
+        private void traceTile(int tile) {
+            try {
+                if (cancelled) {
+                    return;
+                }
+                int x0 = (tile % tilesX) * TILE_SIZE;
+                int y0 = (tile / tilesX) * TILE_SIZE;
+                int x1 = Math.min(width, x0 + TILE_SIZE);
+                int y1 = Math.min(height, y0 + TILE_SIZE);
+                RayTracedScene.Tracer tracer = scene.new Tracer((long) pass * tileCount + tile);
+                double[] direction = new double[3];
+                float scale = 255.0f / (pass + 1);
+                for (int y = y0; y < y1 && !cancelled; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        // Jitter within the pixel, which antialiases edges as samples accumulate
+                        projection.computeRayDirection(x + tracer.nextRandom(), y + tracer.nextRandom(), direction);
+                        tracer.trace(eyeX, eyeY, eyeZ, (float) direction[0], (float) direction[1],
+                                (float) direction[2]);
+                        int pixel = y * width + x;
+                        float red = sums[pixel * 3] += tracer.red;
+                        float green = sums[pixel * 3 + 1] += tracer.green;
+                        float blue = sums[pixel * 3 + 2] += tracer.blue;
+                        passPixels[pixel] = toByte(red * scale) << 16 | toByte(green * scale) << 8
+                                | toByte(blue * scale);
+                    }
+                }
+            } finally {
+                if (tilesLeft.decrementAndGet() == 0) {
+                    finishPass();
+                }
+            }
+        }
+        
+        private int toByte(float value) {
+            return Math.max(0, Math.min(255, Math.round(value)));
+        }
+        
+        /**
+         * Publishes the image of a finished pass and starts the next one
+         */
+        private void finishPass() {
+            if (cancelled) {
+                finish();
+                return;
+            }
+            pass++;
+            image = passImage;
+            samples = pass;
+            elapsedNanos = System.nanoTime() - startNanos;
+            if (pass >= maxSamples) {
+                finish();
+                return;
+            }
+            if (onPass != null) {
+                onPass.run();
+            }
+            startPass();
+        }
+        
+        private void finish() {
+            elapsedNanos = System.nanoTime() - startNanos;
+            done = true;
+            finished.countDown();
+            if (onPass != null) {
+                onPass.run();
+            }
+        }
+        
+        /**
+         * Stops the job after the tiles being traced; the last finished image stays available
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+        
+        public boolean isCancelled() { return cancelled; }
+        
+        /**
+         * Checks whether the job has stopped, either complete or cancelled
+         * @return true if no more passes will be traced
+         */
+        public boolean isDone() { return done; }
+        
+        /**
+         * Waits until the job has stopped
+         * @throws InterruptedException if the waiting thread is interrupted
+         */
+        public void await() throws InterruptedException {
+            finished.await();
+        }
+        
+        /**
+         * Gets the image of the last finished pass
+         * @return the image, or null before the first pass has finished
+         */
+        public BufferedImage getImage() { return image; }
+        
+        /**
+         * Gets the number of samples each pixel of the image has
+         * @return the finished passes
+         */
+        public int getSamples() { return samples; }
+        
+        /**
+         * Gets the number of samples traced per second so far, preparation included
+         * @return the sample rate over all workers
+         */
+        public double getSamplesPerSecond() {
+            long elapsed = elapsedNanos;
+            return elapsed > 0 ? (double) samples * width * height * 1e9 / elapsed : 0;
+        }
+        
+        public int getWidth() { return width; }
+        
+        public int getHeight() { return height; }
+    }
+}
@@ -0,0 +1,121 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.render.RenderHints;
+import com.furnitureapp.render.RenderMode;
+import com.furnitureapp.render.RenderQuality;
+
+import java.awt.Color;
+import java.util.Objects;
+
+/**
+ * Immutable settings of a 3D render: the backend, the quality level, the
+ * Java2D rendering hints and which parts of the scene are drawn. Options are compared by value.
+ */
+public final class RenderOptions {
+    /** What the 3D panel draws by default */
+    public static final RenderOptions DEFAULT =
+            new RenderOptions(Color.WHITE, RenderMode.JAVA2D, RenderQuality.FULL, false, true, true);
+    
+    private final Color background;
+    private final RenderMode renderMode;
+    private final RenderQuality quality;
+    private final boolean wireframe;
+    private final boolean shadows;
+    private final boolean reflections;
+    private final RenderHints hints;
+    
+    /**
+     * Creates render options
+     * @param background the color behind the room
+     * @param renderMode the backend to draw with
+     * @param quality the quality level; reduced levels also draw at a reduced scale
+     * @param wireframe whether to draw edges only
+     * @param shadows whether to draw shadows and ambient occlusion
+     * @param reflections whether to draw floor reflections
+     */
+    public RenderOptions(Color background, RenderMode renderMode, RenderQuality quality,
+                         boolean wireframe, boolean shadows, boolean reflections) {
+        this(background, renderMode, quality, wireframe, shadows, reflections, RenderHints.QUALITY);
+    }
+    
+    /**
+     * Creates render options
+     * @param background the color behind the room
+     * @param renderMode the backend to draw with
+     * @param quality the quality level; reduced levels also draw at a reduced scale
+     * @param wireframe whether to draw edges only
+     * @param shadows whether to draw shadows and ambient occlusion
+     * @param reflections whether to draw floor reflections
+     * @param hints the rendering hints of full-quality frames; reduced levels are never antialiased
+     */
+    public RenderOptions(Color background, RenderMode renderMode, RenderQuality quality,
+                         boolean wireframe, boolean shadows, boolean reflections, RenderHints hints) {
+        this.background = Objects.requireNonNull(background, "background");
+        this.renderMode = Objects.requireNonNull(renderMode, "renderMode");
+        this.quality = Objects.requireNonNull(quality, "quality");
+        this.wireframe = wireframe;
+        this.shadows = shadows;
+        this.reflections = reflections;
+        this.hints = Objects.requireNonNull(hints, "hints");
+    }
+    
+    public Color getBackground() { return background; }
+    
+    public RenderMode getRenderMode() { return renderMode; }
+    
+    public RenderQuality getQuality() { return quality; }
+    
+    public boolean isWireframe() { return wireframe; }
+    
+    public boolean isShowingShadows() { return shadows; }
+    
+    public boolean isShowingReflections() { return reflections; }
+    
+    public RenderHints getHints() { return hints; }
+    
+    /**
+     * Gets the same options at another quality level
+     * @param quality the quality level
+     * @return options that differ only in quality
+     */
+    public RenderOptions withQuality(RenderQuality quality) {
+        return new RenderOptions(background, renderMode, quality, wireframe, shadows, reflections, hints);
+    }
+    
+    /**
+     * Gets the same options with another backend
+     * @param renderMode the backend
+     * @return options that differ only in the backend
+     */
+    public RenderOptions withRenderMode(RenderMode renderMode) {
+        return new RenderOptions(background, renderMode, quality, wireframe, shadows, reflections, hints);
+    }
+    
+    /**
+     * Gets the same options with other rendering hints
+     * @param hints the rendering hints
+     * @return options that differ only in the hints
+     */
+    public RenderOptions withHints(RenderHints hints) {
+        return new RenderOptions(background, renderMode, quality, wireframe, shadows, reflections, hints);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RenderOptions)) {
+            return false;
+        }
+        RenderOptions other = (RenderOptions) o;
+        return background.equals(other.background) && renderMode == other.renderMode && quality == other.quality
+                && wireframe == other.wireframe && shadows == other.shadows && reflections == other.reflections
+                && hints == other.hints;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(background, renderMode, quality, wireframe, shadows, reflections, hints);
+    }
+}
@@ -0,0 +1,243 @@
+package com.furnitureapp.scene;
+
+import com.furnitureapp.model.DesignSnapshot;
+import com.furnitureapp.render.AmbientOcclusionMap;
+import com.furnitureapp.render.CullingStats;
+import com.furnitureapp.render.FrameStats;
+import com.furnitureapp.render.LayerCache;
+import com.furnitureapp.render.RenderHints;
+import com.furnitureapp.render.RenderMode;
+import com.furnitureapp.render.ShadowMap;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Renders design snapshots into images, pixel buffers or any graphics
+ * context, independent of the Swing panels that show them. Thread-safe:
+ * each render borrows a renderer from a pool and returns it afterwards,
+ * so concurrent renders, e.g. of export frames on a worker pool, each get
+ * their own buffers and caches. The most recently returned renderer is
+ * lent first, so a caller that renders one frame at a time always reuses
+ * the same warm caches. Ray traced renders run on a shared
+ * {@link RayTracer} and block until they have {@link #RAY_TRACED_SAMPLES}
+ * samples per pixel.
+ */
+public final class SceneRenderer {
+    /** Samples per pixel of a ray traced render */
+    public static final int RAY_TRACED_SAMPLES = 64;
+    
+    private final Deque<PerspectiveRenderer> perspectiveRenderers = new ConcurrentLinkedDeque<>();
+    private final Deque<PlanRenderer> planRenderers = new ConcurrentLinkedDeque<>();
+    
+    // The renderers that finished last, for their diagnostics
+    private volatile PerspectiveRenderer lastPerspective = new PerspectiveRenderer();
+    private volatile PlanRenderer lastPlan = new PlanRenderer();
+    
+    // Started on the first ray traced render
+    private RayTracer rayTracer;
+    
+    /**
+     * Creates a renderer with one warm-up context per view
+     */
+    public SceneRenderer() {
+        perspectiveRenderers.offerFirst(lastPerspective);
+        planRenderers.offerFirst(lastPlan);
+    }
+    
+    /**
+     * Renders the 3D view of a design
+     * @param snapshot the design to render
+     * @param camera the view of the design
+     * @param options what to draw and how
+     * @param g2d the graphics to draw into
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     * @return what the culling stage kept and rejected
+     */
+    public CullingStats render(DesignSnapshot snapshot, Camera camera, RenderOptions options, Graphics2D g2d,
+                               int width, int height) {
+        if (options.getRenderMode() == RenderMode.RAY_TRACED && !options.isWireframe()) {
+            return renderRayTraced(snapshot, camera, options, g2d, width, height);
+        }
+        PerspectiveRenderer renderer = perspectiveRenderers.pollFirst();
+        if (renderer == null) {
+            renderer = new PerspectiveRenderer();
+        }
+        try {
+            return renderer.render(snapshot, camera, options, g2d, width, height);
+        } finally {
+            lastPerspective = renderer;
+            perspectiveRenderers.offerFirst(renderer);
+        }
+    }
+    
+    /**
+     * Ray traces the 3D view of a design and waits for the result. If the
+     * waiting thread is interrupted, the render stops and whatever is
+     * finished by then is drawn.
+     */
+    private CullingStats renderRayTraced(DesignSnapshot snapshot, Camera camera, RenderOptions options,
+                                         Graphics2D g2d, int width, int height) {
+        RayTracer.Job job = getRayTracer().start(snapshot, camera, options, Math.max(1, width),
+                Math.max(1, height), RAY_TRACED_SAMPLES, null);
+        try {
+            job.await();
+        } catch (InterruptedException e) {
+            job.cancel();
+            Thread.currentThread().interrupt();
+        }
+        BufferedImage image = job.getImage();
+        if (image != null) {
+            g2d.drawImage(image, 0, 0, null);
+        }
+        return new CullingStats();
+    }
+    
+    /**
+     * Gets the ray tracer of ray traced renders, e.g. for progressive renders of a preview
+     * @return the ray tracer, started on first use
+     */
+    public synchronized RayTracer getRayTracer() {
+        if (rayTracer == null) {
+            rayTracer = new RayTracer();
+        }
+        return rayTracer;
+    }
+    
+    /**
+     * Renders the 3D view of a design into the whole of an image
+     * @param snapshot the design to render
+     * @param camera the view of the design
+     * @param options what to draw and how
+     * @param image the image to draw into
+     * @return what the culling stage kept and rejected
+     */
+    public CullingStats render(DesignSnapshot snapshot, Camera camera, RenderOptions options, BufferedImage image) {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            return render(snapshot, camera, options, g2d, image.getWidth(), image.getHeight());
+        } finally {
+            g2d.dispose();
+        }
+    }
+    
+    /**
+     * Renders the 3D view of a design straight into a pixel buffer
+     * @param snapshot the design to render
+     * @param camera the view of the design
+     * @param options what to draw and how
+     * @param pixels packed ARGB pixels, row by row without padding
+     * @param width the width of the buffer in pixels
+     * @param height the height of the buffer in pixels
+     * @return what the culling stage kept and rejected
+     * @throws IllegalArgumentException if the buffer is smaller than width times height
+     */
+    public CullingStats render(DesignSnapshot snapshot, Camera camera, RenderOptions options, int[] pixels,
+                               int width, int height) {
+        return render(snapshot, camera, options, wrap(pixels, width, height));
+    }
+    
+    /**
+     * Renders the 2D floor plan of a design, with the room centered in the drawing area
+     * @param snapshot the design to render
+     * @param g2d the graphics to draw into
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     */
+    public void renderPlan(DesignSnapshot snapshot, Graphics2D g2d, int width, int height) {
+        renderPlan(snapshot, RenderHints.QUALITY, g2d, width, height);
+    }
+    
+    /**
+     * Renders the 2D floor plan of a design with the given rendering hints
+     * @param snapshot the design to render
+     * @param hints the rendering hints, e.g. cheaper ones while an item is dragged
+     * @param g2d the graphics to draw into
+     * @param width the width of the drawing area
+     * @param height the height of the drawing area
+     */
+    public void renderPlan(DesignSnapshot snapshot, RenderHints hints, Graphics2D g2d, int width, int height) {
+        PlanRenderer renderer = planRenderers.pollFirst();
+        if (renderer == null) {
+            renderer = new PlanRenderer();
+        }
+        try {
+            renderer.render(snapshot, hints, g2d, width, height);
+        } finally {
+            lastPlan = renderer;
+            planRenderers.offerFirst(renderer);
+        }
+    }
+    
+    /**
+     * Renders the 2D floor plan of a design into the whole of an image
+     * @param snapshot the design to render
+     * @param image the image to draw into
+     */
+    public void renderPlan(DesignSnapshot snapshot, BufferedImage image) {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            renderPlan(snapshot, g2d, image.getWidth(), image.getHeight());
+        } finally {
+            g2d.dispose();
+        }
+    }
+    
+    /**
+     * Wraps a pixel buffer in an image without copying it
+     */
+    private static BufferedImage wrap(int[] pixels, int width, int height) {
+        if (width <= 0 || height <= 0 || pixels.length < (long) width * height) {
+            throw new IllegalArgumentException("A " + width + "x" + height + " frame does not fit "
+                    + pixels.length + " pixels");
+        }
+        DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height),
+                width, height, width, colorModel.getMasks(), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+    
+    /**
+     * Gets the shadow map of the last 3D render, e.g. to read how often it was rebuilt
+     * @return the shadow map
+     */
+    public ShadowMap getShadowMap() { return lastPerspective.getShadowMap(); }
+    
+    /**
+     * Gets the baked floor occlusion of the last 3D render, e.g. to read how much of it was rebaked
+     * @return the ambient occlusion map
+     */
+    public AmbientOcclusionMap getOcclusionMap() { return lastPerspective.getOcclusionMap(); }
+    
+    /**
+     * Gets the room layer cache of the last 3D render, e.g. to read its hit rate
+     * @return the room layer cache
+     */
+    public LayerCache getRoomLayerCache() { return lastPerspective.getRoomLayerCache(); }
+    
+    /**
+     * Gets the reflection layer cache of the last 3D render, e.g. to read its hit rate
+     * @return the reflection layer cache
+     */
+    public LayerCache getReflectionLayerCache() { return lastPerspective.getReflectionLayerCache(); }
+    
+    /**
+     * Gets the time the floor reflection pass of the last 3D renderer takes per frame
+     * @return the reflection pass statistics
+     */
+    public FrameStats getReflectionStats() { return lastPerspective.getReflectionStats(); }
+    
+    /**
+     * Gets the caches of the room and grid layers of the last plan render
+     * @return the room layer cache and the grid layer cache
+     */
+    public LayerCache[] getPlanLayerCaches() { return lastPlan.getLayerCaches(); }
+}
@@ -2,12 +2,17 @@ package com.furnitureapp.ui.panels;
 
 import com.furnitureapp.model.DesignModel;
 import com.furnitureapp.model.FurnitureItem;
+import com.furnitureapp.model.FurnitureStore;
+import com.furnitureapp.model.ItemState;
+import com.furnitureapp.render.AdaptiveQualityController;
+import com.furnitureapp.render.FrameScheduler;
+import com.furnitureapp.render.LayerCache;
+import com.furnitureapp.scene.SceneRenderer;
 import com.furnitureapp.util.AppConstants;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.List;
 
 /**
  * Panel for 2D furniture design
@@ -16,10 +21,27 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
     private DesignModel model;
     private Point dragStart;
     private boolean isDragging = false;
+    private ItemState dragStartState = null;
     private FurnitureItem selectedItem = null;
     private FurnitureItem newItem = null;
     private String newItemType = null;
     
+    // Draws the plan from the latest snapshot
+    private final SceneRenderer renderer = new SceneRenderer();
+    
+    // Repaints are coalesced and paced; the frame-time overlay is off by default
+    private final FrameScheduler scheduler = new FrameScheduler(this);
+    private boolean showFrameStats = false;
+    
+    // Cheaper rendering hints while dragging is slow; the best hints once the mouse has been still for a while
+    private static final int IDLE_DELAY_MS = 300;
+    private final AdaptiveQualityController qualityController = new AdaptiveQualityController();
+    private final Timer idleTimer = new Timer(IDLE_DELAY_MS, e -> {
+        if (qualityController.settle()) {
+            scheduler.invalidate();
+        }
+    });
+    
     /**
      * Creates a new 2D design panel
      * @param model the design model
@@ -33,6 +55,7 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
         
         // Add mouse listeners for interaction
         setupMouseListeners();
+        idleTimer.setRepeats(false);
     }
     
     /**
@@ -42,6 +65,7 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
         MouseAdapter mouseAdapter = new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
+                startInteraction();
                 handleMousePressed(e);
             }
             
@@ -52,6 +76,7 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
             
             @Override
             public void mouseDragged(MouseEvent e) {
+                startInteraction();
                 handleMouseDragged(e);
             }
             
@@ -68,6 +93,15 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
         System.out.println("Mouse listeners added to Design2DPanel");
     }
     
+    /**
+     * Measures frames against the budget while the mouse is in use; the
+     * best hints return once no input has arrived for a short delay
+     */
+    private void startInteraction() {
+        qualityController.wake();
+        idleTimer.restart();
+    }
+    
     /**
      * Handles mouse pressed events
      * @param e the mouse event
@@ -88,13 +122,14 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
             selectedItem = item;
             model.setSelectedItem(item);
             dragStart = e.getPoint();
+            dragStartState = ItemState.of(item);
             isDragging = true;
-            repaint();
+            scheduler.invalidate();
         } else {
             // Deselect if clicking on empty space
             selectedItem = null;
             model.clearSelection();
-            repaint();
+            scheduler.invalidate();
         }
     }
     
@@ -105,8 +140,9 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
     private void handleMouseReleased(MouseEvent e) {
         if (isDragging && selectedItem != null) {
             isDragging = false;
-            // Update the model with the new position
-            model.updateFurnitureItem(selectedItem);
+            // Update the model with the new position; the whole drag is one undo step
+            model.updateFurnitureItem(selectedItem, dragStartState);
+            dragStartState = null;
         }
     }
     
@@ -132,11 +168,22 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
             int roomWidth = model.getRoomWidth();
             int roomLength = model.getRoomLength();
             
-            // Calculate room boundaries in room coordinates
-            int minX = -roomWidth/2;
-            int maxX = roomWidth/2 - selectedItem.getWidth();
-            int minZ = -roomLength/2;
-            int maxZ = roomLength/2 - selectedItem.getDepth();
+            // Calculate room boundaries in room coordinates; a rotated item is
+            // kept inside by its footprint, which may reach past its x and z
+            float footprintMinX = Float.MAX_VALUE;
+            float footprintMinZ = Float.MAX_VALUE;
+            float footprintMaxX = -Float.MAX_VALUE;
+            float footprintMaxZ = -Float.MAX_VALUE;
+            for (int corner = 0; corner < FurnitureStore.FOOTPRINT_CORNERS; corner++) {
+                footprintMinX = Math.min(footprintMinX, selectedItem.getFootprintX(corner));
+                footprintMinZ = Math.min(footprintMinZ, selectedItem.getFootprintZ(corner));
+                footprintMaxX = Math.max(footprintMaxX, selectedItem.getFootprintX(corner));
+                footprintMaxZ = Math.max(footprintMaxZ, selectedItem.getFootprintZ(corner));
+            }
+            int minX = -roomWidth/2 - Math.round(footprintMinX - selectedItem.getX());
+            int maxX = roomWidth/2 - Math.round(footprintMaxX - selectedItem.getX());
+            int minZ = -roomLength/2 - Math.round(footprintMinZ - selectedItem.getZ());
+            int maxZ = roomLength/2 - Math.round(footprintMaxZ - selectedItem.getZ());
             
             // Constrain to room boundaries
             if (newX < minX) newX = minX;
@@ -153,7 +200,7 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
             // Update the drag start point
             dragStart = e.getPoint();
             
-            repaint();
+            scheduler.invalidate();
         }
     }
     
@@ -253,7 +300,7 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
         newItemType = null;
         setCursor(Cursor.getDefaultCursor());
         
-        repaint();
+        scheduler.invalidate();
     }
     
     /**
@@ -262,27 +309,47 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
      * @return the furniture item at the point, or null if none
      */
     private FurnitureItem getFurnitureItemAt(Point point) {
-        List<FurnitureItem> items = model.getFurnitureItems();
+        FurnitureStore items = model.getItemStore();
+        
+        // Offset from room coordinates to screen coordinates
+        int offsetX = (getWidth() - model.getRoomWidth()) / 2 + model.getRoomWidth()/2;
+        int offsetY = (getHeight() - model.getRoomLength()) / 2 + model.getRoomLength()/2;
         
         // Check items in reverse order (top to bottom)
         for (int i = items.size() - 1; i >= 0; i--) {
-            FurnitureItem item = items.get(i);
-            
-            // Convert 3D coordinates to 2D screen coordinates
-            int x = (getWidth() - model.getRoomWidth()) / 2 + item.getX() + model.getRoomWidth()/2;
-            int y = (getHeight() - model.getRoomLength()) / 2 + item.getZ() + model.getRoomLength()/2;
-            
-            // Check if the point is within the item bounds
-            if (point.x >= x && point.x <= x + item.getWidth() &&
-                point.y >= y && point.y <= y + item.getDepth()) {
-                System.out.println("Selected item: " + item.getName());
-                return item;
+            // Check if the point is within the item's footprint, in room coordinates
+            if (footprintContains(items, i, point.x - offsetX, point.y - offsetY)) {
+                System.out.println("Selected item: " + items.getName(i));
+                return model.getFurnitureItem(i);
             }
         }
         
         return null;
     }
     
+    /**
+     * Checks whether a point lies on an item's footprint. The footprint is a
+     * rectangle turned by the item's rotation, so the point is measured along
+     * its two edges from the first corner.
+     * @param items the item store
+     * @param slot the slot of the item
+     * @param x the x of the point in room coordinates
+     * @param z the z of the point in room coordinates
+     * @return true if the point is on the footprint or its outline
+     */
+    private static boolean footprintContains(FurnitureStore items, int slot, float x, float z) {
+        float originX = items.getFootprintX(slot, 0);
+        float originZ = items.getFootprintZ(slot, 0);
+        float widthX = items.getFootprintX(slot, 1) - originX;
+        float widthZ = items.getFootprintZ(slot, 1) - originZ;
+        float depthX = items.getFootprintX(slot, 3) - originX;
+        float depthZ = items.getFootprintZ(slot, 3) - originZ;
+        float along = (x - originX) * widthX + (z - originZ) * widthZ;
+        float across = (x - originX) * depthX + (z - originZ) * depthZ;
+        return along >= 0 && along <= widthX * widthX + widthZ * widthZ
+                && across >= 0 && across <= depthX * depthX + depthZ * depthZ;
+    }
+    
     /**
      * Sets the new item type for creation
      * @param type the furniture type
@@ -327,103 +394,53 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
     
     @Override
     protected void paintComponent(Graphics g) {
+        scheduler.beginFrame();
         super.paintComponent(g);
         Graphics2D g2d = (Graphics2D) g;
         
-        // Enable antialiasing
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        // Draw room outline
-        drawRoom(g2d);
+        // Draw the room, the furniture items and the grid from the latest snapshot
+        model.commit();
+        long start = System.nanoTime();
+        renderer.renderPlan(model.getSnapshot(), qualityController.getHints(), g2d, getWidth(), getHeight());
+        qualityController.recordFrame(System.nanoTime() - start);
         
-        // Draw furniture items
-        drawFurnitureItems(g2d);
-        
-        // Draw grid
-        drawGrid(g2d);
+        // Draw the frame-time overlay if enabled
+        if (showFrameStats) {
+            FrameStatsOverlay.draw(g2d,
+                    FrameStatsOverlay.percentiles("Paint", scheduler.getStats()),
+                    "FPS " + scheduler.getStats().getFramesPerSecond()
+                            + ", coalesced " + scheduler.getCoalesced());
+        }
+        scheduler.endFrame();
     }
     
     /**
-     * Draws the room outline
-     * @param g2d the graphics context
+     * Shows or hides the frame-time overlay
+     * @param showFrameStats whether to show frame-time percentiles and the frame rate
      */
-    private void drawRoom(Graphics2D g2d) {
-        int roomWidth = model.getRoomWidth();
-        int roomLength = model.getRoomLength();
-        
-        // Calculate room position (centered in the panel)
-        int roomX = (getWidth() - roomWidth) / 2;
-        int roomY = (getHeight() - roomLength) / 2;
-        
-        // Draw room floor
-        g2d.setColor(model.getRoomFloorColor());
-        g2d.fillRect(roomX, roomY, roomWidth, roomLength);
-        
-        // Draw room outline
-        g2d.setColor(Color.BLACK);
-        g2d.setStroke(new BasicStroke(2));
-        g2d.drawRect(roomX, roomY, roomWidth, roomLength);
+    public void setShowFrameStats(boolean showFrameStats) {
+        this.showFrameStats = showFrameStats;
+        scheduler.invalidate();
     }
     
     /**
-     * Draws the furniture items
-     * @param g2d the graphics context
+     * Gets the repaint scheduler of this panel, e.g. to change the frame rate cap
+     * @return the frame scheduler
      */
-    private void drawFurnitureItems(Graphics2D g2d) {
-        List<FurnitureItem> items = model.getFurnitureItems();
-        
-        for (FurnitureItem item : items) {
-            // Convert 3D coordinates to 2D screen coordinates
-            int x = (getWidth() - model.getRoomWidth()) / 2 + item.getX() + model.getRoomWidth()/2;
-            int y = (getHeight() - model.getRoomLength()) / 2 + item.getZ() + model.getRoomLength()/2;
-            
-            // Draw the furniture item
-            g2d.setColor(item.getColor());
-            g2d.fillRect(x, y, item.getWidth(), item.getDepth());
-            
-            // Draw outline
-            if (item == selectedItem) {
-                // Selected item has a thicker outline
-                g2d.setColor(Color.BLUE);
-                g2d.setStroke(new BasicStroke(2));
-            } else {
-                g2d.setColor(Color.BLACK);
-                g2d.setStroke(new BasicStroke(1));
-            }
-            g2d.drawRect(x, y, item.getWidth(), item.getDepth());
-            
-            // Draw item name
-            g2d.setColor(Color.BLACK);
-            g2d.setFont(new Font("SansSerif", Font.BOLD, 10));
-            g2d.drawString(item.getName(), x + 5, y + 15);
-        }
-    }
+    public FrameScheduler getFrameScheduler() { return scheduler; }
     
     /**
-     * Draws a grid on the room floor
-     * @param g2d the graphics context
+     * Gets the controller of the rendering hints, e.g. to change the quality policy or frame budget
+     * @return the quality controller
      */
-    private void drawGrid(Graphics2D g2d) {
-        int roomWidth = model.getRoomWidth();
-        int roomLength = model.getRoomLength();
-        
-        // Calculate room position (centered in the panel)
-        int roomX = (getWidth() - roomWidth) / 2;
-        int roomY = (getHeight() - roomLength) / 2;
-        
-        // Draw grid
-        g2d.setColor(new Color(200, 200, 200, 100));
-        g2d.setStroke(new BasicStroke(0.5f));
-        
-        // Vertical grid lines
-        for (int x = 0; x <= roomWidth; x += 50) {
-            g2d.drawLine(roomX + x, roomY, roomX + x, roomY + roomLength);
-        }
-        
-        // Horizontal grid lines
-        for (int y = 0; y <= roomLength; y += 50) {
-            g2d.drawLine(roomX, roomY + y, roomX + roomWidth, roomY + y);
-        }
+    public AdaptiveQualityController getQualityController() { return qualityController; }
+    
+    /**
+     * Gets the caches of the static room and grid layers, e.g. to read their hit rates
+     * @return the room layer cache and the grid layer cache
+     */
+    public LayerCache[] getLayerCaches() {
+        return renderer.getPlanLayerCaches();
     }
     
     @Override
@@ -434,7 +451,7 @@ public class Design2DPanel extends JPanel implements DesignModel.DesignModelList
         }
         
         // Repaint the panel
-        repaint();
+        scheduler.invalidate();
     }
     
     @Override
@@ -1,19 +1,31 @@
 package com.furnitureapp.ui.panels;
 
 import com.furnitureapp.model.DesignModel;
+import com.furnitureapp.model.DesignSnapshot;
 import com.furnitureapp.model.FurnitureItem;
-import com.furnitureapp.util.AppConstants;
+import com.furnitureapp.render.AdaptiveQualityController;
+import com.furnitureapp.render.AmbientOcclusionMap;
+import com.furnitureapp.render.CullingStats;
+import com.furnitureapp.render.FrameScheduler;
+import com.furnitureapp.render.FrameStats;
+import com.furnitureapp.render.LayerCache;
+import com.furnitureapp.render.RenderMode;
+import com.furnitureapp.render.RenderQuality;
+import com.furnitureapp.render.RenderThread;
+import com.furnitureapp.render.ShadowMap;
+import com.furnitureapp.scene.Camera;
+import com.furnitureapp.scene.RayTracer;
+import com.furnitureapp.scene.RenderOptions;
+import com.furnitureapp.scene.SceneRenderer;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Path2D;
-import java.awt.geom.Point2D;
-import java.util.List;
 
 /**
- * Panel for 3D furniture design visualization
+ * Panel for 3D furniture design visualization.
+ * Frames are drawn on a background render thread from an immutable model
+ * snapshot; painting on the event thread only blits the latest finished frame.
  */
 public class Design3DPanel extends JPanel implements DesignModel.DesignModelListener {
     private DesignModel model;
@@ -30,10 +42,36 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
     private Point lastMousePos;
     private boolean isRotating = false;
     
+    // Repaints are coalesced and paced; the frame-time overlay is off by default
+    private final FrameScheduler scheduler = new FrameScheduler(this);
+    private boolean showFrameStats = false;
+    
     // Rendering settings
     private boolean showWireframe = false;
     private boolean showShadows = true;
     private boolean showReflections = true;
+    private RenderMode renderMode = RenderMode.JAVA2D;
+    
+    // Interactive quality: cheap frames while the view moves, refined step by step once input stops
+    private static final int REFINE_DELAY_MS = 150;
+    private RenderQuality quality = RenderQuality.FULL;
+    private final Timer refineTimer = new Timer(REFINE_DELAY_MS, e -> refine());
+    
+    // Rendering hints of the frames drawn while the view moves, adapted to the frame budget
+    // from how long those frames take; the full-quality frame gets the best hints
+    private final AdaptiveQualityController qualityController = new AdaptiveQualityController();
+    
+    // Background rendering: the event thread requests frames, the render thread draws them
+    private final SceneRenderer renderer = new SceneRenderer();
+    private final RenderThread<FrameRequest> renderThread =
+            new RenderThread<>("Design3DPanel renderer", this::renderFrame, scheduler::invalidate);
+    private FrameRequest lastRequest;
+    private CullingStats displayedStats = new CullingStats();
+    
+    // Ray traced mode: the Java2D frame is shown while the view moves, then refined by a progressive trace
+    private static final int MAX_RAY_TRACED_SAMPLES = 1024;
+    private RayTracer.Job rayTraceJob;
+    private FrameRequest rayTraceRequest;
     
     /**
      * Creates a new 3D design panel
@@ -48,6 +86,7 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
         
         // Add mouse listeners for rotation and zooming
         setupMouseListeners();
+        refineTimer.setRepeats(false);
     }
     
     /**
@@ -86,7 +125,7 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
                     if (rotationX < -89) rotationX = -89;
                     
                     lastMousePos = e.getPoint();
-                    repaint();
+                    startInteraction();
                 }
             }
             
@@ -100,7 +139,7 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
                 if (zoom < 0.1) zoom = 0.1;
                 if (zoom > 5.0) zoom = 5.0;
                 
-                repaint();
+                startInteraction();
             }
         };
         
@@ -109,448 +148,149 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
         addMouseWheelListener(mouseAdapter);
     }
     
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        
-        // Enable antialiasing
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        
-        // Save the original transform
-        AffineTransform originalTransform = g2d.getTransform();
-        
-        // Set up the camera view
-        setupCamera(g2d);
-        
-        // Draw the room
-        drawRoom(g2d);
-        
-        // Draw furniture items
-        drawFurnitureItems(g2d);
-        
-        // Restore the original transform
-        g2d.setTransform(originalTransform);
-        
-        // Draw UI overlays
-        drawOverlays(g2d);
-    }
-    
-    /**
-     * Sets up the camera view
-     * @param g2d the graphics context
-     */
-    private void setupCamera(Graphics2D g2d) {
-        // Center the view
-        g2d.translate(getWidth() / 2, getHeight() / 2);
-        
-        // Apply zoom
-        g2d.scale(zoom, zoom);
-        
-        // Apply rotations
-        g2d.rotate(Math.toRadians(rotationY), 0, 0);
-        g2d.rotate(Math.toRadians(rotationX), 1, 0);
-    }
-    
     /**
-     * Draws the room
-     * @param g2d the graphics context
+     * Switches to interactive quality while the view moves. Refinement
+     * starts once no input has arrived for a short delay.
      */
-    private void drawRoom(Graphics2D g2d) {
-        int roomWidth = model.getRoomWidth();
-        int roomLength = model.getRoomLength();
-        int roomHeight = model.getRoomHeight();
-        
-        // Calculate room position (centered)
-        int roomX = -roomWidth / 2;
-        int roomY = -roomHeight;
-        int roomZ = -roomLength / 2;
-        
-        // Draw floor
-        g2d.setColor(model.getRoomFloorColor());
-        drawRectangle3D(g2d, roomX, 0, roomZ, roomWidth, 0, roomLength, false);
-        
-        // Draw walls with semi-transparency
-        g2d.setColor(new Color(
-                model.getRoomWallColor().getRed(),
-                model.getRoomWallColor().getGreen(),
-                model.getRoomWallColor().getBlue(),
-                180)); // Semi-transparent
-        
-        // Back wall
-        drawRectangle3D(g2d, roomX, roomY, roomZ, roomWidth, roomHeight, 0, false);
-        
-        // Left wall
-        drawRectangle3D(g2d, roomX, roomY, roomZ, 0, roomHeight, roomLength, false);
-        
-        // Draw ceiling
-        g2d.setColor(model.getRoomCeilingColor());
-        drawRectangle3D(g2d, roomX, roomY, roomZ, roomWidth, 0, roomLength, false);
-        
-        // Draw grid on floor
-        drawFloorGrid(g2d, roomX, 0, roomZ, roomWidth, roomLength);
+    private void startInteraction() {
+        quality = RenderQuality.INTERACTIVE;
+        qualityController.wake();
+        refineTimer.restart();
+        scheduler.invalidate();
     }
     
     /**
-     * Draws a grid on the floor
-     * @param g2d the graphics context
-     * @param x the x coordinate
-     * @param y the y coordinate
-     * @param z the z coordinate
-     * @param width the width
-     * @param length the length
+     * Refines the frame by one quality step; the full-quality frame is drawn with the best hints
      */
-    private void drawFloorGrid(Graphics2D g2d, int x, int y, int z, int width, int length) {
-        g2d.setColor(new Color(200, 200, 200, 100));
-        g2d.setStroke(new BasicStroke(0.5f));
-        
-        // Draw grid lines along X axis
-        for (int i = 0; i <= width; i += 50) {
-            Point p1 = project3Dto2D(x + i, y, z);
-            Point p2 = project3Dto2D(x + i, y, z + length);
-            g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
-        }
-        
-        // Draw grid lines along Z axis
-        for (int i = 0; i <= length; i += 50) {
-            Point p1 = project3Dto2D(x, y, z + i);
-            Point p2 = project3Dto2D(x + width, y, z + i);
-            g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+    private void refine() {
+        quality = quality.refine();
+        if (quality == RenderQuality.FULL) {
+            qualityController.settle();
         }
+        scheduler.invalidate();
     }
     
-    /**
-     * Draws the furniture items
-     * @param g2d the graphics context
-     */
-    private void drawFurnitureItems(Graphics2D g2d) {
-        List<FurnitureItem> items = model.getFurnitureItems();
-        
-        // Sort items by distance from camera (painter's algorithm)
-        items.sort((a, b) -> {
-            double distA = distance3D(a.getX(), a.getY(), a.getZ(), cameraX, cameraY, cameraZ);
-            double distB = distance3D(b.getX(), b.getY(), b.getZ(), cameraX, cameraY, cameraZ);
-            return Double.compare(distB, distA); // Draw furthest first
-        });
+    @Override
+    protected void paintComponent(Graphics g) {
+        scheduler.beginFrame();
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
         
-        // Draw each furniture item
-        for (FurnitureItem item : items) {
-            drawFurnitureItem(g2d, item);
+        // Ask for a new frame only when something it depends on changed; the
+        // render thread invalidates the panel when it is done, which must not loop
+        int width = getWidth();
+        int height = getHeight();
+        if (width > 0 && height > 0) {
+            model.commit();
+            FrameRequest request = new FrameRequest(this, model.getSnapshot(), width, height);
+            if (!request.sameAs(lastRequest)) {
+                lastRequest = request;
+                double scale = quality.getScale();
+                renderThread.request(request, Math.max(1, (int) (width * scale)),
+                        Math.max(1, (int) (height * scale)));
+            }
         }
-    }
-    
-    /**
-     * Draws a single furniture item
-     * @param g2d the graphics context
-     * @param item the furniture item
-     */
-    private void drawFurnitureItem(Graphics2D g2d, FurnitureItem item) {
-        // Get item properties
-        int x = item.getX();
-        int y = item.getY();
-        int z = item.getZ();
-        int width = item.getWidth();
-        int height = item.getHeight();
-        int depth = item.getDepth();
-        Color color = item.getColor();
-        
-        // Apply lighting effect
-        Color shadedColor = applyLighting(color, item);
-        g2d.setColor(shadedColor);
         
-        // Draw the 3D box
-        drawBox3D(g2d, x, y, z, width, height, depth, item == model.getSelectedItem());
-        
-        // Draw shadow on the floor if enabled
-        if (showShadows) {
-            drawShadow(g2d, x, 0, z, width, depth);
+        // Show the latest finished frame, which may be older than the request
+        FrameRequest shown = renderThread.drawFrame(g2d, 0, 0, width, height);
+        if (shown != null) {
+            displayedStats = shown.cullingStats;
+            
+            // Once the requested frame is on screen and input has stopped, refine it by one step
+            if (shown == lastRequest && quality != RenderQuality.FULL && !refineTimer.isRunning()) {
+                refine();
+            }
         }
-    }
-    
-    /**
-     * Applies lighting effects to a color
-     * @param color the base color
-     * @param item the furniture item
-     * @return the shaded color
-     */
-    private Color applyLighting(Color color, FurnitureItem item) {
-        // Apply ambient lighting
-        float lightIntensity = model.getLightIntensity();
-        float shadowIntensity = model.getShadowIntensity();
-        float contrast = model.getContrast();
-        
-        // Calculate lighting factor based on position
-        float lightFactor = 0.7f + (item.getY() / 500.0f) * 0.3f;
-        lightFactor *= lightIntensity;
-        
-        // Apply contrast
-        float r = color.getRed() / 255.0f;
-        float g = color.getGreen() / 255.0f;
-        float b = color.getBlue() / 255.0f;
         
-        r = Math.max(0, Math.min(1, (r - 0.5f) * contrast + 0.5f)) * lightFactor;
-        g = Math.max(0, Math.min(1, (g - 0.5f) * contrast + 0.5f)) * lightFactor;
-        b = Math.max(0, Math.min(1, (b - 0.5f) * contrast + 0.5f)) * lightFactor;
-        
-        return new Color(r, g, b);
-    }
-    
-    /**
-     * Draws a shadow on the floor
-     * @param g2d the graphics context
-     * @param x the x coordinate
-     * @param y the y coordinate
-     * @param z the z coordinate
-     * @param width the width
-     * @param depth the depth
-     */
-    private void drawShadow(Graphics2D g2d, int x, int y, int z, int width, int depth) {
-        // Create a semi-transparent black for the shadow
-        g2d.setColor(new Color(0, 0, 0, 50));
-        
-        // Draw a slightly offset and stretched shadow
-        int shadowOffsetX = 10;
-        int shadowOffsetZ = 10;
-        
-        // Project the shadow points
-        // Note: y is already inverted in the calling method, so we use -y here
-        // to place the shadow on the floor
-        Point p1 = project3Dto2D(x - shadowOffsetX, -y + 1, z - shadowOffsetZ);
-        Point p2 = project3Dto2D(x + width + shadowOffsetX, -y + 1, z - shadowOffsetZ);
-        Point p3 = project3Dto2D(x + width + shadowOffsetX, -y + 1, z + depth + shadowOffsetZ);
-        Point p4 = project3Dto2D(x - shadowOffsetX, -y + 1, z + depth + shadowOffsetZ);
-        
-        // Draw the shadow
-        Path2D path = new Path2D.Double();
-        path.moveTo(p1.x, p1.y);
-        path.lineTo(p2.x, p2.y);
-        path.lineTo(p3.x, p3.y);
-        path.lineTo(p4.x, p4.y);
-        path.closePath();
+        if (renderMode == RenderMode.RAY_TRACED && !showWireframe) {
+            drawRayTraced(g2d);
+        }
         
-        g2d.fill(path);
+        // Draw UI overlays
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        drawOverlays(g2d);
+        scheduler.endFrame();
     }
     
     /**
-     * Draws a 3D box
-     * @param g2d the graphics context
-     * @param x the x coordinate
-     * @param y the y coordinate
-     * @param z the z coordinate
-     * @param width the width
-     * @param height the height
-     * @param depth the depth
-     * @param isSelected whether the box is selected
+     * Draws a frame into an off-screen buffer; runs on the render thread
+     * @param g2d the graphics of the buffer
+     * @param request the frame to draw
+     * @param width the width of the buffer
+     * @param height the height of the buffer
      */
-    private void drawBox3D(Graphics2D g2d, int x, int y, int z, int width, int height, int depth, boolean isSelected) {
-        Color originalColor = g2d.getColor();
-        
-        // Invert the Y-coordinate so items appear above the floor instead of below
-        // In 3D graphics, Y typically points up, but in our coordinate system it points down
-        // So we need to negate the Y and height values
-        int yTop = -y; // Top of the object (floor level)
-        int yBottom = -(y + height); // Bottom of the object
-        
-        // Top face
-        g2d.setColor(brighten(originalColor, 1.2f));
-        drawRectangle3D(g2d, x, yTop, z, width, 0, depth, isSelected);
-        
-        // Front face
-        g2d.setColor(originalColor);
-        drawRectangle3D(g2d, x, yTop, z + depth, width, -height, 0, isSelected);
-        
-        // Right face
-        g2d.setColor(darken(originalColor, 0.8f));
-        drawRectangle3D(g2d, x + width, yTop, z, 0, -height, depth, isSelected);
+    private void renderFrame(Graphics2D g2d, FrameRequest request, int width, int height) {
+        RenderOptions options = request.options;
+        if (options.getRenderMode() == RenderMode.RAY_TRACED) {
+            // The ray tracer refines the still view on its own workers
+            options = options.withRenderMode(RenderMode.JAVA2D);
+        }
+        long start = System.nanoTime();
+        request.cullingStats = renderer.render(request.snapshot, request.camera, options, g2d, width, height);
         
-        // If selected, draw with a highlight
-        if (isSelected) {
-            Stroke originalStroke = g2d.getStroke();
-            g2d.setStroke(new BasicStroke(2.0f));
-            g2d.setColor(Color.BLUE);
-            
-            // Draw wireframe
-            drawWireframeBox(g2d, x, yTop, z, width, -height, depth);
-            
-            g2d.setStroke(originalStroke);
+        // Only the frames repeated while the view moves count; a single refinement step would skew the average
+        if (options.getQuality() == RenderQuality.INTERACTIVE) {
+            qualityController.recordFrame(System.nanoTime() - start);
         }
     }
     
     /**
-     * Draws a wireframe box
+     * Draws the progressive ray trace of the current view over the preview
+     * frame. A trace starts once the view has settled at full quality and is
+     * cancelled as soon as the view changes again.
      * @param g2d the graphics context
-     * @param x the x coordinate
-     * @param y the y coordinate (top of the box)
-     * @param z the z coordinate
-     * @param width the width
-     * @param height the height (negative value since we're drawing downward)
-     * @param depth the depth
      */
-    private void drawWireframeBox(Graphics2D g2d, int x, int y, int z, int width, int height, int depth) {
-        // Note: height is negative, so y + height is the bottom of the box
-        
-        // Bottom rectangle (y + height is lower than y because height is negative)
-        Point p1 = project3Dto2D(x, y + height, z);
-        Point p2 = project3Dto2D(x + width, y + height, z);
-        Point p3 = project3Dto2D(x + width, y + height, z + depth);
-        Point p4 = project3Dto2D(x, y + height, z + depth);
-        
-        g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
-        g2d.drawLine(p2.x, p2.y, p3.x, p3.y);
-        g2d.drawLine(p3.x, p3.y, p4.x, p4.y);
-        g2d.drawLine(p4.x, p4.y, p1.x, p1.y);
-        
-        // Top rectangle (at y)
-        Point p5 = project3Dto2D(x, y, z);
-        Point p6 = project3Dto2D(x + width, y, z);
-        Point p7 = project3Dto2D(x + width, y, z + depth);
-        Point p8 = project3Dto2D(x, y, z + depth);
-        
-        g2d.drawLine(p5.x, p5.y, p6.x, p6.y);
-        g2d.drawLine(p6.x, p6.y, p7.x, p7.y);
-        g2d.drawLine(p7.x, p7.y, p8.x, p8.y);
-        g2d.drawLine(p8.x, p8.y, p5.x, p5.y);
-        
-        // Connecting lines
-        g2d.drawLine(p1.x, p1.y, p5.x, p5.y);
-        g2d.drawLine(p2.x, p2.y, p6.x, p6.y);
-        g2d.drawLine(p3.x, p3.y, p7.x, p7.y);
-        g2d.drawLine(p4.x, p4.y, p8.x, p8.y);
+    private void drawRayTraced(Graphics2D g2d) {
+        boolean settled = lastRequest != null && quality == RenderQuality.FULL && !refineTimer.isRunning();
+        if (!settled) {
+            cancelRayTrace();
+            return;
+        }
+        if (rayTraceJob == null || !lastRequest.sameAs(rayTraceRequest)) {
+            cancelRayTrace();
+            rayTraceRequest = lastRequest;
+            rayTraceJob = renderer.getRayTracer().start(lastRequest.snapshot, lastRequest.camera,
+                    lastRequest.options, lastRequest.width, lastRequest.height, MAX_RAY_TRACED_SAMPLES,
+                    scheduler::invalidate);
+        }
+        Image image = rayTraceJob.getImage();
+        if (image != null) {
+            g2d.drawImage(image, 0, 0, null);
+        }
+        drawRayTraceStatus(g2d, rayTraceJob);
     }
     
     /**
-     * Draws a 3D rectangle
-     * @param g2d the graphics context
-     * @param x the x coordinate
-     * @param y the y coordinate
-     * @param z the z coordinate
-     * @param width the width (along x axis)
-     * @param height the height (along y axis)
-     * @param depth the depth (along z axis)
-     * @param isSelected whether the rectangle is selected
+     * Stops the running ray trace, if any
      */
-    private void drawRectangle3D(Graphics2D g2d, int x, int y, int z, int width, int height, int depth, boolean isSelected) {
-        // Calculate the four corners of the rectangle
-        Point p1, p2, p3, p4;
-        
-        if (width == 0) { // YZ plane
-            p1 = project3Dto2D(x, y, z);
-            p2 = project3Dto2D(x, y + height, z);
-            p3 = project3Dto2D(x, y + height, z + depth);
-            p4 = project3Dto2D(x, y, z + depth);
-        } else if (height == 0) { // XZ plane
-            p1 = project3Dto2D(x, y, z);
-            p2 = project3Dto2D(x + width, y, z);
-            p3 = project3Dto2D(x + width, y, z + depth);
-            p4 = project3Dto2D(x, y, z + depth);
-        } else if (depth == 0) { // XY plane
-            p1 = project3Dto2D(x, y, z);
-            p2 = project3Dto2D(x + width, y, z);
-            p3 = project3Dto2D(x + width, y + height, z);
-            p4 = project3Dto2D(x, y + height, z);
-        } else {
-            // Not a rectangle on a principal plane
-            return;
+    private void cancelRayTrace() {
+        if (rayTraceJob != null) {
+            rayTraceJob.cancel();
+            rayTraceJob = null;
+            rayTraceRequest = null;
         }
-        
-        // Draw the filled rectangle
-        Path2D path = new Path2D.Double();
-        path.moveTo(p1.x, p1.y);
-        path.lineTo(p2.x, p2.y);
-        path.lineTo(p3.x, p3.y);
-        path.lineTo(p4.x, p4.y);
-        path.closePath();
-        
-        g2d.fill(path);
-        
-        // Draw the outline
-        Color originalColor = g2d.getColor();
-        g2d.setColor(isSelected ? Color.BLUE : darken(originalColor, 0.7f));
-        g2d.draw(path);
-        g2d.setColor(originalColor);
     }
     
     /**
-     * Projects a 3D point to 2D screen coordinates
-     * @param x the x coordinate
-     * @param y the y coordinate
-     * @param z the z coordinate
-     * @return the projected 2D point
+     * Draws the progress of a ray trace
+     * @param g2d the graphics context
+     * @param job the ray trace
      */
-    private Point project3Dto2D(double x, double y, double z) {
-        // Simple perspective projection
-        double scale = 1.0;
-        double distance = 1000;
-        
-        // Apply camera transformations
-        double dx = x - cameraX;
-        double dy = y - cameraY;
-        double dz = z - cameraZ;
-        
-        // Apply rotation around Y axis (yaw)
-        double rotY = Math.toRadians(rotationY);
-        double newX = dx * Math.cos(rotY) - dz * Math.sin(rotY);
-        double newZ = dx * Math.sin(rotY) + dz * Math.cos(rotY);
-        dx = newX;
-        dz = newZ;
+    private void drawRayTraceStatus(Graphics2D g2d, RayTracer.Job job) {
+        // Draw in the bottom-left corner
+        int x = 10;
+        int y = getHeight() - 60;
         
-        // Apply rotation around X axis (pitch)
-        double rotX = Math.toRadians(rotationX);
-        double newY = dy * Math.cos(rotX) - dz * Math.sin(rotX);
-        newZ = dy * Math.sin(rotX) + dz * Math.cos(rotX);
-        dy = newY;
-        dz = newZ;
-        
-        // Perspective projection
-        double factor = distance / (distance + dz);
-        int screenX = (int) (dx * factor * scale);
-        int screenY = (int) (dy * factor * scale);
+        g2d.setColor(new Color(0, 0, 0, 150));
+        g2d.fillRoundRect(x, y, 190, 50, 10, 10);
         
-        return new Point(screenX, screenY);
-    }
-    
-    /**
-     * Calculates the 3D distance between two points
-     * @param x1 the x coordinate of the first point
-     * @param y1 the y coordinate of the first point
-     * @param z1 the z coordinate of the first point
-     * @param x2 the x coordinate of the second point
-     * @param y2 the y coordinate of the second point
-     * @param z2 the z coordinate of the second point
-     * @return the distance
-     */
-    private double distance3D(double x1, double y1, double z1, double x2, double y2, double z2) {
-        double dx = x2 - x1;
-        double dy = y2 - y1;
-        double dz = z2 - z1;
-        return Math.sqrt(dx * dx + dy * dy + dz * dz);
-    }
-    
-    /**
-     * Brightens a color
-     * @param color the color to brighten
-     * @param factor the brightening factor
-     * @return the brightened color
-     */
-    private Color brighten(Color color, float factor) {
-        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
-        hsb[1] = Math.max(0, Math.min(1, hsb[1] * 0.9f)); // Reduce saturation slightly
-        hsb[2] = Math.max(0, Math.min(1, hsb[2] * factor)); // Increase brightness
-        return Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        g2d.drawString("Samples: " + job.getSamples() + "/" + MAX_RAY_TRACED_SAMPLES
+                + (job.isDone() ? " (done)" : ""), x + 10, y + 20);
+        g2d.drawString(String.format("%.2f M samples/s", job.getSamplesPerSecond() / 1e6), x + 10, y + 40);
     }
     
-    /**
-     * Darkens a color
-     * @param color the color to darken
-     * @param factor the darkening factor
-     * @return the darkened color
-     */
-    private Color darken(Color color, float factor) {
-        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
-        hsb[2] = Math.max(0, Math.min(1, hsb[2] * factor)); // Decrease brightness
-        return Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
-    }
     
     /**
      * Draws UI overlays
@@ -565,6 +305,16 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
         if (selectedItem != null) {
             drawSelectedItemInfo(g2d, selectedItem);
         }
+        
+        // Frame times of the render thread and of the event-thread paints
+        if (showFrameStats) {
+            FrameStatsOverlay.draw(g2d,
+                    FrameStatsOverlay.percentiles("Render", renderThread.getStats()),
+                    FrameStatsOverlay.percentiles("Reflect", renderer.getReflectionStats()),
+                    FrameStatsOverlay.percentiles("Paint", scheduler.getStats()),
+                    "FPS " + renderThread.getStats().getFramesPerSecond()
+                            + ", dropped " + renderThread.getRequestsDropped());
+        }
     }
     
     /**
@@ -574,16 +324,18 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
     private void drawViewControls(Graphics2D g2d) {
         // Draw in the bottom-right corner
         int x = getWidth() - 150;
-        int y = getHeight() - 80;
+        int y = getHeight() - 100;
         
         g2d.setColor(new Color(0, 0, 0, 150));
-        g2d.fillRoundRect(x, y, 140, 70, 10, 10);
+        g2d.fillRoundRect(x, y, 140, 90, 10, 10);
         
         g2d.setColor(Color.WHITE);
         g2d.setFont(new Font("SansSerif", Font.PLAIN, 12));
         g2d.drawString("Left drag: Rotate", x + 10, y + 20);
         g2d.drawString("Scroll: Zoom", x + 10, y + 40);
         g2d.drawString("Zoom: " + String.format("%.1f", zoom) + "x", x + 10, y + 60);
+        g2d.drawString("Visible: " + displayedStats.getItemsVisible() + "/"
+                + (displayedStats.getItemsVisible() + displayedStats.getItemsCulled()), x + 10, y + 80);
     }
     
     /**
@@ -625,9 +377,116 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
         this.showWireframe = showWireframe;
         this.showShadows = showShadows;
         this.showReflections = showReflections;
-        repaint();
+        scheduler.invalidate();
     }
     
+    /**
+     * Shows the scene as edges only, which stays fast for very large scenes
+     * @param showWireframe whether to draw the wireframe instead of shaded faces
+     */
+    public void setShowWireframe(boolean showWireframe) {
+        this.showWireframe = showWireframe;
+        scheduler.invalidate();
+    }
+    
+    /**
+     * Sets the rendering backend
+     * @param renderMode the backend to draw the scene with
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode;
+        cancelRayTrace();
+        scheduler.invalidate();
+    }
+    
+    public RenderMode getRenderMode() { return renderMode; }
+    
+    /**
+     * Gets the current view, e.g. as the start of an exported animation
+     * @return the camera
+     */
+    public Camera getCamera() {
+        return new Camera(cameraX, cameraY, cameraZ, rotationX, rotationY, zoom);
+    }
+    
+    /**
+     * Gets the current rendering settings at full quality, e.g. for export
+     * @return the render options
+     */
+    public RenderOptions getRenderOptions() {
+        return new RenderOptions(getBackground(), renderMode, RenderQuality.FULL,
+                showWireframe, showShadows, showReflections);
+    }
+    
+    /**
+     * Shows or hides the frame-time overlay
+     * @param showFrameStats whether to show frame-time percentiles and the frame rate
+     */
+    public void setShowFrameStats(boolean showFrameStats) {
+        this.showFrameStats = showFrameStats;
+        scheduler.invalidate();
+    }
+    
+    /**
+     * Gets the repaint scheduler of this panel, e.g. to change the frame rate cap
+     * @return the frame scheduler
+     */
+    public FrameScheduler getFrameScheduler() { return scheduler; }
+    
+    /**
+     * Gets the controller of the rendering hints, e.g. to change the quality policy or frame budget
+     * @return the quality controller
+     */
+    public AdaptiveQualityController getQualityController() { return qualityController; }
+    
+    /**
+     * Gets what the culling stage kept and rejected in the frame on screen
+     * @return the culling counts of the displayed frame
+     */
+    public CullingStats getCullingStats() { return displayedStats; }
+    
+    /**
+     * Gets the background render thread, e.g. to read its frame counts
+     * @return the render thread of this panel
+     */
+    public RenderThread<?> getRenderThread() { return renderThread; }
+    
+    /**
+     * Gets the scene renderer that draws this panel's frames, e.g. to read its cache statistics
+     * @return the scene renderer
+     */
+    public SceneRenderer getSceneRenderer() { return renderer; }
+    
+    /**
+     * Gets the cache of the room and floor grid layer, e.g. to read its hit rate
+     * @return the room layer cache
+     */
+    public LayerCache getRoomLayerCache() { return renderer.getRoomLayerCache(); }
+    
+    /**
+     * Gets the shadow map of the items, e.g. to read how often it was rebuilt
+     * @return the shadow map
+     */
+    public ShadowMap getShadowMap() { return renderer.getShadowMap(); }
+    
+    /**
+     * Gets the baked floor occlusion, e.g. to read how much of it was rebaked
+     * @return the ambient occlusion map
+     */
+    public AmbientOcclusionMap getOcclusionMap() { return renderer.getOcclusionMap(); }
+    
+    /**
+     * Gets the cache of the floor reflection, e.g. to read its hit rate
+     * @return the reflection layer cache
+     */
+    public LayerCache getReflectionLayerCache() { return renderer.getReflectionLayerCache(); }
+    
+    /**
+     * Gets the time the floor reflection pass takes per frame, cache hits included
+     * @return the reflection pass statistics
+     */
+    public FrameStats getReflectionStats() { return renderer.getReflectionStats(); }
+    
     /**
      * Resets the camera view
      */
@@ -638,16 +497,62 @@ public class Design3DPanel extends JPanel implements DesignModel.DesignModelList
         rotationX = 30;
         rotationY = -30;
         zoom = 1.0;
-        repaint();
+        scheduler.invalidate();
     }
     
     @Override
     public void onModelChanged(String changeType) {
-        repaint();
+        // The next paint requests a frame of the new snapshot
+        scheduler.invalidate();
+    }
+    
+    @Override
+    public void removeNotify() {
+        renderThread.shutdown();
+        cancelRayTrace();
+        super.removeNotify();
     }
     
     @Override
     public Dimension getPreferredSize() {
         return new Dimension(800, 600);
     }
+    
+    /**
+     * Everything a frame depends on, captured on the event thread so the
+     * render thread never reads the panel's mutable view state
+     */
+    private static final class FrameRequest {
+        final DesignSnapshot snapshot;
+        final int width;
+        final int height;
+        final Camera camera;
+        final RenderOptions options;
+        
+        // Set by the render thread once the frame is drawn
+        CullingStats cullingStats;
+        
+        FrameRequest(Design3DPanel panel, DesignSnapshot snapshot, int width, int height) {
+            this.snapshot = snapshot;
+            this.width = width;
+            this.height = height;
+            this.camera = panel.getCamera();
+            this.options = panel.getRenderOptions().withQuality(panel.quality)
+                    .withHints(panel.qualityController.getHints());
+        }
+        
+        /**
+         * Checks whether another request would produce the same frame
+         * @param other the other request, may be null
+         * @return true if both requests draw the same frame
+         */
+        boolean sameAs(FrameRequest other) {
+            return other != null
+                    && snapshot == other.snapshot
+                    && width == other.width
+                    && height == other.height
+                    && camera.equals(other.camera)
+                    && options.equals(other.options);
+        }
+    }
 }
@@ -1,7 +1,22 @@
 package com.furnitureapp.ui.panels;
 
+import com.furnitureapp.export.FrameSequenceWriter;
+import com.furnitureapp.export.GifSequenceWriter;
+import com.furnitureapp.export.PngSequenceWriter;
+import com.furnitureapp.export.TurntableExporter;
+import com.furnitureapp.model.DesignHistory;
 import com.furnitureapp.model.DesignModel;
+import com.furnitureapp.model.DesignSnapshot;
 import com.furnitureapp.model.FurnitureItem;
+import com.furnitureapp.model.ItemState;
+import com.furnitureapp.render.AdaptiveQualityController;
+import com.furnitureapp.render.QualityPolicy;
+import com.furnitureapp.render.RenderHints;
+import com.furnitureapp.render.RenderMode;
+import com.furnitureapp.render.RenderQuality;
+import com.furnitureapp.scene.Camera;
+import com.furnitureapp.scene.RenderOptions;
+import com.furnitureapp.scene.SceneRenderer;
 import com.furnitureapp.service.DesignService;
 import com.furnitureapp.util.AppConstants;
 import com.furnitureapp.util.ThemeManager;
@@ -12,18 +27,29 @@ import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Main dashboard for the furniture designer application
  */
 public class DesignerDashboard extends JFrame {
+    // Turntable export: frames per turn offered by default, and how long each frame is shown in a GIF
+    private static final int TURNTABLE_FRAMES = 36;
+    private static final int TURNTABLE_FRAME_DELAY_MS = 100;
+    
     private DesignModel designModel;
     private Design2DPanel design2DPanel;
     private Design3DPanel design3DPanel;
     private RoomConfigPanel roomConfigPanel;
     private DesignService designService;
     private JTabbedPane tabbedPane;
+    private JButton undoButton;
+    private JButton redoButton;
     
     /**
      * Creates a new designer dashboard
@@ -81,6 +107,38 @@ public class DesignerDashboard extends JFrame {
         // Create status bar
         JPanel statusBar = createStatusBar();
         add(statusBar, BorderLayout.SOUTH);
+        
+        // Set up undo/redo shortcuts and keep the buttons in sync with the history
+        setupUndoRedoShortcuts();
+        designModel.addListener(changeType -> updateUndoRedoButtons());
+        updateUndoRedoButtons();
+    }
+    
+    /**
+     * Binds Ctrl+Z / Ctrl+Y (and Ctrl+Shift+Z) to undo and redo
+     */
+    private void setupUndoRedoShortcuts() {
+        JRootPane rootPane = getRootPane();
+        InputMap inputMap = rootPane.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        ActionMap actionMap = rootPane.getActionMap();
+        
+        int menuMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMask();
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuMask), "undo");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuMask), "redo");
+        inputMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuMask | InputEvent.SHIFT_DOWN_MASK), "redo");
+        
+        actionMap.put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        actionMap.put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
     }
     
     /**
@@ -99,25 +157,35 @@ public class DesignerDashboard extends JFrame {
         
         JButton newButton = UIUtils.createStyledButton("New", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
         JButton saveButton = UIUtils.createStyledButton("Save", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
+        JButton turntableButton = UIUtils.createStyledButton("Turntable", null, AppConstants.PRIMARY_COLOR,
+                Color.WHITE);
         
         newButton.addActionListener(this::newDesign);
         saveButton.addActionListener(this::saveDesign);
+        turntableButton.addActionListener(e -> exportTurntable());
         
         filePanel.add(newButton);
         filePanel.add(saveButton);
+        filePanel.add(turntableButton);
         
         // Edit operations panel
         JPanel editPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 0));
         editPanel.setOpaque(false);
         
+        undoButton = UIUtils.createStyledButton("Undo", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
+        redoButton = UIUtils.createStyledButton("Redo", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
         JButton deleteButton = UIUtils.createStyledButton("Delete", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
         JButton colorButton = UIUtils.createStyledButton("Color", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
         JButton scaleButton = UIUtils.createStyledButton("Scale", null, AppConstants.PRIMARY_COLOR, Color.WHITE);
         
+        undoButton.addActionListener(e -> undo());
+        redoButton.addActionListener(e -> redo());
         deleteButton.addActionListener(e -> deleteSelectedItem());
         colorButton.addActionListener(e -> changeItemColor());
         scaleButton.addActionListener(e -> scaleSelectedItem());
         
+        editPanel.add(undoButton);
+        editPanel.add(redoButton);
         editPanel.add(deleteButton);
         editPanel.add(colorButton);
         editPanel.add(scaleButton);
@@ -137,6 +205,49 @@ public class DesignerDashboard extends JFrame {
             }
         });
         
+        // Rendering backend for the 3D preview
+        JComboBox<RenderMode> renderModeCombo = new JComboBox<>(RenderMode.values());
+        renderModeCombo.setToolTipText("3D renderer");
+        renderModeCombo.addActionListener(e ->
+                design3DPanel.setRenderMode((RenderMode) renderModeCombo.getSelectedItem()));
+        
+        // Frame-time overlay on both design views
+        JCheckBox frameStatsCheck = new JCheckBox("Frame stats");
+        frameStatsCheck.setOpaque(false);
+        frameStatsCheck.addActionListener(e -> {
+            design2DPanel.setShowFrameStats(frameStatsCheck.isSelected());
+            design3DPanel.setShowFrameStats(frameStatsCheck.isSelected());
+        });
+        
+        // Edges-only 3D preview for inspecting large scenes
+        JCheckBox wireframeCheck = new JCheckBox("Wireframe");
+        wireframeCheck.setOpaque(false);
+        wireframeCheck.addActionListener(e -> design3DPanel.setShowWireframe(wireframeCheck.isSelected()));
+        
+        // How both design views trade rendering hints for speed, and the frame time they aim for
+        JComboBox<QualityPolicy> qualityPolicyCombo = new JComboBox<>(QualityPolicy.values());
+        qualityPolicyCombo.setToolTipText("Rendering quality policy");
+        qualityPolicyCombo.addActionListener(e -> {
+            QualityPolicy policy = (QualityPolicy) qualityPolicyCombo.getSelectedItem();
+            design2DPanel.getQualityController().setPolicy(policy);
+            design3DPanel.getQualityController().setPolicy(policy);
+            design2DPanel.repaint();
+            design3DPanel.repaint();
+        });
+        JSpinner frameBudgetSpinner = new JSpinner(new SpinnerNumberModel(
+                (int) Math.round(AdaptiveQualityController.DEFAULT_BUDGET_MILLIS), 5, 200, 1));
+        frameBudgetSpinner.setToolTipText("Frame budget of the adaptive policy (ms)");
+        frameBudgetSpinner.addChangeListener(e -> {
+            double budget = ((Number) frameBudgetSpinner.getValue()).doubleValue();
+            design2DPanel.getQualityController().setFrameBudgetMillis(budget);
+            design3DPanel.getQualityController().setFrameBudgetMillis(budget);
+        });
+        
+        viewPanel.add(frameStatsCheck);
+        viewPanel.add(wireframeCheck);
+        viewPanel.add(qualityPolicyCombo);
+        viewPanel.add(frameBudgetSpinner);
+        viewPanel.add(renderModeCombo);
         viewPanel.add(themeToggle);
         
         // Add panels to toolbar
@@ -197,15 +308,31 @@ public class DesignerDashboard extends JFrame {
         String name = JOptionPane.showInputDialog(this, "Enter a name for this design:");
         
         if (name != null && !name.isEmpty()) {
-            try {
-                // Convert DesignModel to Design for saving
-                designService.saveDesign(designModel.toDesign(name, "admin"));
-                JOptionPane.showMessageDialog(this, "Design saved successfully!", 
-                        "Success", JOptionPane.INFORMATION_MESSAGE);
-            } catch (IOException ex) {
-                JOptionPane.showMessageDialog(this, "Error saving design: " + ex.getMessage(), 
-                        "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            // Take a consistent snapshot on the EDT, then convert and write it in the background
+            designModel.commit();
+            DesignSnapshot snapshot = designModel.getSnapshot();
+            
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    designService.saveDesign(snapshot.toDesign(name, "admin"));
+                    return null;
+                }
+                
+                @Override
+                protected void done() {
+                    try {
+                        get();
+                        JOptionPane.showMessageDialog(DesignerDashboard.this, "Design saved successfully!", 
+                                "Success", JOptionPane.INFORMATION_MESSAGE);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException ex) {
+                        JOptionPane.showMessageDialog(DesignerDashboard.this, "Error saving design: " + ex.getCause().getMessage(), 
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
         }
     }
     
@@ -218,6 +345,92 @@ public class DesignerDashboard extends JFrame {
                 "Coming Soon", JOptionPane.INFORMATION_MESSAGE);
     }
     
+    /**
+     * Exports a turntable animation of the 3D view as an animated GIF or a PNG sequence
+     */
+    private void exportTurntable() {
+        JSpinner framesSpinner = new JSpinner(new SpinnerNumberModel(TURNTABLE_FRAMES, 4, 360, 4));
+        JComboBox<String> formatCombo = new JComboBox<>(new String[] {"Animated GIF", "PNG sequence"});
+        JPanel optionsPanel = new JPanel(new GridLayout(2, 2, 5, 5));
+        optionsPanel.add(new JLabel("Frames per turn:"));
+        optionsPanel.add(framesSpinner);
+        optionsPanel.add(new JLabel("Format:"));
+        optionsPanel.add(formatCombo);
+        if (JOptionPane.showConfirmDialog(this, optionsPanel, "Export Turntable",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) != JOptionPane.OK_OPTION) {
+            return;
+        }
+        
+        // A GIF goes into one file, a PNG sequence into a directory of numbered files
+        boolean gif = formatCombo.getSelectedIndex() == 0;
+        JFileChooser chooser = new JFileChooser(new File(AppConstants.EXPORTS_DIRECTORY));
+        if (gif) {
+            chooser.setSelectedFile(new File(AppConstants.EXPORTS_DIRECTORY, "turntable.gif"));
+        } else {
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        }
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File target = chooser.getSelectedFile();
+        
+        // Capture the view on the EDT; the frames are rendered and written in the background
+        designModel.commit();
+        DesignSnapshot snapshot = designModel.getSnapshot();
+        Camera camera = design3DPanel.getCamera();
+        
+        // Exported frames are always finished frames, whatever the view shows at the moment
+        RenderOptions view = design3DPanel.getRenderOptions();
+        RenderOptions options = new RenderOptions(view.getBackground(), view.getRenderMode(), RenderQuality.FULL,
+                false, view.isShowingShadows(), view.isShowingReflections(), RenderHints.QUALITY);
+        Dimension size = design3DPanel.getWidth() > 0 && design3DPanel.getHeight() > 0
+                ? design3DPanel.getSize() : design3DPanel.getPreferredSize();
+        int frames = (Integer) framesSpinner.getValue();
+        ProgressMonitor progress = new ProgressMonitor(this, "Exporting turntable", null, 0, frames);
+        
+        new SwingWorker<Void, Integer>() {
+            @Override
+            protected Void doInBackground() throws IOException, InterruptedException {
+                try (FrameSequenceWriter writer = gif
+                        ? new GifSequenceWriter(target, TURNTABLE_FRAME_DELAY_MS)
+                        : new PngSequenceWriter(target, "turntable")) {
+                    // A renderer of its own, so the export-sized buffers are dropped when the export ends
+                    new TurntableExporter(new SceneRenderer()).export(snapshot, camera, options,
+                            size.width, size.height, frames, writer, written -> publish(written));
+                }
+                return null;
+            }
+            
+            @Override
+            protected void process(List<Integer> written) {
+                if (progress.isCanceled()) {
+                    cancel(true);
+                } else {
+                    progress.setProgress(written.get(written.size() - 1));
+                }
+            }
+            
+            @Override
+            protected void done() {
+                progress.close();
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(DesignerDashboard.this, "Turntable exported to " + target,
+                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(DesignerDashboard.this,
+                            "Error exporting turntable: " + ex.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+    
     /**
      * Deletes the selected furniture item
      */
@@ -252,8 +465,9 @@ public class DesignerDashboard extends JFrame {
         Color newColor = JColorChooser.showDialog(this, "Choose Color", selectedItem.getColor());
         
         if (newColor != null) {
+            ItemState before = ItemState.of(selectedItem);
             selectedItem.setColor(newColor);
-            designModel.updateFurnitureItem(selectedItem);
+            designModel.updateFurnitureItem(selectedItem, before);
         }
     }
     
@@ -269,9 +483,10 @@ public class DesignerDashboard extends JFrame {
         }
         
         // Rotate by 90 degrees
+        ItemState before = ItemState.of(selectedItem);
         float currentRotation = selectedItem.getRotation();
         selectedItem.setRotation((currentRotation + 90) % 360);
-        designModel.updateFurnitureItem(selectedItem);
+        designModel.updateFurnitureItem(selectedItem, before);
     }
     
     /**
@@ -299,12 +514,43 @@ public class DesignerDashboard extends JFrame {
                 if (scaleFactor > 2.0f) scaleFactor = 2.0f;
                 
                 // Apply scaling
+                ItemState before = ItemState.of(selectedItem);
                 selectedItem.scale(scaleFactor);
-                designModel.updateFurnitureItem(selectedItem);
+                designModel.updateFurnitureItem(selectedItem, before);
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Please enter a valid number", 
                         "Invalid Input", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
-}
+    
+    /**
+     * Undoes the most recent change to the design
+     */
+    private void undo() {
+        designModel.undo();
+        updateUndoRedoButtons();
+    }
+    
+    /**
+     * Redoes the most recently undone change
+     */
+    private void redo() {
+        designModel.redo();
+        updateUndoRedoButtons();
+    }
+    
+    /**
+     * Updates the enabled state and tooltips of the undo/redo buttons
+     */
+    private void updateUndoRedoButtons() {
+        if (undoButton == null || redoButton == null) {
+            return;
+        }
+        DesignHistory history = designModel.getHistory();
+        undoButton.setEnabled(history.canUndo());
+        redoButton.setEnabled(history.canRedo());
+        undoButton.setToolTipText(history.canUndo() ? "Undo " + history.getUndoDescription() : null);
+        redoButton.setToolTipText(history.canRedo() ? "Redo " + history.getRedoDescription() : null);
+    }
+}
\ No newline at end of file
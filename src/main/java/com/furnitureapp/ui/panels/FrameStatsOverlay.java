@@ -0,0 +1,48 @@
+package com.furnitureapp.ui.panels;
+
+import com.furnitureapp.render.FrameStats;
+
+import java.awt.*;
+
+/**
+ * Draws the optional frame-time overlay of the design panels
+ */
+final class FrameStatsOverlay {
+    private static final Font FONT = new Font("Monospaced", Font.PLAIN, 11);
+    private static final int LINE_HEIGHT = 15;
+    
+    private FrameStatsOverlay() {
+    }
+    
+    /**
+     * Formats the frame-time percentiles of a set of frames
+     * @param label what the frames measure, e.g. "Paint"
+     * @param stats the frame statistics
+     * @return a line with the p50, p95 and p99 frame times
+     */
+    static String percentiles(String label, FrameStats stats) {
+        return String.format("%-7s%5.1f%6.1f%6.1f ms", label,
+                stats.getPercentileMillis(50), stats.getPercentileMillis(95), stats.getPercentileMillis(99));
+    }
+    
+    /**
+     * Draws the overlay in the top-left corner
+     * @param g2d the graphics context
+     * @param lines the lines to show below the column header
+     */
+    static void draw(Graphics2D g2d, String... lines) {
+        int x = 10;
+        int y = 10;
+        int height = (lines.length + 1) * LINE_HEIGHT + 10;
+        
+        g2d.setColor(new Color(0, 0, 0, 150));
+        g2d.fillRoundRect(x, y, 200, height, 10, 10);
+        
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(FONT);
+        g2d.drawString(String.format("%-7s%5s%6s%6s", "", "p50", "p95", "p99"), x + 10, y + LINE_HEIGHT + 2);
+        for (int i = 0; i < lines.length; i++) {
+            g2d.drawString(lines[i], x + 10, y + (i + 2) * LINE_HEIGHT + 2);
+        }
+    }
+}